@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.cucumber.reporter;
+
+import com.privalia.qa.utils.EndpointLatencyReport;
+import com.privalia.qa.utils.PagePerformanceReport;
+import io.cucumber.plugin.ConcurrentEventListener;
+import io.cucumber.plugin.event.EventPublisher;
+import io.cucumber.plugin.event.TestRunFinished;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes the summary of the page performance metrics collected during the execution (see
+ * {@link PagePerformanceReport}) to target/executions/performance-report.json, and the latency of the rest
+ * endpoints (see {@link EndpointLatencyReport}) to target/executions/endpoint-latency-report.json when the test run
+ * finishes
+ */
+public class PerformanceReporter implements ConcurrentEventListener {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass().getCanonicalName());
+
+    @Override
+    public void setEventPublisher(EventPublisher publisher) {
+        publisher.registerHandlerFor(TestRunFinished.class, this::handleTestRunFinished);
+    }
+
+    private void handleTestRunFinished(TestRunFinished event) {
+        String testSuffix = System.getProperty("TESTSUFFIX");
+        String targetExecutionsPath = "target/executions/";
+        if (testSuffix != null) {
+            targetExecutionsPath = targetExecutionsPath + testSuffix + "/";
+        }
+
+        try {
+            PagePerformanceReport.INSTANCE.write(new File(targetExecutionsPath + "performance-report.json"));
+        } catch (IOException e) {
+            logger.error("Could not write the performance report: {}", e.getMessage());
+        }
+
+        try {
+            List<String> regressions = EndpointLatencyReport.INSTANCE.write(new File(targetExecutionsPath));
+            if (!regressions.isEmpty()) {
+                logger.warn("{} endpoint(s) are slower than the baseline, see {}endpoint-latency-report.json", regressions.size(), targetExecutionsPath);
+            }
+        } catch (IOException e) {
+            logger.error("Could not write the endpoint latency report: {}", e.getMessage());
+        }
+    }
+}
@@ -104,6 +104,9 @@ public class CucumberOptionsImpl implements CucumberOptions {
         /*Include custom reporter*/
         plugin.add("com.privalia.qa.cucumber.reporter.TestNGPrettyFormatter");
 
+        /*Include the summary of the page performance metrics*/
+        plugin.add("com.privalia.qa.cucumber.reporter.PerformanceReporter");
+
         return plugin.toArray(new String[]{});
 
     }
@@ -36,7 +36,6 @@ import io.cucumber.datatable.DataTable;
 import io.restassured.specification.RequestSpecification;
 import org.apache.commons.collections.IteratorUtils;
 import org.apache.commons.configuration2.ex.ConfigurationException;
-import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.assertj.core.api.Assertions;
@@ -46,12 +45,12 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import org.openqa.selenium.NoSuchElementException;
 import org.openqa.selenium.*;
-import org.openqa.selenium.interactions.Actions;
 import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.FluentWait;
 import org.openqa.selenium.support.ui.Wait;
 import org.reflections.Reflections;
+import ru.yandex.qatools.ashot.coordinates.Coords;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -59,7 +58,6 @@ import java.io.*;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.*;
 
@@ -75,10 +73,6 @@ import static org.testng.Assert.fail;
  */
 public class CommonG {
 
-    private static final long DEFAULT_CURRENT_TIME = 1000L;
-
-    private static final int DEFAULT_SLEEP_TIME = 1500;
-
     private final Logger logger = LogManager.getLogger("com.privalia.qa.specs.CommonG");
 
     private WebDriver driver = null;
@@ -127,12 +121,38 @@ public class CommonG {
 
     private io.restassured.response.Response RestResponse;
 
+    private SpooledBody restResponseBody;
+
+    private LoadGenerator.Result loadTestResult;
+
+    private KafkaUtils.BulkResult kafkaBulkResult;
+
+    private MockServer mockServer;
+
+    private Cassette cassette;
+
     private List<Map<String, String>> lastFileParseResult;
 
     private Map<String, String> lastFileParseRecord;
 
     private String lastSoapResponse;
 
+    private boolean pageSourceSnapshotEnabled = Boolean.parseBoolean(System.getProperty("PAGE_SOURCE_SNAPSHOT", "false"));
+
+    private PageSourceSnapshot pageSourceSnapshot;
+
+    private boolean pageSourceSnapshotUsed = false;
+
+    private boolean elementCacheEnabled = Boolean.parseBoolean(System.getProperty("ELEMENT_CACHE", "false"));
+
+    private final ElementCache elementCache = new ElementCache();
+
+    private final List<Coords> visualIgnoreRegions = new ArrayList<>();
+
+    private PagePerformance pagePerformance;
+
+    private HarRecorder harRecorder;
+
     public Alert getSeleniumAlert() {
         return SeleniumAlert;
     }
@@ -260,6 +280,29 @@ public class CommonG {
         RestResponse = restResponse;
     }
 
+    /**
+     * Returns the body of the previous Rest response as received by the shared pool of connections, that can be
+     * verified without loading it in memory
+     *
+     * @return body of the Rest response, or null if the pool of connections is disabled
+     * @see RestConnectionPool
+     */
+    public SpooledBody getRestResponseBody() {
+        return restResponseBody;
+    }
+
+    /**
+     * Sets the body of the Rest response. The temporary file of the previous body, if any, is deleted
+     *
+     * @param restResponseBody body of the Rest response
+     */
+    public void setRestResponseBody(SpooledBody restResponseBody) {
+        if (this.restResponseBody != null && this.restResponseBody != restResponseBody) {
+            this.restResponseBody.delete();
+        }
+        this.restResponseBody = restResponseBody;
+    }
+
     /**
      * Returns the Rest Request object (restassured)
      *
@@ -277,6 +320,78 @@ public class CommonG {
         this.RestRequest = restRequest;
     }
 
+    /**
+     * Returns the result of the last load test
+     *
+     * @return result of the load test
+     */
+    public LoadGenerator.Result getLoadTestResult() {
+        return loadTestResult;
+    }
+
+    /**
+     * Sets the result of the last load test
+     *
+     * @param loadTestResult result of the load test
+     */
+    public void setLoadTestResult(LoadGenerator.Result loadTestResult) {
+        this.loadTestResult = loadTestResult;
+    }
+
+    /**
+     * Returns the result of the last messages sent in bulk to kafka
+     *
+     * @return throughput and latencies of the messages sent
+     */
+    public KafkaUtils.BulkResult getKafkaBulkResult() {
+        return kafkaBulkResult;
+    }
+
+    /**
+     * Sets the result of the last messages sent in bulk to kafka
+     *
+     * @param kafkaBulkResult throughput and latencies of the messages sent
+     */
+    public void setKafkaBulkResult(KafkaUtils.BulkResult kafkaBulkResult) {
+        this.kafkaBulkResult = kafkaBulkResult;
+    }
+
+    /**
+     * Returns the mock server started in the scenario
+     *
+     * @return mock server, or null if not started
+     */
+    public MockServer getMockServer() {
+        return mockServer;
+    }
+
+    /**
+     * Sets the mock server of the scenario
+     *
+     * @param mockServer mock server
+     */
+    public void setMockServer(MockServer mockServer) {
+        this.mockServer = mockServer;
+    }
+
+    /**
+     * Returns the cassette where the http requests of the scenario are recorded or replayed from
+     *
+     * @return the cassette selected in the scenario, or the one configured with -DCASSETTE_MODE (can be null)
+     */
+    public Cassette getCassette() {
+        return cassette != null ? cassette : Cassette.getDefault();
+    }
+
+    /**
+     * Sets the cassette of the scenario
+     *
+     * @param cassette cassette
+     */
+    public void setCassette(Cassette cassette) {
+        this.cassette = cassette;
+    }
+
     /**
      * Get the SQL result from the last step
      *
@@ -501,6 +616,7 @@ public class CommonG {
      */
     public void setDriver(WebDriver driver) {
         this.driver = driver;
+        this.elementCache.invalidate();
     }
 
     /**
@@ -556,6 +672,8 @@ public class CommonG {
                 wel = ((MobileDriver) this.getDriver()).findElementsByPartialLinkText(element);
             } else if ("tagName".equals(method)) {
                 wel = ((MobileDriver) this.getDriver()).findElementsByTagName(element);
+            } else if ("shadow".equals(method)) {
+                wel = this.getDriver().findElements(new ByShadowCss(element));
             } else {
                 fail("Unknown search method: " + method);
             }
@@ -578,6 +696,8 @@ public class CommonG {
                 wel = this.getDriver().findElements(By.partialLinkText(element));
             } else if ("tagName".equals(method)) {
                 wel = this.getDriver().findElements(By.tagName(element));
+            } else if ("shadow".equals(method)) {
+                wel = this.getDriver().findElements(new ByShadowCss(element));
             } else {
                 fail("Unknown search method: " + method);
             }
@@ -668,6 +788,8 @@ public class CommonG {
             return By.xpath(element);
         } else if ("css".equals(method)) {
             return By.cssSelector(element);
+        } else if ("shadow".equals(method)) {
+            return new ByShadowCss(element);
         }
 
         fail("Unknown method: " + method);
@@ -737,20 +859,10 @@ public class CommonG {
      */
     public String captureEvidence(WebDriver driver, String type, String suffix) {
 
-        String testSuffix = System.getProperty("TESTSUFFIX");
-        String dir = "./target/executions/";
-        if (testSuffix != null) {
-            dir = dir + testSuffix + "/";
-        }
-
+        String dir = this.getEvidenceDir();
         String feature = ThreadProperty.get("feature", "unknown_feature");
         String currentBrowser = ThreadProperty.get("browser", "default");
-        String scenario = ThreadProperty.get("scenario", "unknown_scenario");
-
-        if (!scenario.equals("")) {
-            scenario = scenario
-                    .replaceAll("[\\\\|\\/|\\|\\s|:|\\*]", "_");
-        }
+        String scenario = this.getEvidenceScenario();
 
         Timestamp ts = new Timestamp(new Date().getTime());
         String outputFile = dir + feature + "/" + scenario + "/" + currentBrowser + "-" + ts + suffix;
@@ -767,55 +879,37 @@ public class CommonG {
                 }
             } else if (type.equals("htmlSource")) {
                 driver.switchTo().defaultContent();
+                this.invalidateElementCache();
                 outputFile = outputFile + ".html";
             }
 
             if (!outputFile.equals("")) {
                 String source = ((RemoteWebDriver) driver).getPageSource();
-
-                File fout = new File(outputFile);
-                boolean dirs = fout.getParentFile().mkdirs();
-
-                try (FileOutputStream fos = new FileOutputStream(fout, true)) {
-                    Writer out = new OutputStreamWriter(fos, StandardCharsets.UTF_8);
-                    PrintWriter writer = new PrintWriter(out, false);
-                    writer.append(source);
-                    writer.close();
-                    out.close();
-                } catch (IOException e) {
-                    logger.error("Exception on evidence capture", e);
-                }
+                outputFile = EvidenceWriter.INSTANCE.write(outputFile, source);
             }
 
         } else if ("screenCapture".equals(type)) {
             outputFile = outputFile + ".png";
-            File file = null;
             driver.switchTo().defaultContent();
+            this.invalidateElementCache();
 //            ((Locatable) driver.findElement(By.tagName("body")))
 ////                    .getCoordinates().inViewPort();
 
-            if (currentBrowser.startsWith("android")
-                    || currentBrowser.startsWith("droidemu")) {
-                Actions actions = new Actions(driver);
-                actions.keyDown(Keys.CONTROL).sendKeys(Keys.HOME).perform();
-                actions.keyUp(Keys.CONTROL).perform();
-
-                file = chromeFullScreenCapture(driver);
-            } else {
-
+            boolean fullPage = false;
+            if (FullPageScreenshot.isEnabled(currentBrowser)) {
                 try {
-                    File screenshot = ((TakesScreenshot) driver).getScreenshotAs(OutputType.FILE);
-                    file = new File("target/temp");
-                    FileUtils.copyFile(screenshot, file);
+                    fullPage = FullPageScreenshot.write(driver, outputFile);
                 } catch (Exception e) {
-                    logger.error("Exception on taking screenshot", e);
+                    logger.warn("Full page screenshot not available: {}", e.getMessage());
                 }
             }
+
             try {
-                FileUtils.copyFile(file, new File(outputFile));
-                file.delete();
-            } catch (IOException e) {
-                logger.error("Exception on copying browser screen capture", e);
+                if (!fullPage) {
+                    EvidenceWriter.INSTANCE.write(outputFile, ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES));
+                }
+            } catch (Exception e) {
+                logger.error("Exception on taking screenshot", e);
             }
 
         } else if ("mobileScreenCapture".equals(type)) {
@@ -827,8 +921,7 @@ public class CommonG {
             outputFile = outputFile.replaceAll(" ", "_") + ".png";
 
             try {
-                File file = ((TakesScreenshot) driver).getScreenshotAs(OutputType.FILE);
-                FileUtils.copyFile(file, new File(outputFile));
+                EvidenceWriter.INSTANCE.write(outputFile, ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES));
             } catch (Exception e) {
                 logger.error("Exception when taking screenshot", e);
             }
@@ -841,123 +934,136 @@ public class CommonG {
 
             outputFile = outputFile.replaceAll(" ", "_") + ".xml";
 
-            String source = driver.getPageSource();
-
-            File fout = new File(outputFile);
-            boolean dirs = fout.getParentFile().mkdirs();
-
-            try (FileOutputStream fos = new FileOutputStream(fout, true)) {
-                Writer out = new OutputStreamWriter(fos, StandardCharsets.UTF_8);
-                PrintWriter writer = new PrintWriter(out, false);
-                writer.append(source);
-                writer.close();
-                out.close();
-            } catch (IOException e) {
-                logger.error("Exception on evidence capture", e);
-            }
+            outputFile = EvidenceWriter.INSTANCE.write(outputFile, driver.getPageSource());
         }
 
         return outputFile;
 
     }
 
-    private File adjustLastCapture(Integer newTrailingImageHeight,
-                                   List<File> capture) {
-        // cuts last image just in case it dupes information
-        Integer finalHeight = 0;
-        Integer finalWidth = 0;
-
-        File trailingImage = capture.get(capture.size() - 1);
-        capture.remove(capture.size() - 1);
-
-        BufferedImage oldTrailingImage;
-        File temp = null;
-        try {
-            oldTrailingImage = ImageIO.read(trailingImage);
-            BufferedImage newTrailingImage = new BufferedImage(
-                    oldTrailingImage.getWidth(), oldTrailingImage.getHeight()
-                    - newTrailingImageHeight,
-                    BufferedImage.TYPE_INT_RGB);
-
-            newTrailingImage.createGraphics().drawImage(oldTrailingImage, 0,
-                    0 - newTrailingImageHeight, null);
-
-            File newTrailingImageF = File.createTempFile("tmpnewTrailingImage",
-                    ".png");
-            newTrailingImageF.deleteOnExit();
+    private String getEvidenceDir() {
+        String testSuffix = System.getProperty("TESTSUFFIX");
+        String dir = "./target/executions/";
+        if (testSuffix != null) {
+            dir = dir + testSuffix + "/";
+        }
+        return dir;
+    }
 
-            ImageIO.write(newTrailingImage, "png", newTrailingImageF);
+    private String getEvidenceScenario() {
+        String scenario = ThreadProperty.get("scenario", "unknown_scenario");
 
-            capture.add(newTrailingImageF);
+        if (!scenario.equals("")) {
+            scenario = scenario
+                    .replaceAll("[\\\\|\\/|\\|\\s|:|\\*]", "_");
+        }
+        return scenario;
+    }
 
-            finalWidth = ImageIO.read(capture.get(0)).getWidth();
-            for (File cap : capture) {
-                finalHeight += ImageIO.read(cap).getHeight();
-            }
+    /**
+     * Returns the path (without extension) for a new evidence of the current scenario, in the same
+     * folder used by {@link #captureEvidence(WebDriver, String, String)}
+     *
+     * @param suffix suffix to add to the file name
+     * @return path of the evidence
+     */
+    public String getEvidencePath(String suffix) {
+        Timestamp ts = new Timestamp(new Date().getTime());
+        return this.getEvidenceDir() + ThreadProperty.get("feature", "unknown_feature") + "/" + this.getEvidenceScenario()
+                + "/" + ThreadProperty.get("browser", "default") + "-" + ts + suffix;
+    }
 
-            BufferedImage img = new BufferedImage(finalWidth, finalHeight,
-                    BufferedImage.TYPE_INT_RGB);
+    /**
+     * Returns the recorder of the network activity of the browser
+     *
+     * @return HAR recorder, or null if not enabled (-DHAR_RECORDING)
+     */
+    public HarRecorder getHarRecorder() {
+        return harRecorder;
+    }
 
-            Integer y = 0;
-            BufferedImage tmpImg = null;
-            for (File cap : capture) {
-                tmpImg = ImageIO.read(cap);
-                img.createGraphics().drawImage(tmpImg, 0, y, null);
-                y += tmpImg.getHeight();
-            }
+    public void setHarRecorder(HarRecorder harRecorder) {
+        this.harRecorder = harRecorder;
+    }
 
-            long ts = System.currentTimeMillis() / DEFAULT_CURRENT_TIME;
+    /**
+     * Returns the last performance metrics collected in the scenario
+     *
+     * @return metrics of the page, or null if not collected
+     */
+    public PagePerformance getPagePerformance() {
+        return pagePerformance;
+    }
 
-            temp = File.createTempFile("chromecap" + ts, ".png");
-            temp.deleteOnExit();
-            ImageIO.write(img, "png", temp);
+    public void setPagePerformance(PagePerformance pagePerformance) {
+        this.pagePerformance = pagePerformance;
+    }
 
-        } catch (IOException e) {
-            logger.error("Cant read image", e);
-        }
-        return temp;
+    /**
+     * Returns the regions of the page (in css pixels) excluded from the visual comparisons
+     *
+     * @return list of regions
+     */
+    public List<Coords> getVisualIgnoreRegions() {
+        return visualIgnoreRegions;
     }
 
-    private File chromeFullScreenCapture(WebDriver driver) {
-        driver.switchTo().defaultContent();
-        // scroll loop n times to get the whole page if browser is chrome
-        ArrayList<File> capture = new ArrayList<File>();
+    /**
+     * Compares a full page screenshot of the current window with the baseline image with the given name.
+     * <p>
+     * Baselines are stored as png under the directory given with -DVISUAL_BASELINE_DIR (by default,
+     * src/test/resources/visual-baselines), in a subfolder per browser. Baselines are only written with
+     * -DVISUAL_BASELINE_UPDATE=true, which saves the current screenshot as the new baseline. If the baseline does
+     * not exist, the comparison fails and the screenshot is stored under target/executions. When the images do not
+     * match, the screenshot and the diff image are stored under target/executions
+     *
+     * @param name      name of the baseline
+     * @param tolerance max percentage (0-100) of different pixels
+     * @return result of the comparison, or null if the baseline was created (-DVISUAL_BASELINE_UPDATE=true)
+     * @throws IOException if the baseline could not be read or written
+     */
+    public VisualDiff compareWithBaseline(String name, double tolerance) throws IOException {
+        WebDriver driver = this.getDriver();
+        BufferedImage actual = FullPageScreenshot.capture(driver);
+        Assertions.assertThat(actual).as("Could not take a screenshot of the page").isNotNull();
 
-        Boolean atBottom = false;
-        Integer windowSize = ((Long) ((JavascriptExecutor) driver)
-                .executeScript("return document.documentElement.clientHeight"))
-                .intValue();
+        String currentBrowser = ThreadProperty.get("browser", "default");
+        File baseline = new File(System.getProperty("VISUAL_BASELINE_DIR", "src/test/resources/visual-baselines"),
+                currentBrowser + "/" + name + ".png");
 
-        Integer accuScroll = 0;
-        Integer newTrailingImageHeight = 0;
+        if (Boolean.parseBoolean(System.getProperty("VISUAL_BASELINE_UPDATE", "false"))) {
+            logger.warn("Saving current screenshot as baseline {}", baseline.getPath());
+            baseline.getParentFile().mkdirs();
+            ImageIO.write(actual, "png", baseline);
+            return null;
+        }
 
-        try {
-            while (!atBottom) {
+        if (!baseline.exists()) {
+            String outputFile = EvidenceWriter.INSTANCE.write(this.getEvidencePath("-" + name) + "-actual.png", actual);
+            Assertions.fail("The baseline " + baseline.getPath() + " does not exist. The current screenshot is in "
+                    + outputFile + " (use -DVISUAL_BASELINE_UPDATE=true to save it as baseline)");
+        }
 
-                Thread.sleep(DEFAULT_SLEEP_TIME);
-                capture.add(((TakesScreenshot) driver)
-                        .getScreenshotAs(OutputType.FILE));
+        int viewportWidth = ((Number) ((JavascriptExecutor) driver).executeScript("return document.documentElement.clientWidth")).intValue();
+        double scale = viewportWidth > 0 ? (double) actual.getWidth() / viewportWidth : 1;
+        List<Coords> regions = new ArrayList<>();
+        for (Coords region : this.visualIgnoreRegions) {
+            regions.add(new Coords((int) Math.floor(region.x * scale), (int) Math.floor(region.y * scale),
+                    (int) Math.ceil(region.width * scale), (int) Math.ceil(region.height * scale)));
+        }
 
-                ((JavascriptExecutor) driver).executeScript("if(window.screen)"
-                        + " {window.scrollBy(0," + windowSize + ");};");
+        VisualDiff diff = new VisualComparator().ignoring(regions).compare(ImageIO.read(baseline), actual);
+        logger.debug("Comparison with baseline {}: {}", name, diff);
 
-                accuScroll += windowSize;
-                if (getDocumentHeight(driver) <= accuScroll) {
-                    atBottom = true;
-                }
+        if (!diff.matches(tolerance)) {
+            String outputFile = this.getEvidencePath("-" + name);
+            EvidenceWriter.INSTANCE.write(outputFile + "-actual.png", actual);
+            if (diff.getDiffImage() != null) {
+                EvidenceWriter.INSTANCE.write(outputFile + "-diff.png", diff.getDiffImage());
             }
-
-        } catch (InterruptedException e) {
-            logger.error("Interrupted waits among scrolls", e);
         }
 
-        newTrailingImageHeight = accuScroll - getDocumentHeight(driver);
-        return adjustLastCapture(newTrailingImageHeight, capture);
-    }
-
-    private Integer getDocumentHeight(WebDriver driver) {
-        WebElement body = driver.findElement(By.tagName("html"));
-        return body.getSize().getHeight();
+        return diff;
     }
 
     /**
@@ -978,6 +1084,136 @@ public class CommonG {
         this.previousWebElements = previousWebElements;
     }
 
+    /**
+     * Returns true if read-only assertions over the page source should be evaluated against
+     * a local snapshot of the page instead of querying the browser each time
+     *
+     * @return true if snapshots are enabled
+     */
+    public boolean isPageSourceSnapshotEnabled() {
+        return pageSourceSnapshotEnabled;
+    }
+
+    /**
+     * Enables/disables the use of page source snapshots for read-only assertions. Snapshots
+     * can also be enabled for the whole execution with -DPAGE_SOURCE_SNAPSHOT=true
+     *
+     * @param pageSourceSnapshotEnabled true to enable snapshots
+     */
+    public void setPageSourceSnapshotEnabled(boolean pageSourceSnapshotEnabled) {
+        this.pageSourceSnapshotEnabled = pageSourceSnapshotEnabled;
+        this.pageSourceSnapshot = null;
+    }
+
+    /**
+     * Returns the snapshot of the page source of the current window. If there is no valid snapshot,
+     * the page source is retrieved from the driver. The snapshot is reused by all read-only steps
+     * executed one after the other, and is discarded as soon as any other step is executed
+     * (see {@link #releasePageSourceSnapshot()})
+     *
+     * @return snapshot of the page source
+     */
+    public PageSourceSnapshot getPageSourceSnapshot() {
+        if (this.pageSourceSnapshot == null) {
+            logger.debug("Taking a new snapshot of the page source");
+            this.pageSourceSnapshot = new PageSourceSnapshot(this.getDriver().getPageSource());
+        }
+        this.pageSourceSnapshotUsed = true;
+        return this.pageSourceSnapshot;
+    }
+
+    /**
+     * Returns the page source of the current window. If snapshots are enabled, the page source is
+     * taken from the snapshot, otherwise it is directly retrieved from the driver
+     *
+     * @return page source
+     */
+    public String getPageSource() {
+        if (this.isPageSourceSnapshotEnabled()) {
+            return this.getPageSourceSnapshot().getSource();
+        }
+        return this.getDriver().getPageSource();
+    }
+
+    /**
+     * Called after each step. If the step did not make use of the snapshot, the step may have
+     * changed the page (click, typing, navigation, etc), so the snapshot is discarded
+     */
+    public void releasePageSourceSnapshot() {
+        if (!this.pageSourceSnapshotUsed && this.pageSourceSnapshot != null) {
+            logger.debug("Discarding snapshot of the page source");
+            this.pageSourceSnapshot = null;
+        }
+        this.pageSourceSnapshotUsed = false;
+    }
+
+    /**
+     * Returns true if the elements located by the steps that act over them (click, type, etc) are
+     * kept and reused by the following steps (see {@link ElementCache})
+     *
+     * @return true if the cache is enabled
+     */
+    public boolean isElementCacheEnabled() {
+        return elementCacheEnabled;
+    }
+
+    /**
+     * Enables/disables the cache of located elements. The cache can also be enabled for the whole
+     * execution with -DELEMENT_CACHE=true
+     *
+     * @param elementCacheEnabled true to enable the cache
+     */
+    public void setElementCacheEnabled(boolean elementCacheEnabled) {
+        this.elementCacheEnabled = elementCacheEnabled;
+        this.elementCache.invalidate();
+    }
+
+    /**
+     * Locates the elements with the given locator, reusing the elements located by a previous step
+     * with the same locator if the cache is enabled. Cached elements that are no longer attached to
+     * the page are located again automatically
+     *
+     * @param method  class of element to be searched
+     * @param element webElement searched in selenium context
+     * @return List(WebElement)
+     */
+    public List<WebElement> locateCachedElement(String method, String element) {
+        if (!this.isElementCacheEnabled()) {
+            return this.locateElement(method, element, -1);
+        }
+        return this.elementCache.locate(method, element, () -> this.locateElement(method, element, -1));
+    }
+
+    /**
+     * Stores in the cache (if enabled) the elements just located with the given locator
+     *
+     * @param method  class of element to be searched
+     * @param element webElement searched in selenium context
+     * @param located elements located
+     * @return the elements to use in the following steps
+     */
+    public List<WebElement> cacheElements(String method, String element, List<WebElement> located) {
+        if (!this.isElementCacheEnabled()) {
+            return located;
+        }
+        return this.elementCache.put(method, element, located, () -> this.locateElement(method, element, -1));
+    }
+
+    /**
+     * Discards the cached elements. Must be called when the current page, window or frame changes
+     */
+    public void invalidateElementCache() {
+        this.elementCache.invalidate();
+    }
+
+    /**
+     * Discards the cached locators that matched several elements. Must be called after any step that may add
+     * or remove elements of the page (see {@link ElementCache#invalidateLists()})
+     */
+    public void invalidateElementLists() {
+        this.elementCache.invalidateLists();
+    }
+
     /**
      * Returns the parentWindow
      *
@@ -1216,12 +1452,36 @@ public class CommonG {
 
         }
 
+        this.setRestResponseBody(SpooledBody.takeLastReceived());
+        this.recordEndpointLatency(requestType, endPoint);
+
         if (this.getLogger().isDebugEnabled()) {
             this.getRestResponse().then().log().all();
         }
 
     }
 
+    /**
+     * Adds the last request to the endpoint latency report of the execution. Responses replayed from a cassette
+     * (without duration) are not counted
+     *
+     * @param requestType Request type
+     * @param endPoint    Endpoint of the request
+     */
+    private void recordEndpointLatency(String requestType, String endPoint) {
+        io.restassured.response.Response response = this.getRestResponse();
+        if (response == null || response.getTime() < 0) {
+            return;
+        }
+        long size = -1;
+        if (this.getRestResponseBody() != null) {
+            size = this.getRestResponseBody().getSize();
+        } else if (response.getHeader("Content-Length") != null) {
+            size = Long.parseLong(response.getHeader("Content-Length").trim());
+        }
+        EndpointLatencyReport.INSTANCE.record(requestType, endPoint, response.getStatusCode(), response.getTime(), size);
+    }
+
     /**
      * Saves the value in the attribute in class extending CommonG.
      *
@@ -1660,7 +1920,7 @@ public class CommonG {
                 aux = matcher.group(1);
                 op = matcher.group(2);
             }
-            LinkedHashMap auxData = JsonPath.parse(jsonString).read(aux);
+            LinkedHashMap auxData = JsonCache.INSTANCE.parse(jsonString).read(JsonCache.INSTANCE.compile(aux));
             JSONObject json = new JSONObject(auxData);
             List<String> keys = IteratorUtils.toList(json.keys());
             List<String> stringKeys = new ArrayList<String>();
@@ -1688,10 +1948,9 @@ public class CommonG {
 
             }
         } else {
-            String result = JsonValue.readHjson(jsonString).toString();
             Object data;
             try {
-                data = JsonPath.parse(result).read(expr);
+                data = JsonCache.INSTANCE.read(jsonString, expr);
             } catch (PathNotFoundException e) {
                 this.getLogger().debug("jsonpath '{}' not found in the json document. Returning null.", expr);
                 return null;
@@ -17,9 +17,17 @@
 package com.privalia.qa.specs;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.privalia.qa.utils.AppiumSessionPool;
+import com.privalia.qa.utils.Cassette;
+import com.privalia.qa.utils.ChromeDevTools;
+import com.privalia.qa.utils.GridNode;
+import com.privalia.qa.utils.GridStatusClient;
+import com.privalia.qa.utils.HarRecorder;
 import com.privalia.qa.utils.JiraConnector;
+import com.privalia.qa.utils.NetworkProfile;
 import com.privalia.qa.utils.RunOnEnvTag;
 import com.privalia.qa.utils.SlackConnector;
+import com.privalia.qa.utils.SpooledBody;
 import com.privalia.qa.utils.ThreadProperty;
 import com.slack.api.methods.SlackApiException;
 import com.slack.api.methods.response.chat.ChatPostMessageResponse;
@@ -28,6 +36,7 @@ import io.appium.java_client.android.AndroidDriver;
 import io.appium.java_client.ios.IOSDriver;
 import io.appium.java_client.remote.MobileCapabilityType;
 import io.cucumber.java.After;
+import io.cucumber.java.AfterStep;
 import io.cucumber.java.Before;
 import io.cucumber.java.Scenario;
 import io.github.bonigarcia.wdm.WebDriverManager;
@@ -60,7 +69,9 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -159,10 +170,18 @@ public class HookGSpec extends BaseGSpec {
      *
      * Additionally, then using a selenium grid (-DSELENIUM_GRID), the user can use the
      * VM argument -DCAPABILITIES=/path/to/capabilities.json, to override the default capabilities
-     * with the ones from the json file
+     * with the ones from the json file, and -DGRID_LEAST_LOADED=true to create the session in the least
+     * loaded node of the grid
+     *
+     * With -DCROSS_BROWSER=chrome,firefox (or a list of capabilities files), every scenario runs at the
+     * same time in all the browsers. The browser of every run is taken from the thread properties
+     * (see {@link com.privalia.qa.utils.CrossBrowserExecution})
+     *
+     * With -DHAR_RECORDING=true (chrome only), the network activity of the browser is recorded in a HAR
+     * file per scenario, stored next to the rest of evidences under target/executions
      *
      * @param scenario  Scenario
-     * @throws MalformedURLException MalformedURLException
+     * @throws Exception if the driver could not be created, or the HAR recording or network settings could not be applied
      */
     @Before(order = 10, value = "@web")
     public void seleniumSetup(Scenario scenario) throws Exception {
@@ -175,7 +194,9 @@ public class HookGSpec extends BaseGSpec {
         ObjectMapper mapper = new ObjectMapper();
         boolean isLocal = ((System.getProperty("SELENIUM_GRID") != null) ? false : true);
         String[] arguments = System.getProperty("SELENIUM_ARGUMENTS", "--ignore-certificate-errors;--no-sandbox").split(";");
-        String browserName = System.getProperty("browserName", "chrome").toLowerCase();
+        String browserName = ThreadProperty.get("browserName", System.getProperty("browserName", "chrome")).toLowerCase();
+        String capabilitiesFile = ThreadProperty.get("CAPABILITIES", System.getProperty("CAPABILITIES"));
+        boolean harRecording = Boolean.parseBoolean(System.getProperty("HAR_RECORDING", "false"));
 
         switch (browserName) {
             case "chrome":
@@ -187,6 +208,10 @@ public class HookGSpec extends BaseGSpec {
                     chromeOptions.addArguments(argument);
                 }
 
+                if (harRecording) {
+                    chromeOptions.setCapability("goog:loggingPrefs", HarRecorder.loggingPreferences());
+                }
+
                 mutableCapabilities.setCapability(ChromeOptions.CAPABILITY, chromeOptions);
 
                 if (isLocal) {
@@ -298,8 +323,8 @@ public class HookGSpec extends BaseGSpec {
                 break;
 
             default:
-                commonspec.getLogger().error("Unknown browser: " + System.getProperty("browserName") + ". For using local browser, only Chrome/Opera/MicrosoftEdge/IE/Firefox/Safari are supported");
-                throw new WebDriverException("Unknown browser: " + System.getProperty("browserName") + ". For using local browser, only Chrome/Opera/MicrosoftEdge/IE/Firefox/Safari are supported");
+                commonspec.getLogger().error("Unknown browser: " + browserName + ". For using local browser, only Chrome/Opera/MicrosoftEdge/IE/Firefox/Safari are supported");
+                throw new WebDriverException("Unknown browser: " + browserName + ". For using local browser, only Chrome/Opera/MicrosoftEdge/IE/Firefox/Safari are supported");
         }
 
         /* Set the variable browser with the name of the current browser */
@@ -326,19 +351,155 @@ public class HookGSpec extends BaseGSpec {
             If the user includes the VM argument -DCAPABILITIES=/path/to/capabilities.json, the capabilities
             from that file will be used instead of the default ones
              */
-            if (System.getProperty("CAPABILITIES") != null) {
-                this.commonspec.getLogger().debug("Using capabilities from file: " + System.getProperty("CAPABILITIES"));
+            if (capabilitiesFile != null) {
+                this.commonspec.getLogger().debug("Using capabilities from file: " + capabilitiesFile);
                 mutableCapabilities = new MutableCapabilities();
-                this.addCapabilitiesFromFile(System.getProperty("CAPABILITIES"), mutableCapabilities);
+                this.addCapabilitiesFromFile(capabilitiesFile, mutableCapabilities);
+
+                /* The browser of the capabilities file replaces -DbrowserName in the evidences and baselines */
+                String fileBrowserName = mutableCapabilities.getBrowserName();
+                if (fileBrowserName != null && !fileBrowserName.isEmpty()) {
+                    ThreadProperty.set("browser", fileBrowserName.toLowerCase());
+                }
+            }
+
+            if (harRecording && isChrome(mutableCapabilities.getBrowserName()) && mutableCapabilities.getCapability("goog:loggingPrefs") == null) {
+                mutableCapabilities.setCapability("goog:loggingPrefs", HarRecorder.loggingPreferences());
             }
 
-            this.getCommonSpec().getLogger().debug("Setting RemoteWebDriver with capabilities {}", mutableCapabilities.toJson().toString());
-            commonspec.setDriver(new RemoteWebDriver(new URL(System.getProperty("SELENIUM_GRID")), mutableCapabilities));
+            String remoteUrl = System.getProperty("SELENIUM_GRID");
+            WebDriver remoteDriver = null;
+            if (Boolean.parseBoolean(System.getProperty("GRID_LEAST_LOADED", "false"))) {
+                remoteDriver = this.createDriverInGridNode(remoteUrl, mutableCapabilities);
+            }
+
+            if (remoteDriver == null) {
+                this.getCommonSpec().getLogger().debug("Setting RemoteWebDriver in {} with capabilities {}", remoteUrl, mutableCapabilities.toJson().toString());
+                remoteDriver = new RemoteWebDriver(new URL(remoteUrl), mutableCapabilities);
+            }
+            commonspec.setDriver(remoteDriver);
         }
 
         commonspec.getDriver().manage().timeouts().pageLoadTimeout(PAGE_LOAD_TIMEOUT, TimeUnit.SECONDS);
         commonspec.getDriver().manage().timeouts().implicitlyWait(IMPLICITLY_WAIT, TimeUnit.SECONDS);
         commonspec.getDriver().manage().timeouts().setScriptTimeout(SCRIPT_TIMEOUT, TimeUnit.SECONDS);
+
+        this.setupBrowserNetwork(mutableCapabilities);
+
+        if (harRecording && !isChrome(mutableCapabilities.getBrowserName())) {
+            this.getCommonSpec().getLogger().warn("HAR recording is only supported in chrome, skipping it for {}", mutableCapabilities.getBrowserName());
+        } else if (harRecording) {
+            String harFile = commonspec.getEvidencePath(".har");
+            this.getCommonSpec().getLogger().debug("Recording network activity in {}", harFile);
+            commonspec.setHarRecorder(new HarRecorder(harFile, Integer.parseInt(System.getProperty("HAR_BUFFER_SIZE", "500"))));
+        }
+    }
+
+    /**
+     * HAR files are built from the performance log of the browser, which only chrome provides
+     */
+    private static boolean isChrome(String browserName) {
+        return "chrome".equalsIgnoreCase(browserName) || "chromium".equalsIgnoreCase(browserName);
+    }
+
+    /**
+     * With -DGRID_LEAST_LOADED=true, the session is created directly in the least loaded node of the grid
+     * that offers the requested browser, instead of letting the hub pick the first free node. The state of
+     * the grid is cached during -DGRID_STATUS_TTL ms (see {@link GridStatusClient}), and every selected node
+     * counts one more session until the next refresh, so the threads of the execution do not select the same
+     * free slot. Since the hub does not know about these sessions, use it only when the grid is not shared
+     * with other executions.
+     * <p>
+     * If no node can be selected, the grid does not allow sessions in the nodes directly (Selenium grid 4), or
+     * the node refuses the session or is unreachable, null is returned and the session is requested to the grid
+     * as usual
+     *
+     * @param grid         url of the grid
+     * @param capabilities capabilities used to create the driver
+     * @return driver created in the selected node, or null if the session must be requested to the grid
+     */
+    private WebDriver createDriverInGridNode(String grid, MutableCapabilities capabilities) {
+        Map<String, String> filter = new HashMap<>();
+        for (String capability : new String[]{"browserName", "platform", "version"}) {
+            Object value = capabilities.getCapability(capability);
+            if (value != null && !value.toString().isEmpty() && !"ANY".equalsIgnoreCase(value.toString())) {
+                filter.put(capability, value.toString());
+            }
+        }
+
+        GridStatusClient client = GridStatusClient.forGrid(grid);
+        GridNode node;
+        try {
+            node = client.selectNode(filter);
+        } catch (IOException e) {
+            this.getCommonSpec().getLogger().warn("Could not read the status of the Selenium grid: {}", e.getMessage());
+            return null;
+        }
+
+        if (node == null || node.getSessionUrl() == null) {
+            this.getCommonSpec().getLogger().debug("No node of the Selenium grid could be selected for {}, using {}", filter, grid);
+            return null;
+        }
+
+        try {
+            this.getCommonSpec().getLogger().debug("Setting RemoteWebDriver in node {} with capabilities {}", node, capabilities.toJson().toString());
+            return new RemoteWebDriver(new URL(node.getSessionUrl()), capabilities);
+        } catch (MalformedURLException | WebDriverException e) {
+            this.getCommonSpec().getLogger().warn("Could not create the session in the node {} ({}), using {}", node.getId(), e.getMessage(), grid);
+            client.invalidate();
+            return null;
+        }
+    }
+
+    /**
+     * Configures the network of the browser before the scenario starts. The blocked url patterns and the
+     * network profile can be given as VM arguments or in the capabilities file (-DCAPABILITIES):
+     * <pre>
+     * -DBLOCKED_URLS="*google-analytics.com*;*doubleclick.net*;*.woff2"    or  "gingerspec:blockedUrls": ["*google-analytics.com*", "*.woff2"]
+     * -DNETWORK_PROFILE=slow3g (none, offline, slow3g, fast3g, 4g or latency,download,upload)   or  "gingerspec:networkProfile": "slow3g"
+     * </pre>
+     * This is only supported for chromium based browsers (chrome, edge, opera), since it makes use of the Chrome DevTools protocol
+     *
+     * @param capabilities capabilities used to create the driver
+     */
+    private void setupBrowserNetwork(MutableCapabilities capabilities) {
+        List<String> blockedUrls = new ArrayList<>();
+        Object blockedUrlsCapability = capabilities.getCapability("gingerspec:blockedUrls");
+        if (blockedUrlsCapability instanceof List) {
+            for (Object pattern : (List) blockedUrlsCapability) {
+                blockedUrls.add(pattern.toString());
+            }
+        } else if (blockedUrlsCapability != null) {
+            blockedUrls.addAll(Arrays.asList(blockedUrlsCapability.toString().split(";")));
+        }
+        if (System.getProperty("BLOCKED_URLS") != null) {
+            blockedUrls.addAll(Arrays.asList(System.getProperty("BLOCKED_URLS").split(";")));
+        }
+
+        Object networkProfile = capabilities.getCapability("gingerspec:networkProfile");
+        if (System.getProperty("NETWORK_PROFILE") != null) {
+            networkProfile = System.getProperty("NETWORK_PROFILE");
+        }
+
+        if (blockedUrls.isEmpty() && networkProfile == null) {
+            return;
+        }
+
+        if (!ChromeDevTools.isSupported(commonspec.getDriver())) {
+            LOGGER.warn("Blocking urls and network profiles are only supported for chromium based browsers. Continuing....");
+            return;
+        }
+
+        try {
+            if (!blockedUrls.isEmpty()) {
+                ChromeDevTools.setBlockedUrls(commonspec.getDriver(), blockedUrls);
+            }
+            if (networkProfile != null) {
+                ChromeDevTools.emulateNetworkConditions(commonspec.getDriver(), NetworkProfile.parse(networkProfile.toString()));
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not configure the network of the browser: " + e.getMessage() + ". Continuing....");
+        }
     }
 
     /**
@@ -351,6 +512,9 @@ public class HookGSpec extends BaseGSpec {
      * The user can use the VM argument -DCAPABILITIES=/path/to/capabilities.json, to
      * override the default capabilities with the ones from the json file
      *
+     * With -DAPPIUM_REUSE_SESSION=true, the session is kept open between scenarios and the app is reset
+     * according to -DAPPIUM_RESET (none, relaunch, clear or reinstall) instead (see {@link AppiumSessionPool})
+     *
      * @param scenario  Scenario
      * @throws MalformedURLException MalformedURLException
      */
@@ -416,7 +580,7 @@ public class HookGSpec extends BaseGSpec {
                 }
 
                 commonspec.getLogger().debug("Building AndroidDriver with capabilities {}", capabilities.toJson().toString());
-                commonspec.setDriver(new AndroidDriver(new URL(grid), capabilities));
+                commonspec.setDriver(this.getMobileDriver(grid, capabilities, true));
                 break;
 
             case "ios":
@@ -444,7 +608,7 @@ public class HookGSpec extends BaseGSpec {
                 }
 
                 commonspec.getLogger().debug("Building IOSDriver with capabilities {}", capabilities.toJson().toString());
-                commonspec.setDriver(new IOSDriver(new URL(grid), capabilities));
+                commonspec.setDriver(this.getMobileDriver(grid, capabilities, false));
                 break;
 
             default:
@@ -454,6 +618,32 @@ public class HookGSpec extends BaseGSpec {
 
     }
 
+    /**
+     * Returns the session of the previous scenario if it can be reused (-DAPPIUM_REUSE_SESSION=true), or
+     * creates a new one
+     *
+     * @param grid         url of the Appium server
+     * @param capabilities capabilities of the session
+     * @param android      true for android, false for ios
+     * @return the driver
+     * @throws MalformedURLException MalformedURLException
+     */
+    private WebDriver getMobileDriver(String grid, MutableCapabilities capabilities, boolean android) throws MalformedURLException {
+        if (!AppiumSessionPool.isEnabled()) {
+            return android ? new AndroidDriver(new URL(grid), capabilities) : new IOSDriver(new URL(grid), capabilities);
+        }
+
+        WebDriver driver = AppiumSessionPool.INSTANCE.acquire(capabilities, AppiumSessionPool.getResetLevel());
+        if (driver != null) {
+            commonspec.getLogger().debug("Reusing the Appium session of the previous scenario");
+            return driver;
+        }
+
+        driver = android ? new AndroidDriver(new URL(grid), capabilities) : new IOSDriver(new URL(grid), capabilities);
+        AppiumSessionPool.INSTANCE.register(driver, capabilities);
+        return driver;
+    }
+
     public void addCapabilitiesFromFile(String filePath, MutableCapabilities capabilities) throws IOException {
 
         Map<String, Object> capsMap;
@@ -465,6 +655,32 @@ public class HookGSpec extends BaseGSpec {
         }
     }
 
+    /**
+     * Skips the scenarios tagged with @chromium if the browser is not chromium based (chrome, edge, opera), since
+     * they use Chrome DevTools commands (i.e. blocking urls or throttling the network). The browser is checked once
+     * the driver is created, so it works with -DbrowserName, capabilities files and -DCROSS_BROWSER
+     * <pre>
+     * {@code
+     *      \@chromium
+     *      Scenario: Simulate a slow network
+     * }</pre>
+     *
+     * @param scenario Scenario
+     */
+    @Before(order = 11, value = "@web and @chromium")
+    public void chromiumTag(Scenario scenario) {
+        WebDriver driver = commonspec.getDriver();
+        if (driver == null || ChromeDevTools.isSupported(driver)) {
+            return;
+        }
+
+        this.stopHarRecorder(scenario);
+        driver.quit();
+        commonspec.setDriver(null);
+        scenario.log("Scenario '" + scenario.getName() + "' ignored, it requires a chromium based browser.");
+        throw new SkipException("Scenario '" + scenario.getName() + "' ignored, it requires a chromium based browser.");
+    }
+
     /**
      * If the feature has the @web or @mobile annotation, closes selenium web driver after each scenario is completed.
      *
@@ -477,7 +693,8 @@ public class HookGSpec extends BaseGSpec {
             throw new SkipException("@web/@mobile tag ignored since scenario was skipped");
         }
 
-        if (commonspec.getDriver() != null) {
+        WebDriver driver = commonspec.getDriver();
+        if (driver != null) {
             try {
                 if (scenario.isFailed()) {
                     //Include the page source in the report
@@ -492,7 +709,7 @@ public class HookGSpec extends BaseGSpec {
 
                     //Take screenshot and save it in the target/execution folder
                     commonspec.getLogger().debug("Adding screenshot target/execution folder");
-                    if (this.commonspec.getDriver() instanceof MobileDriver) {
+                    if (driver instanceof MobileDriver) {
                         this.commonspec.captureEvidence(driver, "mobileScreenCapture", "exception");
                         this.commonspec.captureEvidence(driver, "mobilePageSource", "exception");
                     } else {
@@ -502,13 +719,60 @@ public class HookGSpec extends BaseGSpec {
                     }
                 }
             } finally {
-                //Close the selenium driver
-                commonspec.getLogger().debug("Shutting down Selenium client");
-                commonspec.getDriver().quit();
+                this.stopHarRecorder(scenario);
+
+                //Close the selenium driver, unless the Appium session is kept for the next scenario
+                if (AppiumSessionPool.INSTANCE.release(driver)) {
+                    commonspec.getLogger().debug("Keeping Appium session for the next scenario");
+                } else {
+                    commonspec.getLogger().debug("Shutting down Selenium client");
+                    commonspec.getDriver().quit();
+                }
             }
         }
     }
 
+    private void stopHarRecorder(Scenario scenario) {
+        HarRecorder recorder = commonspec.getHarRecorder();
+        if (recorder == null) {
+            return;
+        }
+        try {
+            recorder.drain(commonspec.getDriver());
+            if (scenario.isFailed()) {
+                commonspec.getLogger().debug("Adding last network requests to report");
+                scenario.attach(new ObjectMapper().writeValueAsBytes(recorder.getRecentEntries()), "application/json", "Network requests");
+            }
+            recorder.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not write HAR file " + recorder.getPath() + ": " + e.getMessage());
+        } finally {
+            commonspec.setHarRecorder(null);
+        }
+    }
+
+    /**
+     * Discards the snapshot of the page source after every step that did not make use of it, since
+     * the step may have modified the page (clicks, typing, navigation, etc)
+     *
+     * @see CommonG#getPageSourceSnapshot()
+     */
+    @AfterStep(value = "@web or @mobile")
+    public void releasePageSourceSnapshot() {
+        commonspec.releasePageSourceSnapshot();
+    }
+
+    /**
+     * Reads the network activity of the browser after every step, so the events do not accumulate in the
+     * driver, and writes the completed requests to the HAR file of the scenario (-DHAR_RECORDING=true)
+     */
+    @AfterStep(value = "@web")
+    public void recordNetworkActivity() {
+        if (commonspec.getHarRecorder() != null) {
+            commonspec.getHarRecorder().drain(commonspec.getDriver());
+        }
+    }
+
 
     /**
      * Checks if the scenario contains any reference to a Jira ticket and will try to update
@@ -516,6 +780,7 @@ public class HookGSpec extends BaseGSpec {
      * Checks if there's any reference to a Slack channel and sends a notification to that channel
      * if the scenario failed
      * Closes any remaining SSH connection
+     * Stops the mock server, if started
      * @param scenario  Scenario
      * @throws SlackApiException    SlackApiException
      * @throws IOException          IOException
@@ -570,6 +835,17 @@ public class HookGSpec extends BaseGSpec {
             commonspec.getSqlClient().disconnect();
         }
 
+        if (commonspec.getMockServer() != null) {
+            commonspec.getLogger().debug("Stopping mock server");
+            commonspec.getMockServer().stop();
+            commonspec.setMockServer(null);
+        }
+
+        commonspec.setRestResponseBody(null);
+        SpooledBody.clearLastReceived();
+        Cassette.resetReplays();
+        commonspec.getKafkaUtils().closeTopicBuffers();
+
     }
 
     /**
@@ -16,6 +16,11 @@
 
 package com.privalia.qa.specs;
 
+import com.privalia.qa.aspects.ReplacementAspect;
+import com.privalia.qa.exceptions.NonReplaceableException;
+import com.privalia.qa.utils.KafkaTopicBuffer;
+import com.privalia.qa.utils.KafkaUtils;
+import com.privalia.qa.utils.ThreadProperty;
 import io.cucumber.datatable.DataTable;
 import io.cucumber.java.en.And;
 import io.cucumber.java.en.Given;
@@ -23,12 +28,27 @@ import io.cucumber.java.en.Then;
 import io.cucumber.java.en.When;
 import okhttp3.Response;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.commons.io.IOUtils;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.zookeeper.KeeperException;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
 
@@ -178,7 +198,7 @@ public class KafkaGSpec extends BaseGSpec {
      * {@code
      *      Given I send a message 'hello' to the kafka topic named 'testqa' with key 'keyvalue'
      * }
-     * Example: To insert a message only if the exact key-value combination does not already exists in the topic
+     * Example: To insert a message only if the last value of the key in the topic is not the given one
      * {@code
      *      Given I send a message 'hello' to the kafka topic named 'testqa' with key 'keyvalue' if not exists
      * }
@@ -195,12 +215,9 @@ public class KafkaGSpec extends BaseGSpec {
     @When("^I send a message '(.+?)' to the kafka topic named '(.+?)'( with key '(.+?)')?( if not exists)?$")
     public void sendMessageToTopic(String message, String topic_name, String recordKey, String ifExists) throws Exception {
         if (ifExists != null) {
-            Map<Object, Object> result = commonspec.getKafkaUtils().readTopicFromBeginning(topic_name);
-            if (result.containsKey(recordKey)) {
-                if (!result.get(recordKey).toString().matches(message)) {
-                    commonspec.getKafkaUtils().sendAndConfirmMessage(message, recordKey, topic_name, 1);
-                }
-            } else {
+            KafkaTopicBuffer<Object, Object> buffer = commonspec.getKafkaUtils().getTopicBuffer(topic_name);
+            List<ConsumerRecord<Object, Object>> records = buffer.findByKey(recordKey);
+            if (records.isEmpty() || !String.valueOf(records.get(records.size() - 1).value()).matches(message)) {
                 commonspec.getKafkaUtils().sendAndConfirmMessage(message, recordKey, topic_name, 1);
             }
         } else {
@@ -261,6 +278,146 @@ public class KafkaGSpec extends BaseGSpec {
 
     }
 
+    /**
+     * Sends many messages to a Kafka topic, generated from a template.
+     * <p>
+     * The template is a file (in the filesystem or in the classpath) with the value of the messages. Its placeholders
+     * are replaced for every message, so every message can be different (i.e. ${faker:...}), and the variable
+     * ${MESSAGE_INDEX} contains the number of the message (from 1). With sequential keys, the key of every message is
+     * its number, so the messages are spread across all the partitions of the topic.
+     * <p>
+     * Messages are sent asynchronously with a producer tuned for throughput (see {@link KafkaUtils#sendMessages(String, Iterator)}),
+     * and the step waits until all of them are acknowledged. Only String and Long serializers are supported. The step
+     * fails if any message could not be sent. The
+     * throughput and the acknowledgement latency percentiles are logged, and can be verified with the following steps.
+     *
+     * <pre>
+     * Example: Seeding a topic with 100000 messages
+     * {@code
+     *      When I send '100000' messages to the kafka topic named 'orders' based on 'schemas/order.json' with sequential keys
+     *      Then the kafka messages were sent at more than '5000' messages per second
+     *      And the 'p99' acknowledgement latency of the kafka messages is lower than '500' milliseconds
+     * }
+     * </pre>
+     *
+     * @see #sendMessagesFromFile(String, String, String)
+     * @param count      number of messages to send
+     * @param topic_name name of the topic
+     * @param template   path of the template of the messages
+     * @param keys       if every message must have its number as key
+     * @throws IOException if the template can not be read
+     */
+    @When("^I send '(\\d+)' messages to the kafka topic named '(.+?)' based on '(.+?)'( with sequential keys)?$")
+    public void sendMessagesFromTemplate(int count, String topic_name, String template, String keys) throws IOException {
+        String content;
+        try (Reader reader = this.openMessagesFile(template)) {
+            content = IOUtils.toString(reader);
+        }
+        boolean hasPlaceholders = content.contains("${");
+
+        Iterator<Map.Entry<String, String>> messages = new Iterator<Map.Entry<String, String>>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.index < count;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                this.index++;
+                ThreadProperty.set("MESSAGE_INDEX", String.valueOf(this.index));
+                String value = hasPlaceholders ? replacePlaceholders(content) : content;
+                return new AbstractMap.SimpleImmutableEntry<>(keys != null ? String.valueOf(this.index) : null, value);
+            }
+        };
+
+        try {
+            this.sendMessages(topic_name, messages);
+        } finally {
+            ThreadProperty.remove("MESSAGE_INDEX");
+        }
+    }
+
+    /**
+     * Sends all the messages in a file to a Kafka topic.
+     * <p>
+     * Every line of the file (in the filesystem or in the classpath) is a message, empty lines are ignored. If a key
+     * separator is given, the text of every line before the first separator is the key of the message, and the text
+     * after it the value. The file is read while the messages are sent, so files of any size can be sent.
+     * <p>
+     * Messages are sent asynchronously, the same way as in {@link #sendMessagesFromTemplate(int, String, String, String)}
+     *
+     * <pre>
+     * Example: Sending a file of key;value lines
+     * {@code
+     *      When I send the messages in file 'data/customers.csv' to the kafka topic named 'customers' using ';' as key separator
+     *      Then the kafka messages were sent at more than '10000' messages per second
+     * }
+     * </pre>
+     *
+     * @see #sendMessagesFromTemplate(int, String, String, String)
+     * @param file       path of the file
+     * @param topic_name name of the topic
+     * @param separator  separator between the key and the value in every line
+     * @throws IOException if the file can not be read
+     */
+    @When("^I send the messages in file '(.+?)' to the kafka topic named '(.+?)'( using '(.+?)' as key separator)?$")
+    public void sendMessagesFromFile(String file, String topic_name, String separator) throws IOException {
+        try (BufferedReader reader = new BufferedReader(this.openMessagesFile(file))) {
+            Iterator<Map.Entry<String, String>> messages = reader.lines()
+                    .filter(line -> !line.isEmpty())
+                    .map(line -> this.toMessage(line, separator))
+                    .iterator();
+            this.sendMessages(topic_name, messages);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Verifies the throughput of the last messages sent in bulk
+     *
+     * <pre>
+     * Example:
+     * {@code
+     *      Then the kafka messages were sent at more than '5000' messages per second
+     * }
+     * </pre>
+     *
+     * @see #sendMessagesFromTemplate(int, String, String, String)
+     * @param throughput min number of messages acknowledged per second
+     */
+    @Then("^the kafka messages were sent at more than '(\\d+(?:\\.\\d+)?)' messages per second$")
+    public void assertBulkThroughput(double throughput) {
+        KafkaUtils.BulkResult result = this.getBulkResult();
+        assertThat(result.getThroughput()).as("Throughput of the kafka messages sent (%s)", result).isGreaterThan(throughput);
+    }
+
+    /**
+     * Verifies an acknowledgement latency statistic of the last messages sent in bulk, measured from the moment
+     * every message was given to the producer until it was acknowledged by kafka
+     *
+     * <pre>
+     * Example:
+     * {@code
+     *      Then the 'p99' acknowledgement latency of the kafka messages is lower than '500' milliseconds
+     * }
+     * </pre>
+     *
+     * @see #sendMessagesFromTemplate(int, String, String, String)
+     * @param statistic p50, p90, p95, p99, p999, mean or max
+     * @param millis    max latency in milliseconds
+     */
+    @Then("^the '(p50|p90|p95|p99|p999|mean|max)' acknowledgement latency of the kafka messages is lower than '(\\d+)' milliseconds$")
+    public void assertBulkLatency(String statistic, long millis) {
+        KafkaUtils.BulkResult result = this.getBulkResult();
+        assertThat(result.getLatency(statistic)).as("%s acknowledgement latency of the kafka messages sent (%s)", statistic, result).isLessThan(millis);
+    }
+
     /**
      * Check that a kafka topic does not exist
      * <pre>
@@ -306,6 +463,10 @@ public class KafkaGSpec extends BaseGSpec {
      * <p>
      * Unless specified, the method will only look for records that contain the specific message in the value of the kafka
      * record but it can also be used.
+     * <p>
+     * The first check of a topic in the scenario reads it from the beginning until the end offsets of all the
+     * partitions, and the following checks only read the records added since then. The message is looked for in all
+     * the records read
      *
      * <pre>
      * Example: Check if the topic contains the message with the given value
@@ -328,11 +489,32 @@ public class KafkaGSpec extends BaseGSpec {
      */
     @Then("^The kafka topic '(.*?)' has a message containing '(.*?)'( as key)?$")
     public void assertTopicContainsMessage(String topic, String content, String key) throws InterruptedException {
-        if (key != null) {
-            assertThat(commonspec.getKafkaUtils().readTopicFromBeginning(topic).containsKey(content)).as("Topic does not exist or the content does not match").isTrue();
-        } else {
-            assertThat(commonspec.getKafkaUtils().readTopicFromBeginning(topic).containsValue(content)).as("Topic does not exist or the content does not match").isTrue();
-        }
+        assertThat(this.topicContains(topic, key != null, content)).as("Topic does not exist or the content does not match").isTrue();
+    }
+
+    /**
+     * Check that a kafka topic contains a message with the given value in one of its fields
+     * <p>
+     * The values can be json documents or avro records (if the consumer uses the KafkaAvroDeserializer), and the field
+     * can be a nested field separated by dots. The records of the topic are indexed by the field the first time it is
+     * used, so checking several values of the same field only reads the new records of the topic
+     *
+     * <pre>
+     * Example: Check if the topic contains a json message with the given customer id
+     * {@code
+     *      Then The kafka topic 'orders' has a message with 'customer.id' equal to '1234'
+     * }
+     * </pre>
+     *
+     * @see #assertTopicContainsMessage(String, String, String)
+     * @param topic Topic to poll
+     * @param field Name or path of the field
+     * @param value Expected value of the field (as String)
+     */
+    @Then("^The kafka topic '(.+?)' has a message with '(.+?)' equal to '(.*?)'$")
+    public void assertTopicContainsMessageWithField(String topic, String field, String value) {
+        List<ConsumerRecord<Object, Object>> records = commonspec.getKafkaUtils().getTopicBuffer(topic).findByField(field, value);
+        assertThat(records).as("Topic does not exist or no message has %s equal to %s", field, value).isNotEmpty();
     }
 
     /**
@@ -474,13 +656,8 @@ public class KafkaGSpec extends BaseGSpec {
             commonspec.getKafkaUtils().modifyConsumerProperties(key, value);
         }
 
-        Map<Object, Object> results = commonspec.getKafkaUtils().readTopicFromBeginning(topicName);
-
-        if (isKey != null) {
-            assertThat(results.containsKey(this.getFinalMessage("key.deserializer", message))).as("Topic does not exist or the content does not match").isTrue();
-        } else {
-            assertThat(results.containsValue(this.getFinalMessage("value.deserializer", message))).as("Topic does not exist or the content does not match").isTrue();
-        }
+        Object expected = this.getFinalMessage(isKey != null ? "key.deserializer" : "value.deserializer", message);
+        assertThat(this.topicContains(topicName, isKey != null, expected)).as("Topic does not exist or the content does not match").isTrue();
 
     }
 
@@ -672,9 +849,7 @@ public class KafkaGSpec extends BaseGSpec {
 
 
         this.assertTopicExists(topicName);
-        Map<Object, Object> results = commonspec.getKafkaUtils().readTopicFromBeginning(topicName);
-        this.commonspec.getLogger().debug("Found " + results.size() + "records in topic " + topicName);
-        assertThat(results.containsValue(commonspec.getKafkaUtils().getAvroRecords().get(avroRecord))).as("Topic does not contain message that matches the specified record").isTrue();
+        assertThat(this.topicContains(topicName, false, commonspec.getKafkaUtils().getAvroRecords().get(avroRecord))).as("Topic does not contain message that matches the specified record").isTrue();
 
     }
 
@@ -742,6 +917,9 @@ public class KafkaGSpec extends BaseGSpec {
 
     /**
      * Close the connection to kafka.
+     * <p>
+     * The producers used to send messages are kept open while connected, so the pending messages are sent and the
+     * producers are closed too
      *
      * <pre>
      * Example:
@@ -757,6 +935,8 @@ public class KafkaGSpec extends BaseGSpec {
     public void disconnectFromKafka() throws Throwable {
 
         this.getCommonSpec().getLogger().debug("Closing connection to kafka..");
+        this.getCommonSpec().getKafkaUtils().closeProducers();
+        this.getCommonSpec().getKafkaUtils().closeTopicBuffers();
         if (this.getCommonSpec().getKafkaUtils().getZkUtils() != null) {
             this.getCommonSpec().getKafkaUtils().getZkUtils().close();
         }
@@ -789,10 +969,11 @@ public class KafkaGSpec extends BaseGSpec {
         commonspec.getKafkaUtils().modifyConsumerProperties("schema.registry.url", this.getCommonSpec().getKafkaUtils().getSchemaRegistryUrl());
         this.assertTopicExists(topicName);
 
-        Map<Object, Object> results = commonspec.getKafkaUtils().readTopicFromBeginning(topicName);
+        List<ConsumerRecord<Object, Object>> records = commonspec.getKafkaUtils().getTopicBuffer(topicName).getRecords();
 
-        int matches = results.size();
-        for (Object result: results.values()) {
+        int matches = records.size();
+        for (ConsumerRecord<Object, Object> record : records) {
+            Object result = record.value();
 
             if (result instanceof GenericRecord) {
                 GenericRecord avroMessage = (GenericRecord) result;
@@ -825,4 +1006,55 @@ public class KafkaGSpec extends BaseGSpec {
         }
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Looks for the key or value in the buffer of the topic (only the new records of the topic are read)
+     */
+    private boolean topicContains(String topic, boolean isKey, Object expected) {
+        KafkaTopicBuffer<Object, Object> buffer = commonspec.getKafkaUtils().getTopicBuffer(topic);
+        return !(isKey ? buffer.findByKey(expected) : buffer.findByValue(expected)).isEmpty();
+    }
+
+    private void sendMessages(String topic_name, Iterator<Map.Entry<String, String>> messages) {
+        KafkaUtils.BulkResult result = commonspec.getKafkaUtils().sendMessages(topic_name, messages);
+        commonspec.setKafkaBulkResult(result);
+        commonspec.getLogger().info("Messages sent to kafka topic {}: {}", topic_name, result);
+        assertThat(result.getErrors()).as("Messages not acknowledged by kafka. First error: %s", result.getFirstError()).isZero();
+    }
+
+    private KafkaUtils.BulkResult getBulkResult() {
+        assertThat(commonspec.getKafkaBulkResult()).as("No messages were sent to kafka in bulk in this scenario").isNotNull();
+        return commonspec.getKafkaBulkResult();
+    }
+
+    private Map.Entry<String, String> toMessage(String line, String separator) {
+        int position = separator != null ? line.indexOf(separator) : -1;
+        if (position < 0) {
+            return new AbstractMap.SimpleImmutableEntry<>(null, line);
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(line.substring(0, position), line.substring(position + separator.length()));
+    }
+
+    /**
+     * Opens a file from the filesystem or, if it does not exist there, from the classpath
+     */
+    private Reader openMessagesFile(String path) throws FileNotFoundException {
+        File file = new File(path);
+        if (file.isFile()) {
+            return new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+        }
+        InputStream stream = getClass().getClassLoader().getResourceAsStream(path);
+        if (stream == null) {
+            throw new FileNotFoundException("File " + path + " not found in the filesystem or in the classpath");
+        }
+        return new InputStreamReader(stream, StandardCharsets.UTF_8);
+    }
+
+    private static String replacePlaceholders(String template) {
+        try {
+            return ReplacementAspect.replacePlaceholders(template, true);
+        } catch (NonReplaceableException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+}
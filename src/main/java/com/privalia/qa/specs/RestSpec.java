@@ -16,8 +16,20 @@
 
 package com.privalia.qa.specs;
 
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
 import com.jayway.jsonpath.PathNotFoundException;
+import com.privalia.qa.aspects.ReplacementAspect;
 import com.privalia.qa.exceptions.NonReplaceableException;
+import com.privalia.qa.utils.Await;
+import com.privalia.qa.utils.Cassette;
+import com.privalia.qa.utils.CassetteFilter;
+import com.privalia.qa.utils.JsonCache;
+import com.privalia.qa.utils.LoadGenerator;
+import com.privalia.qa.utils.MockServer;
+import com.privalia.qa.utils.PlaceholderReader;
+import com.privalia.qa.utils.RestConnectionPool;
+import com.privalia.qa.utils.SpooledBody;
 import com.privalia.qa.utils.ThreadProperty;
 import io.cucumber.datatable.DataTable;
 import io.cucumber.docstring.DocString;
@@ -25,29 +37,43 @@ import io.cucumber.java.en.And;
 import io.cucumber.java.en.Given;
 import io.cucumber.java.en.Then;
 import io.cucumber.java.en.When;
+import io.restassured.builder.MultiPartSpecBuilder;
 import io.restassured.builder.RequestSpecBuilder;
+import io.restassured.config.DecoderConfig;
+import io.restassured.config.RestAssuredConfig;
 import io.restassured.http.ContentType;
 import io.restassured.response.ResponseBody;
 import io.restassured.specification.ProxySpecification;
+import io.restassured.specification.QueryableRequestSpecification;
 import io.restassured.specification.RequestSpecification;
+import io.restassured.specification.SpecificationQuerier;
 import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.apache.commons.io.input.ReaderInputStream;
 import org.assertj.core.api.Assertions;
 import org.hjson.JsonValue;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static io.restassured.RestAssured.given;
-import static io.restassured.module.jsv.JsonSchemaValidator.matchesJsonSchema;
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -90,15 +116,18 @@ public class RestSpec extends BaseGSpec {
     @Given("^I( securely)? send requests to '(.*)'$")
     public void setupApp(String isSecured, String restHost) {
 
-        RequestSpecification spec = new RequestSpecBuilder().setContentType(ContentType.JSON).setRelaxedHTTPSValidation().build();
-        commonspec.setRestRequest(given().header("Content-Type", "application/json").spec(spec));
+        commonspec.setRestRequest(given().header("Content-Type", "application/json").spec(this.createRequestSpec()));
 
         String restProtocol = "http://";
         String restPort = null;
 
         if (isSecured != null) {
             restProtocol = "https://";
-            commonspec.getRestRequest().relaxedHTTPSValidation();
+            if (RestConnectionPool.isEnabled()) {
+                commonspec.getRestRequest().config(RestConnectionPool.INSTANCE.getRelaxedConfig());
+            } else {
+                commonspec.getRestRequest().relaxedHTTPSValidation();
+            }
         }
 
         Assertions.assertThat(restHost).isNotNull();
@@ -335,6 +364,7 @@ public class RestSpec extends BaseGSpec {
      * @throws ConfigurationException  the configuration exception
      * @throws FileNotFoundException   the file not found exception
      * @throws URISyntaxException      the uri syntax exception
+     * @throws IOException             if the response body could not be read
      * @see #assertResponseStatusCode(Integer) #assertResponseStatusCode(Integer)
      * @see #assertResponseMessage(String) #assertResponseMessage(String)
      * @see #assertResponseLength(Integer) #assertResponseLength(Integer)
@@ -342,7 +372,7 @@ public class RestSpec extends BaseGSpec {
      * @see <a href="http://json-schema.org/">http://json-schema.org/</a>
      */
     @Deprecated
-    public void assertResponseStatusLength(Integer expectedStatus, String responseAssert) throws NonReplaceableException, ConfigurationException, FileNotFoundException, URISyntaxException {
+    public void assertResponseStatusLength(Integer expectedStatus, String responseAssert) throws NonReplaceableException, ConfigurationException, FileNotFoundException, URISyntaxException, IOException {
 
         commonspec.getRestResponse().then().statusCode(expectedStatus);
 
@@ -358,12 +388,11 @@ public class RestSpec extends BaseGSpec {
         }
 
         if (responseAssert.contains("schema")) {
-            String schemaData = commonspec.retrieveData(parts[1], "json");
-            commonspec.getRestResponse().then().assertThat().body(matchesJsonSchema(schemaData));
+            this.assertResponseSchema(parts[1]);
         }
 
         if (responseAssert.contains("length")) {
-            Assertions.assertThat(commonspec.getRestResponse().getBody().asString().length()).as("The returned body does not have the expected length").isEqualTo(Integer.valueOf(parts[1]));
+            this.assertResponseLength(Integer.valueOf(parts[1]));
         }
 
     }
@@ -394,7 +423,13 @@ public class RestSpec extends BaseGSpec {
     @Then("^the service response matches the schema in '(.*?)'$")
     public void assertResponseSchema(String expectedSchema) throws NonReplaceableException, ConfigurationException, FileNotFoundException, URISyntaxException {
         String schemaData = commonspec.retrieveData(expectedSchema, "json");
-        commonspec.getRestResponse().then().assertThat().body(matchesJsonSchema(schemaData));
+        ProcessingReport report;
+        try {
+            report = JsonCache.INSTANCE.validate(schemaData, commonspec.getRestResponse().getBody().asString());
+        } catch (IOException | ProcessingException e) {
+            throw new AssertionError("Could not validate the response against the schema '" + expectedSchema + "': " + e.getMessage(), e);
+        }
+        Assertions.assertThat(report.isSuccess()).as("The response body does not match the schema '%s': %s", expectedSchema, report).isTrue();
     }
 
     /**
@@ -410,13 +445,21 @@ public class RestSpec extends BaseGSpec {
      *     When I send a 'GET' request to '/comments/1'
      *     Then the service response length must be '268'
      * }</pre>
+     * Bodies spooled to a temporary file (bigger than -DREST_STREAMING_THRESHOLD bytes) are counted while read,
+     * without loading them in memory
      * @see #sendRequestNoDataTable(String, String, String, String, String, String)
      * @see #sendRequestDataTable(String, String, String, String, String, String, DataTable)
      * @see <a href="http://json-schema.org/">http://json-schema.org/</a>
      * @param expextedLength        Expected response body length
+     * @throws IOException           if the response body could not be read
      */
     @Then("^the service response length must be '(.*?)'$")
-    public void assertResponseLength(Integer expextedLength) {
+    public void assertResponseLength(Integer expextedLength) throws IOException {
+        SpooledBody body = commonspec.getRestResponseBody();
+        if (body != null && body.isSpooled()) {
+            Assertions.assertThat(body.countChars(this.getResponseCharset())).as("The returned body does not have the expected length").isEqualTo(expextedLength.longValue());
+            return;
+        }
         Assertions.assertThat(commonspec.getRestResponse().getBody().asString().length()).as("The returned body does not have the expected length").isEqualTo(expextedLength);
     }
 
@@ -457,18 +500,80 @@ public class RestSpec extends BaseGSpec {
      *     And the service response must contain the text 'body'
      * }
      * </pre>
+     * Bodies spooled to a temporary file (bigger than -DREST_STREAMING_THRESHOLD bytes) are searched while read,
+     * without loading them in memory
      * @see #sendRequestDataTable(String, String, String, String, String, String, DataTable)
      * @see #sendRequestNoDataTable(String, String, String, String, String, String)
      * @see #assertResponseStatusLength(Integer, String)
      * @param expectedText  String to find in the response body
+     * @throws IOException  if the response body could not be read
      */
     @Then("^the service response must contain the text '(.*)'$")
-    public void assertResponseMessage(String expectedText) {
+    public void assertResponseMessage(String expectedText) throws IOException {
+        SpooledBody spooledBody = commonspec.getRestResponseBody();
+        if (spooledBody != null && spooledBody.isSpooled()) {
+            Assertions.assertThat(spooledBody.contains(expectedText, this.getResponseCharset())).as("Text '" + expectedText + "' was not found in response body").isTrue();
+            return;
+        }
         ResponseBody body = commonspec.getRestResponse().getBody();
         String bodyAsString = body.asString();
         Assertions.assertThat(bodyAsString).as("Text '" + expectedText + "' was not found in response body").contains(expectedText);
     }
 
+    /**
+     * Verifies the size in bytes of the response body.
+     * <p>
+     * The size is computed while the body is received, so this step can be used with big responses (i.e. file
+     * exports) without loading them in memory. Compressed bodies are measured after decompressing them
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Verify the size of an export
+     *     Given I send requests to '${REST_SERVER_HOST}:3000'
+     *     When I send a 'GET' request to '/posts'
+     *     Then the service response size must be greater than '1024' bytes
+     *     And the service response size must be lower than '104857600' bytes
+     * }</pre>
+     * @see #assertResponseHash(String, String)
+     * @param comparison    optional comparison (lower than, greater than). Equal by default
+     * @param expectedSize  expected size in bytes
+     * @throws IOException  if the body could not be read
+     */
+    @Then("^the service response size must be( lower than| greater than)? '(\\d+)' bytes$")
+    public void assertResponseSize(String comparison, Long expectedSize) throws IOException {
+        long size = this.getResponseBody().getSize();
+        if (comparison == null) {
+            Assertions.assertThat(size).as("The returned body does not have the expected size").isEqualTo(expectedSize);
+        } else if (comparison.contains("lower")) {
+            Assertions.assertThat(size).as("The returned body is too big").isLessThan(expectedSize);
+        } else {
+            Assertions.assertThat(size).as("The returned body is too small").isGreaterThan(expectedSize);
+        }
+    }
+
+    /**
+     * Verifies the hash of the response body.
+     * <p>
+     * The SHA-256 hash is computed while the body is received. Other algorithms read the body again as a stream, so
+     * the body is never loaded in memory
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Verify the checksum of a downloaded file
+     *     Given I send requests to '${REST_SERVER_HOST}:3000'
+     *     When I send a 'GET' request to '/posts/1'
+     *     Then the service response 'MD5' hash must be '${POST_CHECKSUM}'
+     * }</pre>
+     * @see #assertResponseSize(String, Long)
+     * @param algorithm     hash algorithm (SHA-256, SHA-1, MD5)
+     * @param expectedHash  expected hash in hexadecimal
+     * @throws IOException  if the body could not be read
+     */
+    @Then("^the service response '(SHA-256|SHA-1|MD5)' hash must be '(.*)'$")
+    public void assertResponseHash(String algorithm, String expectedHash) throws IOException {
+        Assertions.assertThat(this.getResponseBody().hash(algorithm)).as("The %s hash of the response body does not match", algorithm).isEqualToIgnoringCase(expectedHash);
+    }
+
 
     /**
      * Saves value of a json document for future use.
@@ -503,6 +608,9 @@ public class RestSpec extends BaseGSpec {
      *      And I save element '${first_user}.$.username' in environment variable 'username'
      *      Then '${username}' matches 'Bret'
      * }</pre>
+     * If the response body was spooled to a temporary file (bigger than -DREST_STREAMING_THRESHOLD bytes), the
+     * jsonpath expression is evaluated while the body is read, so only paths made of fields and indexes
+     * (i.e. $.items[0].id) are supported
      * @see #sendRequestNoDataTable(String, String, String, String, String, String)
      * @see #sendRequestDataTable(String, String, String, String, String, String, DataTable)
      * @see <a href="http://json-schema.org/">http://json-schema.org/</a>
@@ -521,6 +629,9 @@ public class RestSpec extends BaseGSpec {
         if (matcher.find()) {
             json = matcher.group(2);
             parsedElement = matcher.group(4);
+        } else if (position == null && commonspec.getRestResponseBody() != null && commonspec.getRestResponseBody().isSpooled()) {
+            this.saveStreamedElement(element, envVar);
+            return;
         } else {
             json = commonspec.getRestResponse().getBody().asString();
             parsedElement = element;
@@ -634,64 +745,32 @@ public class RestSpec extends BaseGSpec {
      * @param endPoint      Endpoint (i.e /user/1)
      * @param responseVal   Expected value to evaluate in the response body
      * @param contains      parameter generated by cucumber because of the optional expression
-     * @throws InterruptedException InterruptedException
+     * @throws Exception    Exception
      */
     @Deprecated
     @When("^in less than '(\\d+)' seconds, checking each '(\\d+)' seconds, I send a '(.*)' request to '(.*)' so that the response( does not)? contains '(.*)'$")
-    public void sendRequestTimeout(Integer timeout, Integer wait, String requestType, String endPoint, String contains, String responseVal) throws InterruptedException {
-
-        Boolean searchUntilContains;
-        if (contains == null || contains.isEmpty()) {
-            searchUntilContains = Boolean.TRUE;
-        } else {
-            searchUntilContains = Boolean.FALSE;
-        }
-        Boolean found = !searchUntilContains;
-        AssertionError ex = null;
+    public void sendRequestTimeout(Integer timeout, Integer wait, String requestType, String endPoint, String contains, String responseVal) throws Exception {
 
-        String type = "";
+        boolean searchUntilContains = contains == null || contains.isEmpty();
         Pattern pattern = CommonG.matchesOrContains(responseVal);
-        for (int i = 0; (i <= timeout); i += wait) {
-            if (found && searchUntilContains) {
-                break;
-            }
 
+        Await await = Await.atMost(timeout, TimeUnit.SECONDS).pollEvery(wait, TimeUnit.SECONDS)
+                .named("Response of " + requestType + " " + endPoint + (searchUntilContains ? " containing '" : " not containing '") + responseVal + "'");
+        await.untilAsserted(() -> {
             commonspec.generateRestRequest(requestType, endPoint);
             commonspec.getLogger().debug("Checking response value");
-
-            ResponseBody body = commonspec.getRestResponse().getBody();
-            String bodyAsString = body.asString();
-
-            try {
-                if (searchUntilContains) {
-                    assertThat(bodyAsString).containsPattern(pattern);
-                    found = true;
-                    timeout = i;
-                } else {
-                    assertThat(bodyAsString).doesNotContain(responseVal);
-                    found = false;
-                    timeout = i;
-                }
-            } catch (AssertionError e) {
-                if (!found) {
-                    commonspec.getLogger().info("Response value not found after " + i + " seconds");
-                } else {
-                    commonspec.getLogger().info("Response value found after " + i + " seconds");
-                }
-                Thread.sleep(wait * 1000);
-                ex = e;
-            }
-            if (!found && !searchUntilContains) {
-                break;
+            String bodyAsString = commonspec.getRestResponse().getBody().asString();
+            if (searchUntilContains) {
+                assertThat(bodyAsString).containsPattern(pattern);
+            } else {
+                assertThat(bodyAsString).doesNotContain(responseVal);
             }
-        }
-        if ((!found && searchUntilContains) || (found && !searchUntilContains)) {
-            throw (ex);
-        }
+        });
+
         if (searchUntilContains) {
-            commonspec.getLogger().info("Success! Response value found after " + timeout + " seconds");
+            commonspec.getLogger().info("Success! Response value found after {} ms", await.getElapsed());
         } else {
-            commonspec.getLogger().info("Success! Response value not found after " + timeout + " seconds");
+            commonspec.getLogger().info("Success! Response value not found after {} ms", await.getElapsed());
         }
     }
 
@@ -885,6 +964,126 @@ public class RestSpec extends BaseGSpec {
         this.getCommonSpec().getRestRequest().multiPart(file);
     }
 
+    /**
+     * Sends the content of a file as the body of the request, reading it from disk while it is sent, so big or
+     * binary files can be uploaded without loading them in memory.
+     * <p>
+     * The file can be a path in the filesystem or in the classpath. By default, the content is sent as it is, with
+     * its Content-Length. The placeholders of the file (i.e. ${VAR}) are only replaced if explicitly requested, and
+     * the file is then sent with chunked transfer encoding, since its final length is not known in advance. Chunked
+     * transfer encoding can also be requested for files without placeholders. The content type of the request can be
+     * set with {@link #setHeaders(DataTable)}
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Upload a big file
+     *      Given I send requests to 'localhost:8080'
+     *      And I set headers:
+     *          | Content-Type | application/octet-stream |
+     *      When I upload the file 'uploads/video.mp4' in a 'PUT' request to '/videos/1'
+     *      Then the service response status must be '204'
+     *
+     * Scenario: Upload a json document replacing its variables
+     *      Given I send requests to 'localhost:8080'
+     *      And I set headers:
+     *          | Content-Type | application/json |
+     *      When I upload the file 'schemas/orders.json' in a 'POST' request to '/orders/import' replacing placeholders
+     *      Then the service response status must be '201'
+     * }</pre>
+     *
+     * @see #sendMultipartRequest(String, String, String, String, DataTable)
+     * @param filePath     path of the file (in the filesystem or in the classpath)
+     * @param requestType  HTTP verb (type of request): POST, PUT, PATCH
+     * @param endPoint     end point to be used
+     * @param replace      if the placeholders of the file must be replaced
+     * @param chunked      if the file must be sent with chunked transfer encoding
+     * @throws URISyntaxException    if the path of the file is not valid
+     * @throws FileNotFoundException if the file does not exist
+     */
+    @When("^I upload the file '(.+?)' in a '(POST|PUT|PATCH)' request to '(.+?)'( replacing placeholders)?( using chunked transfer encoding)?$")
+    public void uploadFile(String filePath, String requestType, String endPoint, String replace, String chunked) throws URISyntaxException, FileNotFoundException {
+        File file = this.getUploadFile(filePath);
+        this.getCommonSpec().getLogger().debug("Uploading {} ({} bytes)", file.getAbsolutePath(), file.length());
+
+        if (replace != null || chunked != null) {
+            this.getStreamingRequest().body(this.openUploadStream(file, replace != null));
+        } else {
+            this.getStreamingRequest().body(file);
+        }
+        this.getCommonSpec().generateRestRequest(requestType, endPoint);
+        this.initializeRestClient();
+    }
+
+    /**
+     * Sends a multipart/form-data request with several parts. Every row of the datatable is a part, with its name,
+     * its value and optionally its content type. Values starting with file: are the path of a file (in the filesystem
+     * or in the classpath), that is read from disk while the request is sent.
+     * <p>
+     * The placeholders of the files are only replaced if explicitly requested (the ones of the datatable are always
+     * replaced). The request is sent with chunked transfer encoding if the placeholders are replaced or if it is
+     * explicitly requested, and with its Content-Length otherwise. The content type is multipart/form-data, unless
+     * other multipart type (i.e. multipart/mixed) is set with {@link #setHeaders(DataTable)}
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Upload a document with its metadata
+     *      Given I send requests to 'localhost:8080'
+     *      When I send a multipart 'POST' request to '/documents' with:
+     *          | metadata | {"owner": "${USER}"}         | application/json |
+     *          | document | file:uploads/contract.pdf    | application/pdf  |
+     *          | preview  | file:uploads/contract.png    |                  |
+     *      Then the service response status must be '201'
+     *
+     * Scenario: Upload templates replacing their variables
+     *      Given I send requests to 'localhost:8080'
+     *      When I send a multipart 'POST' request to '/templates' replacing placeholders with:
+     *          | template | file:templates/welcome.html | text/html |
+     *      Then the service response status must be '201'
+     * }</pre>
+     *
+     * @see #uploadFile(String, String, String, String, String)
+     * @param requestType  HTTP verb (type of request): POST, PUT, PATCH
+     * @param endPoint     end point to be used
+     * @param replace      if the placeholders of the files must be replaced
+     * @param chunked      if the request must be sent with chunked transfer encoding
+     * @param parts        datatable with the name, value and content type of every part
+     * @throws URISyntaxException    if the path of a file is not valid
+     * @throws FileNotFoundException if a file does not exist
+     */
+    @When("^I send a multipart '(POST|PUT|PATCH)' request to '(.+?)'( replacing placeholders)?( using chunked transfer encoding)? with:$")
+    public void sendMultipartRequest(String requestType, String endPoint, String replace, String chunked, DataTable parts) throws URISyntaxException, FileNotFoundException {
+        boolean stream = replace != null || chunked != null;
+
+        for (List<String> row : parts.asLists()) {
+            String name = row.get(0);
+            String value = row.get(1);
+            String mimeType = row.size() > 2 && row.get(2) != null && !row.get(2).isEmpty() ? row.get(2) : null;
+
+            MultiPartSpecBuilder part;
+            if (value.startsWith("file:")) {
+                File file = this.getUploadFile(value.substring("file:".length()));
+                part = stream ? new MultiPartSpecBuilder(this.openUploadStream(file, replace != null)) : new MultiPartSpecBuilder(file);
+                part.fileName(file.getName());
+                this.getCommonSpec().getLogger().debug("Adding part '{}' with file {} ({} bytes)", name, file.getAbsolutePath(), file.length());
+            } else {
+                part = new MultiPartSpecBuilder(value);
+                this.getCommonSpec().getLogger().debug("Adding part '{}' with value '{}'", name, value);
+            }
+            part.controlName(name);
+            if (mimeType != null) {
+                part.mimeType(mimeType);
+            }
+            this.getCommonSpec().getRestRequest().multiPart(part.build());
+        }
+
+        String contentType = SpecificationQuerier.query(this.getCommonSpec().getRestRequest()).getContentType();
+        if (contentType == null || !contentType.startsWith("multipart/")) {
+            this.getCommonSpec().getRestRequest().contentType("multipart/form-data");
+        }
+        this.getCommonSpec().generateRestRequest(requestType, endPoint);
+        this.initializeRestClient();
+    }
+
     /**
      * Sets a proxy for the rest client
      * <p>
@@ -1047,8 +1246,7 @@ public class RestSpec extends BaseGSpec {
 
         commonspec.getLogger().debug("Re-initializing rest-client. Removing headers, cookies and url parameters");
 
-        RequestSpecification spec = new RequestSpecBuilder().setContentType(ContentType.JSON).setRelaxedHTTPSValidation().build();
-        commonspec.setRestRequest(given().header("Content-Type", "application/json").spec(spec));
+        commonspec.setRestRequest(given().header("Content-Type", "application/json").spec(this.createRequestSpec()));
 
         String baseUrl;
         if (commonspec.getRestPort() != null) {
@@ -1064,6 +1262,21 @@ public class RestSpec extends BaseGSpec {
         }
     }
 
+    /**
+     * Creates the base specification of all requests. Unless -DREST_CONNECTION_POOL=false is given, requests use
+     * the keep-alive connections of the shared {@link RestConnectionPool} instead of opening new connections
+     *
+     * @return request specification
+     */
+    private RequestSpecification createRequestSpec() {
+        RequestSpecBuilder builder = new RequestSpecBuilder().setContentType(ContentType.JSON);
+        builder.addFilter(new CassetteFilter(commonspec::getCassette));
+        if (RestConnectionPool.isEnabled()) {
+            builder.setConfig(RestConnectionPool.INSTANCE.getConfig());
+        }
+        return builder.build();
+    }
+
     /**
      * Verify that service response time
      * <p>
@@ -1091,4 +1304,444 @@ public class RestSpec extends BaseGSpec {
         commonspec.getLogger().debug("Response time of last request was {} milliseconds", timeInMs);
         Assertions.assertThat(timeInMs).as("The service response time was higher than the expected '%s' milliseconds", responseTime).isLessThan(responseTime);
     }
+
+    /**
+     * Sends requests to the endpoint from several concurrent users during the given time
+     * <p>
+     * Each user sends the request again as soon as the previous response is received. Requests use the base url,
+     * headers, cookies, url parameters and body configured in the previous steps. The latencies, error rate and
+     * throughput can be verified with the following steps. Requests that fail or return a status code of 400 or
+     * above are counted as errors. The max number of connections of the {@link RestConnectionPool} is raised to the
+     * number of users if needed.
+     * <pre>{@code
+     * Example:
+     *
+     *  Scenario: Light load test
+     *     Given I send requests to 'localhost:3000'
+     *     And I set headers:
+     *       | x-user | admin |
+     *     When I send '10' concurrent 'GET' requests to '/posts' during '30' seconds
+     *     Then the 'p95' latency of the load test is lower than '300' milliseconds
+     *     And the error rate of the load test is lower than '1'%
+     * }
+     * </pre>
+     *
+     * @see #sendRequestsAtRate(String, String, int, int)
+     * @param users         number of concurrent users
+     * @param requestType   type of request (GET, POST, PUT, DELETE, PATCH)
+     * @param endPoint      endpoint (i.e /posts)
+     * @param seconds       duration of the test
+     */
+    @When("^I send '(\\d+)' concurrent '(GET|POST|PUT|DELETE|PATCH)' requests to '(.*)' during '(\\d+)' seconds$")
+    public void sendConcurrentRequests(int users, String requestType, String endPoint, int seconds) {
+        RestConnectionPool.INSTANCE.ensureCapacity(users);
+        LoadGenerator generator = new LoadGenerator(this.createLoadRequest(requestType, endPoint));
+        commonspec.setLoadTestResult(generator.runConcurrently(users, seconds, TimeUnit.SECONDS));
+        commonspec.getLogger().info("Load test of {} {}: {}", requestType, endPoint, commonspec.getLoadTestResult());
+    }
+
+    /**
+     * Sends requests to the endpoint at a fixed rate during the given time
+     * <p>
+     * Requests are started at the given rate regardless of how long the service takes to respond, and the latency
+     * of every request is measured from the moment it should have been started. The max number of connections of the
+     * {@link RestConnectionPool} is raised to the number of requests per second if needed: if the service takes more
+     * than a second to respond, requests wait for a free connection (use -DREST_MAX_CONNECTIONS_PER_ROUTE to allow
+     * more concurrent requests).
+     * <pre>{@code
+     * Example:
+     *
+     *  Scenario: Service under a constant load
+     *     Given I send requests to 'localhost:3000'
+     *     When I send 'GET' requests to '/posts' at '50' requests per second during '20' seconds
+     *     Then the 'p99' latency of the load test is lower than '500' milliseconds
+     *     And the throughput of the load test is greater than '45' requests per second
+     * }
+     * </pre>
+     *
+     * @see #sendConcurrentRequests(int, String, String, int)
+     * @param requestType   type of request (GET, POST, PUT, DELETE, PATCH)
+     * @param endPoint      endpoint (i.e /posts)
+     * @param rate          requests per second
+     * @param seconds       duration of the test
+     */
+    @When("^I send '(GET|POST|PUT|DELETE|PATCH)' requests to '(.*)' at '(\\d+)' requests per second during '(\\d+)' seconds$")
+    public void sendRequestsAtRate(String requestType, String endPoint, int rate, int seconds) {
+        RestConnectionPool.INSTANCE.ensureCapacity(rate);
+        LoadGenerator generator = new LoadGenerator(this.createLoadRequest(requestType, endPoint));
+        commonspec.setLoadTestResult(generator.runAtRate(rate, seconds, TimeUnit.SECONDS));
+        commonspec.getLogger().info("Load test of {} {}: {}", requestType, endPoint, commonspec.getLoadTestResult());
+    }
+
+    /**
+     * Verifies a latency statistic of the last load test
+     * <pre>{@code
+     * Example:
+     *
+     *  Scenario: Latency percentiles
+     *     Given I send requests to 'localhost:3000'
+     *     When I send '5' concurrent 'GET' requests to '/posts' during '10' seconds
+     *     Then the 'p50' latency of the load test is lower than '100' milliseconds
+     *     And the 'p99' latency of the load test is lower than '400' milliseconds
+     * }
+     * </pre>
+     *
+     * @param statistic     p50, p90, p95, p99, p999, mean or max
+     * @param milliseconds  max value expected
+     */
+    @Then("^the '(p50|p90|p95|p99|p999|mean|max)' latency of the load test is lower than '(\\d+)' milliseconds$")
+    public void assertLoadTestLatency(String statistic, long milliseconds) {
+        LoadGenerator.Result result = this.getLoadTestResult();
+        Assertions.assertThat(result.getLatency(statistic)).as("The %s latency of the load test (%s) was higher than %s ms", statistic, result, milliseconds).isLessThan(milliseconds);
+    }
+
+    /**
+     * Verifies the percentage of requests that failed in the last load test
+     *
+     * @see #sendConcurrentRequests(int, String, String, int)
+     * @param rate max percentage of errors expected
+     */
+    @Then("^the error rate of the load test is lower than '(\\d+(?:\\.\\d+)?)'%$")
+    public void assertLoadTestErrorRate(double rate) {
+        LoadGenerator.Result result = this.getLoadTestResult();
+        Assertions.assertThat(result.getErrorRate()).as("The error rate of the load test (%s) was higher than %s%%. Last error: %s", result, rate, result.getLastError()).isLessThan(rate);
+    }
+
+    /**
+     * Verifies the number of requests per second completed in the last load test
+     *
+     * @see #sendRequestsAtRate(String, String, int, int)
+     * @param throughput min requests per second expected
+     */
+    @Then("^the throughput of the load test is greater than '(\\d+(?:\\.\\d+)?)' requests per second$")
+    public void assertLoadTestThroughput(double throughput) {
+        LoadGenerator.Result result = this.getLoadTestResult();
+        Assertions.assertThat(result.getThroughput()).as("The throughput of the load test (%s) was lower than %s requests per second", result, throughput).isGreaterThan(throughput);
+    }
+
+    /**
+     * Starts an in-process http server that returns predefined responses (stubs), to replace services that are
+     * not available in the test environment.
+     * <p>
+     * The server is stopped at the end of the scenario. Use port '0' to listen on any free port (recommended when
+     * scenarios run in parallel). The port is saved in the environment variable MOCK_SERVER_PORT
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Test a client against a stubbed service
+     *      Given I start a mock server on port '0'
+     *      And the mock returns '{"id": 1}' for 'GET /users/1'
+     *      And I send requests to 'localhost:${MOCK_SERVER_PORT}'
+     *      When I send a 'GET' request to '/users/1'
+     *      Then the service response status must be '200'
+     * }</pre>
+     * @see #addMockResponse(String, String, String, Integer, String)
+     * @see #addMockStub(String, String, DataTable)
+     * @param port          port of the server, or 0 to use any free port
+     * @throws IOException  if the port is not available
+     */
+    @Given("^I start a mock server on port '(\\d+)'$")
+    public void startMockServer(Integer port) throws IOException {
+        this.stopMockServer();
+        MockServer server = new MockServer(port);
+        commonspec.setMockServer(server);
+        ThreadProperty.set("MOCK_SERVER_PORT", String.valueOf(server.getPort()));
+        commonspec.getLogger().debug("Mock server started on port {}", server.getPort());
+    }
+
+    /**
+     * Defines the response of the mock server for the given method and path.
+     * <p>
+     * The path can contain * to match any text (i.e. /users/*), and the last response defined for a request has
+     * priority over the previous ones. A delay before the response can be defined as a
+     * fixed value ('200'), an uniform range ('100-300') or a log-normal distribution ('median 100 p99 800')
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Test the timeout of a client
+     *      Given I start a mock server on port '0'
+     *      And the mock returns 'not found' for 'GET /users/*' with status '404'
+     *      And the mock returns '{"id": 1}' for 'GET /users/1' with status '200' with delay '3000' ms
+     * }</pre>
+     * @see #startMockServer(Integer)
+     * @see #addMockStub(String, String, DataTable)
+     * @param body      body of the response
+     * @param method    http method of the request
+     * @param path      path of the request
+     * @param status    status code of the response (200 by default)
+     * @param delay     delay before the response, in milliseconds
+     */
+    @Given("^the mock returns '(.*)' for '([A-Z]+) (.+?)'(?: with status '(\\d+)')?(?: with delay '(.+?)' ms)?$")
+    public void addMockResponse(String body, String method, String path, Integer status, String delay) {
+        MockServer.Stub stub = this.getMockServer().stub(method, path).body(body);
+        if (status != null) {
+            stub.status(status);
+        }
+        if (delay != null) {
+            stub.delay(MockServer.Delay.parse(delay));
+        }
+    }
+
+    /**
+     * Defines the response of the mock server for the requests that match the given method, path, headers and body.
+     * <p>
+     * The datatable can contain the following keys:
+     * <pre>
+     * | status                 | status code of the response (200 by default)                          |
+     * | body                   | body of the response                                                  |
+     * | header Content-Type    | header of the response                                                |
+     * | delay                  | delay in ms: '200', '100-300' or 'median 100 p99 800'                 |
+     * | error rate             | percentage of requests that fail (0-100)                              |
+     * | error                  | status code of the failed requests (500 by default), or 'reset'       |
+     * | request header X-Token | only matches requests with this header value                          |
+     * | request body           | only matches requests whose body contains this text                   |
+     * </pre>
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Test the retries of a client against an unstable service
+     *      Given I start a mock server on port '0'
+     *      And the mock server responds to 'POST /orders' with:
+     *          | status               | 201                 |
+     *          | body                 | {"id": 1}           |
+     *          | header Content-Type  | application/json    |
+     *          | delay                | median 50 p99 400   |
+     *          | error rate           | 20                  |
+     *          | error                | 503                 |
+     *          | request body         | "sku"               |
+     * }</pre>
+     * @see #startMockServer(Integer)
+     * @see #assertMockRequests(Integer, String, String)
+     * @param method    http method of the request
+     * @param path      path of the request
+     * @param table     response and matching conditions
+     */
+    @Given("^the mock server responds to '([A-Z]+) (.+?)' with:$")
+    public void addMockStub(String method, String path, DataTable table) {
+        MockServer.Stub stub = this.getMockServer().stub(method, path);
+        String errorRate = null;
+        String error = "500";
+        for (List<String> row : table.asLists()) {
+            String key = row.get(0).trim();
+            String value = row.get(1);
+            if (key.startsWith("request header ")) {
+                stub.withHeader(key.substring("request header ".length()).trim(), value);
+            } else if (key.startsWith("header ")) {
+                stub.header(key.substring("header ".length()).trim(), value);
+            } else {
+                switch (key) {
+                    case "status":
+                        stub.status(Integer.parseInt(value));
+                        break;
+                    case "body":
+                        stub.body(value);
+                        break;
+                    case "delay":
+                        stub.delay(MockServer.Delay.parse(value));
+                        break;
+                    case "error rate":
+                        errorRate = value;
+                        break;
+                    case "error":
+                        error = value;
+                        break;
+                    case "request body":
+                        stub.withBody(value);
+                        break;
+                    default:
+                        Assertions.fail("Unknown mock option '" + key + "'");
+                }
+            }
+        }
+        if (errorRate != null) {
+            stub.errorRate(Double.parseDouble(errorRate), error);
+        }
+    }
+
+    /**
+     * Verifies the number of requests received by the mock server (i.e. to check the retries of a client)
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Check the client retries
+     *      Given I start a mock server on port '0'
+     *      And the mock returns 'error' for 'GET /users/1' with status '503'
+     *      ...
+     *      Then the mock server received '3' 'GET /users/1' requests
+     * }</pre>
+     * @see #startMockServer(Integer)
+     * @param count     expected number of requests
+     * @param method    http method of the requests
+     * @param path      path of the requests, where * matches any text
+     */
+    @Then("^the mock server received '(\\d+)' '([A-Z]+) (.+?)' requests?$")
+    public void assertMockRequests(Integer count, String method, String path) {
+        Assertions.assertThat(this.getMockServer().getRequestCount(method, path)).as("Unexpected number of %s %s requests received by the mock server", method, path).isEqualTo(count);
+    }
+
+    /**
+     * Stops the mock server. It is not needed at the end of the scenario, since the server is stopped automatically
+     *
+     * @see #startMockServer(Integer)
+     */
+    @Given("^I stop the mock server$")
+    public void stopMockServer() {
+        if (commonspec.getMockServer() != null) {
+            commonspec.getMockServer().stop();
+            commonspec.setMockServer(null);
+        }
+    }
+
+    /**
+     * Records the http requests of the scenario in a cassette, or replays their responses from it.
+     * <p>
+     * In record mode, every rest and soap request is saved with its response. In replay mode, responses are read
+     * from the cassette without accessing the network, so scenarios can run without slow or unavailable services.
+     * Requests are matched by method, url and body by default (see {@link Cassette} to configure the match keys and
+     * the strict mode). A cassette can be enabled for all the scenarios with -DCASSETTE_MODE=record|replay
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Replay the responses recorded in a previous execution
+     *      Given I replay the http traffic from the cassette 'src/test/resources/cassettes/users.cassette'
+     *      And I send requests to '${REST_SERVER_HOST}:3000'
+     *      When I send a 'GET' request to '/users/1'
+     *      Then the service response status must be '200'
+     * }</pre>
+     * @see Cassette
+     * @param mode      record or replay
+     * @param path      path of the cassette file
+     */
+    @Given("^I (record|replay) the http traffic (?:in|from) the cassette '(.+?)'$")
+    public void useCassette(String mode, String path) {
+        commonspec.setCassette(Cassette.open(path, Cassette.Mode.valueOf(mode.toUpperCase())));
+    }
+
+    private MockServer getMockServer() {
+        Assertions.assertThat(commonspec.getMockServer()).as("The mock server is not started. Use the step 'I start a mock server on port' first").isNotNull();
+        return commonspec.getMockServer();
+    }
+
+    private LoadGenerator.Result getLoadTestResult() {
+        Assertions.assertThat(commonspec.getLoadTestResult()).as("No load test was executed in this scenario").isNotNull();
+        return commonspec.getLoadTestResult();
+    }
+
+    /**
+     * Every request of the load test is created from the current request, so it keeps its base url, headers,
+     * cookies and url parameters, and the requests can be sent from several threads at the same time
+     */
+    private Callable<Integer> createLoadRequest(String requestType, String endPoint) {
+        RequestSpecification base = commonspec.getRestRequest();
+        Assertions.assertThat(base).as("The rest client is not initialized. Use the step 'I send requests to' first").isNotNull();
+        return () -> sendLoadRequest(base, requestType, endPoint);
+    }
+
+    /**
+     * Sends a request of a load test. The bodies of the responses are not verified, so they are discarded
+     */
+    private static int sendLoadRequest(RequestSpecification base, String requestType, String endPoint) {
+        try {
+            return given().spec(base).basePath(endPoint).request(requestType).statusCode();
+        } finally {
+            SpooledBody.clearLastReceived();
+        }
+    }
+
+    /**
+     * Evaluates the jsonpath expression while reading the response body from its temporary file
+     */
+    private void saveStreamedElement(String element, String envVar) {
+        String value = null;
+        try {
+            value = commonspec.getRestResponseBody().read(element);
+        } catch (PathNotFoundException pe) {
+            Assertions.fail("The given path was not found: " + pe.getMessage());
+        } catch (IOException e) {
+            Assertions.fail("Could not read the response body: " + e.getMessage());
+        }
+
+        Assertions.assertThat(value).as("json result is empty").isNotEmpty();
+        this.getCommonSpec().getLogger().debug("Element {} found. Equal to {}. Saving in variable '{}'", element, value, envVar);
+        ThreadProperty.set(envVar, value);
+    }
+
+    /**
+     * Returns the body of the last response, as received by the pool of connections. If the pool is disabled, the
+     * body is read from the response
+     */
+    private SpooledBody getResponseBody() throws IOException {
+        Assertions.assertThat(commonspec.getRestResponse()).as("No request was sent in this scenario").isNotNull();
+        if (commonspec.getRestResponseBody() == null) {
+            commonspec.setRestResponseBody(SpooledBody.spool(new ByteArrayInputStream(commonspec.getRestResponse().asByteArray()), Long.MAX_VALUE));
+        }
+        return commonspec.getRestResponseBody();
+    }
+
+    private Charset getResponseCharset() {
+        String contentType = commonspec.getRestResponse().getContentType();
+        if (contentType != null && !contentType.isEmpty()) {
+            org.apache.http.entity.ContentType parsed = org.apache.http.entity.ContentType.parse(contentType);
+            if (parsed.getCharset() != null) {
+                return parsed.getCharset();
+            }
+            /* The same default charset used by RestAssured to decode the body as a String */
+            String charset = DecoderConfig.decoderConfig().defaultCharsetForContentType(parsed.getMimeType());
+            if (charset != null) {
+                return Charset.forName(charset);
+            }
+        }
+        return Charset.forName(DecoderConfig.decoderConfig().defaultContentCharset());
+    }
+
+    /**
+     * Returns the file to upload, from the filesystem or, if it does not exist there, from the classpath
+     */
+    private File getUploadFile(String path) throws URISyntaxException, FileNotFoundException {
+        File file = new File(path);
+        if (!file.isFile()) {
+            URL url = getClass().getClassLoader().getResource(path);
+            if (url == null || !"file".equals(url.getProtocol())) {
+                throw new FileNotFoundException("File " + path + " not found in the filesystem or in the classpath");
+            }
+            file = new File(url.toURI());
+        }
+        return file;
+    }
+
+    /**
+     * Returns the current request, with its content type encoded as binary, so a file or a stream set as its body
+     * is sent while it is read instead of being loaded in memory to serialize it
+     */
+    private RequestSpecification getStreamingRequest() {
+        RequestSpecification request = this.getCommonSpec().getRestRequest();
+        QueryableRequestSpecification query = SpecificationQuerier.query(request);
+        if (query.getContentType() != null) {
+            String mimeType = query.getContentType().split(";")[0].trim();
+            RestAssuredConfig config = query.getConfig();
+            request.config(config.encoderConfig(config.getEncoderConfig().encodeContentTypeAs(mimeType, ContentType.BINARY)));
+        }
+        return request;
+    }
+
+    /**
+     * Opens the file to upload, replacing its placeholders while it is read if requested. The stream is closed by
+     * the http client once it is sent
+     */
+    private InputStream openUploadStream(File file, boolean replace) throws FileNotFoundException {
+        InputStream stream = new FileInputStream(file);
+        if (!replace) {
+            return stream;
+        }
+        Reader reader = new PlaceholderReader(new InputStreamReader(stream, StandardCharsets.UTF_8), RestSpec::replacePlaceholder);
+        return new ReaderInputStream(reader, StandardCharsets.UTF_8);
+    }
+
+    private static String replacePlaceholder(String placeholder) {
+        try {
+            return ReplacementAspect.replacePlaceholders(placeholder, true);
+        } catch (NonReplaceableException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
 }
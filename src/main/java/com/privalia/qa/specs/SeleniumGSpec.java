@@ -18,8 +18,14 @@ package com.privalia.qa.specs;
 
 import com.privalia.qa.cucumber.converter.ArrayListConverter;
 import com.privalia.qa.cucumber.converter.NullableStringConverter;
+import com.privalia.qa.utils.ChromeDevTools;
+import com.privalia.qa.utils.NetworkProfile;
+import com.privalia.qa.utils.PagePerformance;
+import com.privalia.qa.utils.PagePerformanceReport;
+import com.privalia.qa.utils.PageSourceSnapshot;
 import com.privalia.qa.utils.PreviousWebElements;
 import com.privalia.qa.utils.ThreadProperty;
+import com.privalia.qa.utils.VisualDiff;
 import io.cucumber.docstring.DocString;
 import io.cucumber.java.en.And;
 import io.cucumber.java.en.Given;
@@ -31,9 +37,13 @@ import org.openqa.selenium.interactions.Actions;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.Select;
 import org.openqa.selenium.support.ui.WebDriverWait;
+import ru.yandex.qatools.ashot.coordinates.Coords;
+import ru.yandex.qatools.ashot.coordinates.WebDriverCoordsProvider;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -48,7 +58,7 @@ import static com.privalia.qa.assertions.Assertions.assertThat;
  */
 public class SeleniumGSpec extends BaseGSpec {
 
-    private final String LOCATORS = "id|name|class|css|xpath|linkText|partialLinkText|tagName";
+    private final String LOCATORS = "id|name|class|css|xpath|linkText|partialLinkText|tagName|shadow";
 
 
     /**
@@ -145,6 +155,7 @@ public class SeleniumGSpec extends BaseGSpec {
 
         String webURL = protocol + commonspec.getWebHost() + commonspec.getWebPort();
 
+        commonspec.invalidateElementCache();
         commonspec.getDriver().get(webURL + path);
         commonspec.setParentWindow(commonspec.getDriver().getWindowHandle());
     }
@@ -289,6 +300,7 @@ public class SeleniumGSpec extends BaseGSpec {
         this.waitAlert(5);
         this.getCommonSpec().getLogger().debug("Dismissing alert...");
         commonspec.dismissSeleniumAlert();
+        commonspec.invalidateElementLists();
     }
 
     /**
@@ -313,6 +325,7 @@ public class SeleniumGSpec extends BaseGSpec {
         this.waitAlert(5);
         this.getCommonSpec().getLogger().debug("Accepting alert...");
         commonspec.acceptSeleniumAlert();
+        commonspec.invalidateElementLists();
     }
 
     /**
@@ -339,7 +352,7 @@ public class SeleniumGSpec extends BaseGSpec {
     @Then("^I assign the file in '(.*)' to the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')?$")
     public void iSetTheFileInSchemasEmptyJsonToTheElementOnIndex(String fileName, String method, String element, Integer index) {
 
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -355,6 +368,7 @@ public class SeleniumGSpec extends BaseGSpec {
 
         this.getCommonSpec().getLogger().debug("Assigning file to element with '{}' as '{}' and index '{}'", element, method, index);
         commonspec.getPreviousWebElements().getPreviousWebElements().get(index).sendKeys(filePath);
+        commonspec.invalidateElementLists();
     }
 
 
@@ -373,6 +387,59 @@ public class SeleniumGSpec extends BaseGSpec {
     }
 
 
+    /**
+     * Blocks the requests of the browser to any url that matches the given patterns.
+     * <p>
+     * Useful to avoid loading third party resources (analytics, ads, fonts) that are not needed for the
+     * test. Several patterns can be separated with ';' and the wildcard '*' is allowed. The patterns can
+     * also be given for the whole execution using -DBLOCKED_URLS. Only supported for chromium based browsers
+     * (tag the scenario with @chromium to skip it in other browsers)
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Do not load analytics and fonts
+     *      Given I block the urls matching '*google-analytics.com*;*.woff2'
+     *      And I go to 'http:mydummysite/index.html'
+     * }</pre>
+     *
+     * @see #seleniumNetworkProfile(String)
+     * @param patterns url patterns separated by ';'
+     * @throws IOException if the browser does not support it
+     */
+    @Given("^I block the urls matching '(.*)'$")
+    public void seleniumBlockUrls(String patterns) throws IOException {
+        this.getCommonSpec().getLogger().debug("Blocking urls matching {}", patterns);
+        ChromeDevTools.setBlockedUrls(commonspec.getDriver(), Arrays.asList(patterns.split(";")));
+    }
+
+    /**
+     * Emulates the given network conditions in the browser.
+     * <p>
+     * Available profiles are none (no throttling), offline, slow3g, fast3g and 4g. A custom profile can be given
+     * as latency,download,upload (latency in ms, speeds in kbit/s). The profile can also be set for the whole
+     * execution using -DNETWORK_PROFILE. Only supported for chromium based browsers
+     * (tag the scenario with @chromium to skip it in other browsers)
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Check the page in a slow network
+     *      Given I set the network profile to 'slow3g'
+     *      And I go to 'http:mydummysite/index.html'
+     *
+     * Scenario: Custom network conditions (300ms latency, 1000kbps download, 500kbps upload)
+     *      Given I set the network profile to '300,1000,500'
+     * }</pre>
+     *
+     * @see #seleniumBlockUrls(String)
+     * @param profile name of the profile or custom profile
+     * @throws IOException if the browser does not support it
+     */
+    @Given("^I set the network profile to '(.*)'$")
+    public void seleniumNetworkProfile(String profile) throws IOException {
+        ChromeDevTools.emulateNetworkConditions(commonspec.getDriver(), NetworkProfile.parse(profile));
+    }
+
+
     /**
      * Switches to a frame/iframe.
      * <p>
@@ -401,6 +468,7 @@ public class SeleniumGSpec extends BaseGSpec {
 
         WebElement elem = commonspec.getPreviousWebElements().getPreviousWebElements().get(index);
         commonspec.getDriver().switchTo().frame(elem);
+        commonspec.invalidateElementCache();
     }
 
 
@@ -420,8 +488,9 @@ public class SeleniumGSpec extends BaseGSpec {
      */
     @Given("^I switch to iframe with '(" + LOCATORS + "):(.*)'$")
     public void seleniumIdFrame(String method, String idframe) {
-        this.assertSeleniumNElementExists("at least", 1, method, idframe);
+        this.locateElementsForAction(method, idframe);
         commonspec.getDriver().switchTo().frame(this.commonspec.getPreviousWebElements().getPreviousWebElements().get(0));
+        commonspec.invalidateElementCache();
     }
 
 
@@ -441,6 +510,7 @@ public class SeleniumGSpec extends BaseGSpec {
     @Given("^I switch to a parent frame$")
     public void seleniumSwitchAParentFrame() {
         commonspec.getDriver().switchTo().parentFrame();
+        commonspec.invalidateElementCache();
     }
 
 
@@ -488,7 +558,7 @@ public class SeleniumGSpec extends BaseGSpec {
     @Then("^the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')? has '(.*)' as text( ignoring case)?$")
     public void assertSeleniumTextOnElementByLocatorPresent(String method, String element, Integer index, String text, String ignoreCase) {
 
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -526,7 +596,7 @@ public class SeleniumGSpec extends BaseGSpec {
      */
     @Then("^this text exists:$")
     public void assertSeleniumTextInSource(String text) {
-        Assertions.assertThat(commonspec.getDriver().getPageSource()).as("The expected text was not found in the page source").contains(text);
+        Assertions.assertThat(commonspec.getPageSource()).as("The expected text was not found in the page source").contains(text);
     }
 
     /**
@@ -546,7 +616,7 @@ public class SeleniumGSpec extends BaseGSpec {
      */
     @Then("^this text exists ignoring case:$")
     public void assertSeleniumTextInSourceIgnoreCase(String text) {
-        Assertions.assertThat(commonspec.getDriver().getPageSource()).as("The expected text was not found in the page source").containsIgnoringCase(text);
+        Assertions.assertThat(commonspec.getPageSource()).as("The expected text was not found in the page source").containsIgnoringCase(text);
     }
 
     /**
@@ -566,7 +636,113 @@ public class SeleniumGSpec extends BaseGSpec {
      */
     @Then("^this text does not exist:$")
     public void assertSeleniumTextNotPresentInSource(String text) {
-        Assertions.assertThat(commonspec.getDriver().getPageSource().contains(text)).as("The provided text was found in the page source").isFalse();
+        Assertions.assertThat(commonspec.getPageSource().contains(text)).as("The provided text was found in the page source").isFalse();
+    }
+
+
+    /**
+     * Enables or disables the use of page source snapshots for read-only assertions.
+     * <p>
+     * When enabled, the page source is retrieved from the browser only once and consecutive read-only steps
+     * (such as {@link #assertSeleniumTextInSource(String)}, {@link #assertSeleniumTextNotPresentInSource(String)} or
+     * {@link #assertPageSourceNElementExists(String, Integer, String, String)}) are evaluated locally against that copy.
+     * The snapshot is automatically discarded after any other step (click, type, navigation, etc). Snapshots can also
+     * be enabled for the whole execution using -DPAGE_SOURCE_SNAPSHOT=true
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Verify several texts with a single request to the browser
+     *      Given I go to 'http:mydummysite/index.html'
+     *      And I enable page source snapshots
+     *      Then this text exists:
+     *      """
+     *      <h1 class="entry-title">Home</h1>
+     *      """
+     *      And this text does not exist:
+     *      """
+     *      <h1 class="entry-title">Not present text</h1>
+     *      """
+     *      And the page source has '3' elements with 'css:div.entry'
+     * }</pre>
+     *
+     * @see #assertPageSourceNElementExists(String, Integer, String, String)
+     * @param option    enable or disable
+     */
+    @Given("^I (enable|disable) page source snapshots$")
+    public void enablePageSourceSnapshots(String option) {
+        this.getCommonSpec().getLogger().debug("Page source snapshots {}d", option);
+        commonspec.setPageSourceSnapshotEnabled("enable".equals(option));
+    }
+
+    /**
+     * Enables or disables the cache of located elements.
+     * <p>
+     * When enabled, the elements located by a step are reused by the following steps that use the same locator
+     * (i.e. click on an element, type on it and verify its text), instead of locating them again in the browser.
+     * If the element is no longer attached to the page, it is located again automatically. The cache is discarded
+     * when navigating or switching to another window or frame. Steps that may add or remove elements (click, type,
+     * execute javascript, etc) only discard the locators that matched several elements, since their positions may
+     * change. The cache can also be enabled for the whole execution with -DELEMENT_CACHE=true
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Reuse the elements located in the page
+     *      Given I go to 'http:mydummysite/index.html'
+     *      And I enable the element cache
+     *      When I click on the element with 'id:name'
+     *      And I type 'John' on the element with 'id:name'
+     *      Then the element with 'id:name' has 'John' as text
+     * }</pre>
+     *
+     * @param option    enable or disable
+     */
+    @Given("^I (enable|disable) the element cache$")
+    public void enableElementCache(String option) {
+        this.getCommonSpec().getLogger().debug("Element cache {}d", option);
+        commonspec.setElementCacheEnabled("enable".equals(option));
+    }
+
+    /**
+     * Checks that the expected count of elements are present in the page source.
+     * <p>
+     * Unlike {@link #assertSeleniumNElementExists(String, Integer, String, String)}, the elements are not located
+     * by the browser but by parsing the page source locally, so the elements found are not stored for subsequent
+     * steps. This makes this step suitable for read-only checks, specially when used together with
+     * {@link #enablePageSourceSnapshots(String)}. xpath locators are not supported.
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Count elements in the page source
+     *      Given I go to 'http://localhost/styled/find-by-playground-test.html'
+     *      Then the page source has '1' elements with 'id:p1'
+     *      And the page source has at least '1' elements with 'css:.explanation'
+     * }</pre>
+     *
+     * @see #enablePageSourceSnapshots(String)
+     * @see #assertSeleniumNElementExists(String, Integer, String, String)
+     * @param atLeast       asserts that the amount of elements if greater or equal to expectedCount. If null, asserts the amount of element is equal to expectedCount
+     * @param expectedCount the expected count of elements to find
+     * @param method        method to locate the elements (id, name, class, css, linkText, partialLinkText and tagName)
+     * @param element       the relative reference to the element
+     */
+    @Then("^the page source has (at least )?'(\\d+)' elements? with '(id|name|class|css|linkText|partialLinkText|tagName):(.*)'$")
+    public void assertPageSourceNElementExists(String atLeast, Integer expectedCount, String method, String element) {
+
+        PageSourceSnapshot snapshot;
+        if (commonspec.isPageSourceSnapshotEnabled()) {
+            snapshot = commonspec.getPageSourceSnapshot();
+        } else {
+            snapshot = new PageSourceSnapshot(commonspec.getDriver().getPageSource());
+        }
+
+        int count = snapshot.count(method, element);
+        this.getCommonSpec().getLogger().debug("{} elements found in page source with '{}' as '{}'", count, element, method);
+
+        if (atLeast != null) {
+            Assertions.assertThat(count).as("Couldn't find the expected amount of elements (at least %s) with the given %s", expectedCount, method).isGreaterThanOrEqualTo(expectedCount);
+        } else {
+            Assertions.assertThat(count).as("Couldn't find the expected amount of elements (%s) with the given %s", expectedCount, method).isEqualTo(expectedCount);
+        }
     }
 
 
@@ -609,10 +785,23 @@ public class SeleniumGSpec extends BaseGSpec {
         }
 
         this.getCommonSpec().getLogger().debug("'{}' elements found with '{}' as '{}'. Saving...", expectedCount, element, method);
-        PreviousWebElements pwel = new PreviousWebElements(wel);
+        PreviousWebElements pwel = new PreviousWebElements(commonspec.cacheElements(method, element, wel));
         commonspec.setPreviousWebElements(pwel);
     }
 
+    /**
+     * Locates at least one element with the given locator, and stores them for the step to act over them. If the
+     * element cache is enabled, the elements located by a previous step with the same locator are reused
+     *
+     * @param method  method to locate the elements (id, name, class, css, xpath, linkText, partialLinkText, tagName and shadow)
+     * @param element the relative reference to the element
+     */
+    private void locateElementsForAction(String method, String element) {
+        List<WebElement> wel = commonspec.locateCachedElement(method, element);
+        Assertions.assertThat(wel.size()).as("Couldn't find the expected amount of elements (at least %s) with the given %s", 1, method).isGreaterThanOrEqualTo(1);
+        commonspec.setPreviousWebElements(new PreviousWebElements(wel));
+    }
+
 
     /**
      * Verifies if a webelement referenced by locator is displayed or not
@@ -642,7 +831,7 @@ public class SeleniumGSpec extends BaseGSpec {
             isDisplayed = true;
         }
 
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -680,7 +869,7 @@ public class SeleniumGSpec extends BaseGSpec {
             isEnabled = true;
         }
 
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -718,7 +907,7 @@ public class SeleniumGSpec extends BaseGSpec {
             isSelected = true;
         }
 
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -752,7 +941,7 @@ public class SeleniumGSpec extends BaseGSpec {
     @Then("^the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')? has '(.*?)' as '(.*)'$")
     public void assertSeleniumHasAttributeValueByLocator(String method, String element, Integer index, String attribute, String value) {
 
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -787,6 +976,164 @@ public class SeleniumGSpec extends BaseGSpec {
     }
 
 
+    /**
+     * Compares a full page screenshot of the current page with a baseline image.
+     * <p>
+     * Baselines are stored under the directory given with -DVISUAL_BASELINE_DIR (src/test/resources/visual-baselines
+     * by default) in a subfolder per browser. Baselines are only created or replaced with -DVISUAL_BASELINE_UPDATE=true,
+     * which saves the current screenshot as baseline. If the baseline does not exist, the step fails. The tolerance is the maximum percentage of different pixels
+     * allowed (0 by default). The max difference allowed in the color of a single pixel can be set with -DVISUAL_PIXEL_TOLERANCE (0-255).
+     * If the page does not match, the screenshot and an image with the mismatching areas are stored under target/executions
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Compare the home page with the baseline
+     *      Given I go to 'http:mydummysite/index.html'
+     *      Then the page matches the baseline 'home'
+     *
+     * Scenario: Ignoring dynamic content
+     *      Given I go to 'http:mydummysite/index.html'
+     *      And I ignore the element with 'id:banner' in visual comparisons
+     *      Then the page matches the baseline 'home' with tolerance '0.5%'
+     * }</pre>
+     *
+     * @see #ignoreElementInVisualComparisons(String, String, Integer)
+     * @param name      name of the baseline
+     * @param tolerance max percentage of different pixels
+     * @throws IOException if the baseline could not be read or written
+     */
+    @Then("^the page matches the baseline '(.+?)'( with tolerance '(\\d+(?:\\.\\d+)?)%')?$")
+    public void assertPageMatchesBaseline(String name, Double tolerance) throws IOException {
+        if (tolerance == null) {
+            tolerance = 0.0;
+        }
+        VisualDiff diff = commonspec.compareWithBaseline(name, tolerance);
+        if (diff == null) {
+            this.getCommonSpec().getLogger().warn("Baseline '{}' was saved with the current screenshot", name);
+            return;
+        }
+        Assertions.assertThat(diff.matches(tolerance)).as("The page does not match the baseline '%s': %s", name, diff).isTrue();
+    }
+
+    /**
+     * Excludes the area of an element from the visual comparisons of the scenario.
+     * <p>
+     * Useful for content that changes between executions (dates, banners, ads, etc)
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Ignoring dynamic content
+     *      Given I go to 'http:mydummysite/index.html'
+     *      And I ignore the element with 'id:banner' in visual comparisons
+     *      Then the page matches the baseline 'home'
+     * }</pre>
+     *
+     * @see #assertPageMatchesBaseline(String, Double)
+     * @param method    method to locate the elements (id, name, class, css, xpath, linkText, partialLinkText and tagName)
+     * @param element   the relative reference to the element
+     * @param index     Index of the element, in case one or more elements with the given locator are found (first element starts with index 0)
+     */
+    @Given("^I ignore the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')? in visual comparisons$")
+    public void ignoreElementInVisualComparisons(String method, String element, Integer index) {
+        this.locateElementsForAction(method, element);
+        if (index == null) {
+            index = 0;
+        }
+        WebElement webElement = commonspec.getPreviousWebElements().getPreviousWebElements().get(index);
+        Coords coords = new WebDriverCoordsProvider().ofElement(commonspec.getDriver(), webElement);
+        this.getCommonSpec().getLogger().debug("Ignoring region {} in visual comparisons", coords);
+        commonspec.getVisualIgnoreRegions().add(coords);
+    }
+
+    /**
+     * Collects the performance metrics of the current page.
+     * <p>
+     * The metrics are obtained from the Navigation Timing, Paint Timing and Resource Timing APIs of the browser
+     * (page load, DOM content loaded, time to first byte, first contentful paint, largest contentful paint and the
+     * timing of every resource). They can be saved as json in a variable, and are also added to the run-level
+     * report target/executions/performance-report.json, that contains the percentiles of every metric per url.
+     * If the page is still loading, the load event is awaited first (up to -DPAGE_LOAD_WAIT milliseconds)
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Collect the performance metrics
+     *      Given I go to 'http:mydummysite/index.html'
+     *      Then I collect the page performance metrics and save them in the environment variable 'metrics'
+     * }</pre>
+     *
+     * @see #assertPagePerformanceBudget(String, Integer)
+     * @see #assertResourcesPerformanceBudget(Integer)
+     * @param envVar    name of the variable where to store the metrics as json
+     * @throws IOException if the metrics could not be parsed
+     */
+    @Then("^I collect the page performance metrics( and save them in the environment variable '(.*)')?$")
+    public void collectPagePerformance(String envVar) throws IOException {
+        PagePerformance performance = PagePerformance.collect(commonspec.getDriver());
+        this.getCommonSpec().getLogger().debug("Performance metrics of {}: {}", performance.getUrl(), performance.getMetrics());
+        commonspec.setPagePerformance(performance);
+        PagePerformanceReport.INSTANCE.record(performance);
+        if (envVar != null) {
+            ThreadProperty.set(envVar, performance.toJson());
+        }
+    }
+
+    private void collectPagePerformanceIfNeeded() throws IOException {
+        PagePerformance performance = commonspec.getPagePerformance();
+        if (performance == null || !performance.isCurrent(commonspec.getDriver())) {
+            this.collectPagePerformance(null);
+        }
+    }
+
+    /**
+     * Verifies that a performance metric of the current page is within the given budget.
+     * <p>
+     * Uses the metrics collected with {@link #collectPagePerformance(String)}. If they were not collected before
+     * for the current page, they are collected now.
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Verify the performance budget of the page
+     *      Given I go to 'http:mydummysite/index.html'
+     *      Then the page load is less than '2000' ms
+     *      And the first contentful paint is less than '1000' ms
+     * }</pre>
+     *
+     * @see #collectPagePerformance(String)
+     * @param metric    metric to verify
+     * @param budget    max value in milliseconds
+     * @throws IOException if the metrics could not be parsed
+     */
+    @Then("^the (page load|DOM content loaded|time to first byte|first contentful paint|largest contentful paint) is less than '(\\d+)' ms$")
+    public void assertPagePerformanceBudget(String metric, Integer budget) throws IOException {
+        this.collectPagePerformanceIfNeeded();
+        Double value = commonspec.getPagePerformance().getMetric(metric);
+        Assertions.assertThat(value).as("The %s is not available (not supported by the browser or the page did not finish loading)", metric).isNotNull();
+        Assertions.assertThat(value).as("The %s of %s exceeds the budget", metric, commonspec.getPagePerformance().getUrl()).isLessThan(budget.doubleValue());
+    }
+
+    /**
+     * Verifies that none of the resources (scripts, stylesheets, images, xhr, etc) loaded by the current page took
+     * more than the given time
+     * <pre>{@code
+     * Example:
+     *
+     * Scenario: Verify the resources of the page
+     *      Given I go to 'http:mydummysite/index.html'
+     *      Then no resource takes more than '500' ms
+     * }</pre>
+     *
+     * @see #collectPagePerformance(String)
+     * @param budget    max duration in milliseconds
+     * @throws IOException if the metrics could not be parsed
+     */
+    @Then("^no resource takes more than '(\\d+)' ms$")
+    public void assertResourcesPerformanceBudget(Integer budget) throws IOException {
+        this.collectPagePerformanceIfNeeded();
+        List<PagePerformance.ResourceTiming> slow = commonspec.getPagePerformance().getResourcesSlowerThan(budget);
+        Assertions.assertThat(slow).as("Some resources took more than %s ms", budget).isEmpty();
+    }
+
+
     /**
      * Checks that we are in the URL passed
      * <pre>{@code
@@ -857,7 +1204,7 @@ public class SeleniumGSpec extends BaseGSpec {
     @Then("^I save content of element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')? in environment variable '(.*)'$")
     public void saveContentWebElementByLocatorInEnvVar(String method, String element, Integer index, String envVar) {
 
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -888,6 +1235,7 @@ public class SeleniumGSpec extends BaseGSpec {
         List<WebElement> destinationElement = commonspec.locateElement(dmethod, destination, 1);
 
         builder.dragAndDrop(sourceElement.get(0), destinationElement.get(0)).perform();
+        commonspec.invalidateElementLists();
     }
 
 
@@ -932,7 +1280,7 @@ public class SeleniumGSpec extends BaseGSpec {
             Actions actions = new Actions(commonspec.getDriver());
             actions.moveToElement(commonspec.getPreviousWebElements().getPreviousWebElements().get(index)).click().build().perform();
         }
-
+        commonspec.invalidateElementLists();
     }
 
     /**
@@ -966,7 +1314,7 @@ public class SeleniumGSpec extends BaseGSpec {
         this.getCommonSpec().getLogger().debug("Performing double click on element with index '{}'", index);
         Actions actions = new Actions(this.commonspec.getDriver());
         actions.doubleClick(commonspec.getPreviousWebElements().getPreviousWebElements().get(index)).perform();
-
+        commonspec.invalidateElementLists();
     }
 
     /**
@@ -1000,7 +1348,7 @@ public class SeleniumGSpec extends BaseGSpec {
         this.getCommonSpec().getLogger().debug("Performing right click on element with index '{}'", index);
         Actions actions = new Actions(this.commonspec.getDriver());
         actions.contextClick(commonspec.getPreviousWebElements().getPreviousWebElements().get(index)).perform();
-
+        commonspec.invalidateElementLists();
     }
 
 
@@ -1035,6 +1383,7 @@ public class SeleniumGSpec extends BaseGSpec {
         Assertions.assertThat(commonspec.getPreviousWebElements().getPreviousWebElements().get(index)).is(commonspec.getTextFieldCondition());
 
         commonspec.getPreviousWebElements().getPreviousWebElements().get(index).clear();
+        commonspec.invalidateElementLists();
     }
 
     /**
@@ -1057,7 +1406,7 @@ public class SeleniumGSpec extends BaseGSpec {
      */
     @Then("^I clear the text of the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')?$")
     public void seleniumClearByLocator(String method, String element, Integer index) {
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -1112,6 +1461,7 @@ public class SeleniumGSpec extends BaseGSpec {
                 text = text.substring(text.indexOf("\\n") + 2);
             }
         }
+        commonspec.invalidateElementLists();
     }
 
 
@@ -1180,6 +1530,7 @@ public class SeleniumGSpec extends BaseGSpec {
                 }
             }
         }
+        commonspec.invalidateElementLists();
     }
 
     /**
@@ -1212,7 +1563,7 @@ public class SeleniumGSpec extends BaseGSpec {
      */
     @When("^I send '(.*)' on the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')?$")
     public void seleniumKeysByLocator(String input, String method, String element, Integer index) {
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -1234,7 +1585,7 @@ public class SeleniumGSpec extends BaseGSpec {
     @When("^I select '(.*)' on the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')?$")
     public void elementSelect(String option, String method, String element, Integer index) {
 
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -1246,6 +1597,7 @@ public class SeleniumGSpec extends BaseGSpec {
 
         this.getCommonSpec().getLogger().debug("Selecting options that display the matching argument '{}'", option);
         sel.selectByVisibleText(option);
+        commonspec.invalidateElementLists();
     }
 
 
@@ -1259,7 +1611,7 @@ public class SeleniumGSpec extends BaseGSpec {
     @When("^I de-select every item on the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')?$")
     public void elementDeSelect(String method, String element, Integer index) {
 
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             index = 0;
         }
@@ -1269,6 +1621,7 @@ public class SeleniumGSpec extends BaseGSpec {
         if (sel.isMultiple()) {
             sel.deselectAll();
         }
+        commonspec.invalidateElementLists();
     }
 
 
@@ -1299,6 +1652,7 @@ public class SeleniumGSpec extends BaseGSpec {
             if (!window.equals(originalWindowHandle)) {
                 this.getCommonSpec().getLogger().debug("Switching window to '{}'", window);
                 commonspec.getDriver().switchTo().window(window);
+                commonspec.invalidateElementCache();
             }
         }
 
@@ -1327,7 +1681,7 @@ public class SeleniumGSpec extends BaseGSpec {
     @Then("^I save the value of the property '(.*)' of the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')? in variable '(.*)'$")
     public void saveTheValueOfElementPropertyByLocator(String propertyName, String method, String element, Integer index, String variable) {
 
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -1375,6 +1729,7 @@ public class SeleniumGSpec extends BaseGSpec {
         Object output;
 
         output = executor.executeScript(script);
+        commonspec.invalidateElementLists();
 
         if (enVar != null) {
             assertThat(output).as("The script did not return any value!").isNotNull();
@@ -1410,7 +1765,7 @@ public class SeleniumGSpec extends BaseGSpec {
         JavascriptExecutor executor = (JavascriptExecutor) this.commonspec.getDriver();
         Object output;
 
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -1418,6 +1773,7 @@ public class SeleniumGSpec extends BaseGSpec {
 
         List<WebElement> wel = commonspec.getPreviousWebElements().getPreviousWebElements();
         output = executor.executeScript(script, wel.get(index));
+        commonspec.invalidateElementLists();
 
         if (enVar != null) {
             assertThat(output).as("The script did not return any value!").isNotNull();
@@ -1455,6 +1811,7 @@ public class SeleniumGSpec extends BaseGSpec {
         }
 
         this.getCommonSpec().getLogger().debug("Loading '{}' in the current browser window", url);
+        commonspec.invalidateElementCache();
         commonspec.getDriver().get(url);
         commonspec.setParentWindow(commonspec.getDriver().getWindowHandle());
     }
@@ -1465,6 +1822,7 @@ public class SeleniumGSpec extends BaseGSpec {
     @Given("^I close the current window$")
     public void closeWindow() {
         commonspec.getDriver().close();
+        commonspec.invalidateElementCache();
     }
 
     /**
@@ -1494,7 +1852,7 @@ public class SeleniumGSpec extends BaseGSpec {
      */
     @Then("^I click on the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')?$")
     public void seleniumClickByLocator(String method, String element, Integer index) {
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified to perform click. Defaulting to index 0");
             index = 0;
@@ -1531,7 +1889,7 @@ public class SeleniumGSpec extends BaseGSpec {
      */
     @When("^I type '(.*)' on the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')?$")
     public void seleniumTypeByLocator(String input, String method, String element, Integer index) {
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -1577,7 +1935,7 @@ public class SeleniumGSpec extends BaseGSpec {
      */
     @When("^I type on the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')? the text:$")
     public void seleniumTypeLongTextByLocator(String method, String element, Integer index, DocString input) {
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -1589,6 +1947,7 @@ public class SeleniumGSpec extends BaseGSpec {
     public void goBackBrowserHistory(Integer numberOfPages) {
         for (int i = 0; i < numberOfPages; i++) {
             this.commonspec.getDriver().navigate().back();
+            this.commonspec.invalidateElementCache();
         }
     }
 
@@ -1596,6 +1955,7 @@ public class SeleniumGSpec extends BaseGSpec {
     public void goForwardBrowserHistory(Integer numberOfPages) {
         for (int i = 0; i < numberOfPages; i++) {
             this.commonspec.getDriver().navigate().forward();
+            this.commonspec.invalidateElementCache();
         }
     }
 
@@ -1621,7 +1981,7 @@ public class SeleniumGSpec extends BaseGSpec {
      */
     @Then("^I scroll (up|down) until the element with '(" + LOCATORS +  "):(.*?)'( index '(\\d+)')? is visible$")
     public void scrollUntilElementVisibleByLocator(String direction, String method, String element, Integer index) throws InterruptedException {
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -1641,6 +2001,7 @@ public class SeleniumGSpec extends BaseGSpec {
         this.getCommonSpec().getLogger().debug("Scrolling element with '{}' as '{}' index '{}' into view", element, method, index);
         ((JavascriptExecutor) this.commonspec.getDriver()).executeScript(script, this.commonspec.getPreviousWebElements().getPreviousWebElements().get(index));
         Thread.sleep(500);
+        commonspec.invalidateElementLists();
     }
 
     /**
@@ -1670,7 +2031,7 @@ public class SeleniumGSpec extends BaseGSpec {
      */
     @Then("^I double click on the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')?$")
     public void seleniumDoubleClickByLocator(String method, String element, Integer index) {
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -1706,7 +2067,7 @@ public class SeleniumGSpec extends BaseGSpec {
      */
     @Then("^I right click on the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')?$")
     public void seleniumRightClickByLocator(String method, String element, Integer index) {
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -1739,7 +2100,7 @@ public class SeleniumGSpec extends BaseGSpec {
      */
     @Then("^I hover on the element with '(" + LOCATORS + "):(.*?)'( index '(\\d+)')?$")
     public void seleniumHoverByLocator(String method, String element, Integer index) {
-        this.assertSeleniumNElementExists("at least", 1, method, element);
+        this.locateElementsForAction(method, element);
         if (index == null) {
             this.getCommonSpec().getLogger().debug("No index specified for element. Defaulting to index 0");
             index = 0;
@@ -1748,6 +2109,7 @@ public class SeleniumGSpec extends BaseGSpec {
         this.getCommonSpec().getLogger().debug("Hovering on element with '{}' as '{}' index '{}'", element, method, index);
         Actions action = new Actions(this.commonspec.getDriver());
         action.moveToElement(this.commonspec.getPreviousWebElements().getPreviousWebElements().get(index)).perform();
+        commonspec.invalidateElementLists();
     }
 
 }
@@ -58,6 +58,7 @@ public class SoapServiceGSpec extends BaseGSpec {
     @Given("^The webservice WSDL is located in '(.+?)'$")
     public void setRemoteWSDL(String remoteWsdlAddress) throws Throwable {
 
+        this.commonspec.getSoapServiceClient().setCassette(this.commonspec.getCassette());
         this.commonspec.getSoapServiceClient().parseWsdl(remoteWsdlAddress);
         assertThat(this.commonspec.getSoapServiceClient().getTargetNameSpace()).as("Could not find TargetNamespace in WSDL").isNotEmpty();
         assertThat(this.commonspec.getSoapServiceClient().getServiceName()).as("Could not find Service in WSDL").isNotEmpty();
@@ -135,6 +136,7 @@ public class SoapServiceGSpec extends BaseGSpec {
         String request = commonspec.retrieveData(requestFile, "string");
 
         String response = "";
+        this.commonspec.getSoapServiceClient().setCassette(this.commonspec.getCassette());
         if (modifications != null) {
             response = this.commonspec.getSoapServiceClient().executeMethodWithParams(actionName, request, modifications.asMap(String.class, String.class));
         } else {
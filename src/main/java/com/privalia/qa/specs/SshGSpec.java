@@ -16,12 +16,14 @@
 
 package com.privalia.qa.specs;
 
+import com.privalia.qa.utils.Await;
 import com.privalia.qa.utils.RemoteSSHConnection;
 import io.cucumber.java.en.Given;
 import io.cucumber.java.en.Then;
 import org.assertj.core.api.Assertions;
 
 import java.io.File;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -261,30 +263,14 @@ public class SshGSpec extends BaseGSpec {
      */
     @Then("^in less than '(\\d+?)' seconds, checking each '(\\d+?)' seconds, the command output '(.+?)' contains '(.+?)'$")
     public void assertCommandExistsOnTimeOut(Integer timeout, Integer wait, String command, String search) throws Exception {
-        Boolean found = false;
-        AssertionError ex = null;
-
-        for (int i = 0; (i <= timeout); i += wait) {
-            if (found) {
-                break;
-            }
+        Await await = Await.atMost(timeout, TimeUnit.SECONDS).pollEvery(wait, TimeUnit.SECONDS).named("Output of '" + command + "' containing '" + search + "'");
+        await.untilAsserted(() -> {
             commonspec.getLogger().debug("Checking output value");
             commonspec.getRemoteSSHConnection().runCommand(command);
             commonspec.setCommandResult(commonspec.getRemoteSSHConnection().getResult());
-            try {
-                assertThat(commonspec.getCommandResult()).as("Contains " + search + ".").contains(search);
-                found = true;
-                timeout = i;
-            } catch (AssertionError e) {
-                commonspec.getLogger().info("Command output don't found yet after " + i + " seconds");
-                Thread.sleep(wait * 1000);
-                ex = e;
-            }
-        }
-        if (!found) {
-            throw (ex);
-        }
-        commonspec.getLogger().info("Command output found after " + timeout + " seconds");
+            assertThat(commonspec.getCommandResult()).as("Contains " + search + ".").contains(search);
+        });
+        commonspec.getLogger().info("Command output found after {} ms", await.getElapsed());
     }
 
 
@@ -82,6 +82,26 @@ public class UtilsGSpec extends BaseGSpec {
         Thread.sleep(seconds * DEFAULT_TIMEOUT);
     }
 
+    /**
+     * Wait milliseconds.
+     * <p>
+     * Same as {@link #idleWait(Integer)}, for waits shorter than a second or that need a finer precision. When
+     * waiting for something to happen, prefer the steps that check a condition periodically
+     *
+     * <pre>
+     * {@code
+     *      When I wait '250' milliseconds
+     * }
+     * </pre>
+     *
+     * @param milliseconds              Milliseconds to wait
+     * @throws InterruptedException     InterruptedException
+     */
+    @When("^I wait '(\\d+)' milliseconds$")
+    public void idleWaitMilliseconds(Long milliseconds) throws InterruptedException {
+        Thread.sleep(milliseconds);
+    }
+
 
     /**
      * Check value stored in environment variable "is|matches|is higher than|is lower than|contains|is different from" to value provided
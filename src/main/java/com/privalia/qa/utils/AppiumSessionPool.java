@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import io.appium.java_client.HasSessionDetails;
+import io.appium.java_client.InteractsWithApps;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the Appium sessions of the @mobile scenarios open between scenarios (Singleton).
+ * <p>
+ * Creating an Appium session (installing the automation server and the app in the device) takes much longer
+ * than the scenario itself in most cases. With -DAPPIUM_REUSE_SESSION=true, the session is not closed at the end
+ * of the scenario, and the next scenario executed in the same thread with the same capabilities reuses it, after
+ * resetting the state of the app with the level given in -DAPPIUM_RESET:
+ * <pre>
+ * none      the app is left as it is
+ * relaunch  the app is closed and launched again (default)
+ * clear     the app data is cleared and the app restarted
+ * reinstall the app is removed and installed again (requires the capabilities app and appPackage/bundleId)
+ * </pre>
+ * If the session does not respond, or the app can not be reset, the session is closed and a new one is created.
+ */
+public enum AppiumSessionPool {
+    INSTANCE;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AppiumSessionPool.class);
+
+    /**
+     * How the state of the app is reset before reusing a session
+     */
+    public enum ResetLevel {
+        NONE, RELAUNCH, CLEAR, REINSTALL;
+
+        /**
+         * Returns the reset level with the given name (none, relaunch, clear or reinstall)
+         *
+         * @param value name of the level
+         * @return reset level
+         */
+        public static ResetLevel parse(String value) {
+            try {
+                return ResetLevel.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown Appium reset level '" + value + "'. Use none, relaunch, clear or reinstall", e);
+            }
+        }
+    }
+
+    private final ThreadLocal<Session> sessions = new ThreadLocal<>();
+
+    private final Set<WebDriver> openSessions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Checks if the sessions must be reused (-DAPPIUM_REUSE_SESSION)
+     *
+     * @return true if enabled
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty("APPIUM_REUSE_SESSION", "false"));
+    }
+
+    /**
+     * Returns the reset level configured with -DAPPIUM_RESET
+     *
+     * @return reset level (relaunch by default)
+     */
+    public static ResetLevel getResetLevel() {
+        return ResetLevel.parse(System.getProperty("APPIUM_RESET", "relaunch"));
+    }
+
+    /**
+     * Returns the session kept by the current thread if it was created with the same capabilities and still
+     * responds, after resetting the app. Any other kept session is closed
+     *
+     * @param capabilities capabilities of the new scenario
+     * @param level        reset level to apply
+     * @return the driver to reuse, or null if a new session must be created
+     */
+    public WebDriver acquire(Capabilities capabilities, ResetLevel level) {
+        Session session = this.sessions.get();
+        if (session == null) {
+            return null;
+        }
+
+        if (!session.key.equals(key(capabilities))) {
+            LOGGER.debug("Capabilities changed, closing the Appium session");
+            this.discard(session);
+            return null;
+        }
+
+        if (!isHealthy(session.driver)) {
+            LOGGER.warn("The Appium session does not respond, creating a new one");
+            this.discard(session);
+            return null;
+        }
+
+        try {
+            if (!reset(session.driver, level, capabilities)) {
+                this.discard(session);
+                return null;
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not reset the app ({}), creating a new session: {}", level, e.getMessage());
+            this.discard(session);
+            return null;
+        }
+
+        LOGGER.debug("Reusing Appium session (reset level {})", level);
+        return session.driver;
+    }
+
+    /**
+     * Registers a new session, so it is closed at the end of the execution
+     *
+     * @param driver       new driver
+     * @param capabilities capabilities used to create it
+     */
+    public void register(WebDriver driver, Capabilities capabilities) {
+        this.openSessions.add(driver);
+        this.sessions.set(new Session(driver, key(capabilities)));
+    }
+
+    /**
+     * Keeps the session for the next scenario of the current thread instead of closing it
+     *
+     * @param driver driver of the finished scenario
+     * @return true if the session is kept (the caller must not quit the driver)
+     */
+    public boolean release(WebDriver driver) {
+        Session session = this.sessions.get();
+        return session != null && session.driver == driver;
+    }
+
+    /**
+     * Closes all the sessions kept
+     */
+    public void closeAll() {
+        List<WebDriver> drivers = new ArrayList<>(this.openSessions);
+        for (WebDriver driver : drivers) {
+            this.quit(driver);
+        }
+        this.sessions.remove();
+    }
+
+    private void discard(Session session) {
+        this.sessions.remove();
+        this.quit(session.driver);
+    }
+
+    private void quit(WebDriver driver) {
+        this.openSessions.remove(driver);
+        try {
+            driver.quit();
+        } catch (RuntimeException e) {
+            LOGGER.debug("Error closing the Appium session: {}", e.getMessage());
+        }
+    }
+
+    static boolean isHealthy(WebDriver driver) {
+        try {
+            if (driver instanceof HasSessionDetails) {
+                ((HasSessionDetails) driver).getSessionDetails();
+            } else {
+                driver.getWindowHandle();
+            }
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Resets the state of the app under test
+     *
+     * @param driver       driver of the session
+     * @param level        reset level
+     * @param capabilities capabilities of the session
+     * @return false if the app can not be reset in the current session
+     */
+    static boolean reset(WebDriver driver, ResetLevel level, Capabilities capabilities) {
+        if (level == ResetLevel.NONE) {
+            return true;
+        }
+        if (!(driver instanceof InteractsWithApps)) {
+            LOGGER.warn("The driver can not manage the app under test, creating a new session");
+            return false;
+        }
+
+        InteractsWithApps apps = (InteractsWithApps) driver;
+        switch (level) {
+            case RELAUNCH:
+                apps.closeApp();
+                apps.launchApp();
+                return true;
+            case CLEAR:
+                apps.resetApp();
+                return true;
+            case REINSTALL:
+                Object app = capabilities.getCapability("app");
+                Object appId = capabilities.getCapability("appPackage") != null ? capabilities.getCapability("appPackage") : capabilities.getCapability("bundleId");
+                if (app == null || appId == null) {
+                    LOGGER.warn("The capabilities app and appPackage/bundleId are needed to reinstall the app, creating a new session");
+                    return false;
+                }
+                apps.terminateApp(appId.toString());
+                apps.removeApp(appId.toString());
+                apps.installApp(app.toString());
+                apps.activateApp(appId.toString());
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    private static String key(Capabilities capabilities) {
+        return new TreeMap<>(capabilities.asMap()).toString();
+    }
+
+    private static final class Session {
+
+        private final WebDriver driver;
+
+        private final String key;
+
+        private Session(WebDriver driver, String key) {
+            this.driver = driver;
+            this.key = key;
+        }
+    }
+}
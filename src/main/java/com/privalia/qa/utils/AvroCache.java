@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the avro schemas used to build records, and the {@link AvroRecordBuilder} of every schema (Singleton).
+ * <p>
+ * Schemas are cached by the fingerprint (CRC-64-AVRO) of their text, so every schema is parsed only once, and the
+ * records of the same schema are built with the same builder, whose conversions are prepared only once. The cache is
+ * an LRU cache of a fixed size:
+ * <pre>
+ * -DAVRO_SCHEMA_CACHE_SIZE=100       parsed schemas and their builders
+ * </pre>
+ * Schemas are shared by all scenarios, so they must not be modified.
+ */
+public enum AvroCache {
+    INSTANCE;
+
+    private final Map<Long, CompiledSchema> schemas = lruCache("AVRO_SCHEMA_CACHE_SIZE", 100);
+
+    /**
+     * Returns the parsed schema
+     *
+     * @param schema schema as json
+     * @return parsed schema (read only)
+     */
+    public Schema parse(String schema) {
+        return this.get(schema, null).schema;
+    }
+
+    /**
+     * Returns the builder of records of the given schema
+     *
+     * @param schema schema as json
+     * @return builder
+     */
+    public AvroRecordBuilder getRecordBuilder(String schema) {
+        return this.get(schema, null).getBuilder();
+    }
+
+    /**
+     * Returns the builder of records of the given schema
+     *
+     * @param schema parsed schema
+     * @return builder
+     */
+    public AvroRecordBuilder getRecordBuilder(Schema schema) {
+        return this.get(schema.toString(), schema).getBuilder();
+    }
+
+    /**
+     * Fingerprint of the text of a schema
+     *
+     * @param schema schema as json
+     * @return 64 bits fingerprint (CRC-64-AVRO)
+     */
+    public static long fingerprint(String schema) {
+        return SchemaNormalization.fingerprint64(schema.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Removes all the cached schemas
+     */
+    public void clear() {
+        synchronized (this.schemas) {
+            this.schemas.clear();
+        }
+    }
+
+    private CompiledSchema get(String text, Schema parsed) {
+        long fingerprint = fingerprint(text);
+        synchronized (this.schemas) {
+            CompiledSchema compiled = this.schemas.get(fingerprint);
+            if (compiled != null) {
+                return compiled;
+            }
+        }
+        CompiledSchema compiled = new CompiledSchema(parsed != null ? parsed : new Schema.Parser().parse(text));
+        synchronized (this.schemas) {
+            CompiledSchema previous = this.schemas.putIfAbsent(fingerprint, compiled);
+            return previous != null ? previous : compiled;
+        }
+    }
+
+    private static <K, T> Map<K, T> lruCache(String property, int defaultSize) {
+        int maxSize = Integer.parseInt(System.getProperty(property, String.valueOf(defaultSize)));
+        return new LinkedHashMap<K, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, T> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * A parsed schema, and its builder (prepared the first time a record of the schema is built)
+     */
+    private static final class CompiledSchema {
+
+        private final Schema schema;
+
+        private AvroRecordBuilder builder;
+
+        private CompiledSchema(Schema schema) {
+            this.schema = schema;
+        }
+
+        private synchronized AvroRecordBuilder getBuilder() {
+            if (this.builder == null) {
+                this.builder = new AvroRecordBuilder(this.schema);
+            }
+            return this.builder;
+        }
+    }
+}
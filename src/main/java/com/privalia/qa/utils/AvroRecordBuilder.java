@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds {@link GenericRecord} of a schema from a map of field -> value, converting every value (as text) to the type
+ * of its field.
+ * <p>
+ * The conversion of every field is prepared once, when the builder is created, so building many records of the same
+ * schema does not walk the schema again for every record. Builders are obtained from {@link AvroCache}, and the
+ * builders of nested records are obtained the first time a nested record is built.
+ * <ul>
+ * <li>int, long, float, boolean and string fields are parsed from the text</li>
+ * <li>bytes fields are built from the unscaled value of a decimal number (i.e. 12.34 -&gt; 1234)</li>
+ * <li>record fields are built from a json object, and array fields from a json array</li>
+ * <li>union fields are converted to the first type of the union (in the order of the schema) that accepts the value,
+ * and null values are kept as null</li>
+ * </ul>
+ * <pre>{@code
+ * AvroRecordBuilder builder = AvroCache.INSTANCE.getRecordBuilder(schema);
+ * GenericRecord record = builder.build(properties);
+ * }</pre>
+ */
+public final class AvroRecordBuilder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AvroRecordBuilder.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Gson GSON = new Gson();
+
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<Map<String, Object>>() {
+    };
+
+    private static final TypeReference<List<Object>> JSON_ARRAY = new TypeReference<List<Object>>() {
+    };
+
+    /**
+     * Conversion of the text of a value to the type of a field
+     */
+    @FunctionalInterface
+    private interface Converter {
+        Object convert(String value) throws IOException;
+    }
+
+    private final Schema schema;
+
+    private final Map<String, Converter> converters = new HashMap<>();
+
+    AvroRecordBuilder(Schema schema) {
+        this.schema = schema;
+        for (Schema.Field field : schema.getFields()) {
+            this.converters.put(field.name(), fieldConverter(field.schema()));
+        }
+    }
+
+    /**
+     * Schema of the records
+     *
+     * @return schema
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Builds a record with the given values. Values that are not text (i.e. values read from a json document) are
+     * converted to json first, and fields not present in the schema are ignored
+     *
+     * @param properties field -&gt; value
+     * @return the record, or null if properties is null
+     * @throws IOException if the value of a record or array field is not valid json
+     */
+    public GenericRecord build(Map<String, ?> properties) throws IOException {
+        if (properties == null) {
+            return null;
+        }
+
+        GenericRecord record = new GenericData.Record(this.schema);
+        for (Map.Entry<String, ?> entry : properties.entrySet()) {
+            Converter converter = this.converters.get(entry.getKey());
+            if (converter != null) {
+                record.put(entry.getKey(), converter.convert(toText(entry.getValue())));
+            } else {
+                LOGGER.warn("the field " + entry.getKey() + " is not present in the schema and will be ignored");
+            }
+        }
+        return record;
+    }
+
+    private static Converter fieldConverter(Schema schema) {
+        switch (schema.getType()) {
+            case RECORD:
+                return recordConverter(schema);
+            case ARRAY:
+                return arrayConverter(schema.getElementType());
+            case UNION:
+                return unionConverter(schema);
+            default:
+                Converter converter = primitiveConverter(schema.getType());
+                if (converter == null) {
+                    LOGGER.warn("Unrecognized type in schema: " + schema.getType().getName());
+                    return value -> value;
+                }
+                return converter;
+        }
+    }
+
+    private static Converter primitiveConverter(Schema.Type type) {
+        switch (type) {
+            case INT:
+                return Integer::valueOf;
+            case LONG:
+                return Long::valueOf;
+            case FLOAT:
+                return Float::valueOf;
+            case BOOLEAN:
+                return "true"::equals;
+            case STRING:
+                return value -> value;
+            case BYTES:
+                return value -> ByteBuffer.wrap(new BigDecimal(value).unscaledValue().toByteArray());
+            default:
+                return null;
+        }
+    }
+
+    private static Converter recordConverter(Schema schema) {
+        NestedBuilder nested = new NestedBuilder(schema);
+        return value -> {
+            Map<String, Object> properties;
+            try {
+                properties = MAPPER.readValue(value, JSON_OBJECT);
+            } catch (IOException e) {
+                throw new IOException("Could not map " + value + " to a record type", e);
+            }
+            return nested.get().build(properties);
+        };
+    }
+
+    private static Converter arrayConverter(Schema elementSchema) {
+        Converter elementConverter;
+        if (elementSchema.getType() == Schema.Type.RECORD) {
+            NestedBuilder nested = new NestedBuilder(elementSchema);
+            elementConverter = value -> nested.get().build(MAPPER.readValue(value, JSON_OBJECT));
+        } else {
+            Converter primitive = primitiveConverter(elementSchema.getType());
+            elementConverter = primitive != null ? primitive : value -> value;
+        }
+
+        return value -> {
+            List<Object> elements;
+            try {
+                elements = MAPPER.readValue(value, JSON_ARRAY);
+            } catch (IOException e) {
+                throw new IOException("Could not map " + value + " to array", e);
+            }
+            List<Object> result = new ArrayList<>(elements.size());
+            for (Object element : elements) {
+                result.add(elementConverter.convert(toText(element)));
+            }
+            return result;
+        };
+    }
+
+    /**
+     * Converts the value with the branches of the union in order, until one of them accepts it. Booleans only accept
+     * true or false, so they do not take the values of the branches that follow them
+     */
+    private static Converter unionConverter(Schema schema) {
+        List<Converter> branches = new ArrayList<>();
+        for (Schema branch : schema.getTypes()) {
+            if (branch.getType() == Schema.Type.BOOLEAN) {
+                branches.add(AvroRecordBuilder::parseBoolean);
+            } else if (branch.getType() != Schema.Type.NULL) {
+                branches.add(fieldConverter(branch));
+            }
+        }
+
+        return value -> {
+            if (value == null) {
+                return null;
+            }
+            Exception error = null;
+            for (Converter branch : branches) {
+                try {
+                    return branch.convert(value);
+                } catch (IOException | RuntimeException e) {
+                    error = e;
+                }
+            }
+            throw new IOException("Could not convert " + value + " to any type of " + schema, error);
+        };
+    }
+
+    private static Boolean parseBoolean(String value) {
+        if (!"true".equals(value) && !"false".equals(value)) {
+            throw new IllegalArgumentException(value + " is not a boolean");
+        }
+        return Boolean.valueOf(value);
+    }
+
+    private static String toText(Object value) {
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        return GSON.toJson(value);
+    }
+
+    /**
+     * Builder of a nested record, obtained the first time it is used (schemas can be recursive)
+     */
+    private static final class NestedBuilder {
+
+        private final Schema schema;
+
+        private volatile AvroRecordBuilder builder;
+
+        private NestedBuilder(Schema schema) {
+            this.schema = schema;
+        }
+
+        private AvroRecordBuilder get() {
+            if (this.builder == null) {
+                this.builder = AvroCache.INSTANCE.getRecordBuilder(this.schema);
+            }
+            return this.builder;
+        }
+    }
+}
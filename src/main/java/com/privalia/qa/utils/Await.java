@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Polls a condition until it is fulfilled or a deadline is reached.
+ * <p>
+ * The deadline is measured with the real clock in milliseconds (the time taken by every attempt counts), the wait
+ * finishes as soon as the condition is fulfilled, and the last sleep is shortened so the deadline is never exceeded.
+ * The interval between attempts can grow exponentially, with a random jitter so parallel scenarios polling the same
+ * service do not retry at the same time.
+ * <pre>{@code
+ * Await await = Await.atMost(20, TimeUnit.SECONDS).pollEvery(100, TimeUnit.MILLISECONDS).withBackoff(2, 5, TimeUnit.SECONDS);
+ * await.untilAsserted(() -> assertThat(readStatus()).isEqualTo("done"));
+ * logger.info("Status was done after {} ms", await.getElapsed());
+ * }</pre>
+ */
+public class Await {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Await.class);
+
+    /**
+     * An attempt that fails throwing an AssertionError
+     */
+    @FunctionalInterface
+    public interface Assertion {
+        void check() throws Exception;
+    }
+
+    private final long timeout;
+
+    private long interval = 1000;
+
+    private double multiplier = 1;
+
+    private long maxInterval = Long.MAX_VALUE;
+
+    private double jitter = 0;
+
+    private BooleanSupplier failFast;
+
+    private String description = "condition";
+
+    private long elapsed;
+
+    private int attempts;
+
+    private Await(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Creates a new wait
+     *
+     * @param timeout max time to wait
+     * @param unit    unit of the timeout
+     * @return the wait
+     */
+    public static Await atMost(long timeout, TimeUnit unit) {
+        return new Await(unit.toMillis(timeout));
+    }
+
+    /**
+     * Sets the time between the first attempts (1 second by default)
+     *
+     * @param interval time between attempts
+     * @param unit     unit of the interval
+     * @return this
+     */
+    public Await pollEvery(long interval, TimeUnit unit) {
+        this.interval = Math.max(1, unit.toMillis(interval));
+        return this;
+    }
+
+    /**
+     * Multiplies the interval after every failed attempt, up to the given max interval
+     *
+     * @param multiplier  factor applied to the interval after every attempt
+     * @param maxInterval max time between attempts
+     * @param unit        unit of the max interval
+     * @return this
+     */
+    public Await withBackoff(double multiplier, long maxInterval, TimeUnit unit) {
+        this.multiplier = multiplier;
+        this.maxInterval = unit.toMillis(maxInterval);
+        return this;
+    }
+
+    /**
+     * Shortens every interval by a random fraction
+     *
+     * @param jitter max fraction of the interval (0-1)
+     * @return this
+     */
+    public Await withJitter(double jitter) {
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * Stops waiting as soon as the given condition is true, since the awaited condition can not be fulfilled anymore.
+     * The condition is checked after every failed attempt
+     *
+     * @param condition fail-fast condition
+     * @return this
+     */
+    public Await failFast(BooleanSupplier condition) {
+        this.failFast = condition;
+        return this;
+    }
+
+    /**
+     * Sets a description of the condition, used in logs and error messages
+     *
+     * @param description description of the condition
+     * @return this
+     */
+    public Await named(String description) {
+        this.description = description;
+        return this;
+    }
+
+    /**
+     * Time spent in the last wait
+     *
+     * @return elapsed time in milliseconds
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Number of attempts of the last wait
+     *
+     * @return number of attempts
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Repeats the assertion until it does not fail. If the assertion still fails when the deadline is reached, the
+     * last AssertionError is thrown. Any other exception is thrown immediately
+     *
+     * @param assertion assertion to check
+     * @throws Exception exception thrown by the assertion
+     */
+    public void untilAsserted(Assertion assertion) throws Exception {
+        this.until(() -> {
+            assertion.check();
+            return true;
+        }, result -> true);
+    }
+
+    /**
+     * Repeats the probe until its result fulfils the condition. If no value fulfils the condition when the deadline
+     * is reached, an AssertionError is thrown
+     *
+     * @param probe     obtains the value to evaluate
+     * @param condition condition the value must fulfil
+     * @param <T>       type of the value
+     * @return the first value that fulfilled the condition
+     * @throws Exception exception thrown by the probe
+     */
+    public <T> T until(Callable<T> probe, Predicate<? super T> condition) throws Exception {
+        long start = System.currentTimeMillis();
+        long deadline = start + this.timeout;
+        long nextInterval = this.interval;
+        this.attempts = 0;
+
+        while (true) {
+            this.attempts++;
+            AssertionError error = null;
+            T value = null;
+            try {
+                value = probe.call();
+            } catch (AssertionError e) {
+                error = e;
+            }
+
+            this.elapsed = System.currentTimeMillis() - start;
+            if (error == null && condition.test(value)) {
+                LOGGER.debug("{} fulfilled after {} ms ({} attempts)", this.description, this.elapsed, this.attempts);
+                return value;
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            boolean failedFast = this.failFast != null && this.failFast.getAsBoolean();
+            if (remaining <= 0 || failedFast) {
+                String reason = failedFast ? "can not be fulfilled anymore" : "not fulfilled after " + this.elapsed + " ms";
+                LOGGER.debug("{} {} ({} attempts)", this.description, reason, this.attempts);
+                if (error != null) {
+                    throw error;
+                }
+                throw new AssertionError(this.description + " " + reason + " (" + this.attempts + " attempts). Last value: " + value);
+            }
+
+            long sleep = nextInterval;
+            if (this.jitter > 0) {
+                sleep -= (long) (sleep * this.jitter * ThreadLocalRandom.current().nextDouble());
+            }
+            Thread.sleep(Math.max(1, Math.min(sleep, remaining)));
+            nextInterval = Math.min(this.maxInterval, (long) (nextInterval * this.multiplier));
+        }
+    }
+
+    /**
+     * Exponential backoff for loops that wait for something to happen without a deadline (i.e. reading the output
+     * of a process until it finishes)
+     */
+    public static final class Backoff {
+
+        private final long initial;
+
+        private final long max;
+
+        private long current;
+
+        /**
+         * Default constructor.
+         *
+         * @param initial first interval in milliseconds
+         * @param max     max interval in milliseconds
+         */
+        public Backoff(long initial, long max) {
+            this.initial = initial;
+            this.max = max;
+            this.current = initial;
+        }
+
+        /**
+         * Sleeps the current interval, and doubles it for the next time
+         *
+         * @throws InterruptedException if interrupted
+         */
+        public void sleep() throws InterruptedException {
+            long interval = this.current;
+            this.current = Math.min(this.max, this.current * 2);
+            Thread.sleep(interval);
+        }
+
+        /**
+         * Restarts from the initial interval (i.e. after some progress)
+         */
+        public void reset() {
+            this.current = this.initial;
+        }
+
+        long getCurrent() {
+            return current;
+        }
+    }
+}
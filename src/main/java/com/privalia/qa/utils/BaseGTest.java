@@ -19,15 +19,22 @@ package com.privalia.qa.utils;
 import com.privalia.qa.cucumber.testng.CucumberOptionsImpl;
 import io.cucumber.testng.AbstractTestNGCucumberTests;
 import io.cucumber.testng.CucumberOptions;
+import io.cucumber.testng.FeatureWrapper;
+import io.cucumber.testng.Pickle;
+import io.cucumber.testng.PickleWrapper;
+import io.cucumber.testng.TestNGCucumberRunner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.ITestContext;
 import org.testng.annotations.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -43,22 +50,98 @@ abstract public class BaseGTest extends AbstractTestNGCucumberTests {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass().getCanonicalName());
 
+    private TestNGCucumberRunner testNGCucumberRunner;
+
     @BeforeSuite(alwaysRun = true)
     public void beforeGSuite(ITestContext context) {
     }
 
     /**
-     * Method executed after a suite.
+     * Method executed after a suite. Waits until all the evidences queued
+     * during the execution have been written to disk, closes the Appium sessions
+     * kept between scenarios and writes the cross browser report (if -DCROSS_BROWSER
+     * was used)
      *
      * @param context the context
      */
     @AfterSuite(alwaysRun = true)
     public void afterGSuite(ITestContext context) {
+        EvidenceWriter.INSTANCE.flush();
+        AppiumSessionPool.INSTANCE.closeAll();
+        RestConnectionPool.INSTANCE.close();
+        Cassette.closeAll();
+
+        String testSuffix = System.getProperty("TESTSUFFIX");
+        String targetExecutionsPath = "target/executions/";
+        if (testSuffix != null) {
+            targetExecutionsPath = targetExecutionsPath + testSuffix + "/";
+        }
+        try {
+            CrossBrowserExecution.INSTANCE.write(new File(targetExecutionsPath));
+        } catch (IOException e) {
+            logger.error("Could not write the cross browser report: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Overrides the parent method {@link AbstractTestNGCucumberTests#runScenario(PickleWrapper, FeatureWrapper)}.
+     *
+     * If the VM argument -DCROSS_BROWSER is given (i.e -DCROSS_BROWSER=chrome,firefox), scenarios with the @web
+     * tag are executed at the same time in all the given browsers (see {@link CrossBrowserExecution}). Any other
+     * scenario is executed as usual
+     *
+     * @param pickleWrapper  the scenario
+     * @param featureWrapper the feature
+     */
+    @Override
+    @Test(groups = "cucumber", description = "Runs Cucumber Scenarios", dataProvider = "scenarios")
+    public void runScenario(PickleWrapper pickleWrapper, FeatureWrapper featureWrapper) {
+        List<String> browsers = CrossBrowserExecution.getTargets();
+        Pickle pickle = pickleWrapper.getPickle();
+
+        if (browsers.isEmpty() || !pickle.getTags().contains("@web")) {
+            testNGCucumberRunner.runScenario(pickle);
+            return;
+        }
+
+        TestNGCucumberRunner runner = testNGCucumberRunner;
+        String scenario = pickle.getUri() + ":" + pickle.getLine() + " " + pickle.getName();
+        CrossBrowserExecution.INSTANCE.run(scenario, browsers, () -> runner.runScenario(pickle));
+    }
+
+    /**
+     * Overrides the parent method {@link AbstractTestNGCucumberTests#scenarios()}, so the scenarios are
+     * provided by the runner created in {@link #setUpClass()}
+     *
+     * @return two dimensional array of {@link PickleWrapper} scenarios with their {@link FeatureWrapper} feature
+     */
+    @Override
+    @DataProvider
+    public Object[][] scenarios() {
+        if (testNGCucumberRunner == null) {
+            return new Object[0][0];
+        }
+        return testNGCucumberRunner.provideScenarios();
+    }
+
+    /**
+     * Overrides the parent method {@link AbstractTestNGCucumberTests#tearDownClass()} and finishes the
+     * runner created in {@link #setUpClass()}
+     */
+    @Override
+    @AfterClass(alwaysRun = true)
+    public void tearDownClass() {
+        if (testNGCucumberRunner == null) {
+            return;
+        }
+        testNGCucumberRunner.finish();
     }
 
     /**
      * Overrides the parent method {@link AbstractTestNGCucumberTests#setUpClass()} and executes custom
-     * code before the  object is created
+     * code before the  object is created. The cucumber runner is created and held by this class (instead
+     * of the parent one), so it can be used to run the same scenario in several browsers (see
+     * {@link #runScenario(PickleWrapper, FeatureWrapper)})
      */
     @Override
     @BeforeClass(alwaysRun = true)
@@ -74,7 +157,7 @@ abstract public class BaseGTest extends AbstractTestNGCucumberTests {
         } catch (NoSuchFieldException e) {
             e.printStackTrace();
         }
-        super.setUpClass();
+        testNGCucumberRunner = new TestNGCucumberRunner(this.getClass());
     }
 
     /**
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WrapsDriver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Locates elements inside shadow DOM trees, using a chain of css selectors separated by {@code >>}. Every
+ * selector but the last one locates the shadow hosts, and the next selector is applied inside their shadow roots:
+ * <pre>
+ * my-app &gt;&gt; settings-panel &gt;&gt; input#name
+ * </pre>
+ * The whole chain is resolved in the browser with a single request
+ */
+public class ByShadowCss extends By {
+
+    static final String SCRIPT = "var selectors = arguments[0]; var roots = [arguments[1] || document];"
+            + "for (var i = 0; i < selectors.length; i++) {"
+            + "  var next = [];"
+            + "  for (var r = 0; r < roots.length; r++) {"
+            + "    var found = roots[r].querySelectorAll(selectors[i]);"
+            + "    for (var f = 0; f < found.length; f++) {"
+            + "      if (i === selectors.length - 1) { next.push(found[f]); } else if (found[f].shadowRoot) { next.push(found[f].shadowRoot); }"
+            + "    }"
+            + "  }"
+            + "  roots = next;"
+            + "}"
+            + "return roots;";
+
+    private final String path;
+
+    private final List<String> selectors;
+
+    /**
+     * Default constructor.
+     *
+     * @param path css selectors separated by {@code >>}
+     */
+    public ByShadowCss(String path) {
+        this.path = path;
+        this.selectors = split(path);
+    }
+
+    static List<String> split(String path) {
+        List<String> selectors = new ArrayList<>();
+        for (String selector : path.split(">>")) {
+            if (!selector.trim().isEmpty()) {
+                selectors.add(selector.trim());
+            }
+        }
+        if (selectors.isEmpty()) {
+            throw new IllegalArgumentException("Empty shadow locator: " + path);
+        }
+        return selectors;
+    }
+
+    @Override
+    public List<WebElement> findElements(SearchContext context) {
+        JavascriptExecutor executor;
+        WebElement root = null;
+        if (context instanceof JavascriptExecutor) {
+            executor = (JavascriptExecutor) context;
+        } else if (context instanceof WrapsDriver && ((WrapsDriver) context).getWrappedDriver() instanceof JavascriptExecutor) {
+            executor = (JavascriptExecutor) ((WrapsDriver) context).getWrappedDriver();
+            root = (WebElement) context;
+        } else {
+            throw new IllegalArgumentException("Shadow locators need a driver able to execute javascript");
+        }
+
+        Object result = executor.executeScript(SCRIPT, this.selectors, root);
+        List<WebElement> elements = new ArrayList<>();
+        if (result instanceof List) {
+            for (Object element : (List<?>) result) {
+                if (element instanceof WebElement) {
+                    elements.add((WebElement) element);
+                }
+            }
+        }
+        return elements;
+    }
+
+    @Override
+    public WebElement findElement(SearchContext context) {
+        List<WebElement> elements = this.findElements(context);
+        if (elements.isEmpty()) {
+            throw new NoSuchElementException("Cannot locate an element using " + this);
+        }
+        return elements.get(0);
+    }
+
+    @Override
+    public String toString() {
+        return "By.shadowCss: " + path;
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * File with the http requests and responses of an execution, used to replay the responses later without
+ * accessing the network.
+ * <p>
+ * In record mode, every request sent by the rest and soap steps is saved with its response. In replay mode, the
+ * response of a request is read from the cassette, and requests that were not recorded are sent to the network
+ * (or fail, in strict mode). Requests are matched by a key made of the configured match keys, and if the same
+ * request was recorded several times (i.e. polling a service), the responses are replayed in the same order. The
+ * replayed responses are counted by thread, so scenarios running in parallel replay the same cassette
+ * independently, and {@link #resetReplays()} must be called at the end of every scenario.
+ * <p>
+ * Every record of the file contains its key and the compressed response, and the keys are indexed when the file is
+ * opened, so only the responses used are read. The default cassette is configured with the following VM arguments:
+ * <pre>
+ * -DCASSETTE_MODE=record|replay                 enables the default cassette (disabled by default)
+ * -DCASSETTE_FILE=target/cassettes/default.cassette
+ * -DCASSETTE_MATCH=method,url,body              match keys: method, url, path, query, body, header:[name]
+ * -DCASSETTE_STRICT=true                        fails on requests that were not recorded (false by default)
+ * </pre>
+ */
+public final class Cassette {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Cassette.class);
+
+    private static final String MAGIC = "gingerspec-cassette-1";
+
+    private static final Map<String, Cassette> OPEN = new HashMap<>();
+
+    private static final ThreadLocal<Map<Cassette, Map<String, Integer>>> REPLAYED = ThreadLocal.withInitial(IdentityHashMap::new);
+
+    /**
+     * Mode of the cassette
+     */
+    public enum Mode {
+        RECORD, REPLAY
+    }
+
+    private final File file;
+
+    private final Mode mode;
+
+    private final List<String> matchKeys;
+
+    private final boolean strict;
+
+    private final Map<String, List<Long>> index = new HashMap<>();
+
+    private RandomAccessFile data;
+
+    private Cassette(File file, Mode mode, List<String> matchKeys, boolean strict) throws IOException {
+        this.file = file;
+        this.mode = mode;
+        this.matchKeys = matchKeys;
+        this.strict = strict;
+        if (mode == Mode.RECORD) {
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            this.data = new RandomAccessFile(file, "rw");
+            this.data.setLength(0);
+            this.data.writeUTF(MAGIC);
+        } else {
+            this.data = new RandomAccessFile(file, "r");
+            this.readIndex();
+        }
+    }
+
+    /**
+     * Returns the cassette configured with VM arguments
+     *
+     * @return the cassette, or null if -DCASSETTE_MODE is not set
+     */
+    public static Cassette getDefault() {
+        String mode = System.getProperty("CASSETTE_MODE", "");
+        if (mode.isEmpty() || "off".equalsIgnoreCase(mode)) {
+            return null;
+        }
+        return open(System.getProperty("CASSETTE_FILE", "target/cassettes/default.cassette"), Mode.valueOf(mode.toUpperCase(Locale.ROOT)));
+    }
+
+    /**
+     * Opens a cassette, using the match keys and strict mode configured with VM arguments. Cassettes are shared by all
+     * the scenarios, and a cassette in record mode is truncated only the first time it is opened
+     *
+     * @param path path of the file
+     * @param mode record or replay
+     * @return the cassette
+     */
+    public static synchronized Cassette open(String path, Mode mode) {
+        File file = new File(path).getAbsoluteFile();
+        Cassette cassette = OPEN.get(file.getPath());
+        if (cassette != null && cassette.mode == mode) {
+            return cassette;
+        }
+        if (cassette != null) {
+            cassette.close();
+        }
+        List<String> matchKeys = Arrays.asList(System.getProperty("CASSETTE_MATCH", "method,url,body").split("\\s*,\\s*"));
+        boolean strict = Boolean.parseBoolean(System.getProperty("CASSETTE_STRICT", "false"));
+        try {
+            cassette = new Cassette(file, mode, matchKeys, strict);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the cassette " + file.getPath(), e);
+        }
+        LOGGER.debug("Cassette {} opened in {} mode, matching by {}", file.getPath(), mode, matchKeys);
+        OPEN.put(file.getPath(), cassette);
+        return cassette;
+    }
+
+    /**
+     * Closes all the open cassettes
+     */
+    public static synchronized void closeAll() {
+        for (Cassette cassette : OPEN.values()) {
+            cassette.close();
+        }
+        OPEN.clear();
+    }
+
+    /**
+     * Forgets the responses replayed by the current thread, so the next scenario replays every request from its
+     * first recorded response
+     */
+    public static void resetReplays() {
+        REPLAYED.remove();
+    }
+
+    /**
+     * Returns true if the cassette is in record mode
+     *
+     * @return true if recording
+     */
+    public boolean isRecording() {
+        return mode == Mode.RECORD;
+    }
+
+    /**
+     * Returns true if the cassette is in replay mode
+     *
+     * @return true if replaying
+     */
+    public boolean isReplaying() {
+        return mode == Mode.REPLAY;
+    }
+
+    /**
+     * Builds the key of a request with the configured match keys
+     *
+     * @param method  http method
+     * @param url     full url, with the query string
+     * @param headers request headers
+     * @param body    request body (can be null)
+     * @return key of the request
+     */
+    public String key(String method, String url, Map<String, String> headers, String body) {
+        int queryStart = url.indexOf('?');
+        StringBuilder key = new StringBuilder();
+        for (String matchKey : this.matchKeys) {
+            if (key.length() > 0) {
+                key.append(' ');
+            }
+            switch (matchKey) {
+                case "method":
+                    key.append(method.toUpperCase(Locale.ROOT));
+                    break;
+                case "url":
+                    key.append(url);
+                    break;
+                case "path":
+                    String withoutQuery = queryStart < 0 ? url : url.substring(0, queryStart);
+                    int pathStart = withoutQuery.indexOf('/', withoutQuery.indexOf("://") + 3);
+                    key.append(pathStart < 0 || !withoutQuery.contains("://") ? withoutQuery : withoutQuery.substring(pathStart));
+                    break;
+                case "query":
+                    key.append(queryStart < 0 ? "" : url.substring(queryStart + 1));
+                    break;
+                case "body":
+                    key.append(body == null || body.isEmpty() ? "-" : sha256(body).substring(0, 16));
+                    break;
+                default:
+                    if (!matchKey.startsWith("header:")) {
+                        throw new IllegalArgumentException("Unknown cassette match key: " + matchKey);
+                    }
+                    String name = matchKey.substring("header:".length());
+                    String value = null;
+                    for (Map.Entry<String, String> header : headers.entrySet()) {
+                        if (header.getKey().equalsIgnoreCase(name)) {
+                            value = header.getValue();
+                        }
+                    }
+                    key.append(name).append('=').append(value);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Saves the response of a request
+     *
+     * @param key     key of the request
+     * @param status  status code of the response
+     * @param headers headers of the response
+     * @param body    body of the response
+     */
+    public synchronized void record(String key, int status, List<Map.Entry<String, String>> headers, byte[] body) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+                out.writeInt(status);
+                out.writeInt(headers.size());
+                for (Map.Entry<String, String> header : headers) {
+                    out.writeUTF(header.getKey());
+                    out.writeUTF(header.getValue());
+                }
+                out.writeInt(body.length);
+                out.write(body);
+            }
+            this.data.seek(this.data.length());
+            this.data.writeUTF(key);
+            this.data.writeInt(bytes.size());
+            this.index.computeIfAbsent(key, k -> new ArrayList<>()).add(this.data.getFilePointer());
+            this.data.write(bytes.toByteArray());
+            LOGGER.debug("Recorded {} ({} bytes)", key, body.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write in the cassette " + this.file.getPath(), e);
+        }
+    }
+
+    /**
+     * Returns the recorded response of a request. If the request was recorded several times, every call of the same
+     * scenario returns the next response, and the last one is repeated
+     *
+     * @param key key of the request
+     * @return the response, or null if the request was not recorded (and the cassette is not strict)
+     */
+    public synchronized Recording replay(String key) {
+        List<Long> offsets = this.index.get(key);
+        if (offsets == null) {
+            if (this.strict) {
+                throw new AssertionError("The request '" + key + "' was not recorded in the cassette " + this.file.getPath());
+            }
+            LOGGER.warn("The request '{}' was not recorded in the cassette {}. Sending it", key, this.file.getPath());
+            return null;
+        }
+        int count = REPLAYED.get().computeIfAbsent(this, cassette -> new HashMap<>()).merge(key, 1, Integer::sum);
+        long offset = offsets.get(Math.min(count, offsets.size()) - 1);
+        try {
+            this.data.seek(offset - 4);
+            byte[] bytes = new byte[this.data.readInt()];
+            this.data.readFully(bytes);
+            try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)))) {
+                int status = in.readInt();
+                int headerCount = in.readInt();
+                List<Map.Entry<String, String>> headers = new ArrayList<>(headerCount);
+                for (int i = 0; i < headerCount; i++) {
+                    headers.add(new AbstractMap.SimpleImmutableEntry<>(in.readUTF(), in.readUTF()));
+                }
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                LOGGER.debug("Replayed {} ({} bytes)", key, body.length);
+                return new Recording(status, headers, body);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the cassette " + this.file.getPath(), e);
+        }
+    }
+
+    /**
+     * Closes the file of the cassette
+     */
+    public synchronized void close() {
+        try {
+            if (this.data != null) {
+                this.data.close();
+                this.data = null;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not close the cassette {}: {}", this.file.getPath(), e.getMessage());
+        }
+    }
+
+    private void readIndex() throws IOException {
+        if (!MAGIC.equals(this.data.readUTF())) {
+            throw new IOException(this.file.getPath() + " is not a cassette");
+        }
+        try {
+            while (this.data.getFilePointer() < this.data.length()) {
+                String key = this.data.readUTF();
+                int length = this.data.readInt();
+                if (this.data.getFilePointer() + length > this.data.length()) {
+                    throw new EOFException();
+                }
+                this.index.computeIfAbsent(key, k -> new ArrayList<>()).add(this.data.getFilePointer());
+                this.data.seek(this.data.getFilePointer() + length);
+            }
+        } catch (EOFException e) {
+            LOGGER.warn("The cassette {} is truncated, the last request was ignored", this.file.getPath());
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Response read from a cassette
+     */
+    public static final class Recording {
+
+        private final int status;
+
+        private final List<Map.Entry<String, String>> headers;
+
+        private final byte[] body;
+
+        Recording(int status, List<Map.Entry<String, String>> headers, byte[] body) {
+            this.status = status;
+            this.headers = Collections.unmodifiableList(headers);
+            this.body = body;
+        }
+
+        /**
+         * Status code of the response
+         *
+         * @return status code
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Headers of the response, in the order received
+         *
+         * @return headers
+         */
+        public List<Map.Entry<String, String>> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * Body of the response
+         *
+         * @return body
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Body of the response as an UTF-8 string
+         *
+         * @return body
+         */
+        public String getBodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import io.restassured.builder.ResponseBuilder;
+import io.restassured.filter.Filter;
+import io.restassured.filter.FilterContext;
+import io.restassured.http.Header;
+import io.restassured.http.Headers;
+import io.restassured.response.Response;
+import io.restassured.specification.FilterableRequestSpecification;
+import io.restassured.specification.FilterableResponseSpecification;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * RestAssured filter that records the requests in a cassette, or replays their responses from it
+ *
+ * @see Cassette
+ */
+public class CassetteFilter implements Filter {
+
+    /* Headers that do not apply to the recorded body (it is saved decompressed and complete) */
+    private static final List<String> SKIPPED_HEADERS = Arrays.asList("content-length", "content-encoding", "transfer-encoding");
+
+    private final Supplier<Cassette> cassette;
+
+    /**
+     * Default constructor.
+     *
+     * @param cassette returns the cassette to use in every request (or null to send the request as usual)
+     */
+    public CassetteFilter(Supplier<Cassette> cassette) {
+        this.cassette = cassette;
+    }
+
+    @Override
+    public Response filter(FilterableRequestSpecification requestSpec, FilterableResponseSpecification responseSpec, FilterContext ctx) {
+        Cassette current = this.cassette.get();
+        if (current == null) {
+            return ctx.next(requestSpec, responseSpec);
+        }
+
+        Map<String, String> requestHeaders = new LinkedHashMap<>();
+        for (Header header : requestSpec.getHeaders()) {
+            requestHeaders.put(header.getName(), header.getValue());
+        }
+        String requestBody = bodyKey(requestSpec.getBody());
+        String key = current.key(requestSpec.getMethod(), requestSpec.getURI(), requestHeaders, requestBody);
+
+        if (current.isReplaying()) {
+            Cassette.Recording recording = current.replay(key);
+            if (recording != null) {
+                ResponseBuilder builder = new ResponseBuilder().setStatusCode(recording.getStatus()).setStatusLine("HTTP/1.1 " + recording.getStatus());
+                List<Header> headers = new ArrayList<>();
+                for (Map.Entry<String, String> header : recording.getHeaders()) {
+                    headers.add(new Header(header.getKey(), header.getValue()));
+                    if ("content-type".equalsIgnoreCase(header.getKey())) {
+                        builder.setContentType(header.getValue());
+                    }
+                }
+                return builder.setHeaders(new Headers(headers)).setBody(recording.getBody()).build();
+            }
+            return ctx.next(requestSpec, responseSpec);
+        }
+
+        Response response = ctx.next(requestSpec, responseSpec);
+        List<Map.Entry<String, String>> headers = new ArrayList<>();
+        for (Header header : response.getHeaders()) {
+            if (!SKIPPED_HEADERS.contains(header.getName().toLowerCase())) {
+                headers.add(new AbstractMap.SimpleImmutableEntry<>(header.getName(), header.getValue()));
+            }
+        }
+        current.record(key, response.getStatusCode(), headers, response.asByteArray());
+        return response;
+    }
+
+    /**
+     * Text of the request body used to match the recordings. Files are matched by name and size, and streams (that
+     * can not be read twice) by type
+     */
+    private static String bodyKey(Object body) {
+        if (body == null) {
+            return null;
+        }
+        if (body instanceof byte[]) {
+            return new String((byte[]) body, StandardCharsets.UTF_8);
+        }
+        if (body instanceof File) {
+            return "file:" + ((File) body).getName() + ":" + ((File) body).length();
+        }
+        if (body instanceof InputStream) {
+            return body.getClass().getName();
+        }
+        return body.toString();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.openqa.selenium.HasCapabilities;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.json.Json;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.http.HttpClient;
+import org.openqa.selenium.remote.http.HttpMethod;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.openqa.selenium.remote.http.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Executes Chrome DevTools protocol commands in chromium based browsers (chrome, edge, opera).
+ * <p>
+ * The selenium version used does not include a DevTools client, so the commands are sent to the
+ * endpoint /session/:sessionId/goog/cdp/execute exposed by chromedriver (also reachable through
+ * a selenium grid). Only commands are supported, DevTools events can not be received this way.
+ */
+public final class ChromeDevTools {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChromeDevTools.class);
+
+    private static final Json JSON = new Json();
+
+    private static final HttpClient.Factory CLIENT_FACTORY = HttpClient.Factory.createDefault();
+
+    private static final Map<String, HttpClient> CLIENTS = new ConcurrentHashMap<>();
+
+    private ChromeDevTools() {
+    }
+
+    /**
+     * Checks if the driver is connected to a chromium based browser
+     *
+     * @param driver driver used for testing
+     * @return true if DevTools commands can be sent to the browser
+     */
+    public static boolean isSupported(WebDriver driver) {
+        if (!(driver instanceof RemoteWebDriver) || !(driver instanceof HasCapabilities)) {
+            return false;
+        }
+        if (!(((RemoteWebDriver) driver).getCommandExecutor() instanceof HttpCommandExecutor)) {
+            return false;
+        }
+        String browserName = ((HasCapabilities) driver).getCapabilities().getBrowserName();
+        if (browserName == null) {
+            return false;
+        }
+        browserName = browserName.toLowerCase(Locale.ROOT);
+        return browserName.contains("chrome") || browserName.contains("edge") || browserName.contains("opera");
+    }
+
+    /**
+     * Executes a DevTools command
+     *
+     * @param driver  driver used for testing
+     * @param command name of the command (i.e. Page.captureScreenshot)
+     * @param params  parameters of the command
+     * @return result of the command
+     * @throws IOException if the command failed
+     */
+    public static Map<String, Object> execute(WebDriver driver, String command, Map<String, Object> params) throws IOException {
+        if (!isSupported(driver)) {
+            throw new IOException("DevTools commands are not supported by the current browser");
+        }
+
+        RemoteWebDriver remoteDriver = (RemoteWebDriver) driver;
+        HttpClient client = getClient(((HttpCommandExecutor) remoteDriver.getCommandExecutor()).getAddressOfRemoteServer());
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("cmd", command);
+        body.put("params", params);
+
+        HttpRequest request = new HttpRequest(HttpMethod.POST, "/session/" + remoteDriver.getSessionId() + "/goog/cdp/execute");
+        request.setHeader("Content-Type", "application/json; charset=utf-8");
+        request.setContent(JSON.toJson(body).getBytes(StandardCharsets.UTF_8));
+
+        HttpResponse response = client.execute(request);
+        if (response.getStatus() != 200) {
+            throw new IOException("DevTools command " + command + " failed with status " + response.getStatus() + ": " + response.getContentString());
+        }
+
+        Map<String, Object> content = JSON.toType(response.getContentString(), Json.MAP_TYPE);
+        return (Map<String, Object>) content.get("value");
+    }
+
+    /**
+     * Returns the client of the given remote server. Clients are created once per server, from the same factory,
+     * so they share its connection pool
+     */
+    private static HttpClient getClient(URL remoteServer) {
+        return CLIENTS.computeIfAbsent(remoteServer.toString(), address -> CLIENT_FACTORY.createClient(remoteServer));
+    }
+
+    /**
+     * Blocks the requests to any url that matches the given patterns (wildcards * are allowed).
+     * An empty list removes the blocking
+     *
+     * @param driver   driver used for testing
+     * @param patterns url patterns (i.e. *google-analytics.com*, *.woff2)
+     * @throws IOException if the command failed
+     */
+    public static void setBlockedUrls(WebDriver driver, List<String> patterns) throws IOException {
+        execute(driver, "Network.enable", new HashMap<>());
+        Map<String, Object> params = new HashMap<>();
+        params.put("urls", patterns);
+        execute(driver, "Network.setBlockedURLs", params);
+        LOGGER.debug("Blocked urls: {}", patterns);
+    }
+
+    /**
+     * Emulates the given network conditions in the browser
+     *
+     * @param driver  driver used for testing
+     * @param profile network conditions
+     * @throws IOException if the command failed
+     */
+    public static void emulateNetworkConditions(WebDriver driver, NetworkProfile profile) throws IOException {
+        execute(driver, "Network.enable", new HashMap<>());
+        Map<String, Object> params = new HashMap<>();
+        params.put("offline", profile.isOffline());
+        params.put("latency", profile.getLatency());
+        params.put("downloadThroughput", profile.getDownloadThroughput());
+        params.put("uploadThroughput", profile.getUploadThroughput());
+        execute(driver, "Network.emulateNetworkConditions", params);
+        LOGGER.debug("Emulating network conditions: {}", profile);
+    }
+}
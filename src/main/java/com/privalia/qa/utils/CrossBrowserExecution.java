@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.commons.text.StringEscapeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.SkipException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes a scenario concurrently in several browsers (Singleton).
+ * <p>
+ * The browsers are given with -DCROSS_BROWSER as a comma separated list of browser names (i.e. chrome,firefox) or
+ * paths to capabilities files (i.e. caps/safari.json, used as -DCAPABILITIES for that run, so a Selenium grid is
+ * needed). Every browser runs the scenario in its own thread, so it gets its own driver and its own copy of the
+ * thread properties, and the scenario takes as long as the slowest browser.
+ * <p>
+ * The result of every scenario in every browser is kept, and written at the end of the execution as a single report
+ * with a column per browser in target/executions/cross-browser-report.html (and .json)
+ */
+public enum CrossBrowserExecution {
+    INSTANCE;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrossBrowserExecution.class);
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "cross-browser-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, Map<String, Result>> results = new LinkedHashMap<>();
+
+    private final Set<String> targets = new LinkedHashSet<>();
+
+    /**
+     * Returns the browsers configured with -DCROSS_BROWSER
+     *
+     * @return browser names or capabilities files, empty if not configured
+     */
+    public static List<String> getTargets() {
+        List<String> targets = new ArrayList<>();
+        for (String target : System.getProperty("CROSS_BROWSER", "").split(",")) {
+            if (!target.trim().isEmpty()) {
+                targets.add(target.trim());
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Returns the name used in the thread properties and in the report for a browser
+     *
+     * @param target browser name or capabilities file
+     * @return name of the browser
+     */
+    static String getLabel(String target) {
+        if (target.toLowerCase().endsWith(".json")) {
+            String name = new File(target).getName();
+            return name.substring(0, name.length() - ".json".length());
+        }
+        return target.toLowerCase();
+    }
+
+    /**
+     * Runs the scenario in all the given browsers at the same time, and waits until all of them finish.
+     * The thread properties of the calling thread are copied to every browser thread, with browserName
+     * (or CAPABILITIES) set for the browser.
+     *
+     * @param scenario name of the scenario (used in the report)
+     * @param targets  browser names or capabilities files
+     * @param runnable code that runs the scenario in the current thread
+     * @throws AssertionError if the scenario fails in any browser
+     * @throws SkipException  if the scenario was skipped in every browser
+     */
+    public void run(String scenario, List<String> targets, Runnable runnable) {
+        Properties properties = ThreadProperty.snapshot();
+        Map<String, Future<Result>> runs = new LinkedHashMap<>();
+
+        for (String target : targets) {
+            String label = getLabel(target);
+            runs.put(label, this.executor.submit(() -> {
+                ThreadProperty.restore(properties);
+                if (target.toLowerCase().endsWith(".json")) {
+                    ThreadProperty.set("CAPABILITIES", target);
+                } else {
+                    ThreadProperty.set("browserName", target);
+                }
+                long start = System.currentTimeMillis();
+                try {
+                    runnable.run();
+                    return new Result(Result.PASSED, System.currentTimeMillis() - start, null);
+                } catch (SkipException e) {
+                    return new Result(Result.SKIPPED, System.currentTimeMillis() - start, e);
+                } catch (Throwable e) {
+                    return new Result(Result.FAILED, System.currentTimeMillis() - start, e);
+                }
+            }));
+        }
+
+        Map<String, Result> scenarioResults = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<Result>> run : runs.entrySet()) {
+            try {
+                scenarioResults.put(run.getKey(), run.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                scenarioResults.put(run.getKey(), new Result(Result.FAILED, 0, e));
+            } catch (ExecutionException e) {
+                scenarioResults.put(run.getKey(), new Result(Result.FAILED, 0, e.getCause()));
+            }
+        }
+
+        this.record(scenario, scenarioResults);
+        assertResults(scenario, scenarioResults);
+    }
+
+    static void assertResults(String scenario, Map<String, Result> scenarioResults) {
+        StringBuilder failures = new StringBuilder();
+        Throwable firstFailure = null;
+        int failed = 0;
+        SkipException skip = null;
+        boolean executed = false;
+
+        for (Map.Entry<String, Result> result : scenarioResults.entrySet()) {
+            LOGGER.debug("Scenario '{}' in {}: {} ({} ms)", scenario, result.getKey(), result.getValue().getStatus(), result.getValue().getDuration());
+            switch (result.getValue().getStatus()) {
+                case Result.FAILED:
+                    failures.append("\n").append(result.getKey()).append(": ").append(result.getValue().getError());
+                    failed++;
+                    if (firstFailure == null) {
+                        firstFailure = result.getValue().cause;
+                    }
+                    break;
+                case Result.SKIPPED:
+                    skip = (SkipException) result.getValue().cause;
+                    break;
+                default:
+                    executed = true;
+                    break;
+            }
+        }
+
+        if (firstFailure != null) {
+            throw new AssertionError("Scenario '" + scenario + "' failed in " + failed + " browser(s):" + failures, firstFailure);
+        }
+        if (!executed && skip != null) {
+            throw skip;
+        }
+    }
+
+    private synchronized void record(String scenario, Map<String, Result> scenarioResults) {
+        this.targets.addAll(scenarioResults.keySet());
+        this.results.computeIfAbsent(scenario, k -> new LinkedHashMap<>()).putAll(scenarioResults);
+    }
+
+    /**
+     * Returns the results of every scenario executed so far, by scenario and browser
+     *
+     * @return results
+     */
+    public synchronized Map<String, Map<String, Result>> getResults() {
+        Map<String, Map<String, Result>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Result>> scenario : this.results.entrySet()) {
+            copy.put(scenario.getKey(), new LinkedHashMap<>(scenario.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Writes the report as an html table (a row per scenario and a column per browser) in the given folder,
+     * together with the same information in json. Nothing is written if no scenario was executed in several browsers
+     *
+     * @param directory destination folder
+     * @throws IOException if the report could not be written
+     */
+    public void write(File directory) throws IOException {
+        Map<String, Map<String, Result>> report = this.getResults();
+        if (report.isEmpty()) {
+            return;
+        }
+        List<String> browsers;
+        synchronized (this) {
+            browsers = new ArrayList<>(this.targets);
+        }
+
+        directory.mkdirs();
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(directory, "cross-browser-report.json"), report);
+
+        StringBuilder html = new StringBuilder("<html><head><meta charset=\"UTF-8\"><title>Cross browser report</title><style>"
+                + "table{border-collapse:collapse;font-family:sans-serif}td,th{border:1px solid #ccc;padding:4px 8px}"
+                + ".PASSED{background:#c8e6c9}.FAILED{background:#ffcdd2}.SKIPPED{background:#fff9c4}</style></head><body><table><tr><th>Scenario</th>");
+        for (String browser : browsers) {
+            html.append("<th>").append(StringEscapeUtils.escapeHtml4(browser)).append("</th>");
+        }
+        html.append("</tr>");
+        for (Map.Entry<String, Map<String, Result>> scenario : report.entrySet()) {
+            html.append("<tr><td>").append(StringEscapeUtils.escapeHtml4(scenario.getKey())).append("</td>");
+            for (String browser : browsers) {
+                Result result = scenario.getValue().get(browser);
+                if (result == null) {
+                    html.append("<td></td>");
+                } else {
+                    html.append("<td class=\"").append(result.getStatus()).append("\" title=\"")
+                            .append(StringEscapeUtils.escapeHtml4(result.getError() == null ? "" : result.getError())).append("\">")
+                            .append(result.getStatus()).append(" (").append(result.getDuration()).append(" ms)</td>");
+                }
+            }
+            html.append("</tr>");
+        }
+        html.append("</table></body></html>");
+        Files.write(new File(directory, "cross-browser-report.html").toPath(), html.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Removes all the results
+     */
+    public synchronized void clear() {
+        this.results.clear();
+        this.targets.clear();
+    }
+
+    /**
+     * Result of a scenario in a browser
+     */
+    public static class Result {
+
+        public static final String PASSED = "PASSED";
+
+        public static final String FAILED = "FAILED";
+
+        public static final String SKIPPED = "SKIPPED";
+
+        private final String status;
+
+        private final long duration;
+
+        private final Throwable cause;
+
+        Result(String status, long duration, Throwable cause) {
+            this.status = status;
+            this.duration = duration;
+            this.cause = cause;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public String getError() {
+            return cause == null ? null : cause.toString();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WrapsDriver;
+import org.openqa.selenium.WrapsElement;
+import org.openqa.selenium.interactions.Locatable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the elements located in the current page, so consecutive steps over the same element (i.e. click, type,
+ * and verify its text) do not locate it again in the browser.
+ * <p>
+ * The cached elements are wrapped in a proxy: if the browser reports that the element is no longer attached to the
+ * page (StaleElementReferenceException), the element is located again with the same locator and the operation
+ * is retried once. The cache only detects elements removed from the page, not elements added to it, so it must
+ * be invalidated after navigating and when the current window or frame changes (the elements of other browsing
+ * contexts can not be reused). After any step that may add or remove elements (click, type, execute javascript,
+ * etc), only the locators that matched several elements are discarded with {@link #invalidateLists()}, since the
+ * position of every element in the list may change. A single element is still the same one if it remains in the
+ * page, and it is located again if it was removed.
+ */
+public class ElementCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ElementCache.class);
+
+    private final Map<String, List<WebElement>> elements = new HashMap<>();
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    /**
+     * Returns the elements located with the given locator. The elements are only located in the browser if
+     * they are not in the cache
+     *
+     * @param method  locator method (id, css, xpath, etc)
+     * @param element locator
+     * @param locator locates the elements in the browser
+     * @return elements
+     */
+    public List<WebElement> locate(String method, String element, Supplier<List<WebElement>> locator) {
+        List<WebElement> cached = this.elements.get(key(method, element));
+        if (cached != null) {
+            this.hits++;
+            LOGGER.debug("Reusing {} element(s) located with '{}' as '{}'", cached.size(), element, method);
+            return cached;
+        }
+        this.misses++;
+        return this.put(method, element, locator.get(), locator);
+    }
+
+    /**
+     * Stores elements just located with the given locator, replacing any previous one. Empty results are not cached
+     *
+     * @param method   locator method (id, css, xpath, etc)
+     * @param element  locator
+     * @param located  elements located
+     * @param locator  locates the elements again if they become stale
+     * @return the elements, wrapped so they are located again when stale
+     */
+    public List<WebElement> put(String method, String element, List<WebElement> located, Supplier<List<WebElement>> locator) {
+        if (located == null || located.isEmpty()) {
+            this.elements.remove(key(method, element));
+            return located;
+        }
+
+        Reference reference = new Reference(located, locator);
+        List<WebElement> proxies = new ArrayList<>();
+        for (int i = 0; i < located.size(); i++) {
+            proxies.add(proxy(reference, i));
+        }
+        proxies = Collections.unmodifiableList(proxies);
+        this.elements.put(key(method, element), proxies);
+        return proxies;
+    }
+
+    /**
+     * Removes all the elements (i.e. after navigating, or switching to another window or frame)
+     */
+    public void invalidate() {
+        if (!this.elements.isEmpty()) {
+            LOGGER.debug("Discarding {} cached locator(s) ({} hits, {} misses so far)", this.elements.size(), this.hits, this.misses);
+            this.elements.clear();
+        }
+    }
+
+    /**
+     * Removes the locators that matched several elements (i.e. after a step that may add or remove elements of the
+     * page). The locators of a single element are kept
+     */
+    public void invalidateLists() {
+        int before = this.elements.size();
+        this.elements.values().removeIf(cached -> cached.size() > 1);
+        if (this.elements.size() < before) {
+            LOGGER.debug("Discarding {} cached locator(s) of several elements", before - this.elements.size());
+        }
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    private static String key(String method, String element) {
+        return method + ":" + element;
+    }
+
+    private static WebElement proxy(Reference reference, int index) {
+        InvocationHandler handler = (proxy, method, args) -> handle(reference, index, method, args);
+        return (WebElement) Proxy.newProxyInstance(ElementCache.class.getClassLoader(),
+                new Class<?>[]{WebElement.class, WrapsElement.class, WrapsDriver.class, Locatable.class, TakesScreenshot.class}, handler);
+    }
+
+    private static Object handle(Reference reference, int index, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == WrapsElement.class) {
+            return reference.get(index);
+        }
+        if (method.getDeclaringClass() == Object.class) {
+            return invoke(method, reference.get(index), args);
+        }
+        try {
+            return invoke(method, reference.get(index), args);
+        } catch (StaleElementReferenceException e) {
+            if (!reference.relocate(index)) {
+                throw e;
+            }
+            LOGGER.debug("Element was stale, located again");
+            return invoke(method, reference.get(index), args);
+        }
+    }
+
+    private static Object invoke(Method method, WebElement target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Current elements of a locator, shared by all the proxies of the same result
+     */
+    private static final class Reference {
+
+        private final Supplier<List<WebElement>> locator;
+
+        private List<WebElement> elements;
+
+        private Reference(List<WebElement> elements, Supplier<List<WebElement>> locator) {
+            this.elements = new ArrayList<>(elements);
+            this.locator = locator;
+        }
+
+        private WebElement get(int index) {
+            return this.elements.get(index);
+        }
+
+        private boolean relocate(int index) {
+            List<WebElement> located = this.locator.get();
+            if (located == null || located.size() <= index) {
+                return false;
+            }
+            this.elements = new ArrayList<>(located);
+            return true;
+        }
+    }
+}
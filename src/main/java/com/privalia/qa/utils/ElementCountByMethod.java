@@ -70,6 +70,9 @@ public class ElementCountByMethod implements ExpectedCondition<List<WebElement>>
             wel = driver.findElements(By.xpath(element));
         } else if ("css".equals(method)) {
             wel = driver.findElements(By.cssSelector(element));
+        } else if ("shadow".equals(method)) {
+            logger.debug("Locating {} by shadow css", element);
+            wel = driver.findElements(new ByShadowCss(element));
         } else {
             fail("Unknown search method: " + method);
         }
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Aggregates the latency, status codes and payload sizes of the rest requests sent during the whole execution,
+ * by endpoint (Singleton).
+ * <p>
+ * Endpoints are identified by method and path template: the query string is removed and the path parameters are
+ * replaced by placeholders (i.e. GET /users/123/orders/9f1c...e2 is counted as GET /users/{id}/orders/{uuid}).
+ * The report is written at the end of the execution to target/executions/endpoint-latency-report.json. Latencies
+ * are aggregated in a {@link LatencyHistogram} per endpoint, so the memory used does not grow with the number of
+ * requests. If a baseline file (the report of a previous execution) is given, the p95 latency of every endpoint is
+ * compared against it, and endpoints whose p95 is slower than the baseline beyond the thresholds are flagged as
+ * regressions. If the given baseline does not exist, it is created with this execution. An existing baseline is only
+ * replaced on demand, and only when the execution has no regressions:
+ * <pre>
+ * -DLATENCY_BASELINE=path                      baseline file (no baseline by default)
+ * -DLATENCY_BASELINE_UPDATE=true               replaces the baseline with this execution (false by default)
+ * -DLATENCY_REGRESSION_THRESHOLD=20            max increase of the p95 (%)
+ * -DLATENCY_REGRESSION_MIN_MS=5                increases smaller than this (ms) are ignored
+ * </pre>
+ */
+public enum EndpointLatencyReport {
+    INSTANCE;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EndpointLatencyReport.class);
+
+    private static final Pattern NUMBER = Pattern.compile("^-?\\d+(\\.\\d+)?$");
+
+    private static final Pattern UUID = Pattern.compile("^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
+
+    private static final Pattern HASH = Pattern.compile("^(?=.*\\d)[0-9a-fA-F]{16,}$");
+
+    private static final Pattern DATE = Pattern.compile("^\\d{4}-\\d{2}-\\d{2}([T ][0-9:.]+Z?)?$");
+
+    private static final Pattern TOKEN = Pattern.compile("^(?=.*\\d)(?=.*[a-zA-Z])[A-Za-z0-9_-]{12,}$");
+
+    private final Map<String, Endpoint> endpoints = new TreeMap<>();
+
+    /**
+     * Adds a request to the report
+     *
+     * @param method http method
+     * @param path   path of the request, with the query string (if any)
+     * @param status status code of the response
+     * @param millis duration of the request in milliseconds
+     * @param bytes  size of the response body, or -1 if unknown
+     */
+    public void record(String method, String path, int status, long millis, long bytes) {
+        Endpoint endpoint;
+        synchronized (this.endpoints) {
+            endpoint = this.endpoints.computeIfAbsent(method.toUpperCase() + " " + template(path), k -> new Endpoint());
+        }
+        endpoint.record(status, millis, bytes);
+    }
+
+    /**
+     * Replaces the path parameters with placeholders: numbers with {id}, UUIDs with {uuid}, dates with {date},
+     * hexadecimal hashes with {hash} and other long alphanumeric identifiers with {token}. The query string is removed
+     *
+     * @param path path of the request
+     * @return path template
+     */
+    public static String template(String path) {
+        String[] segments = path.split("[?#]", 2)[0].split("/", -1);
+        StringBuilder template = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                template.append('/');
+            }
+            String segment = segments[i];
+            if (NUMBER.matcher(segment).matches()) {
+                template.append("{id}");
+            } else if (UUID.matcher(segment).matches()) {
+                template.append("{uuid}");
+            } else if (DATE.matcher(segment).matches()) {
+                template.append("{date}");
+            } else if (HASH.matcher(segment).matches()) {
+                template.append("{hash}");
+            } else if (TOKEN.matcher(segment).matches()) {
+                template.append("{token}");
+            } else {
+                template.append(segment);
+            }
+        }
+        return template.toString();
+    }
+
+    /**
+     * Returns the summary of the requests collected so far. Latencies are in milliseconds
+     *
+     * @return summary by endpoint
+     */
+    public Map<String, Map<String, Object>> getSummary() {
+        Map<String, Map<String, Object>> summary = new LinkedHashMap<>();
+        synchronized (this.endpoints) {
+            for (Map.Entry<String, Endpoint> endpoint : this.endpoints.entrySet()) {
+                summary.put(endpoint.getKey(), endpoint.getValue().summary());
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Compares the p95 latency of every endpoint against the baseline
+     *
+     * @param summary   summary of this execution (as returned by {@link #getSummary()})
+     * @param baseline  summary of the baseline execution
+     * @param threshold max increase of the p95 (%)
+     * @param minMillis increases smaller than this are ignored
+     * @return description of the endpoints that regressed
+     */
+    public static List<String> compare(Map<String, Map<String, Object>> summary, JsonNode baseline, double threshold, double minMillis) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Object>> endpoint : summary.entrySet()) {
+            JsonNode previous = baseline.path(endpoint.getKey()).path("p95");
+            if (!previous.isNumber()) {
+                continue;
+            }
+            double p95 = (Double) endpoint.getValue().get("p95");
+            double baselineP95 = previous.asDouble();
+            endpoint.getValue().put("baselineP95", baselineP95);
+            if (p95 - baselineP95 >= minMillis && p95 > baselineP95 * (1 + threshold / 100)) {
+                String increase = baselineP95 > 0 ? String.format("+%.0f%%", (p95 / baselineP95 - 1) * 100) : "new latency";
+                regressions.add(String.format("%s: p95 %.1f ms (baseline %.1f ms, %s)", endpoint.getKey(), p95, baselineP95, increase));
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Writes the report as json, comparing it with the baseline given with -DLATENCY_BASELINE (if any). Nothing is
+     * written if no request was sent
+     *
+     * @param directory directory of the report
+     * @return description of the endpoints that regressed
+     * @throws IOException if the report or the baseline could not be read or written
+     */
+    public List<String> write(File directory) throws IOException {
+        String baseline = System.getProperty("LATENCY_BASELINE", "");
+        return this.write(directory, baseline.isEmpty() ? null : new File(baseline));
+    }
+
+    /**
+     * Writes the report as json, comparing it with the baseline (if it exists). If the baseline does not exist,
+     * it is created with this execution. It is only replaced with -DLATENCY_BASELINE_UPDATE=true, and if no
+     * endpoint regressed. Nothing is written if no request was sent
+     *
+     * @param directory directory of the report
+     * @param baseline  baseline file, or null to skip the comparison
+     * @return description of the endpoints that regressed
+     * @throws IOException if the report or the baseline could not be read or written
+     */
+    public List<String> write(File directory, File baseline) throws IOException {
+        Map<String, Map<String, Object>> summary = this.getSummary();
+        List<String> regressions = new ArrayList<>();
+        if (summary.isEmpty()) {
+            return regressions;
+        }
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        boolean exists = baseline != null && baseline.exists();
+
+        if (exists) {
+            double threshold = Double.parseDouble(System.getProperty("LATENCY_REGRESSION_THRESHOLD", "20"));
+            double minMillis = Double.parseDouble(System.getProperty("LATENCY_REGRESSION_MIN_MS", "5"));
+            regressions = compare(summary, mapper.readTree(baseline).path("endpoints"), threshold, minMillis);
+            for (String regression : regressions) {
+                LOGGER.warn("Latency regression in {}", regression);
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("endpoints", summary);
+        report.put("regressions", regressions);
+        directory.mkdirs();
+        mapper.writeValue(new File(directory, "endpoint-latency-report.json"), report);
+
+        boolean update = Boolean.parseBoolean(System.getProperty("LATENCY_BASELINE_UPDATE", "false"));
+        if (exists && update && !regressions.isEmpty()) {
+            LOGGER.warn("The latency baseline {} is not updated, since some endpoints regressed", baseline.getPath());
+        }
+        if (baseline != null && (!exists || (update && regressions.isEmpty()))) {
+            LOGGER.info("Saving the latency of this execution as baseline in {}", baseline.getPath());
+            if (baseline.getParentFile() != null) {
+                baseline.getParentFile().mkdirs();
+            }
+            for (Map<String, Object> endpoint : summary.values()) {
+                endpoint.remove("baselineP95");
+            }
+            report.put("regressions", new ArrayList<>());
+            mapper.writeValue(baseline, report);
+        }
+        return regressions;
+    }
+
+    /**
+     * Removes all the collected requests
+     */
+    public void clear() {
+        synchronized (this.endpoints) {
+            this.endpoints.clear();
+        }
+    }
+
+    /**
+     * Statistics of an endpoint
+     */
+    private static final class Endpoint {
+
+        /**
+         * Response times are only measured in milliseconds, so the histogram records milliseconds: latencies up to
+         * 128 ms are exact
+         */
+        private final LatencyHistogram latencies = new LatencyHistogram();
+
+        private final Map<Integer, Long> statuses = new TreeMap<>();
+
+        private long sizedResponses;
+
+        private long totalBytes;
+
+        private long maxBytes;
+
+        synchronized void record(int status, long millis, long bytes) {
+            this.latencies.record(millis);
+            this.statuses.merge(status, 1L, Long::sum);
+            if (bytes >= 0) {
+                this.sizedResponses++;
+                this.totalBytes += bytes;
+                this.maxBytes = Math.max(this.maxBytes, bytes);
+            }
+        }
+
+        synchronized Map<String, Object> summary() {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", this.latencies.getCount());
+            summary.put("p50", (double) this.latencies.getPercentile(50));
+            summary.put("p95", (double) this.latencies.getPercentile(95));
+            summary.put("p99", (double) this.latencies.getPercentile(99));
+            summary.put("max", (double) this.latencies.getMax());
+            summary.put("mean", Math.round(this.latencies.getMean() * 100) / 100.0);
+            Map<String, Long> statusCodes = new LinkedHashMap<>();
+            for (Map.Entry<Integer, Long> status : this.statuses.entrySet()) {
+                statusCodes.put(String.valueOf(status.getKey()), status.getValue());
+            }
+            summary.put("status", statusCodes);
+            if (this.sizedResponses > 0) {
+                Map<String, Long> bytes = new LinkedHashMap<>();
+                bytes.put("mean", this.totalBytes / this.sizedResponses);
+                bytes.put("max", this.maxBytes);
+                summary.put("bytes", bytes);
+            }
+            return summary;
+        }
+    }
+}
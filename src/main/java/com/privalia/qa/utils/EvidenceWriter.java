@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Background writer for the evidences (screenshots, page sources) generated during the tests (Singleton).
+ * <p>
+ * The test thread only retrieves the raw content from the driver and queues it. Encoding (text to UTF-8,
+ * images to png), optional compression and writing to disk is performed by a background thread. The queue is
+ * bounded, so if the writer can not keep up, the test threads are blocked until there is room in the queue
+ * (the time spent waiting is reported in the metrics).
+ * <p>
+ * The behaviour can be configured with the following VM arguments:
+ * <pre>
+ * -DEVIDENCE_ASYNC=false           Write evidences in the test thread (default true)
+ * -DEVIDENCE_QUEUE_SIZE=32         Max number of evidences waiting to be written
+ * -DEVIDENCE_WRITER_THREADS=1      Number of background threads
+ * -DEVIDENCE_COMPRESSION=true      Compress text evidences (page sources) with gzip (default false)
+ * -DEVIDENCE_FLUSH_TIMEOUT=60      Max seconds to wait for pending evidences at the end of the suite
+ * </pre>
+ */
+public enum EvidenceWriter {
+    INSTANCE;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EvidenceWriter.class);
+
+    private final boolean async = Boolean.parseBoolean(System.getProperty("EVIDENCE_ASYNC", "true"));
+
+    private final boolean compression = Boolean.parseBoolean(System.getProperty("EVIDENCE_COMPRESSION", "false"));
+
+    private final int writerThreads = Integer.parseInt(System.getProperty("EVIDENCE_WRITER_THREADS", "1"));
+
+    private final long flushTimeout = Long.parseLong(System.getProperty("EVIDENCE_FLUSH_TIMEOUT", "60"));
+
+    private final BlockingQueue<EvidenceTask> queue = new ArrayBlockingQueue<>(Integer.parseInt(System.getProperty("EVIDENCE_QUEUE_SIZE", "32")));
+
+    private final Object pendingLock = new Object();
+
+    private int pending = 0;
+
+    private boolean started = false;
+
+    private final AtomicLong submitted = new AtomicLong();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private final AtomicLong blockedSubmissions = new AtomicLong();
+
+    private final AtomicLong blockedNanos = new AtomicLong();
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    /**
+     * Content of an evidence that still has to be encoded
+     */
+    @FunctionalInterface
+    interface EvidenceEncoder {
+        byte[] encode() throws IOException;
+    }
+
+    private static final class EvidenceTask {
+
+        private final File target;
+
+        private final EvidenceEncoder encoder;
+
+        EvidenceTask(File target, EvidenceEncoder encoder) {
+            this.target = target;
+            this.encoder = encoder;
+        }
+    }
+
+    /**
+     * Queues raw bytes (i.e. a png screenshot as returned by the driver) to be written in the given path
+     *
+     * @param path    path of the file
+     * @param content content of the file
+     * @return path of the file
+     */
+    public String write(String path, byte[] content) {
+        this.submit(new EvidenceTask(new File(path), () -> content));
+        return path;
+    }
+
+    /**
+     * Queues a content that is encoded by the background thread
+     *
+     * @param path    path of the file
+     * @param encoder encoder of the content
+     * @return path of the file
+     */
+    String write(String path, EvidenceEncoder encoder) {
+        this.submit(new EvidenceTask(new File(path), encoder));
+        return path;
+    }
+
+    /**
+     * Queues a text (i.e. the page source) to be written in the given path with UTF-8 encoding. If
+     * compression is enabled, the content is compressed and the extension .gz is added to the path
+     *
+     * @param path path of the file
+     * @param text content of the file
+     * @return final path of the file
+     */
+    public String write(String path, String text) {
+        if (this.compression) {
+            this.submit(new EvidenceTask(new File(path + ".gz"), () -> gzip(text.getBytes(StandardCharsets.UTF_8))));
+            return path + ".gz";
+        }
+        this.submit(new EvidenceTask(new File(path), () -> text.getBytes(StandardCharsets.UTF_8)));
+        return path;
+    }
+
+    /**
+     * Queues an image to be encoded as png and written in the given path
+     *
+     * @param path  path of the file
+     * @param image image to write
+     * @return path of the file
+     */
+    public String write(String path, BufferedImage image) {
+        this.submit(new EvidenceTask(new File(path), () -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        }));
+        return path;
+    }
+
+    /**
+     * Blocks until all the queued evidences have been written to disk (or until the
+     * timeout set with -DEVIDENCE_FLUSH_TIMEOUT expires)
+     *
+     * @return true if all the evidences were written
+     */
+    public boolean flush() {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(this.flushTimeout);
+        synchronized (this.pendingLock) {
+            while (this.pending > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    LOGGER.warn("{} evidences could not be written after {} seconds", this.pending, this.flushTimeout);
+                    return false;
+                }
+                try {
+                    this.pendingLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        if (this.submitted.get() > 0) {
+            LOGGER.debug("Evidence writer metrics: {}", this.getMetrics());
+        }
+        return true;
+    }
+
+    /**
+     * Returns a summary of the activity of the writer
+     *
+     * @return metrics as string
+     */
+    public String getMetrics() {
+        return String.format("submitted=%d, written=%d, failed=%d, bytes=%d, maxQueueDepth=%d, blockedSubmissions=%d, blockedTime=%dms",
+                this.submitted.get(), this.written.get(), this.failed.get(), this.bytesWritten.get(), this.maxQueueDepth.get(),
+                this.blockedSubmissions.get(), TimeUnit.NANOSECONDS.toMillis(this.blockedNanos.get()));
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getBlockedSubmissions() {
+        return blockedSubmissions.get();
+    }
+
+    public long getBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(blockedNanos.get());
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    private void submit(EvidenceTask task) {
+        this.submitted.incrementAndGet();
+
+        if (!this.async) {
+            this.execute(task);
+            return;
+        }
+
+        this.startWorkers();
+        synchronized (this.pendingLock) {
+            this.pending++;
+        }
+
+        try {
+            if (!this.queue.offer(task)) {
+                long start = System.nanoTime();
+                this.queue.put(task);
+                this.blockedSubmissions.incrementAndGet();
+                this.blockedNanos.addAndGet(System.nanoTime() - start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while queuing evidence {}. Writing it in the current thread", task.target);
+            this.complete(task);
+            return;
+        }
+
+        this.maxQueueDepth.accumulateAndGet(this.queue.size(), Math::max);
+    }
+
+    private synchronized void startWorkers() {
+        if (this.started) {
+            return;
+        }
+        for (int i = 0; i < this.writerThreads; i++) {
+            Thread worker = new Thread(this::consume, "gingerspec-evidence-writer-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "gingerspec-evidence-flush"));
+        this.started = true;
+    }
+
+    private void consume() {
+        while (true) {
+            EvidenceTask task;
+            try {
+                task = this.queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            this.complete(task);
+        }
+    }
+
+    private void complete(EvidenceTask task) {
+        try {
+            this.execute(task);
+        } finally {
+            synchronized (this.pendingLock) {
+                this.pending--;
+                this.pendingLock.notifyAll();
+            }
+        }
+    }
+
+    private void execute(EvidenceTask task) {
+        try {
+            byte[] content = task.encoder.encode();
+            File parent = task.target.getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            Files.write(task.target.toPath(), content, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.written.incrementAndGet();
+            this.bytesWritten.addAndGet(content.length);
+        } catch (Exception e) {
+            this.failed.incrementAndGet();
+            LOGGER.error("Exception on writing evidence {}: {}", task.target, e.getMessage());
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Captures the whole page (not only the visible viewport) of the current browser window.
+ * <p>
+ * For chromium based browsers, the capture is done in a single call using the Chrome DevTools command
+ * Page.captureScreenshot with captureBeyondViewport (see {@link ChromeDevTools}). For any other browser,
+ * or if the command is not available, the page is scrolled and every viewport capture is stitched in memory.
+ * <p>
+ * Evidences only capture the whole page in android browsers, or in any browser with -DFULL_PAGE_SCREENSHOT=true
+ * (scrolling takes a capture and a wait of -DFULL_PAGE_SCROLL_WAIT ms for every viewport of the page).
+ */
+public final class FullPageScreenshot {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FullPageScreenshot.class);
+
+    private static final long SCROLL_WAIT = Long.parseLong(System.getProperty("FULL_PAGE_SCROLL_WAIT", "250"));
+
+    private FullPageScreenshot() {
+    }
+
+    /**
+     * Checks if the screenshots taken as evidences must capture the whole page
+     *
+     * @param browser browser of the scenario
+     * @return true for android browsers, or if -DFULL_PAGE_SCREENSHOT=true (false by default)
+     */
+    public static boolean isEnabled(String browser) {
+        return browser.startsWith("android") || browser.startsWith("droidemu")
+                || Boolean.parseBoolean(System.getProperty("FULL_PAGE_SCREENSHOT", "false"));
+    }
+
+    /**
+     * Returns a full page capture of the current window
+     *
+     * @param driver driver used for testing
+     * @return the capture, or null if it could not be taken
+     */
+    public static BufferedImage capture(WebDriver driver) {
+        byte[] png = tryDevTools(driver);
+        if (png != null) {
+            try {
+                return ImageIO.read(new ByteArrayInputStream(png));
+            } catch (IOException e) {
+                LOGGER.debug("Could not decode the DevTools capture: {}", e.getMessage());
+            }
+        }
+        return tryScrolling(driver);
+    }
+
+    /**
+     * Writes a full page capture of the current window with the {@link EvidenceWriter}. DevTools captures are
+     * already png encoded, so they are written as received, and only the stitched captures are encoded (in the
+     * background threads of the writer)
+     *
+     * @param driver driver used for testing
+     * @param path   path of the png file
+     * @return true if the capture was taken
+     */
+    public static boolean write(WebDriver driver, String path) {
+        byte[] png = tryDevTools(driver);
+        if (png != null) {
+            EvidenceWriter.INSTANCE.write(path, png);
+            return true;
+        }
+        BufferedImage image = tryScrolling(driver);
+        if (image == null) {
+            return false;
+        }
+        EvidenceWriter.INSTANCE.write(path, image);
+        return true;
+    }
+
+    private static byte[] tryDevTools(WebDriver driver) {
+        try {
+            return captureWithDevTools(driver);
+        } catch (Exception e) {
+            LOGGER.debug("Full page capture using DevTools not available: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static BufferedImage tryScrolling(WebDriver driver) {
+        try {
+            return captureScrolling(driver);
+        } catch (IOException e) {
+            LOGGER.error("Exception on taking full page screenshot", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted waits among scrolls", e);
+        }
+        return null;
+    }
+
+    /**
+     * Takes a full page capture with the Chrome DevTools protocol
+     *
+     * @param driver driver used for testing
+     * @return png bytes of the capture, or null if the driver does not support DevTools commands
+     * @throws IOException if the command could not be executed
+     */
+    public static byte[] captureWithDevTools(WebDriver driver) throws IOException {
+        if (!ChromeDevTools.isSupported(driver)) {
+            return null;
+        }
+
+        Map<String, Object> metrics = ChromeDevTools.execute(driver, "Page.getLayoutMetrics", new HashMap<>());
+        Map<String, Object> contentSize = (Map<String, Object>) (metrics.containsKey("cssContentSize") ? metrics.get("cssContentSize") : metrics.get("contentSize"));
+
+        Map<String, Object> clip = new HashMap<>();
+        clip.put("x", 0);
+        clip.put("y", 0);
+        clip.put("width", contentSize.get("width"));
+        clip.put("height", contentSize.get("height"));
+        clip.put("scale", 1);
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("format", "png");
+        params.put("captureBeyondViewport", true);
+        params.put("fromSurface", true);
+        params.put("clip", clip);
+
+        Map<String, Object> result = ChromeDevTools.execute(driver, "Page.captureScreenshot", params);
+        return Base64.getDecoder().decode((String) result.get("data"));
+    }
+
+    /**
+     * Scrolls the page viewport by viewport and stitches the captures in memory. The page is scrolled back to
+     * its initial position at the end
+     *
+     * @param driver driver used for testing
+     * @return the capture
+     * @throws IOException          if a capture could not be decoded
+     * @throws InterruptedException if interrupted while waiting for the page to render after scrolling
+     */
+    public static BufferedImage captureScrolling(WebDriver driver) throws IOException, InterruptedException {
+        JavascriptExecutor js = (JavascriptExecutor) driver;
+        int viewportHeight = ((Number) js.executeScript("return document.documentElement.clientHeight")).intValue();
+        int documentHeight = ((Number) js.executeScript("return Math.max(document.body.scrollHeight, document.documentElement.scrollHeight)")).intValue();
+
+        Object initialOffset = js.executeScript("return window.pageYOffset");
+
+        List<BufferedImage> tiles = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+
+        int position = 0;
+        try {
+            while (true) {
+                js.executeScript("window.scrollTo(0, arguments[0])", position);
+                Thread.sleep(SCROLL_WAIT);
+                int offset = ((Number) js.executeScript("return window.pageYOffset")).intValue();
+                byte[] png = ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES);
+                tiles.add(ImageIO.read(new ByteArrayInputStream(png)));
+                offsets.add(offset);
+
+                position += viewportHeight;
+                if (position >= documentHeight || offset + viewportHeight >= documentHeight) {
+                    break;
+                }
+            }
+        } finally {
+            js.executeScript("window.scrollTo(0, arguments[0])", initialOffset);
+        }
+
+        return stitch(tiles, offsets, viewportHeight, documentHeight);
+    }
+
+    /**
+     * Joins several viewport captures in a single image. Every capture is drawn at its own scroll offset,
+     * so the area repeated in the last capture (when the page can not be scrolled a full viewport) is
+     * overwritten with the same content instead of being duplicated.
+     *
+     * @param tiles          viewport captures
+     * @param offsets        vertical scroll offset (in css pixels) of every capture
+     * @param viewportHeight height of the viewport (in css pixels)
+     * @param documentHeight height of the document (in css pixels)
+     * @return stitched image
+     */
+    public static BufferedImage stitch(List<BufferedImage> tiles, List<Integer> offsets, int viewportHeight, int documentHeight) {
+        BufferedImage first = tiles.get(0);
+        double scale = (double) first.getHeight() / viewportHeight;
+        int height = (int) Math.round(Math.max(documentHeight, offsets.get(offsets.size() - 1) + viewportHeight) * scale);
+
+        BufferedImage image = new BufferedImage(first.getWidth(), height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            for (int i = 0; i < tiles.size(); i++) {
+                graphics.drawImage(tiles.get(i), 0, (int) Math.round(offsets.get(i) * scale), null);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * State of a node connected to a Selenium grid, as reported by {@link GridStatusClient}
+ */
+public class GridNode {
+
+    private static final Pattern OPTIONS = Pattern.compile("^\\((.+)\\)$");
+
+    private final String id;
+
+    private final String sessionUrl;
+
+    private final boolean up;
+
+    private final int maxSessions;
+
+    private final List<Map<String, Object>> capabilities;
+
+    private int activeSessions;
+
+    /**
+     * Default constructor.
+     *
+     * @param id             id of the node (usually, its url)
+     * @param sessionUrl     url where new sessions can be created directly in the node, or null if the node
+     *                       only accepts sessions through the grid
+     * @param up             whether the node is available
+     * @param maxSessions    max number of concurrent sessions of the node
+     * @param capabilities   capabilities of every browser offered by the node
+     * @param activeSessions number of sessions running in the node
+     */
+    public GridNode(String id, String sessionUrl, boolean up, int maxSessions, List<Map<String, Object>> capabilities, int activeSessions) {
+        this.id = id;
+        this.sessionUrl = sessionUrl;
+        this.up = up;
+        this.maxSessions = maxSessions;
+        this.capabilities = new ArrayList<>(capabilities);
+        this.activeSessions = activeSessions;
+    }
+
+    /**
+     * Checks if any of the browsers of the node matches the given filter. The filter contains key-value pairs,
+     * where the key is the name of the capability and the value the expected value. Several values can be given
+     * with the format (value1|value2). The comparison is case insensitive
+     *
+     * @param filter filter to apply
+     * @return true if the node matches
+     */
+    public boolean matches(Map<String, String> filter) {
+        for (Map<String, Object> browser : this.capabilities) {
+            if (matches(browser, filter)) {
+                return true;
+            }
+        }
+        return this.capabilities.isEmpty() && filter.isEmpty();
+    }
+
+    private static boolean matches(Map<String, Object> browser, Map<String, String> filter) {
+        for (Map.Entry<String, String> entry : filter.entrySet()) {
+            Object value = browser.get(entry.getKey());
+            if (value == null) {
+                return false;
+            }
+
+            Matcher m = OPTIONS.matcher(entry.getValue());
+            String[] options = m.find() ? m.group(1).split("\\|") : new String[]{entry.getValue()};
+            boolean found = false;
+            for (String option : options) {
+                if (option.equalsIgnoreCase(value.toString())) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the ratio of used slots of the node
+     *
+     * @return value between 0 (idle) and 1 (full)
+     */
+    public synchronized double getLoad() {
+        return this.maxSessions <= 0 ? 1 : (double) this.activeSessions / this.maxSessions;
+    }
+
+    public synchronized boolean hasFreeSlot() {
+        return this.up && this.activeSessions < this.maxSessions;
+    }
+
+    /**
+     * Counts a new session in the node, so consecutive selections made before the next refresh
+     * of the grid status are spread among the nodes
+     */
+    synchronized void reserveSlot() {
+        this.activeSessions++;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSessionUrl() {
+        return sessionUrl;
+    }
+
+    public boolean isUp() {
+        return up;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public List<Map<String, Object>> getCapabilities() {
+        return capabilities;
+    }
+
+    public synchronized int getActiveSessions() {
+        return activeSessions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%d/%d sessions%s)", id, activeSessions, maxSessions, up ? "" : ", down");
+    }
+}
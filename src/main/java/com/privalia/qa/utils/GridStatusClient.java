@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the state of the nodes of a Selenium grid from its json endpoints.
+ * <p>
+ * For Selenium grid 4, the nodes, their slots and sessions are read from /status. For Selenium grid 3, the
+ * nodes and their busy slots are read from /grid/api/hub and every node is probed in parallel to get its
+ * configuration from /grid/api/proxy (if the hub does not report the busy slots, the running sessions are read
+ * from the node /wd/hub/sessions). The state is cached during -DGRID_STATUS_TTL milliseconds (5000 by default),
+ * so consecutive scenarios do not query the grid every time.
+ * <p>
+ * {@link #selectNode(Map)} returns the least loaded node that matches the requested capabilities, so parallel
+ * executions are spread among all the nodes instead of filling the first one.
+ */
+public class GridStatusClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GridStatusClient.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Map<String, GridStatusClient> CLIENTS = new ConcurrentHashMap<>();
+
+    private final String baseUrl;
+
+    private final long ttl;
+
+    private final int timeout;
+
+    private final int probeThreads;
+
+    private List<GridNode> nodes = Collections.emptyList();
+
+    private long lastRefresh = 0;
+
+    /**
+     * Default constructor.
+     *
+     * @param gridUrl      url of the grid (i.e. http://localhost:4444/wd/hub)
+     * @param ttl          time (ms) the grid state is cached
+     * @param timeout      connection and read timeout (ms) of every request
+     * @param probeThreads max number of nodes probed at the same time
+     */
+    public GridStatusClient(String gridUrl, long ttl, int timeout, int probeThreads) {
+        this.baseUrl = gridUrl.replaceAll("/+$", "").replaceAll("/wd/hub$", "");
+        this.ttl = ttl;
+        this.timeout = timeout;
+        this.probeThreads = Math.max(1, probeThreads);
+    }
+
+    /**
+     * Returns the client for the given grid, shared by all the scenarios of the execution. The client
+     * is configured with -DGRID_STATUS_TTL, -DGRID_STATUS_TIMEOUT and -DGRID_PROBE_THREADS
+     *
+     * @param gridUrl url of the grid (i.e. http://localhost:4444/wd/hub)
+     * @return client
+     */
+    public static GridStatusClient forGrid(String gridUrl) {
+        return CLIENTS.computeIfAbsent(gridUrl, url -> new GridStatusClient(url,
+                Long.parseLong(System.getProperty("GRID_STATUS_TTL", "5000")),
+                Integer.parseInt(System.getProperty("GRID_STATUS_TIMEOUT", "5000")),
+                Integer.parseInt(System.getProperty("GRID_PROBE_THREADS", "8"))));
+    }
+
+    /**
+     * Returns the nodes connected to the grid. The grid is only queried if the cached state is older than the TTL
+     *
+     * @return nodes of the grid
+     * @throws IOException if the grid could not be queried
+     */
+    public synchronized List<GridNode> getNodes() throws IOException {
+        if (System.currentTimeMillis() - this.lastRefresh >= this.ttl) {
+            this.nodes = this.fetchNodes();
+            this.lastRefresh = System.currentTimeMillis();
+            LOGGER.debug("Selenium grid {} status: {}", this.baseUrl, this.nodes);
+        }
+        return this.nodes;
+    }
+
+    /**
+     * Forces the grid to be queried again in the next call
+     */
+    public synchronized void invalidate() {
+        this.lastRefresh = 0;
+    }
+
+    /**
+     * Returns the least loaded node (the one with the lowest ratio of used slots) with a free slot for
+     * a browser that matches the given filter (see {@link GridNode#matches(Map)}). The selected node is
+     * counted as having one more session until the next refresh of the grid state
+     *
+     * @param filter capabilities of the browser
+     * @return selected node, or null if no node has a free slot for the browser
+     * @throws IOException if the grid could not be queried
+     */
+    public synchronized GridNode selectNode(Map<String, String> filter) throws IOException {
+        GridNode selected = selectLeastLoaded(this.getNodes(), filter);
+        if (selected != null) {
+            selected.reserveSlot();
+        }
+        return selected;
+    }
+
+    static GridNode selectLeastLoaded(List<GridNode> nodes, Map<String, String> filter) {
+        GridNode selected = null;
+        for (GridNode node : nodes) {
+            if (!node.hasFreeSlot() || !node.matches(filter)) {
+                continue;
+            }
+            if (selected == null || node.getLoad() < selected.getLoad()
+                    || (node.getLoad() == selected.getLoad() && node.getActiveSessions() < selected.getActiveSessions())) {
+                selected = node;
+            }
+        }
+        return selected;
+    }
+
+    private List<GridNode> fetchNodes() throws IOException {
+        JsonNode status = null;
+        try {
+            status = MAPPER.readTree(this.get(this.baseUrl + "/status"));
+        } catch (IOException e) {
+            LOGGER.debug("Grid {}/status not available: {}", this.baseUrl, e.getMessage());
+        }
+
+        if (status != null && status.path("value").has("nodes")) {
+            return parseGrid4Status(status);
+        }
+        return this.probeGrid3Nodes(parseGrid3Hub(MAPPER.readTree(this.get(this.baseUrl + "/grid/api/hub"))));
+    }
+
+    /**
+     * Reads the nodes from the response of /status of a Selenium grid 4
+     *
+     * @param status response of /status
+     * @return nodes of the grid
+     */
+    static List<GridNode> parseGrid4Status(JsonNode status) {
+        List<GridNode> result = new ArrayList<>();
+        for (JsonNode node : status.path("value").path("nodes")) {
+            List<Map<String, Object>> capabilities = new ArrayList<>();
+            Set<JsonNode> stereotypes = new LinkedHashSet<>();
+            int activeSessions = 0;
+            for (JsonNode slot : node.path("slots")) {
+                stereotypes.add(slot.path("stereotype"));
+                if (!slot.path("session").isMissingNode() && !slot.path("session").isNull()) {
+                    activeSessions++;
+                }
+            }
+            for (JsonNode stereotype : stereotypes) {
+                capabilities.add(MAPPER.convertValue(stereotype, Map.class));
+            }
+            int maxSessions = node.path("maxSessions").asInt(node.path("slots").size());
+            result.add(new GridNode(node.path("uri").asText(node.path("id").asText()), null,
+                    "UP".equalsIgnoreCase(node.path("availability").asText()), maxSessions, capabilities, activeSessions));
+        }
+        return result;
+    }
+
+    /**
+     * Reads the nodes connected to a Selenium grid 3 from the response of /grid/api/hub. The value of every
+     * entry is the number of busy slots of the node, or null if the hub does not report it
+     *
+     * @param hub response of /grid/api/hub
+     * @return busy slots by node id
+     */
+    static Map<String, Integer> parseGrid3Hub(JsonNode hub) {
+        Map<String, Integer> nodes = new LinkedHashMap<>();
+        for (JsonNode node : hub.path("nodes")) {
+            Integer busy = null;
+            for (JsonNode browser : node.path("browsers")) {
+                JsonNode slots = browser.path("slots").path("busy");
+                if (slots.isNumber()) {
+                    busy = (busy == null ? 0 : busy) + slots.asInt();
+                }
+            }
+            nodes.put(node.path("id").asText(), busy);
+        }
+        return nodes;
+    }
+
+    /**
+     * Builds the node state of a Selenium grid 3 node from the response of /grid/api/proxy and the
+     * sessions running in the node
+     *
+     * @param id             id of the node
+     * @param proxy          response of /grid/api/proxy?id=[id]
+     * @param activeSessions number of sessions running in the node
+     * @return node
+     */
+    static GridNode parseGrid3Proxy(String id, JsonNode proxy, int activeSessions) {
+        JsonNode configuration = proxy.path("request").path("configuration");
+        List<Map<String, Object>> capabilities = new ArrayList<>();
+        for (JsonNode browser : configuration.path("capabilities")) {
+            capabilities.add(MAPPER.convertValue(browser, Map.class));
+        }
+        return new GridNode(id, id + "/wd/hub", proxy.path("success").asBoolean(true),
+                configuration.path("maxSession").asInt(capabilities.size()), capabilities, activeSessions);
+    }
+
+    private List<GridNode> probeGrid3Nodes(Map<String, Integer> ids) throws IOException {
+        if (ids.isEmpty()) {
+            LOGGER.warn("No nodes connected to the Selenium grid!");
+            return new ArrayList<>();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.probeThreads, ids.size()));
+        try {
+            List<Callable<GridNode>> probes = new ArrayList<>();
+            for (Map.Entry<String, Integer> id : ids.entrySet()) {
+                probes.add(() -> this.probeGrid3Node(id.getKey(), id.getValue()));
+            }
+
+            List<GridNode> result = new ArrayList<>();
+            for (Future<GridNode> probe : executor.invokeAll(probes)) {
+                result.add(probe.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while probing the grid nodes", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error probing the grid nodes", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private GridNode probeGrid3Node(String id, Integer busySlots) {
+        try {
+            JsonNode proxy = MAPPER.readTree(this.get(this.baseUrl + "/grid/api/proxy?id=" + URLEncoder.encode(id, "UTF-8")));
+            int activeSessions = busySlots != null ? busySlots : MAPPER.readTree(this.get(id + "/wd/hub/sessions")).path("value").size();
+            return parseGrid3Proxy(id, proxy, activeSessions);
+        } catch (IOException e) {
+            LOGGER.warn("Could not probe the Selenium node {}: {}", id, e.getMessage());
+            return new GridNode(id, id + "/wd/hub", false, 0, new ArrayList<>(), 0);
+        }
+    }
+
+    private String get(String url) throws IOException {
+        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+        con.setConnectTimeout(this.timeout);
+        con.setReadTimeout(this.timeout);
+        try {
+            if (con.getResponseCode() != 200) {
+                throw new IOException("Response code " + con.getResponseCode() + " from " + url);
+            }
+            try (InputStream in = con.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                return new String(out.toByteArray(), StandardCharsets.UTF_8);
+            }
+        } finally {
+            con.disconnect();
+        }
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.logging.LogEntry;
+import org.openqa.selenium.logging.LogType;
+import org.openqa.selenium.logging.LoggingPreferences;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Records the network activity of the browser in a HAR (HTTP Archive) file.
+ * <p>
+ * The network events (Network.requestWillBeSent, Network.responseReceived, Network.loadingFinished and
+ * Network.loadingFailed) are read from the chromedriver performance log, so the browser must be started with
+ * {@link #loggingPreferences()}. Every request is written to the HAR file as soon as it completes, so the file is
+ * streamed and not kept in memory. Only the last completed entries (and the requests still in flight) are kept in
+ * memory, in buffers bounded by the given size.
+ */
+public class HarRecorder implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HarRecorder.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String path;
+
+    private final int bufferSize;
+
+    private final JsonGenerator generator;
+
+    private final Map<String, JsonNode[]> pending;
+
+    private final Deque<Map<String, Object>> recentEntries = new ArrayDeque<>();
+
+    private long recorded = 0;
+
+    private long dropped = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Default constructor. Creates the HAR file and writes its header
+     *
+     * @param path       path of the HAR file
+     * @param bufferSize max number of entries kept in memory
+     * @throws IOException if the file could not be created
+     */
+    public HarRecorder(String path, int bufferSize) throws IOException {
+        this.path = path;
+        this.bufferSize = bufferSize;
+        this.pending = new LinkedHashMap<String, JsonNode[]>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JsonNode[]> eldest) {
+                if (size() > HarRecorder.this.bufferSize) {
+                    HarRecorder.this.dropped++;
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        File file = new File(path);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        this.generator = MAPPER.getFactory().createGenerator(file, JsonEncoding.UTF8);
+        this.generator.writeStartObject();
+        this.generator.writeObjectFieldStart("log");
+        this.generator.writeStringField("version", "1.2");
+        this.generator.writeObjectFieldStart("creator");
+        this.generator.writeStringField("name", "GingerSpec");
+        this.generator.writeStringField("version", "1.0");
+        this.generator.writeEndObject();
+        this.generator.writeArrayFieldStart("pages");
+        this.generator.writeEndArray();
+        this.generator.writeArrayFieldStart("entries");
+    }
+
+    /**
+     * Returns the logging preferences needed by chromedriver to expose the network events
+     *
+     * @return logging preferences, to be set in the capability goog:loggingPrefs
+     */
+    public static LoggingPreferences loggingPreferences() {
+        LoggingPreferences preferences = new LoggingPreferences();
+        preferences.enable(LogType.PERFORMANCE, Level.ALL);
+        return preferences;
+    }
+
+    /**
+     * Reads the pending events from the performance log of the browser
+     *
+     * @param driver driver used for testing
+     */
+    public void drain(WebDriver driver) {
+        try {
+            for (LogEntry entry : driver.manage().logs().get(LogType.PERFORMANCE)) {
+                this.process(entry.getMessage());
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Could not read the performance log: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Processes an entry of the performance log
+     *
+     * @param message message of the log entry
+     * @throws IOException if the entry could not be parsed or written
+     */
+    public synchronized void process(String message) throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        JsonNode event = MAPPER.readTree(message).path("message");
+        String method = event.path("method").asText();
+        JsonNode params = event.path("params");
+        String requestId = params.path("requestId").asText();
+
+        switch (method) {
+            case "Network.requestWillBeSent":
+                if (params.has("redirectResponse") && this.pending.containsKey(requestId)) {
+                    JsonNode[] redirected = this.pending.remove(requestId);
+                    redirected[1] = params.path("redirectResponse");
+                    this.complete(redirected, params.path("timestamp").asDouble(), 0);
+                }
+                this.pending.put(requestId, new JsonNode[]{params, null});
+                break;
+            case "Network.responseReceived":
+                JsonNode[] request = this.pending.get(requestId);
+                if (request != null) {
+                    request[1] = params.path("response");
+                }
+                break;
+            case "Network.loadingFinished":
+                JsonNode[] finished = this.pending.remove(requestId);
+                if (finished != null) {
+                    this.complete(finished, params.path("timestamp").asDouble(), params.path("encodedDataLength").asLong(-1));
+                }
+                break;
+            case "Network.loadingFailed":
+                JsonNode[] failed = this.pending.remove(requestId);
+                if (failed != null) {
+                    this.complete(failed, params.path("timestamp").asDouble(), 0);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void complete(JsonNode[] request, double endTimestamp, long size) throws IOException {
+        Map<String, Object> entry = toHarEntry(request[0], request[1], endTimestamp, size);
+        this.generator.writeObject(entry);
+        this.generator.flush();
+        this.recorded++;
+
+        this.recentEntries.addLast(entry);
+        if (this.recentEntries.size() > this.bufferSize) {
+            this.recentEntries.removeFirst();
+        }
+    }
+
+    private static Map<String, Object> toHarEntry(JsonNode sent, JsonNode response, double endTimestamp, long size) {
+        JsonNode request = sent.path("request");
+        double startTimestamp = sent.path("timestamp").asDouble();
+
+        Map<String, Object> harRequest = new LinkedHashMap<>();
+        harRequest.put("method", request.path("method").asText());
+        harRequest.put("url", request.path("url").asText());
+        harRequest.put("httpVersion", response == null ? "" : response.path("protocol").asText(""));
+        harRequest.put("headers", toHarHeaders(request.path("headers")));
+        harRequest.put("queryString", new ArrayList<>());
+        harRequest.put("cookies", new ArrayList<>());
+        harRequest.put("headersSize", -1);
+        harRequest.put("bodySize", request.has("postData") ? request.path("postData").asText().length() : 0);
+
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("size", Math.max(size, 0));
+        content.put("mimeType", response == null ? "" : response.path("mimeType").asText(""));
+
+        Map<String, Object> harResponse = new LinkedHashMap<>();
+        harResponse.put("status", response == null ? 0 : response.path("status").asInt());
+        harResponse.put("statusText", response == null ? "" : response.path("statusText").asText(""));
+        harResponse.put("httpVersion", response == null ? "" : response.path("protocol").asText(""));
+        harResponse.put("headers", response == null ? new ArrayList<>() : toHarHeaders(response.path("headers")));
+        harResponse.put("cookies", new ArrayList<>());
+        harResponse.put("content", content);
+        harResponse.put("redirectURL", response == null ? "" : response.path("headers").path("location").asText(response.path("headers").path("Location").asText("")));
+        harResponse.put("headersSize", -1);
+        harResponse.put("bodySize", size);
+
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("startedDateTime", Instant.ofEpochMilli((long) (sent.path("wallTime").asDouble() * 1000)).toString());
+        entry.put("time", Math.max(0, (endTimestamp - startTimestamp) * 1000));
+        entry.put("request", harRequest);
+        entry.put("response", harResponse);
+        entry.put("cache", new LinkedHashMap<>());
+        entry.put("timings", toHarTimings(response == null ? null : response.path("timing"), endTimestamp));
+        return entry;
+    }
+
+    private static List<Map<String, String>> toHarHeaders(JsonNode headers) {
+        List<Map<String, String>> harHeaders = new ArrayList<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = headers.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            Map<String, String> header = new LinkedHashMap<>();
+            header.put("name", field.getKey());
+            header.put("value", field.getValue().asText());
+            harHeaders.add(header);
+        }
+        return harHeaders;
+    }
+
+    private static Map<String, Object> toHarTimings(JsonNode timing, double endTimestamp) {
+        Map<String, Object> timings = new LinkedHashMap<>();
+        if (timing == null || timing.isMissingNode()) {
+            timings.put("send", 0);
+            timings.put("wait", 0);
+            timings.put("receive", 0);
+            return timings;
+        }
+        timings.put("blocked", -1);
+        timings.put("dns", interval(timing, "dnsStart", "dnsEnd"));
+        timings.put("connect", interval(timing, "connectStart", "connectEnd"));
+        timings.put("ssl", interval(timing, "sslStart", "sslEnd"));
+        timings.put("send", Math.max(0, interval(timing, "sendStart", "sendEnd")));
+        timings.put("wait", Math.max(0, timing.path("receiveHeadersEnd").asDouble() - timing.path("sendEnd").asDouble()));
+        timings.put("receive", Math.max(0, (endTimestamp - timing.path("requestTime").asDouble()) * 1000 - timing.path("receiveHeadersEnd").asDouble()));
+        return timings;
+    }
+
+    private static double interval(JsonNode timing, String start, String end) {
+        double startValue = timing.path(start).asDouble(-1);
+        return startValue < 0 ? -1 : timing.path(end).asDouble() - startValue;
+    }
+
+    /**
+     * Returns the last completed entries (at most, the buffer size)
+     *
+     * @return HAR entries
+     */
+    public synchronized List<Map<String, Object>> getRecentEntries() {
+        return new ArrayList<>(this.recentEntries);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public synchronized long getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * Returns the number of requests discarded because too many requests were in flight at the same time
+     *
+     * @return number of requests
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Closes the HAR file. Requests still in flight are discarded
+     *
+     * @throws IOException if the file could not be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.generator.writeEndArray();
+        this.generator.writeEndObject();
+        this.generator.writeEndObject();
+        this.generator.close();
+        LOGGER.debug("HAR file {} written with {} entries ({} discarded)", this.path, this.recorded, this.dropped + this.pending.size());
+        this.pending.clear();
+        this.recentEntries.clear();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.github.fge.jackson.JsonLoader;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.github.fge.jsonschema.main.JsonSchema;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import org.hjson.JsonValue;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Caches the work done to evaluate json documents in assertion steps (Singleton).
+ * <p>
+ * Steps that evaluate several jsonpath expressions against the same document (i.e. "'${json}' matches the following
+ * cases") parse the document only once, compiled jsonpath expressions are reused between steps, and json schemas are
+ * loaded only once. All the caches are LRU caches of a fixed size:
+ * <pre>
+ * -DJSON_DOCUMENT_CACHE_SIZE=16      parsed documents
+ * -DJSONPATH_CACHE_SIZE=1000         compiled jsonpath expressions
+ * -DJSON_SCHEMA_CACHE_SIZE=100       loaded json schemas
+ * </pre>
+ * Documents are cached by content, so they are shared by all scenarios. The documents returned must not be modified.
+ */
+public enum JsonCache {
+    INSTANCE;
+
+    private final Map<String, DocumentContext> documents = lruCache("JSON_DOCUMENT_CACHE_SIZE", 16);
+
+    private final Map<String, DocumentContext> hjsonDocuments = lruCache("JSON_DOCUMENT_CACHE_SIZE", 16);
+
+    private final Map<String, JsonPath> paths = lruCache("JSONPATH_CACHE_SIZE", 1000);
+
+    private final Map<String, JsonSchema> schemas = lruCache("JSON_SCHEMA_CACHE_SIZE", 100);
+
+    private final JsonSchemaFactory schemaFactory = JsonSchemaFactory.byDefault();
+
+    /**
+     * Returns the parsed json document
+     *
+     * @param json json document
+     * @return parsed document (read only)
+     */
+    public DocumentContext parse(String json) {
+        return get(this.documents, json, JsonPath::parse);
+    }
+
+    /**
+     * Returns the parsed document, after normalizing it as hjson (relaxed json syntax)
+     *
+     * @param json json or hjson document
+     * @return parsed document (read only)
+     */
+    public DocumentContext parseHjson(String json) {
+        return get(this.hjsonDocuments, json, key -> JsonPath.parse(JsonValue.readHjson(key).toString()));
+    }
+
+    /**
+     * Returns the compiled jsonpath expression
+     *
+     * @param expression jsonpath expression
+     * @return compiled expression
+     */
+    public JsonPath compile(String expression) {
+        return get(this.paths, expression, JsonPath::compile);
+    }
+
+    /**
+     * Evaluates a jsonpath expression over a json document
+     *
+     * @param json       json or hjson document
+     * @param expression jsonpath expression
+     * @param <T>        expected type
+     * @return result of the expression
+     */
+    public <T> T read(String json, String expression) {
+        return this.parseHjson(json).read(this.compile(expression));
+    }
+
+    /**
+     * Validates a json document against a json schema
+     *
+     * @param schema json schema
+     * @param json   json document
+     * @return validation report
+     * @throws IOException         if any of the documents is not valid json
+     * @throws ProcessingException if the schema is not valid
+     */
+    public ProcessingReport validate(String schema, String json) throws IOException, ProcessingException {
+        JsonSchema jsonSchema;
+        synchronized (this.schemas) {
+            jsonSchema = this.schemas.get(schema);
+        }
+        if (jsonSchema == null) {
+            jsonSchema = this.schemaFactory.getJsonSchema(JsonLoader.fromString(schema));
+            synchronized (this.schemas) {
+                this.schemas.put(schema, jsonSchema);
+            }
+        }
+        return jsonSchema.validate(JsonLoader.fromString(json));
+    }
+
+    /**
+     * Removes all the cached elements
+     */
+    public void clear() {
+        for (Map<String, ?> cache : new Map[]{this.documents, this.hjsonDocuments, this.paths, this.schemas}) {
+            synchronized (cache) {
+                cache.clear();
+            }
+        }
+    }
+
+    private static <T> T get(Map<String, T> cache, String key, Function<String, T> loader) {
+        synchronized (cache) {
+            T value = cache.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        T value = loader.apply(key);
+        synchronized (cache) {
+            cache.put(key, value);
+        }
+        return value;
+    }
+
+    private static <T> Map<String, T> lruCache(String property, int defaultSize) {
+        int maxSize = Integer.parseInt(System.getProperty(property, String.valueOf(defaultSize)));
+        return new LinkedHashMap<String, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Records consumed from a kafka topic, kept in memory and indexed, so repeated checks over the same topic do not read
+ * it again from the beginning.
+ * <p>
+ * The buffer keeps its consumer (assigned to all the partitions of the topic) open, and every {@link #refresh()} only
+ * reads the records added to the topic since the previous one. Records are indexed by key, and by value or by any
+ * field of the value (json documents or avro records) the first time they are looked for, so the lookups do not
+ * depend on the number of records. Every refresh reads again the last record of each partition, and if it is not the
+ * same one (the topic was deleted and created again), the buffer starts again from the beginning.
+ * <pre>{@code
+ * KafkaTopicBuffer<String, String> buffer = new KafkaTopicBuffer<>(consumer, "orders", 30000);
+ * buffer.refresh();
+ * List<ConsumerRecord<String, String>> paid = buffer.findByField("status", "paid");
+ * }</pre>
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ */
+public class KafkaTopicBuffer<K, V> implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaTopicBuffer.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Consumer<K, V> consumer;
+
+    private final String topic;
+
+    private final long timeoutMillis;
+
+    private final Set<TopicPartition> partitions = new HashSet<>();
+
+    private final List<ConsumerRecord<K, V>> records = new ArrayList<>();
+
+    private final Map<Object, List<ConsumerRecord<K, V>>> byKey = new HashMap<>();
+
+    private final Map<TopicPartition, ConsumerRecord<K, V>> lastRecords = new HashMap<>();
+
+    private Map<Object, List<ConsumerRecord<K, V>>> byValue;
+
+    private final Map<String, Map<String, List<ConsumerRecord<K, V>>>> byField = new HashMap<>();
+
+    /**
+     * Default constructor.
+     *
+     * @param consumer      consumer used to read the topic (closed with the buffer)
+     * @param topic         name of the topic
+     * @param timeoutMillis max time of every refresh
+     */
+    public KafkaTopicBuffer(Consumer<K, V> consumer, String topic, long timeoutMillis) {
+        this.consumer = consumer;
+        this.topic = topic;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Reads the records added to the topic since the last refresh, until the end offsets the partitions have now
+     *
+     * @return number of new records
+     */
+    public synchronized int refresh() {
+        List<PartitionInfo> partitionInfos = this.consumer.partitionsFor(this.topic);
+        if (partitionInfos == null || partitionInfos.isEmpty()) {
+            this.reset();
+            return 0;
+        }
+
+        Set<TopicPartition> current = new HashSet<>();
+        for (PartitionInfo partitionInfo : partitionInfos) {
+            current.add(new TopicPartition(this.topic, partitionInfo.partition()));
+        }
+        if (!current.equals(this.partitions)) {
+            Set<TopicPartition> added = new HashSet<>(current);
+            added.removeAll(this.partitions);
+            this.consumer.assign(current);
+            this.consumer.seekToBeginning(added);
+            this.partitions.clear();
+            this.partitions.addAll(current);
+        }
+
+        Map<TopicPartition, Long> beginningOffsets = this.consumer.beginningOffsets(this.partitions);
+        Map<TopicPartition, Long> endOffsets = this.consumer.endOffsets(this.partitions);
+        Map<TopicPartition, ConsumerRecord<K, V>> unchecked = new HashMap<>();
+        for (TopicPartition partition : this.partitions) {
+            ConsumerRecord<K, V> last = this.lastRecords.get(partition);
+            if (this.consumer.position(partition) > endOffsets.get(partition)) {
+                this.restart(unchecked);
+                break;
+            }
+            if (last != null && last.offset() >= beginningOffsets.get(partition)) {
+                unchecked.put(partition, last);
+                this.consumer.seek(partition, last.offset());
+            }
+        }
+
+        int before = this.records.size();
+        Set<TopicPartition> pending = new HashSet<>(this.partitions);
+        long deadline = System.currentTimeMillis() + this.timeoutMillis;
+        while (true) {
+            pending.removeIf(partition -> !unchecked.containsKey(partition) && this.consumer.position(partition) >= endOffsets.get(partition));
+            if (pending.isEmpty()) {
+                break;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                LOGGER.warn("End of topic {} not reached after {} ms", this.topic, this.timeoutMillis);
+                break;
+            }
+            for (ConsumerRecord<K, V> record : this.consumer.poll(100)) {
+                ConsumerRecord<K, V> last = unchecked.remove(new TopicPartition(record.topic(), record.partition()));
+                if (last == null) {
+                    this.add(record);
+                } else if (!isSameRecord(last, record)) {
+                    this.restart(unchecked);
+                    before = 0;
+                    pending.addAll(this.partitions);
+                    break;
+                }
+            }
+        }
+
+        LOGGER.debug("{} new records in topic {} ({} in total)", this.records.size() - before, this.topic, this.records.size());
+        return this.records.size() - before;
+    }
+
+    /**
+     * Returns all the records read, in the order of every partition
+     *
+     * @return records (read only)
+     */
+    public synchronized List<ConsumerRecord<K, V>> getRecords() {
+        return Collections.unmodifiableList(new ArrayList<>(this.records));
+    }
+
+    /**
+     * Returns the records with the given key
+     *
+     * @param key key of the records
+     * @return records, in the order they were read
+     */
+    public synchronized List<ConsumerRecord<K, V>> findByKey(Object key) {
+        return Collections.unmodifiableList(this.byKey.getOrDefault(key, Collections.emptyList()));
+    }
+
+    /**
+     * Returns the records with the given value. The records are indexed by value the first time it is called
+     *
+     * @param value value of the records
+     * @return records, in the order they were read
+     */
+    public synchronized List<ConsumerRecord<K, V>> findByValue(Object value) {
+        if (this.byValue == null) {
+            this.byValue = new HashMap<>();
+            for (ConsumerRecord<K, V> record : this.records) {
+                addToIndex(this.byValue, record.value(), record);
+            }
+        }
+        return Collections.unmodifiableList(this.byValue.getOrDefault(value, Collections.emptyList()));
+    }
+
+    /**
+     * Returns the records whose value has the given field (json documents or avro records). The records are indexed
+     * by the field the first time it is looked for
+     *
+     * @param field name of the field, or path of a nested field separated by dots (i.e. customer.id)
+     * @param value value of the field, as text
+     * @return records, in the order they were read
+     */
+    public synchronized List<ConsumerRecord<K, V>> findByField(String field, String value) {
+        Map<String, List<ConsumerRecord<K, V>>> index = this.byField.get(field);
+        if (index == null) {
+            index = new HashMap<>();
+            for (ConsumerRecord<K, V> record : this.records) {
+                addToFieldIndex(index, readField(toDocument(record.value()), field), record);
+            }
+            this.byField.put(field, index);
+        }
+        return Collections.unmodifiableList(index.getOrDefault(value, Collections.emptyList()));
+    }
+
+    /**
+     * Closes the consumer
+     */
+    @Override
+    public synchronized void close() {
+        this.consumer.close();
+    }
+
+    private void add(ConsumerRecord<K, V> record) {
+        this.records.add(record);
+        this.lastRecords.put(new TopicPartition(record.topic(), record.partition()), record);
+        addToIndex(this.byKey, record.key(), record);
+        if (this.byValue != null) {
+            addToIndex(this.byValue, record.value(), record);
+        }
+        if (!this.byField.isEmpty()) {
+            Object document = toDocument(record.value());
+            for (Map.Entry<String, Map<String, List<ConsumerRecord<K, V>>>> index : this.byField.entrySet()) {
+                addToFieldIndex(index.getValue(), readField(document, index.getKey()), record);
+            }
+        }
+    }
+
+    /**
+     * Discards the records of a topic that was created again, and reads it from the beginning
+     */
+    private void restart(Map<TopicPartition, ConsumerRecord<K, V>> unchecked) {
+        LOGGER.debug("Topic {} was created again, reading it from the beginning", this.topic);
+        this.clearRecords();
+        unchecked.clear();
+        this.consumer.seekToBeginning(this.partitions);
+    }
+
+    private void reset() {
+        this.clearRecords();
+        if (!this.partitions.isEmpty()) {
+            this.consumer.assign(Collections.emptyList());
+            this.partitions.clear();
+        }
+    }
+
+    private void clearRecords() {
+        this.records.clear();
+        this.lastRecords.clear();
+        this.byKey.clear();
+        this.byValue = null;
+        for (Map<String, List<ConsumerRecord<K, V>>> index : this.byField.values()) {
+            index.clear();
+        }
+    }
+
+    private static boolean isSameRecord(ConsumerRecord<?, ?> expected, ConsumerRecord<?, ?> actual) {
+        return expected.offset() == actual.offset() && expected.timestamp() == actual.timestamp()
+                && Objects.deepEquals(expected.key(), actual.key()) && Objects.deepEquals(expected.value(), actual.value());
+    }
+
+    private static <T, R> void addToIndex(Map<T, List<R>> index, T value, R record) {
+        index.computeIfAbsent(value, key -> new ArrayList<>()).add(record);
+    }
+
+    private static <R> void addToFieldIndex(Map<String, List<R>> index, String value, R record) {
+        if (value != null) {
+            addToIndex(index, value, record);
+        }
+    }
+
+    /**
+     * Returns the value as an avro record or as a parsed json document, or null if it is neither of them
+     */
+    private static Object toDocument(Object value) {
+        if (value instanceof GenericRecord) {
+            return value;
+        }
+        String text = String.valueOf(value).trim();
+        if (!text.startsWith("{") && !text.startsWith("[")) {
+            return null;
+        }
+        try {
+            return MAPPER.readTree(text);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static String readField(Object document, String field) {
+        Object current = document;
+        for (String name : field.split("\\.")) {
+            if (current instanceof GenericRecord) {
+                GenericRecord record = (GenericRecord) current;
+                current = record.getSchema().getField(name) != null ? record.get(name) : null;
+            } else if (current instanceof JsonNode) {
+                JsonNode node = ((JsonNode) current).get(name);
+                current = node == null || node.isNull() ? null : node;
+            } else {
+                return null;
+            }
+        }
+        if (current instanceof JsonNode) {
+            JsonNode node = (JsonNode) current;
+            return node.isValueNode() ? node.asText() : node.toString();
+        }
+        return current == null ? null : current.toString();
+    }
+}
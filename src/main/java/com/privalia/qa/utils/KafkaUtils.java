@@ -16,8 +16,8 @@
 
 package com.privalia.qa.utils;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.gson.Gson;
 import kafka.admin.AdminOperationException;
 import kafka.admin.AdminUtils;
 import kafka.admin.BrokerMetadata;
@@ -29,14 +29,14 @@ import kafka.utils.ZkUtils;
 import okhttp3.*;
 import org.I0Itec.zkclient.ZkClient;
 import org.I0Itec.zkclient.ZkConnection;
-import org.apache.avro.Schema;
-import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.commons.collections.map.HashedMap;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.producer.*;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,18 +46,23 @@ import scala.collection.JavaConverters;
 import scala.collection.Seq;
 
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Generic utilities for operations over Kafka.
  */
 
 public class KafkaUtils {
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<Map<String, Object>>() {
+    };
+
     private final Logger logger = LoggerFactory
             .getLogger(KafkaUtils.class);
 
@@ -87,6 +92,20 @@ public class KafkaUtils {
 
     private String schemaRegistryConnect;
 
+    /**
+     * Producers of every thread (scenario), by kind (default or bulk), with the properties they were created with
+     */
+    private final ThreadLocal<Map<String, Map.Entry<Properties, Producer>>> producers = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * Buffers of the topics read by every thread (scenario), and the consumer properties they were created with
+     */
+    private final ThreadLocal<Map<String, KafkaTopicBuffer<?, ?>>> buffers = ThreadLocal.withInitial(HashMap::new);
+
+    private final ThreadLocal<Properties> buffersProperties = new ThreadLocal<>();
+
+    private final Map<String, String> registrySchemas = new HashMap<>();
+
     public Properties getPropsConsumer() {
         return propsConsumer;
     }
@@ -195,6 +214,7 @@ public class KafkaUtils {
      */
     public boolean deleteTopic(String topicName) throws KafkaException, TopicAlreadyMarkedForDeletionException {
         logger.debug("Deleting topic with name: " + topicName);
+        this.closeTopicBuffer(topicName);
         AdminUtils.deleteTopic(zkUtils, topicName);
         logger.debug("Topic with name: " + topicName + " correctly deleted");
         return !AdminUtils.topicExists(zkUtils, topicName);
@@ -246,9 +266,9 @@ public class KafkaUtils {
      */
     @Deprecated
     public void sendMessage(String message, String topicName) {
-        Producer<String, String> producer = new KafkaProducer<>(props);
+        Producer<String, String> producer = this.getProducer();
         producer.send(new ProducerRecord<String, String>(topicName, message));
-        producer.close();
+        producer.flush();
     }
 
     /**
@@ -270,40 +290,15 @@ public class KafkaUtils {
         Class keyClass = this.getProperClass(keySerializer);
         Class valueClass = this.getProperClass(valueSerializer);
 
-        Object finalMessage = null;
-        Object finalKey = null;
-
-        //Value can be string, int or avro
-        if (valueClass.equals(String.class)) {
-            finalMessage = message.toString();
-        }
-        if (valueClass.equals(Long.class)) {
-            finalMessage = Long.parseLong(message);
-        }
-        if (valueClass.equals(GenericRecord.class)) {
-            GenericRecord record = this.getAvroRecords().get(message);
-            finalMessage = record;
-        }
-
-        //Key can be string or int
-        if (key != null) {
-            if (keyClass.equals(String.class)) {
-                finalKey = key.toString();
-            }
-            if (keyClass.equals(Long.class)) {
-                finalKey = Long.parseLong(key);
-            }
-        } else {
-            finalKey = null;
-        }
-
+        Object finalMessage = this.toSerializable(message, valueClass);
+        Object finalKey = key != null ? this.toSerializable(key, keyClass) : null;
 
         this.sendAndConfirmMessage(finalMessage, finalKey, topicName, timeoutSeconds, keyClass, valueClass);
 
     }
 
     private <K, V> void sendAndConfirmMessage(Object message, Object key, String topicName, long timeoutSeconds, K keyClass, V valueClass) throws InterruptedException, ExecutionException, TimeoutException {
-        Producer<K, V> producer = new KafkaProducer<>(props);
+        Producer<K, V> producer = this.getProducer();
         try {
             long time = System.currentTimeMillis();
 
@@ -320,9 +315,141 @@ public class KafkaUtils {
         } catch (InterruptedException | ExecutionException | TimeoutException e) {
             logger.error("Message not sent or acknowlegded by Kafka {}", e.getMessage());
             throw e;
-        } finally {
+        }
+    }
+
+    /**
+     * Converts the text to the type expected by the serializer: string, long or avro (the text is then the name of
+     * a record created with {@link #createGenericRecord(String, String, String)})
+     */
+    private Object toSerializable(String item, Class type) {
+        if (type.equals(Long.class)) {
+            return Long.parseLong(item);
+        }
+        if (type.equals(GenericRecord.class)) {
+            return this.getAvroRecords().get(item);
+        }
+        return item;
+    }
+
+    /**
+     * Sends the messages asynchronously, without waiting for the acknowledgement of every message before sending the
+     * next one, and waits until all of them are acknowledged. Every message is a pair of key (can be null) and value,
+     * converted to the type of the String or Long serializers of the producer (avro serializers are not supported).
+     * Messages are read from the iterator while they are sent, so they do not need to be in memory at the same time.
+     * <p>
+     * The producer is tuned for throughput, with the producer properties overridden by the following system
+     * properties:
+     * <pre>
+     * -DKAFKA_BULK_BATCH_SIZE=262144          batch.size (bytes per partition batch)
+     * -DKAFKA_BULK_LINGER_MS=20               linger.ms (time to wait for a batch to fill)
+     * -DKAFKA_BULK_COMPRESSION=lz4            compression.type (none, gzip, snappy, lz4)
+     * -DKAFKA_BULK_MAX_IN_FLIGHT=5            max.in.flight.requests.per.connection
+     * </pre>
+     *
+     * @param topicName name of topic
+     * @param messages  messages to send (key and value)
+     * @return throughput, errors and acknowledgement latencies of the messages sent
+     * @throws IllegalStateException if the key or value serializer is not a String or Long serializer
+     */
+    public BulkResult sendMessages(String topicName, Iterator<Map.Entry<String, String>> messages) {
+        Properties bulkProperties = new Properties();
+        bulkProperties.putAll(this.props);
+        bulkProperties.put(ProducerConfig.BATCH_SIZE_CONFIG, System.getProperty("KAFKA_BULK_BATCH_SIZE", "262144"));
+        bulkProperties.put(ProducerConfig.LINGER_MS_CONFIG, System.getProperty("KAFKA_BULK_LINGER_MS", "20"));
+        bulkProperties.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, System.getProperty("KAFKA_BULK_COMPRESSION", "lz4"));
+        bulkProperties.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, System.getProperty("KAFKA_BULK_MAX_IN_FLIGHT", "5"));
+
+        this.checkBulkSerializer(bulkProperties.getProperty("key.serializer"));
+        this.checkBulkSerializer(bulkProperties.getProperty("value.serializer"));
+        return this.sendMessages(this.getProducer("bulk", bulkProperties), topicName, messages);
+    }
+
+    /**
+     * Sends the messages with the given producer, as in {@link #sendMessages(String, Iterator)}
+     */
+    BulkResult sendMessages(Producer<Object, Object> producer, String topicName, Iterator<Map.Entry<String, String>> messages) {
+        Class keyClass = this.getProperClass(this.props.getProperty("key.serializer"));
+        Class valueClass = this.getProperClass(this.props.getProperty("value.serializer"));
+
+        BulkResult result = new BulkResult();
+        long start = System.nanoTime();
+        while (messages.hasNext()) {
+            Map.Entry<String, String> message = messages.next();
+            Object key = message.getKey() != null ? this.toSerializable(message.getKey(), keyClass) : null;
+            ProducerRecord<Object, Object> record = new ProducerRecord<>(topicName, key, this.toSerializable(message.getValue(), valueClass));
+            long sent = System.nanoTime();
+            producer.send(record, (metadata, exception) -> result.acknowledge(sent, metadata, exception));
+        }
+        producer.flush();
+        result.finish(start);
+
+        logger.debug("Messages sent to {}: {}", topicName, result);
+        return result;
+    }
+
+    private void checkBulkSerializer(String serializer) {
+        if (!"org.apache.kafka.common.serialization.StringSerializer".equals(serializer)
+                && !"org.apache.kafka.common.serialization.LongSerializer".equals(serializer)) {
+            throw new IllegalStateException("Only String and Long serializers are supported to send messages in bulk, not " + serializer);
+        }
+    }
+
+    /**
+     * Returns the producer for the current producer properties. Every scenario (thread) creates its producer only
+     * once and keeps it open (it keeps the metadata of the cluster and the connections to the brokers) until
+     * {@link #closeProducers()} is called, so sending many messages does not connect to kafka every time.
+     * The producer is only replaced when the properties are changed with {@link #modifyProducerProperties(String, String)}
+     *
+     * @param <K> type of the key
+     * @param <V> type of the value
+     * @return the producer
+     */
+    public <K, V> Producer<K, V> getProducer() {
+        return this.getProducer("default", this.props);
+    }
+
+    /**
+     * Returns the producer of the current scenario for the given kind of messages. If the properties changed since
+     * it was created, the previous producer is flushed and closed
+     */
+    private <K, V> Producer<K, V> getProducer(String kind, Properties properties) {
+        Properties configuration = new Properties();
+        synchronized (this) {
+            configuration.putAll(properties);
+        }
+        Map<String, Map.Entry<Properties, Producer>> current = this.producers.get();
+        Map.Entry<Properties, Producer> existing = current.get(kind);
+        if (existing != null && existing.getKey().equals(configuration)) {
+            return existing.getValue();
+        }
+        if (existing != null) {
+            logger.debug("The properties of the kafka producer changed, closing the previous one");
+            this.closeProducer(existing.getValue());
+        }
+        logger.debug("Creating kafka producer for {}", configuration);
+        Producer<K, V> producer = new KafkaProducer<>(configuration);
+        current.put(kind, new AbstractMap.SimpleImmutableEntry<>(configuration, producer));
+        return producer;
+    }
+
+    /**
+     * Sends the pending messages and closes the producers of the current scenario. The producers of the scenarios
+     * running in parallel are not closed
+     */
+    public void closeProducers() {
+        for (Map.Entry<Properties, Producer> producer : this.producers.get().values()) {
+            this.closeProducer(producer.getValue());
+        }
+        this.producers.remove();
+    }
+
+    private void closeProducer(Producer producer) {
+        try {
             producer.flush();
-            producer.close();
+            producer.close(this.connectionTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (org.apache.kafka.common.KafkaException e) {
+            logger.warn("Error closing kafka producer: {}", e.getMessage());
         }
     }
 
@@ -360,45 +487,152 @@ public class KafkaUtils {
     }
 
     /**
-     * Fetch messages from the given partition using poll(). Since there is no warranty that the pool will
-     * return messages, the function is enclosed in a loop for 5 seconds
+     * Fetch messages from the given topic, keeping only the last value of every key
      *
      * @param topic Name of the topic from which retrieve messages
-     * @return List of messages in the topic
+     * @return Last value of every key in the topic
+     * @deprecated records with the same key are lost, use {@link #readTopic(String)} instead
      */
+    @Deprecated
     public Map<Object, Object> readTopicFromBeginning(String topic) {
+        return this.readTopicFromBeginning(topic, null, null);
+    }
 
-        String key = this.propsConsumer.getProperty("key.deserializer");
-        String value = this.propsConsumer.getProperty("value.deserializer");
-        Class keyClass = this.getProperClass(key);
-        Class valueClass = this.getProperClass(value);
+    /**
+     * Fetch messages from the given topic, keeping only the last value of every key
+     *
+     * @param topic      Name of the topic from which retrieve messages
+     * @param keyClass   not used, the type of the keys depends on the key.deserializer property
+     * @param valueClass not used, the type of the values depends on the value.deserializer property
+     * @param <K>        type of the keys
+     * @param <V>        type of the values
+     * @return Last value of every key in the topic
+     * @deprecated records with the same key are lost, use {@link #readTopic(String)} instead
+     */
+    @Deprecated
+    public <K, V> Map readTopicFromBeginning(String topic, K keyClass, V valueClass) {
+        Map<Object, Object> result = new LinkedHashMap<>();
+        for (ConsumerRecord<Object, Object> record : this.readTopic(topic)) {
+            result.put(record.key(), record.value());
+        }
+        return result;
+    }
 
-        return this.readTopicFromBeginning(topic, keyClass, valueClass);
+    /**
+     * Reads all the records of the topic, from the beginning of every partition until the last offset they had when
+     * the read started. The records are not committed, so the offsets of the consumer group are not changed.
+     * <p>
+     * The read finishes as soon as the end of all the partitions is reached (immediately if the topic is empty), or
+     * after -DKAFKA_READ_TIMEOUT milliseconds (30000 by default)
+     *
+     * @param topic Name of the topic
+     * @param <K>   type of the keys (depends on the key.deserializer property)
+     * @param <V>   type of the values (depends on the value.deserializer property)
+     * @return records read, in the order of every partition
+     */
+    public <K, V> List<ConsumerRecord<K, V>> readTopic(String topic) {
+        try (KafkaConsumer<K, V> consumer = new KafkaConsumer<>(this.getReadConsumerProperties())) {
+            return this.readTopic(consumer, topic, getReadTimeout());
+        }
+    }
 
+    /**
+     * Returns the buffer of records consumed from the topic, after reading the records added since the last call.
+     * Every scenario (thread) has its own buffers, kept until the end of the scenario, the topic is deleted or the
+     * properties of the consumer change, so repeated checks over the same topic only read its new records
+     *
+     * @param topic Name of the topic
+     * @param <K>   type of the keys (depends on the key.deserializer property)
+     * @param <V>   type of the values (depends on the value.deserializer property)
+     * @return buffer with all the records of the topic
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> KafkaTopicBuffer<K, V> getTopicBuffer(String topic) {
+        Properties properties = this.getReadConsumerProperties();
+        if (!properties.equals(this.buffersProperties.get())) {
+            this.closeTopicBuffers();
+            this.buffersProperties.set(properties);
+        }
+        Map<String, KafkaTopicBuffer<?, ?>> current = this.buffers.get();
+        KafkaTopicBuffer<K, V> buffer = (KafkaTopicBuffer<K, V>) current.get(topic);
+        if (buffer == null) {
+            buffer = new KafkaTopicBuffer<>(new KafkaConsumer<K, V>(properties), topic, getReadTimeout());
+            current.put(topic, buffer);
+        }
+        buffer.refresh();
+        return buffer;
     }
 
-    public <K, V> Map readTopicFromBeginning(String topic, K keyClass, V valueClass) {
-        Map<K, V> result = new LinkedHashMap<>();
-        KafkaConsumer<K, V> consumer = new KafkaConsumer<>(propsConsumer);
-        consumer.subscribe(Arrays.asList(topic));
+    /**
+     * Closes the buffers of all the topics read by the current scenario. The buffers of the scenarios running in
+     * parallel are not closed
+     */
+    public void closeTopicBuffers() {
+        for (KafkaTopicBuffer<?, ?> buffer : this.buffers.get().values()) {
+            buffer.close();
+        }
+        this.buffers.remove();
+        this.buffersProperties.remove();
+    }
 
-        try {
-            long endTimeMillis = System.currentTimeMillis() + 5000;
-            while ((System.currentTimeMillis() < endTimeMillis)) {
-                ConsumerRecords<K, V> records = consumer.poll(100);
-                for (ConsumerRecord<K, V> record : records) {
-                    logger.debug(record.offset() + ": " + record.value());
-                    result.put(record.key(), record.value());
+    private void closeTopicBuffer(String topic) {
+        KafkaTopicBuffer<?, ?> buffer = this.buffers.get().remove(topic);
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    /**
+     * Properties of the consumers that read topics with assigned partitions, without committing offsets for the
+     * consumer group
+     */
+    private synchronized Properties getReadConsumerProperties() {
+        Properties properties = new Properties();
+        properties.putAll(this.propsConsumer);
+        properties.put("enable.auto.commit", "false");
+        return properties;
+    }
+
+    private static long getReadTimeout() {
+        return Long.parseLong(System.getProperty("KAFKA_READ_TIMEOUT", "30000"));
+    }
+
+    <K, V> List<ConsumerRecord<K, V>> readTopic(Consumer<K, V> consumer, String topic, long timeoutMillis) {
+        List<ConsumerRecord<K, V>> result = new ArrayList<>();
+        List<PartitionInfo> partitionInfos = consumer.partitionsFor(topic);
+        if (partitionInfos == null || partitionInfos.isEmpty()) {
+            logger.debug("Topic {} has no partitions", topic);
+            return result;
+        }
+
+        List<TopicPartition> partitions = new ArrayList<>();
+        for (PartitionInfo partitionInfo : partitionInfos) {
+            partitions.add(new TopicPartition(topic, partitionInfo.partition()));
+        }
+        consumer.assign(partitions);
+        consumer.seekToBeginning(partitions);
+        Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+
+        Set<TopicPartition> pending = new HashSet<>(partitions);
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            pending.removeIf(partition -> consumer.position(partition) >= endOffsets.get(partition));
+            if (pending.isEmpty()) {
+                break;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                logger.warn("End of topic {} not reached after {} ms, {} records read", topic, timeoutMillis, result.size());
+                break;
+            }
+            for (ConsumerRecord<K, V> record : consumer.poll(100)) {
+                if (record.offset() >= endOffsets.get(new TopicPartition(record.topic(), record.partition()))) {
+                    continue;
                 }
-                consumer.commitSync();
+                result.add(record);
             }
-        } finally {
-            consumer.unsubscribe();
-            consumer.close();
         }
 
-
-        logger.debug("Found " + result.size() + " messages in topic " + topic + ". " + result.toString());
+        logger.debug("Found {} records in topic {}", result.size(), topic);
         return result;
     }
 
@@ -446,7 +680,8 @@ public class KafkaUtils {
     }
 
     /**
-     * Fetch version of the schema registered under the specified subject in the registry
+     * Fetch version of the schema registered under the specified subject in the registry. Numbered versions can not
+     * change once registered, so they are fetched only once (the "latest" version is always fetched)
      *
      * @param subject Subject name
      * @param version Version of the schema to fetch
@@ -454,43 +689,75 @@ public class KafkaUtils {
      * @throws IOException IOException
      */
     public String getSchemaFromRegistry(String subject, String version) throws IOException {
+        String url = this.schemaRegistryConnect + "/subjects/" + subject + "/versions/" + version;
+        boolean immutable = version.matches("\\d+");
+        if (immutable) {
+            synchronized (this.registrySchemas) {
+                String schema = this.registrySchemas.get(url);
+                if (schema != null) {
+                    logger.debug("Using cached schema version " + version + " from subject " + subject);
+                    return schema;
+                }
+            }
+        }
+
         logger.debug("Fetching schema version " + version + " from subject " + subject);
 
         OkHttpClient client = new OkHttpClient();
 
         Request request = new Request.Builder()
-                .url(this.schemaRegistryConnect + "/subjects/" + subject + "/versions/" + version)
+                .url(url)
                 .get()
                 .addHeader("Content-Type", "application/json")
                 .build();
 
-        ObjectMapper om = new ObjectMapper();
-        ResponseBody response = client.newCall(request).execute().body();
-        Map fieldMapped = om.readValue(response.byteStream(), Map.class);
+        Map<String, Object> fieldMapped;
+        try (ResponseBody response = client.newCall(request).execute().body()) {
+            fieldMapped = JSON_MAPPER.readValue(response.byteStream(), JSON_OBJECT);
+        }
         String schema = (String) fieldMapped.get("schema");
+        if (immutable && schema != null) {
+            synchronized (this.registrySchemas) {
+                this.registrySchemas.put(url, schema);
+            }
+        }
         return schema;
 
     }
 
     /**
-     * Modify a single property of the producer
+     * Modify a single property of the producer. If the value changes, the producers of the current scenario are
+     * flushed and closed, and the next message is sent with a producer created with the new properties
      *
      * @param key   Property name
      * @param value Property new value
      */
     public void modifyProducerProperties(String key, String value) {
-        this.props.put(key, value);
+        synchronized (this) {
+            if (String.valueOf(value).equals(String.valueOf(this.props.get(key)))) {
+                return;
+            }
+            this.props.put(key, value);
+        }
+        this.closeProducers();
     }
 
 
     /**
-     * Modify a single property of the producer
+     * Modify a single property of the consumer. The buffers of the topics are discarded (the ones of other scenarios
+     * the next time they are used), since the records may be read differently (i.e. a new value.deserializer)
      *
      * @param key   Property name
      * @param value Property new value
      */
     public void modifyConsumerProperties(String key, String value) {
-        this.propsConsumer.put(key, value);
+        synchronized (this) {
+            if (String.valueOf(value).equals(String.valueOf(this.propsConsumer.get(key)))) {
+                return;
+            }
+            this.propsConsumer.put(key, value);
+        }
+        this.closeTopicBuffers();
     }
 
 
@@ -526,20 +793,7 @@ public class KafkaUtils {
         /*
           My way of creating a generic record
          */
-        Map<String, String> propertyList = new HashedMap();
-        HashMap<String, String> result = new ObjectMapper().readValue(json, HashMap.class);
-
-        for (String item : result.keySet()) {
-
-            try {
-                propertyList.put(item, result.get(item));
-            } catch (Exception e) {
-                propertyList.put(item, new Gson().toJson(result.get(item)));
-            }
-
-        }
-
-        this.createGenericRecord(key, propertyList, schema);
+        this.createGenericRecord(key, JSON_MAPPER.readValue(json, JSON_OBJECT), schema);
 
     }
 
@@ -551,7 +805,7 @@ public class KafkaUtils {
      * @param propertyList List of properties and values
      * @param schema       Schema to be used to serialize the object
      */
-    public void createGenericRecord(String key, Map<String, String> propertyList, String schema) {
+    public void createGenericRecord(String key, Map<String, ?> propertyList, String schema) {
 
         try {
             this.avroRecords.put(key, this.buildRecord(schema, propertyList));
@@ -562,193 +816,88 @@ public class KafkaUtils {
 
 
     /**
-     * Creates a {@link GenericRecord} given its schema and the list of key -> value
+     * Creates a {@link GenericRecord} given its schema and the list of key -> value. The schema is parsed only once,
+     * and the records are built with the cached {@link AvroRecordBuilder} of the schema
      *
      * @param schema                    Schema as string
      * @param propertyList              Property list (Key -> Value)
      * @return {@link GenericRecord}
      * @throws IOException              the IOException
      */
-    private GenericRecord buildRecord(String schema, Map<String, String> propertyList) throws IOException {
+    private GenericRecord buildRecord(String schema, Map<String, ?> propertyList) throws IOException {
+        return AvroCache.INSTANCE.getRecordBuilder(schema).build(propertyList);
+    }
 
-        Schema.Parser parser = new Schema.Parser();
-        Schema s = parser.parse(schema);
-        GenericRecord avroRecord = new GenericData.Record(s);
+    /**
+     * Throughput, errors and acknowledgement latencies of the messages sent with
+     * {@link #sendMessages(String, Iterator)}
+     */
+    public static final class BulkResult {
 
-        //for cases of null records
-        if (propertyList == null) {
-            return null;
-        }
+        private final LatencyHistogram histogram = new LatencyHistogram();
 
-        for (Map.Entry<String, String> entry : propertyList.entrySet()) {
+        private final AtomicLong errors = new AtomicLong();
 
-            Schema.Field field = s.getField(entry.getKey());
-            if (field != null) {
+        private final AtomicLong bytes = new AtomicLong();
 
-                String type = field.schema().getType().getName().toLowerCase();
-                String value;
-                try {
-                    value = entry.getValue();
-                } catch (Exception e) {
-                    value = new Gson().toJson(entry.getValue());
-                }
+        private final AtomicReference<String> firstError = new AtomicReference<>();
 
+        private long elapsedNanos;
 
-                if (type.matches("int")) {
-                    avroRecord.put(entry.getKey(), Integer.valueOf(value));
-                } else if (type.matches("bytes")) {
-                    avroRecord.put(entry.getKey(), ByteBuffer.wrap(new BigDecimal(value).unscaledValue().toByteArray()));
-                } else if (type.matches("long")) {
-                    avroRecord.put(entry.getKey(), Long.parseLong(value));
-                } else if (type.matches("float")) {
-                    avroRecord.put(entry.getKey(), Float.parseFloat(value));
-                } else if (type.matches("string")) {
-                    avroRecord.put(entry.getKey(), value);
-                } else if (type.matches("boolean")) {
-                    avroRecord.put(entry.getKey(), (value.matches("true") ? true : false));
-                } else if (type.matches("array")) {
-                    List<Object> objectArray = new ArrayList<>();
-                    objectArray = this.getObjectsfromArray(entry.getKey(), value, s);
-                    avroRecord.put(entry.getKey(), objectArray);
-                } else if (type.matches("record")) {
-                    HashMap<String, String> result = null;
-                    try {
-                        result = new ObjectMapper().readValue(value, HashMap.class);
-                    } catch (IOException e) {
-                        throw new IOException("Could not map " + value + " to a record type", e);
-                    }
-                    GenericRecord temp = this.buildRecord(s.getField(entry.getKey()).schema().toString(), result);
-                    avroRecord.put(entry.getKey(), temp);
-                } else if (type.matches("union")) {
-
-                    for (Schema sch : field.schema().getTypes()) {
-
-                        String t = sch.getName().toLowerCase();
-
-                        switch (t) {
-
-                            case "null":
-                                break;
-
-                            case "array":
-                                List<Object> objectArray = new ArrayList<>();
-                                objectArray = this.getObjectsfromArray(entry.getKey(), value, sch);
-                                avroRecord.put(entry.getKey(), objectArray);
-                                break;
-
-                            case "string":
-                                avroRecord.put(entry.getKey(), value);
-                                break;
-
-                            case "bytes":
-                                avroRecord.put(entry.getKey(), ByteBuffer.wrap(new BigDecimal(value).unscaledValue().toByteArray()));
-                                break;
-
-                            case "long":
-                                avroRecord.put(entry.getKey(), Long.parseLong(value));
-                                break;
-
-                            case "float":
-                                avroRecord.put(entry.getKey(), Float.parseFloat(value));
-                                break;
-
-                            case "int":
-                                avroRecord.put(entry.getKey(), Integer.valueOf(value));
-                                break;
-
-                            case "boolean":
-                                avroRecord.put(entry.getKey(), (value.matches("true") ? true : false));
-                                break;
-
-
-                            default:
-                                if (value != null) {
-                                    GenericRecord temp = this.buildRecord(sch.toString(), new ObjectMapper().readValue(value, HashMap.class));
-                                    avroRecord.put(entry.getKey(), temp);
-                                } else {
-                                    avroRecord.put(entry.getKey(), null);
-                                }
-
-                        }
-
-                    }
-
-                } else {
-                    logger.warn("Unrecognized type in schema: " + type);
-                    avroRecord.put(entry.getKey(), value);
-                }
+        private void acknowledge(long sent, RecordMetadata metadata, Exception exception) {
+            this.histogram.record((System.nanoTime() - sent) / 1000);
+            if (exception != null) {
+                this.errors.incrementAndGet();
+                this.firstError.compareAndSet(null, exception.getClass().getSimpleName() + ": " + exception.getMessage());
             } else {
-                logger.warn("the field " + entry.getKey() + " is not present in the schema and will be ignored");
+                this.bytes.addAndGet(Math.max(0, metadata.serializedKeySize()) + Math.max(0, metadata.serializedValueSize()));
             }
         }
 
-        return avroRecord;
-    }
-
-    private List<Object> getObjectsfromArray(String entry, String value, Schema s) throws IOException {
-
-        List<Object> objectArray = new ArrayList<>();
-        String t = null;
-
-        try {
-            t = s.getField(entry).schema().getElementType().getType().getName().toLowerCase();
-        } catch (Exception e) {
-            t = s.getElementType().getType().getName().toLowerCase();
+        private void finish(long start) {
+            this.elapsedNanos = System.nanoTime() - start;
         }
 
+        public long getMessages() {
+            return histogram.getCount();
+        }
 
-        if (t.matches("record")) {
-
-            List<HashMap<String, String>> elements = null;
-            try {
-                elements = new ObjectMapper().readValue(value, List.class);
-            } catch (IOException e) {
-                throw new IOException("Could not map " + value + " to array", e);
-            }
-            String elementsSchema = null;
-            try {
-                elementsSchema = s.getField(entry).schema().getElementType().toString();
-            } catch (Exception e) {
-                elementsSchema = s.getElementType().toString();
-            }
-
-            for (HashMap<String, String> element : elements) {
-                objectArray.add(this.buildRecord(elementsSchema, element));
-            }
-        } else {
-
-            List<String> elements = null;
-            for (String element : elements) {
-
-                switch (t) {
-                    case "string":
-                        objectArray.add(element);
-                        break;
-
-                    case "bytes":
-                        objectArray.add(ByteBuffer.wrap(new BigDecimal(element).unscaledValue().toByteArray()));
-                        break;
-
-                    case "long":
-                        objectArray.add(Long.parseLong(element));
-                        break;
+        public long getErrors() {
+            return errors.get();
+        }
 
-                    case "boolean":
-                        objectArray.add((element.matches("true") ? true : false));
-                        break;
+        public String getFirstError() {
+            return firstError.get();
+        }
 
-                    case "int":
-                        objectArray.add(Integer.valueOf(element));
-                        break;
+        public long getBytes() {
+            return bytes.get();
+        }
 
-                    default:
-                        objectArray.add(element);
-                }
-            }
+        /**
+         * Returns the number of messages acknowledged per second
+         *
+         * @return throughput
+         */
+        public double getThroughput() {
+            return this.elapsedNanos == 0 ? 0 : this.getMessages() / (this.elapsedNanos / 1e9);
         }
 
-        return objectArray;
+        /**
+         * Returns an acknowledgement latency statistic in milliseconds
+         *
+         * @param statistic p50, p90, p95, p99, p999, mean or max
+         * @return latency in milliseconds
+         */
+        public double getLatency(String statistic) {
+            return this.histogram.getStatistic(statistic) / 1000.0;
+        }
 
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d messages, %d errors, %.1f msg/s, %.2f MB/s, ack p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms",
+                    this.getMessages(), this.getErrors(), this.getThroughput(), this.elapsedNanos == 0 ? 0 : this.getBytes() / (this.elapsedNanos / 1e9) / (1024 * 1024),
+                    this.getLatency("p50"), this.getLatency("p95"), this.getLatency("p99"), this.getLatency("max"));
+        }
     }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in microseconds, with a fixed memory footprint regardless of the number of
+ * values recorded (like HdrHistogram).
+ * <p>
+ * Values below 128 are counted exactly. Bigger values are counted in 64 linear buckets per power of two, so the
+ * percentiles returned have a relative error below 1.6%. Values up to 2^40 microseconds (~12 days) are supported,
+ * bigger values are counted as the maximum.
+ */
+public class LatencyHistogram {
+
+    private static final int EXACT = 128;
+
+    private static final int SUB_BUCKETS = 64;
+
+    private static final int MAX_SHIFT = 34;
+
+    private final AtomicLongArray counts = new AtomicLongArray(EXACT + MAX_SHIFT * SUB_BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value. Safe to use from several threads
+     *
+     * @param micros latency in microseconds
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        this.counts.incrementAndGet(index(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+        this.max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Returns the value below which the given percentage of values fall
+     *
+     * @param percentile percentile (0-100)
+     * @return value in microseconds (0 if no value was recorded)
+     */
+    public long getPercentile(double percentile) {
+        long total = this.count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of all the values recorded
+     *
+     * @return mean in microseconds
+     */
+    public double getMean() {
+        long total = this.count.get();
+        return total == 0 ? 0 : (double) this.sum.get() / total;
+    }
+
+    /**
+     * Returns a statistic of the values recorded
+     *
+     * @param statistic p50, p90, p95, p99, p999, mean or max
+     * @return value in microseconds
+     */
+    public double getStatistic(String statistic) {
+        switch (statistic.toLowerCase(Locale.ROOT)) {
+            case "mean":
+                return this.getMean();
+            case "max":
+                return this.getMax();
+            case "p999":
+                return this.getPercentile(99.9);
+            default:
+                if (!statistic.matches("(?i)p\\d{1,2}")) {
+                    throw new IllegalArgumentException("Unknown latency statistic: " + statistic);
+                }
+                return this.getPercentile(Double.parseDouble(statistic.substring(1)));
+        }
+    }
+
+    static int index(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        if (shift > MAX_SHIFT) {
+            return EXACT + MAX_SHIFT * SUB_BUCKETS - 1;
+        }
+        int subBucket = (int) (value >> shift) - SUB_BUCKETS;
+        return EXACT + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValue(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int shift = (index - EXACT) / SUB_BUCKETS + 1;
+        long subBucket = (index - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the same request repeatedly to measure the latency, error rate and throughput of a service.
+ * <p>
+ * Two load models are supported:
+ * <pre>
+ * concurrent users  N workers send requests one after the other, as fast as possible, during the given time
+ * fixed rate        requests are started at a fixed rate during the given time, regardless of the response time
+ * </pre>
+ * In the fixed rate model, latencies are measured from the moment the request should have been started, so a
+ * slow service is not hidden by the delay of the following requests (coordinated omission).
+ * <p>
+ * Requests run in virtual threads when running on JDK 21 or newer (-DLOAD_VIRTUAL_THREADS=false to disable them),
+ * or in a pool of platform threads otherwise.
+ */
+public class LoadGenerator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private final Callable<Integer> request;
+
+    /**
+     * Default constructor.
+     *
+     * @param request sends a request and returns its status code. Status codes of 400 or above, and any exception,
+     *                are counted as errors
+     */
+    public LoadGenerator(Callable<Integer> request) {
+        this.request = request;
+    }
+
+    /**
+     * Sends requests from the given number of concurrent workers
+     *
+     * @param users    number of concurrent workers
+     * @param duration duration of the test
+     * @param unit     unit of the duration
+     * @return result of the test
+     * @throws IllegalArgumentException if the number of workers is not positive
+     */
+    public Result runConcurrently(int users, long duration, TimeUnit unit) {
+        if (users <= 0) {
+            throw new IllegalArgumentException("The number of concurrent users must be greater than 0: " + users);
+        }
+        Result result = new Result();
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(duration);
+
+        ExecutorService executor = newExecutor(users);
+        for (int i = 0; i < users; i++) {
+            executor.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    this.send(System.nanoTime(), result);
+                }
+            });
+        }
+        awaitTermination(executor, duration, unit);
+        result.finish(start);
+        LOGGER.debug("Load test with {} concurrent users finished: {}", users, result);
+        return result;
+    }
+
+    /**
+     * Starts requests at a fixed rate
+     *
+     * @param rate     requests per second
+     * @param duration duration of the test
+     * @param unit     unit of the duration
+     * @return result of the test
+     * @throws IllegalArgumentException if the rate is not positive
+     */
+    public Result runAtRate(double rate, long duration, TimeUnit unit) {
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("The number of requests per second must be greater than 0: " + rate);
+        }
+        Result result = new Result();
+        long interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(duration);
+
+        ExecutorService executor = newExecutor();
+        for (long intended = start; intended < deadline; intended += interval) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            long scheduled = intended;
+            executor.execute(() -> this.send(scheduled, result));
+        }
+        awaitTermination(executor, duration, unit);
+        result.finish(start);
+        LOGGER.debug("Load test at {} requests per second finished: {}", rate, result);
+        return result;
+    }
+
+    private void send(long startNanos, Result result) {
+        boolean error;
+        try {
+            Integer status = this.request.call();
+            error = status == null || status >= 400;
+            if (error) {
+                result.lastError.set("status code " + status);
+            }
+        } catch (Exception e) {
+            error = true;
+            result.lastError.set(e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+        result.histogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        if (error) {
+            result.errors.incrementAndGet();
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executor, long duration, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            long timeout = unit.toMillis(duration) + Long.parseLong(System.getProperty("LOAD_TIMEOUT", "60000"));
+            if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Some requests of the load test did not finish in time");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the executor for the requests of the given number of workers: virtual threads if available
+     * (JDK 21+), or a fixed pool of platform threads
+     *
+     * @param threads number of threads
+     * @return executor
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    static ExecutorService newExecutor(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be greater than 0: " + threads);
+        }
+        return createExecutor(threads);
+    }
+
+    /**
+     * Returns an executor that runs every request in a new thread (or reuses an idle one): virtual threads if
+     * available (JDK 21+), or a cached pool of platform threads
+     *
+     * @return executor
+     */
+    static ExecutorService newExecutor() {
+        return createExecutor(0);
+    }
+
+    private static ExecutorService createExecutor(int threads) {
+        if (Boolean.parseBoolean(System.getProperty("LOAD_VIRTUAL_THREADS", "true"))) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                LOGGER.trace("Virtual threads not available, using platform threads");
+            }
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "load-generator-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return threads > 0 ? Executors.newFixedThreadPool(threads, factory) : Executors.newCachedThreadPool(factory);
+    }
+
+    /**
+     * Latencies, errors and throughput of a load test
+     */
+    public static final class Result {
+
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private final AtomicLong errors = new AtomicLong();
+
+        private final AtomicReference<String> lastError = new AtomicReference<>();
+
+        private long elapsedNanos;
+
+        private void finish(long start) {
+            this.elapsedNanos = System.nanoTime() - start;
+        }
+
+        public long getRequests() {
+            return histogram.getCount();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public String getLastError() {
+            return lastError.get();
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        /**
+         * Returns the percentage of requests that failed
+         *
+         * @return error rate (0-100)
+         */
+        public double getErrorRate() {
+            return this.getRequests() == 0 ? 0 : 100.0 * this.getErrors() / this.getRequests();
+        }
+
+        /**
+         * Returns the number of requests completed per second
+         *
+         * @return throughput
+         */
+        public double getThroughput() {
+            return this.elapsedNanos == 0 ? 0 : this.getRequests() / (this.elapsedNanos / 1e9);
+        }
+
+        /**
+         * Returns a latency statistic in milliseconds
+         *
+         * @param statistic p50, p90, p95, p99, p999, mean or max
+         * @return latency in milliseconds
+         */
+        public double getLatency(String statistic) {
+            return this.histogram.getStatistic(statistic) / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d requests, %.2f%% errors, %.1f req/s, p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms",
+                    this.getRequests(), this.getErrorRate(), this.getThroughput(), this.getLatency("p50"), this.getLatency("p95"),
+                    this.getLatency("p99"), this.getLatency("max"));
+        }
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process http server that returns predefined responses (stubs), used to replace the services a scenario depends
+ * on.
+ * <p>
+ * Requests are matched by method, path (where * matches any text), headers and body. The last stub defined for a
+ * request wins, and requests that do not match any stub get a 404. Every stub can add a delay before the response,
+ * following a fixed value, an uniform or a log-normal distribution, and can fail a percentage of the requests, so
+ * timeouts and retries can be tested without the real service.
+ * <pre>{@code
+ * MockServer server = new MockServer(0);
+ * server.stub("GET", "/users/*").body("{\"id\": 1}").header("Content-Type", "application/json")
+ *         .delay(Delay.parse("median 100 p99 800")).errorRate(10, "503");
+ * ...
+ * assertThat(server.getRequestCount("GET", "/users/*")).isEqualTo(3);
+ * server.stop();
+ * }</pre>
+ */
+public class MockServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MockServer.class);
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final List<Stub> stubs = new CopyOnWriteArrayList<>();
+
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Starts the server in the given port
+     *
+     * @param port port, or 0 to use any free port
+     * @throws IOException if the port is not available
+     */
+    public MockServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mock-server-" + port);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+        LOGGER.debug("Mock server listening on port {}", this.getPort());
+    }
+
+    /**
+     * Port the server is listening on
+     *
+     * @return port
+     */
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Adds a new stub. It has priority over the stubs defined before
+     *
+     * @param method http method (i.e. GET)
+     * @param path   path of the request, where * matches any text (i.e. /users/*). The query string is only
+     *               compared if the path contains it
+     * @return the stub, to define the response
+     */
+    public Stub stub(String method, String path) {
+        Stub stub = new Stub(method, path);
+        this.stubs.add(0, stub);
+        return stub;
+    }
+
+    /**
+     * Returns the number of requests received with the given method and path
+     *
+     * @param method http method
+     * @param path   path of the request, where * matches any text
+     * @return number of requests
+     */
+    public int getRequestCount(String method, String path) {
+        Pattern pattern = glob(method.toUpperCase() + " " + path);
+        int count = 0;
+        synchronized (this.received) {
+            for (String request : this.received) {
+                if (pattern.matcher(path.contains("?") ? request : request.split("\\?")[0]).matches()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stops the server. Requests in progress are discarded
+     */
+    public void stop() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+        LOGGER.debug("Mock server on port {} stopped after {} requests", this.getPort(), this.received.size());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod().toUpperCase();
+            String uri = exchange.getRequestURI().getRawPath();
+            if (exchange.getRequestURI().getRawQuery() != null) {
+                uri += "?" + exchange.getRequestURI().getRawQuery();
+            }
+            String body = read(exchange.getRequestBody());
+            this.received.add(method + " " + uri);
+
+            Stub stub = null;
+            for (Stub candidate : this.stubs) {
+                if (candidate.matches(method, uri, exchange, body)) {
+                    stub = candidate;
+                    break;
+                }
+            }
+            if (stub == null) {
+                LOGGER.warn("Mock server has no stub for {} {}", method, uri);
+                respond(exchange, 404, "No stub for " + method + " " + uri, Collections.emptyMap());
+                return;
+            }
+
+            stub.hits.incrementAndGet();
+            long delay = stub.delay == null ? 0 : stub.delay.next();
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (stub.errorRate > 0 && ThreadLocalRandom.current().nextDouble(100) < stub.errorRate) {
+                if ("reset".equals(stub.error)) {
+                    LOGGER.debug("Mock server closing the connection of {} {}", method, uri);
+                    return;
+                }
+                respond(exchange, Integer.parseInt(stub.error), "Injected error", Collections.emptyMap());
+                return;
+            }
+            respond(exchange, stub.status, stub.body, stub.headers);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body, Map<String, String> headers) throws IOException {
+        byte[] bytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            exchange.getResponseHeaders().add(header.getKey(), header.getValue());
+        }
+        boolean noBody = bytes.length == 0 || "HEAD".equals(exchange.getRequestMethod()) || status == 204 || status == 304;
+        exchange.sendResponseHeaders(status, noBody ? -1 : bytes.length);
+        if (!noBody) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Pattern glob(String text) {
+        StringBuilder regex = new StringBuilder();
+        for (String part : text.split("\\*", -1)) {
+            if (regex.length() > 0) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(part));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Predefined response for the requests that match a method, path, headers and body
+     */
+    public static final class Stub {
+
+        private final String method;
+
+        private final String path;
+
+        private final Pattern pathPattern;
+
+        private final Map<String, String> requestHeaders = new LinkedHashMap<>();
+
+        private String requestBody;
+
+        private int status = 200;
+
+        private String body = "";
+
+        private final Map<String, String> headers = new LinkedHashMap<>();
+
+        private Delay delay;
+
+        private double errorRate;
+
+        private String error = "500";
+
+        private final AtomicInteger hits = new AtomicInteger();
+
+        private Stub(String method, String path) {
+            this.method = method.toUpperCase();
+            this.path = path;
+            this.pathPattern = glob(path);
+        }
+
+        /**
+         * Only matches requests with the given header value
+         *
+         * @param name  header name
+         * @param value expected value
+         * @return this
+         */
+        public Stub withHeader(String name, String value) {
+            this.requestHeaders.put(name, value);
+            return this;
+        }
+
+        /**
+         * Only matches requests whose body contains the given text
+         *
+         * @param text text the body must contain
+         * @return this
+         */
+        public Stub withBody(String text) {
+            this.requestBody = text;
+            return this;
+        }
+
+        /**
+         * Status code of the response (200 by default)
+         *
+         * @param status status code
+         * @return this
+         */
+        public Stub status(int status) {
+            this.status = status;
+            return this;
+        }
+
+        /**
+         * Body of the response
+         *
+         * @param body body
+         * @return this
+         */
+        public Stub body(String body) {
+            this.body = body;
+            return this;
+        }
+
+        /**
+         * Adds a header to the response
+         *
+         * @param name  header name
+         * @param value header value
+         * @return this
+         */
+        public Stub header(String name, String value) {
+            this.headers.put(name, value);
+            return this;
+        }
+
+        /**
+         * Delay before the response is sent
+         *
+         * @param delay delay distribution
+         * @return this
+         */
+        public Stub delay(Delay delay) {
+            this.delay = delay;
+            return this;
+        }
+
+        /**
+         * Fails a percentage of the requests (after the delay)
+         *
+         * @param percentage percentage of the requests that fail (0-100)
+         * @param error      status code of the failed requests, or 'reset' to close the connection without response
+         * @return this
+         */
+        public Stub errorRate(double percentage, String error) {
+            if (!"reset".equals(error) && !error.matches("\\d{3}")) {
+                throw new IllegalArgumentException("The error must be a status code or 'reset': " + error);
+            }
+            this.errorRate = percentage;
+            this.error = error;
+            return this;
+        }
+
+        /**
+         * Number of requests answered by this stub
+         *
+         * @return number of requests
+         */
+        public int getHits() {
+            return this.hits.get();
+        }
+
+        private boolean matches(String requestMethod, String uri, HttpExchange exchange, String requestBody) {
+            if (!this.method.equals(requestMethod)) {
+                return false;
+            }
+            String requestPath = this.path.contains("?") ? uri : uri.split("\\?")[0];
+            if (!this.pathPattern.matcher(requestPath).matches()) {
+                return false;
+            }
+            for (Map.Entry<String, String> header : this.requestHeaders.entrySet()) {
+                if (!header.getValue().equals(exchange.getRequestHeaders().getFirst(header.getKey()))) {
+                    return false;
+                }
+            }
+            return this.requestBody == null || requestBody.contains(this.requestBody);
+        }
+    }
+
+    /**
+     * Distribution of the delay of a stub
+     */
+    public static final class Delay {
+
+        private static final Pattern FIXED = Pattern.compile("^(\\d+)$");
+
+        private static final Pattern UNIFORM = Pattern.compile("^(\\d+)-(\\d+)$");
+
+        private static final Pattern LOG_NORMAL = Pattern.compile("^median (\\d+) p99 (\\d+)$");
+
+        /* z-score of the 99th percentile of the standard normal distribution */
+        private static final double Z_99 = 2.326;
+
+        private final long min;
+
+        private final long max;
+
+        private final double median;
+
+        private final double sigma;
+
+        private Delay(long min, long max, double median, double sigma) {
+            this.min = min;
+            this.max = max;
+            this.median = median;
+            this.sigma = sigma;
+        }
+
+        /**
+         * Parses a delay distribution, in milliseconds:
+         * <pre>
+         * 200                  always 200 ms
+         * 100-300              uniform between 100 and 300 ms
+         * median 100 p99 800   log-normal, half of the requests take less than 100 ms and 1% more than 800 ms
+         * </pre>
+         *
+         * @param delay delay distribution
+         * @return the distribution
+         */
+        public static Delay parse(String delay) {
+            String text = delay.trim();
+            Matcher matcher = FIXED.matcher(text);
+            if (matcher.matches()) {
+                long value = Long.parseLong(matcher.group(1));
+                return new Delay(value, value, 0, 0);
+            }
+            matcher = UNIFORM.matcher(text);
+            if (matcher.matches()) {
+                return new Delay(Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)), 0, 0);
+            }
+            matcher = LOG_NORMAL.matcher(text);
+            if (matcher.matches()) {
+                double median = Double.parseDouble(matcher.group(1));
+                double p99 = Double.parseDouble(matcher.group(2));
+                if (median <= 0 || p99 < median) {
+                    throw new IllegalArgumentException("The p99 must be greater than the median: " + delay);
+                }
+                return new Delay(0, 0, median, Math.log(p99 / median) / Z_99);
+            }
+            throw new IllegalArgumentException("Invalid delay '" + delay + "'. Use '200', '100-300' or 'median 100 p99 800'");
+        }
+
+        /**
+         * Returns a random delay from the distribution
+         *
+         * @return delay in milliseconds
+         */
+        public long next() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (this.median > 0) {
+                return Math.round(this.median * Math.exp(this.sigma * random.nextGaussian()));
+            }
+            return this.min == this.max ? this.min : random.nextLong(this.min, this.max + 1);
+        }
+    }
+}
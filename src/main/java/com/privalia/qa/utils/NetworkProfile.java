@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import java.util.Locale;
+
+/**
+ * Network conditions that can be emulated in the browser. The predefined profiles use the
+ * same values as the presets of the Chrome DevTools network panel
+ */
+public final class NetworkProfile {
+
+    public static final NetworkProfile NONE = new NetworkProfile("none", false, 0, -1, -1);
+
+    public static final NetworkProfile OFFLINE = new NetworkProfile("offline", true, 0, 0, 0);
+
+    public static final NetworkProfile SLOW_3G = new NetworkProfile("slow3g", false, 2000, 400, 400);
+
+    public static final NetworkProfile FAST_3G = new NetworkProfile("fast3g", false, 563, 1475, 675);
+
+    public static final NetworkProfile FOUR_G = new NetworkProfile("4g", false, 170, 9000, 9000);
+
+    private final String name;
+
+    private final boolean offline;
+
+    private final long latency;
+
+    private final long downloadKbps;
+
+    private final long uploadKbps;
+
+    /**
+     * Default constructor.
+     *
+     * @param name         name of the profile
+     * @param offline      whether the browser is disconnected
+     * @param latency      additional latency (ms) of every request
+     * @param downloadKbps max download speed in kbit/s (-1 means no limit)
+     * @param uploadKbps   max upload speed in kbit/s (-1 means no limit)
+     */
+    public NetworkProfile(String name, boolean offline, long latency, long downloadKbps, long uploadKbps) {
+        this.name = name;
+        this.offline = offline;
+        this.latency = latency;
+        this.downloadKbps = downloadKbps;
+        this.uploadKbps = uploadKbps;
+    }
+
+    /**
+     * Returns the profile with the given name (none, offline, slow3g, fast3g, 4g), or a custom profile
+     * with the format latency,download,upload (i.e. 300,1000,500: 300ms of latency, 1000kbps download, 500 kbps upload)
+     *
+     * @param value name of the profile or custom profile
+     * @return network profile
+     */
+    public static NetworkProfile parse(String value) {
+        String profile = value.trim().toLowerCase(Locale.ROOT);
+        for (NetworkProfile predefined : new NetworkProfile[]{NONE, OFFLINE, SLOW_3G, FAST_3G, FOUR_G}) {
+            if (predefined.name.equals(profile)) {
+                return predefined;
+            }
+        }
+
+        String[] values = profile.split(",");
+        if (values.length != 3) {
+            throw new IllegalArgumentException("Unknown network profile '" + value + "'. Use none, offline, slow3g, fast3g, 4g or latency,download,upload");
+        }
+        try {
+            return new NetworkProfile(profile, false, Long.parseLong(values[0].trim()), Long.parseLong(values[1].trim()), Long.parseLong(values[2].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown network profile '" + value + "'. Use none, offline, slow3g, fast3g, 4g or latency,download,upload", e);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * Returns the max download speed in bytes/s, as expected by the DevTools protocol
+     *
+     * @return bytes per second (-1 means no limit)
+     */
+    public long getDownloadThroughput() {
+        return downloadKbps < 0 ? -1 : downloadKbps * 1000 / 8;
+    }
+
+    /**
+     * Returns the max upload speed in bytes/s, as expected by the DevTools protocol
+     *
+     * @return bytes per second (-1 means no limit)
+     */
+    public long getUploadThroughput() {
+        return uploadKbps < 0 ? -1 : uploadKbps * 1000 / 8;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (offline=%s, latency=%dms, download=%dkbps, upload=%dkbps)", name, offline, latency, downloadKbps, uploadKbps);
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Performance metrics of the current page, as reported by the browser through the Navigation Timing,
+ * Paint Timing, Largest Contentful Paint and Resource Timing APIs. All the times are in milliseconds
+ * since the start of the navigation. Metrics not supported by the browser are null.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PagePerformance {
+
+    /**
+     * Names of the metrics, as used in the steps and in the report
+     */
+    public static final String PAGE_LOAD = "page load";
+
+    public static final String DOM_CONTENT_LOADED = "DOM content loaded";
+
+    public static final String TIME_TO_FIRST_BYTE = "time to first byte";
+
+    public static final String FIRST_CONTENTFUL_PAINT = "first contentful paint";
+
+    public static final String LARGEST_CONTENTFUL_PAINT = "largest contentful paint";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String NAVIGATION_START = "return performance.timeOrigin || performance.timing.navigationStart;";
+
+    private static final String SCRIPT = "var callback = arguments[arguments.length - 1];"
+            + "var deadline = Date.now() + arguments[0];"
+            + "function positive(value) { return value > 0 ? value : null; }"
+            + "function navigation() { return performance.getEntriesByType ? performance.getEntriesByType('navigation')[0] : null; }"
+            + "function loaded() { var nav = navigation(); return nav ? nav.loadEventEnd > 0 : performance.timing.loadEventEnd > 0; }"
+            + "function collect() {"
+            + "  var result = {url: window.location.href, navigationStart: performance.timeOrigin || performance.timing.navigationStart, resources: []};"
+            + "  var nav = navigation();"
+            + "  if (nav) {"
+            + "    result.timeToFirstByte = positive(nav.responseStart); result.domContentLoaded = positive(nav.domContentLoadedEventEnd);"
+            + "    result.pageLoad = positive(nav.loadEventEnd);"
+            + "  } else {"
+            + "    var t = performance.timing;"
+            + "    result.timeToFirstByte = t.responseStart > 0 ? t.responseStart - t.navigationStart : null;"
+            + "    result.domContentLoaded = t.domContentLoadedEventEnd > 0 ? t.domContentLoadedEventEnd - t.navigationStart : null;"
+            + "    result.pageLoad = t.loadEventEnd > 0 ? t.loadEventEnd - t.navigationStart : null;"
+            + "  }"
+            + "  if (performance.getEntriesByType) {"
+            + "    performance.getEntriesByType('paint').forEach(function(p) { if (p.name === 'first-contentful-paint') { result.firstContentfulPaint = p.startTime; } });"
+            + "    performance.getEntriesByType('resource').forEach(function(r) {"
+            + "      result.resources.push({name: r.name, initiatorType: r.initiatorType, startTime: r.startTime, duration: r.duration, transferSize: r.transferSize || 0});"
+            + "    });"
+            + "  }"
+            + "  try {"
+            + "    new PerformanceObserver(function(list) { var e = list.getEntries(); result.largestContentfulPaint = e[e.length - 1].startTime; })"
+            + "      .observe({type: 'largest-contentful-paint', buffered: true});"
+            + "  } catch (e) {}"
+            + "  setTimeout(function() { callback(JSON.stringify(result)); }, 50);"
+            + "}"
+            + "(function wait() { if (loaded() || Date.now() > deadline) { collect(); } else { setTimeout(wait, 50); } })();";
+
+    private String url;
+
+    private Double navigationStart;
+
+    private Double pageLoad;
+
+    private Double domContentLoaded;
+
+    private Double timeToFirstByte;
+
+    private Double firstContentfulPaint;
+
+    private Double largestContentfulPaint;
+
+    private List<ResourceTiming> resources = new ArrayList<>();
+
+    /**
+     * Collects the performance metrics of the page currently loaded in the browser. If the load event of the page
+     * has not fired yet, waits for it up to -DPAGE_LOAD_WAIT milliseconds (10000 by default). Metrics of events that
+     * have not happened yet are null (not available), never 0
+     *
+     * @param driver driver used for testing
+     * @return metrics of the page
+     * @throws IOException if the metrics returned by the browser could not be parsed
+     */
+    public static PagePerformance collect(WebDriver driver) throws IOException {
+        long wait = Long.parseLong(System.getProperty("PAGE_LOAD_WAIT", "10000"));
+        Object result = ((JavascriptExecutor) driver).executeAsyncScript(SCRIPT, wait);
+        return MAPPER.readValue(result.toString(), PagePerformance.class);
+    }
+
+    /**
+     * Returns true if the metrics belong to the document currently loaded in the browser (the same url is a
+     * different document after a reload)
+     *
+     * @param driver driver used for testing
+     * @return true if the metrics are of the current document
+     */
+    public boolean isCurrent(WebDriver driver) {
+        Object start = ((JavascriptExecutor) driver).executeScript(NAVIGATION_START);
+        return this.navigationStart != null && start instanceof Number && ((Number) start).doubleValue() == this.navigationStart
+                && driver.getCurrentUrl().equals(this.url);
+    }
+
+    /**
+     * Returns the value of the metric with the given name
+     *
+     * @param metric name of the metric (i.e. {@link #PAGE_LOAD})
+     * @return value of the metric, or null if not supported by the browser
+     */
+    public Double getMetric(String metric) {
+        switch (metric) {
+            case PAGE_LOAD:
+                return pageLoad;
+            case DOM_CONTENT_LOADED:
+                return domContentLoaded;
+            case TIME_TO_FIRST_BYTE:
+                return timeToFirstByte;
+            case FIRST_CONTENTFUL_PAINT:
+                return firstContentfulPaint;
+            case LARGEST_CONTENTFUL_PAINT:
+                return largestContentfulPaint;
+            default:
+                throw new IllegalArgumentException("Unknown performance metric: " + metric);
+        }
+    }
+
+    /**
+     * Returns the page metrics by name (only the ones supported by the browser)
+     *
+     * @return metrics
+     */
+    @JsonIgnore
+    public Map<String, Double> getMetrics() {
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        for (String metric : new String[]{PAGE_LOAD, DOM_CONTENT_LOADED, TIME_TO_FIRST_BYTE, FIRST_CONTENTFUL_PAINT, LARGEST_CONTENTFUL_PAINT}) {
+            if (this.getMetric(metric) != null) {
+                metrics.put(metric, this.getMetric(metric));
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the resources that took more than the given time
+     *
+     * @param duration max duration in milliseconds
+     * @return slow resources
+     */
+    public List<ResourceTiming> getResourcesSlowerThan(double duration) {
+        List<ResourceTiming> slow = new ArrayList<>();
+        for (ResourceTiming resource : this.resources) {
+            if (resource.getDuration() > duration) {
+                slow.add(resource);
+            }
+        }
+        return slow;
+    }
+
+    /**
+     * Returns the metrics as json
+     *
+     * @return json string
+     * @throws IOException if the metrics could not be serialized
+     */
+    public String toJson() throws IOException {
+        return MAPPER.writeValueAsString(this);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public Double getNavigationStart() {
+        return navigationStart;
+    }
+
+    public void setNavigationStart(Double navigationStart) {
+        this.navigationStart = navigationStart;
+    }
+
+    public Double getPageLoad() {
+        return pageLoad;
+    }
+
+    public void setPageLoad(Double pageLoad) {
+        this.pageLoad = pageLoad;
+    }
+
+    public Double getDomContentLoaded() {
+        return domContentLoaded;
+    }
+
+    public void setDomContentLoaded(Double domContentLoaded) {
+        this.domContentLoaded = domContentLoaded;
+    }
+
+    public Double getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    public void setTimeToFirstByte(Double timeToFirstByte) {
+        this.timeToFirstByte = timeToFirstByte;
+    }
+
+    public Double getFirstContentfulPaint() {
+        return firstContentfulPaint;
+    }
+
+    public void setFirstContentfulPaint(Double firstContentfulPaint) {
+        this.firstContentfulPaint = firstContentfulPaint;
+    }
+
+    public Double getLargestContentfulPaint() {
+        return largestContentfulPaint;
+    }
+
+    public void setLargestContentfulPaint(Double largestContentfulPaint) {
+        this.largestContentfulPaint = largestContentfulPaint;
+    }
+
+    public List<ResourceTiming> getResources() {
+        return resources;
+    }
+
+    public void setResources(List<ResourceTiming> resources) {
+        this.resources = resources;
+    }
+
+    /**
+     * Timing of a resource (script, stylesheet, image, xhr, etc) loaded by the page
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class ResourceTiming {
+
+        private String name;
+
+        private String initiatorType;
+
+        private double startTime;
+
+        private double duration;
+
+        private long transferSize;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getInitiatorType() {
+            return initiatorType;
+        }
+
+        public void setInitiatorType(String initiatorType) {
+            this.initiatorType = initiatorType;
+        }
+
+        public double getStartTime() {
+            return startTime;
+        }
+
+        public void setStartTime(double startTime) {
+            this.startTime = startTime;
+        }
+
+        public double getDuration() {
+            return duration;
+        }
+
+        public void setDuration(double duration) {
+            this.duration = duration;
+        }
+
+        public long getTransferSize() {
+            return transferSize;
+        }
+
+        public void setTransferSize(long transferSize) {
+            this.transferSize = transferSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%s, %.0f ms)", name, initiatorType, duration);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates the page performance metrics collected during the whole execution (Singleton).
+ * <p>
+ * The samples are grouped by url (without query string) and metric, and summarized with the number of samples,
+ * the percentiles 50, 90 and 95 and the maximum value. The summary is written at the end of the execution to
+ * target/executions/performance-report.json
+ *
+ * @see PagePerformance
+ */
+public enum PagePerformanceReport {
+    INSTANCE;
+
+    private final Map<String, Map<String, List<Double>>> samples = new TreeMap<>();
+
+    /**
+     * Adds the metrics of a page to the report
+     *
+     * @param performance metrics of the page
+     */
+    public synchronized void record(PagePerformance performance) {
+        String url = performance.getUrl() == null ? "unknown" : performance.getUrl().split("[?#]")[0];
+        Map<String, List<Double>> urlSamples = this.samples.computeIfAbsent(url, k -> new LinkedHashMap<>());
+        for (Map.Entry<String, Double> metric : performance.getMetrics().entrySet()) {
+            urlSamples.computeIfAbsent(metric.getKey(), k -> new ArrayList<>()).add(metric.getValue());
+        }
+    }
+
+    /**
+     * Returns the summary of the metrics collected so far
+     *
+     * @return summary by url and metric
+     */
+    public synchronized Map<String, Map<String, Map<String, Double>>> getSummary() {
+        Map<String, Map<String, Map<String, Double>>> summary = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, List<Double>>> url : this.samples.entrySet()) {
+            Map<String, Map<String, Double>> metrics = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Double>> metric : url.getValue().entrySet()) {
+                List<Double> values = new ArrayList<>(metric.getValue());
+                Collections.sort(values);
+                Map<String, Double> stats = new LinkedHashMap<>();
+                stats.put("count", (double) values.size());
+                stats.put("p50", percentile(values, 50));
+                stats.put("p90", percentile(values, 90));
+                stats.put("p95", percentile(values, 95));
+                stats.put("max", values.get(values.size() - 1));
+                metrics.put(metric.getKey(), stats);
+            }
+            summary.put(url.getKey(), metrics);
+        }
+        return summary;
+    }
+
+    /**
+     * Writes the summary as json in the given file. Nothing is written if no metrics were collected
+     *
+     * @param file destination file
+     * @throws IOException if the file could not be written
+     */
+    public void write(File file) throws IOException {
+        Map<String, Map<String, Map<String, Double>>> summary = this.getSummary();
+        if (summary.isEmpty()) {
+            return;
+        }
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, summary);
+    }
+
+    /**
+     * Removes all the collected samples
+     */
+    public synchronized void clear() {
+        this.samples.clear();
+    }
+
+    /**
+     * Nearest-rank percentile of a sorted list
+     *
+     * @param sorted     sorted values
+     * @param percentile percentile (0-100)
+     * @return value
+     */
+    static double percentile(List<Double> sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, rank - 1)));
+    }
+}
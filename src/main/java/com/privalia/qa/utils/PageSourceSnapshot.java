@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+import java.util.Locale;
+
+/**
+ * Local copy of the page source of the current browser window. The source is retrieved from the
+ * driver only once and parsed with jsoup on demand, so several read-only checks over the same page
+ * (text present/not present, number of elements) can be evaluated without a round trip to the browser.
+ * <p>
+ * The snapshot does not track changes in the browser, it must be discarded as soon as the page
+ * may have changed (i.e. after any click, typing or navigation)
+ */
+public class PageSourceSnapshot {
+
+    private final String source;
+
+    private Document document;
+
+    private String lowerCaseSource;
+
+    /**
+     * Default constructor.
+     *
+     * @param source page source as returned by the driver
+     */
+    public PageSourceSnapshot(String source) {
+        this.source = source == null ? "" : source;
+    }
+
+    /**
+     * Returns the raw page source
+     *
+     * @return page source
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the page source parsed as a jsoup document. The source is only
+     * parsed the first time this method is called
+     *
+     * @return jsoup document
+     */
+    public Document getDocument() {
+        if (this.document == null) {
+            this.document = Jsoup.parse(this.source);
+        }
+        return this.document;
+    }
+
+    /**
+     * Checks if the page source contains the given text
+     *
+     * @param text       text to look for
+     * @param ignoreCase whether to ignore case or not
+     * @return true if the text is present in the source
+     */
+    public boolean contains(String text, boolean ignoreCase) {
+        if (!ignoreCase) {
+            return this.source.contains(text);
+        }
+        if (this.lowerCaseSource == null) {
+            this.lowerCaseSource = this.source.toLowerCase(Locale.ROOT);
+        }
+        return this.lowerCaseSource.contains(text.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the elements in the snapshot that match the given locator. Only the locators that
+     * can be evaluated without a browser are supported (id, name, class, css, tagName, linkText and partialLinkText)
+     *
+     * @param method  method to locate the elements
+     * @param element locator
+     * @return matching elements
+     */
+    public Elements select(String method, String element) {
+        switch (method) {
+            case "id":
+                return this.getDocument().getElementsByAttributeValue("id", element);
+            case "name":
+                return this.getDocument().getElementsByAttributeValue("name", element);
+            case "class":
+                return this.getDocument().getElementsByClass(element);
+            case "css":
+                return this.getDocument().select(element);
+            case "tagName":
+                return this.getDocument().getElementsByTag(element);
+            case "linkText":
+                Elements links = new Elements();
+                for (Element link : this.getDocument().getElementsByTag("a")) {
+                    if (link.text().equals(element.trim())) {
+                        links.add(link);
+                    }
+                }
+                return links;
+            case "partialLinkText":
+                Elements partialLinks = new Elements();
+                for (Element link : this.getDocument().getElementsByTag("a")) {
+                    if (link.text().contains(element)) {
+                        partialLinks.add(link);
+                    }
+                }
+                return partialLinks;
+            default:
+                throw new IllegalArgumentException("Search method '" + method + "' is not supported in page source snapshots");
+        }
+    }
+
+    /**
+     * Returns the amount of elements in the snapshot that match the given locator
+     *
+     * @param method  method to locate the elements
+     * @param element locator
+     * @return number of elements found
+     * @see #select(String, String)
+     */
+    public int count(String method, String element) {
+        return this.select(method, element).size();
+    }
+}
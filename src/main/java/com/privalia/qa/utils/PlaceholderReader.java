@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import java.io.BufferedReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.function.UnaryOperator;
+
+/**
+ * Reader that replaces the placeholders (${VAR}, ${faker:...}, ${envProperties:...}) of the wrapped reader while
+ * it is read, so big files can be sent with their variables replaced without loading them in memory.
+ * <p>
+ * Only the text of every placeholder (including the nested ones, i.e. ${toUpperCase:${VAR}}) is given to the
+ * replacer, the rest of the content is returned as it is (unlike {@link com.privalia.qa.specs.CommonG#retrieveData},
+ * new lines are kept). Braces inside quoted arguments of a placeholder do not close it. Texts that look like a placeholder but are not closed after 8 KB are returned unchanged.
+ * <pre>{@code
+ * Reader reader = new PlaceholderReader(new FileReader(file), placeholder -> placeholder.equals("${NAME}") ? "John" : placeholder);
+ * }</pre>
+ */
+public class PlaceholderReader extends FilterReader {
+
+    private static final int MAX_PLACEHOLDER_LENGTH = 8 * 1024;
+
+    private final PushbackReader source;
+
+    private final UnaryOperator<String> replacer;
+
+    private final StringBuilder pending = new StringBuilder();
+
+    private int position;
+
+    /**
+     * Default constructor.
+     *
+     * @param in       reader to wrap
+     * @param replacer returns the value of every placeholder found
+     */
+    public PlaceholderReader(Reader in, UnaryOperator<String> replacer) {
+        super(new PushbackReader(new BufferedReader(in), 1));
+        this.source = (PushbackReader) this.in;
+        this.replacer = replacer;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!this.fill()) {
+            return -1;
+        }
+        return this.pending.charAt(this.position++);
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        int count = 0;
+        while (count < length && (count == 0 || this.position < this.pending.length() || this.source.ready())) {
+            if (!this.fill()) {
+                break;
+            }
+            int chunk = Math.min(length - count, this.pending.length() - this.position);
+            this.pending.getChars(this.position, this.position + chunk, buffer, offset + count);
+            this.position += chunk;
+            count += chunk;
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && this.read() != -1) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return this.position < this.pending.length() || this.source.ready();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+    }
+
+    /**
+     * Makes sure there are pending characters to return, reading (and replacing) the next text of the source
+     *
+     * @return false at the end of the source
+     */
+    private boolean fill() throws IOException {
+        if (this.position < this.pending.length()) {
+            return true;
+        }
+        this.pending.setLength(0);
+        this.position = 0;
+
+        int c = this.source.read();
+        if (c == -1) {
+            return false;
+        }
+        if (c != '$') {
+            this.pending.append((char) c);
+            return true;
+        }
+
+        StringBuilder token = new StringBuilder("$");
+        int next = this.source.read();
+        if (next == '$') {
+            /* $${VAR} is an escaped placeholder, the replacer returns it as ${VAR} */
+            token.append('$');
+            next = this.source.read();
+        }
+        if (next != '{') {
+            this.pending.append(token);
+            if (next != -1) {
+                this.source.unread(next);
+            }
+            return true;
+        }
+
+        token.append('{');
+        int depth = 1;
+        int quote = -1;
+        while (depth > 0 && token.length() < MAX_PLACEHOLDER_LENGTH) {
+            next = this.source.read();
+            if (next == -1) {
+                break;
+            }
+            char previous = token.charAt(token.length() - 1);
+            if (quote != -1) {
+                /* Braces of quoted arguments are not counted (i.e. ${faker:regexify '[a-z]{4}'}) */
+                if (next == quote) {
+                    quote = -1;
+                }
+            } else if ((next == '\'' || next == '"') && (Character.isWhitespace(previous) || previous == ':' || previous == '(' || previous == ',')) {
+                quote = next;
+            } else if (next == '{' && previous == '$') {
+                depth++;
+            } else if (next == '}') {
+                depth--;
+            }
+            token.append((char) next);
+        }
+        this.pending.append(depth == 0 ? this.replacer.apply(token.toString()) : token);
+        return true;
+    }
+}
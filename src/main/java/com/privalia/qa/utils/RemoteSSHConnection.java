@@ -210,6 +210,7 @@ public class RemoteSSHConnection {
         channel.connect();
 
         byte[] tmp = new byte[1024];
+        Await.Backoff backoff = new Await.Backoff(10, 1000);
         while (true) {
             while (in.available() > 0) {
                 int i = in.read(tmp, 0, 1024);
@@ -217,6 +218,7 @@ public class RemoteSSHConnection {
                     break;
                 }
                 result = result + new String(tmp, 0, i);
+                backoff.reset();
             }
             this.result = result;
             this.setResult(result);
@@ -229,7 +231,7 @@ public class RemoteSSHConnection {
                 break;
             }
             try {
-                Thread.sleep(1000);
+                backoff.sleep();
             } catch (Exception ee) {
             }
         }
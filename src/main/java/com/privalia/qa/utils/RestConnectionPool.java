@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import io.restassured.config.HttpClientConfig;
+import io.restassured.config.RestAssuredConfig;
+import io.restassured.config.SSLConfig;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.scheme.SchemeSocketFactory;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of keep-alive connections shared by all the rest requests of the execution (Singleton).
+ * <p>
+ * By default, RestAssured creates a new http client (and so, new connections and new TLS handshakes) for every
+ * request. With the configuration returned by {@link #getConfig()}, every request uses a new lightweight client
+ * on top of a shared pool of connections, so connections to the same host are kept open and reused by the following
+ * requests of any scenario, even when scenarios run in parallel threads. All the https connections use the same
+ * SSL context, so new connections to a host already visited resume the previous TLS session. Certificates are
+ * verified, unless the relaxed configuration ({@link #getRelaxedConfig()}) is used.
+ * <p>
+ * The pool can be configured with the following VM arguments:
+ * <pre>
+ * -DREST_CONNECTION_POOL=false               disables the pool (a new client per request, as before)
+ * -DREST_MAX_CONNECTIONS=200                 max number of connections
+ * -DREST_MAX_CONNECTIONS_PER_ROUTE=20        max number of connections to the same host and port
+ * -DREST_KEEP_ALIVE=30000                    max time (ms) an idle connection is kept open
+ * -DREST_STREAMING_THRESHOLD=10485760        bodies bigger than this (bytes) are spooled to a temporary file
+ * </pre>
+ * Requests that exceed the max number of connections wait for a free one. The load test steps raise the limits
+ * to their concurrency with {@link #ensureCapacity(int)}, so the waiting time is not measured as latency.
+ * <p>
+ * The pool is built on the connection manager of the HttpClient 4 version used by RestAssured, which is deprecated:
+ * RestAssured only accepts clients that extend AbstractHttpClient, so HttpClientBuilder can not be used here
+ */
+@SuppressWarnings("deprecation")
+public enum RestConnectionPool {
+    INSTANCE;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RestConnectionPool.class);
+
+    private final Map<Object, PoolingClientConnectionManager> pools = new WeakHashMap<>();
+
+    private final List<PoolingClientConnectionManager> created = new ArrayList<>();
+
+    private int capacity = 0;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong opened = new AtomicLong();
+
+    private final AtomicLong reused = new AtomicLong();
+
+    private volatile SSLSocketFactory sslSocketFactory;
+
+    private volatile SSLSocketFactory relaxedSslSocketFactory;
+
+    /**
+     * Checks if the pool must be used (-DREST_CONNECTION_POOL, true by default)
+     *
+     * @return true if enabled
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty("REST_CONNECTION_POOL", "true"));
+    }
+
+    /**
+     * Returns the RestAssured configuration that uses the shared pool of connections. Certificates and host names
+     * are verified
+     *
+     * @return RestAssured configuration
+     */
+    public RestAssuredConfig getConfig() {
+        return RestAssuredConfig.config()
+                .httpClient(HttpClientConfig.httpClientConfig().httpClientFactory(this::createHttpClient))
+                .sslConfig(SSLConfig.sslConfig().sslSocketFactory(this.getSSLSocketFactory()));
+    }
+
+    /**
+     * Returns the RestAssured configuration that uses the shared pool of connections without verifying
+     * certificates and host names (like {@link io.restassured.specification.RequestSpecification#relaxedHTTPSValidation()}).
+     * Relaxed connections are kept in their own pool
+     *
+     * @return RestAssured configuration
+     */
+    public RestAssuredConfig getRelaxedConfig() {
+        return RestAssuredConfig.config()
+                .httpClient(HttpClientConfig.httpClientConfig().httpClientFactory(this::createHttpClient))
+                .sslConfig(SSLConfig.sslConfig().sslSocketFactory(this.getRelaxedSSLSocketFactory()).allowAllHostnames());
+    }
+
+    /**
+     * Creates a new http client that uses the shared pool. Http clients are cheap, and are not shared between
+     * requests, since RestAssured modifies them for every request
+     *
+     * @return http client
+     */
+    public DefaultHttpClient createHttpClient() {
+        long keepAlive = Long.parseLong(System.getProperty("REST_KEEP_ALIVE", "30000"));
+        ConnectionKeepAliveStrategy strategy = (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration < 0 || duration > keepAlive ? keepAlive : duration;
+        };
+        DefaultHttpClient client = new DefaultHttpClient(new SharedConnectionManager(this.createSchemeRegistry()));
+        client.setKeepAliveStrategy(strategy);
+        /*
+         * The body is read as soon as the response is received, so the connection goes back to the pool even if
+         * the body is never used
+         */
+        client.addResponseInterceptor(new SpoolingResponseInterceptor());
+        return client;
+    }
+
+    /**
+     * Returns the number of requests sent using the pool
+     *
+     * @return number of requests
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Returns the number of new connections opened
+     *
+     * @return number of connections opened
+     */
+    public long getConnectionsOpened() {
+        return opened.get();
+    }
+
+    /**
+     * Returns the number of requests that reused an open connection
+     *
+     * @return number of connections reused
+     */
+    public long getConnectionsReused() {
+        return reused.get();
+    }
+
+    /**
+     * Returns the current state of the pool (connections in use, idle, and requests waiting for a connection)
+     *
+     * @return statistics of all the pools
+     */
+    public PoolStats getStats() {
+        int leased = 0;
+        int pending = 0;
+        int available = 0;
+        int max = 0;
+        for (PoolingClientConnectionManager pool : this.getPools()) {
+            PoolStats stats = pool.getTotalStats();
+            leased += stats.getLeased();
+            pending += stats.getPending();
+            available += stats.getAvailable();
+            max += stats.getMax();
+        }
+        return new PoolStats(leased, pending, available, max);
+    }
+
+    /**
+     * Raises the max number of connections (in total and to the same host) to at least the given number, so that
+     * number of requests can be sent at the same time without waiting for a free connection
+     *
+     * @param connections number of concurrent requests
+     */
+    public void ensureCapacity(int connections) {
+        synchronized (this.pools) {
+            if (connections <= this.capacity) {
+                return;
+            }
+            this.capacity = connections;
+            if (connections > maxPerRoute()) {
+                LOGGER.info("Raising the max number of rest connections per host from {} to {}", maxPerRoute(), connections);
+            }
+            for (PoolingClientConnectionManager pool : this.created) {
+                this.configure(pool);
+            }
+        }
+    }
+
+    /**
+     * Closes all the connections, and logs the statistics of the pool
+     */
+    public void close() {
+        if (this.requests.get() > 0) {
+            LOGGER.info("Rest connections: {} requests, {} connections opened, {} reused", this.requests.get(), this.opened.get(), this.reused.get());
+        }
+        List<PoolingClientConnectionManager> all;
+        synchronized (this.pools) {
+            all = new ArrayList<>(this.created);
+            this.pools.clear();
+            this.created.clear();
+            this.capacity = 0;
+        }
+        for (PoolingClientConnectionManager pool : all) {
+            pool.shutdown();
+        }
+    }
+
+    private List<PoolingClientConnectionManager> getPools() {
+        synchronized (this.pools) {
+            return new ArrayList<>(this.created);
+        }
+    }
+
+    /**
+     * Returns the pool of the given kind of connection. Plain connections share the same pool, and secure connections
+     * created with a different socket factory (i.e. a client certificate configured for a specific request) are kept
+     * in a different pool
+     */
+    private PoolingClientConnectionManager getPool(SchemeSocketFactory factory, SchemeRegistry registry) {
+        synchronized (this.pools) {
+            Object kind = factory instanceof PlainSocketFactory ? PlainSocketFactory.class : factory;
+            PoolingClientConnectionManager existing = this.pools.get(kind);
+            if (existing != null) {
+                return existing;
+            }
+
+            this.shutdownDiscardedPools();
+            SchemeRegistry poolRegistry = new SchemeRegistry();
+            for (String name : registry.getSchemeNames()) {
+                poolRegistry.register(registry.getScheme(name));
+            }
+            PoolingClientConnectionManager pool = new PoolingClientConnectionManager(poolRegistry);
+            this.configure(pool);
+            this.pools.put(kind, pool);
+            this.created.add(pool);
+            return pool;
+        }
+    }
+
+    /**
+     * Shuts down the pools whose socket factory is no longer used (removed from the weak map), so their
+     * connections are closed instead of waiting for the server to close them
+     */
+    private void shutdownDiscardedPools() {
+        Set<PoolingClientConnectionManager> alive = Collections.newSetFromMap(new IdentityHashMap<>());
+        alive.addAll(this.pools.values());
+        for (Iterator<PoolingClientConnectionManager> it = this.created.iterator(); it.hasNext();) {
+            PoolingClientConnectionManager pool = it.next();
+            if (!alive.contains(pool)) {
+                LOGGER.debug("Closing the connections of a discarded ssl configuration");
+                pool.shutdown();
+                it.remove();
+            }
+        }
+    }
+
+    private void configure(PoolingClientConnectionManager pool) {
+        pool.setMaxTotal(Math.max(Integer.parseInt(System.getProperty("REST_MAX_CONNECTIONS", "200")), this.capacity));
+        pool.setDefaultMaxPerRoute(Math.max(maxPerRoute(), this.capacity));
+    }
+
+    private static int maxPerRoute() {
+        return Integer.parseInt(System.getProperty("REST_MAX_CONNECTIONS_PER_ROUTE", "20"));
+    }
+
+    private SchemeRegistry createSchemeRegistry() {
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", 80, PlainSocketFactory.getSocketFactory()));
+        registry.register(new Scheme("https", 443, this.getSSLSocketFactory()));
+        return registry;
+    }
+
+    /**
+     * Returns the socket factory of the verified https connections. The same instance is always returned, since
+     * the pools are kept by socket factory
+     */
+    private SSLSocketFactory getSSLSocketFactory() {
+        if (this.sslSocketFactory == null) {
+            synchronized (this) {
+                if (this.sslSocketFactory == null) {
+                    this.sslSocketFactory = SSLSocketFactory.getSocketFactory();
+                }
+            }
+        }
+        return this.sslSocketFactory;
+    }
+
+    private SSLSocketFactory getRelaxedSSLSocketFactory() {
+        if (this.relaxedSslSocketFactory == null) {
+            synchronized (this) {
+                if (this.relaxedSslSocketFactory == null) {
+                    try {
+                        SSLContext context = new SSLContextBuilder().loadTrustMaterial(null, (chain, authType) -> true).build();
+                        this.relaxedSslSocketFactory = new SSLSocketFactory(context, SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+                    } catch (GeneralSecurityException e) {
+                        throw new IllegalStateException("Could not create the SSL context: " + e.getMessage(), e);
+                    }
+                }
+            }
+        }
+        return this.relaxedSslSocketFactory;
+    }
+
+    /**
+     * Connection manager of a single http client. The schemes registered by RestAssured are kept by the client,
+     * and the connections are leased from the shared pool (the client can not close the shared pool)
+     */
+    private final class SharedConnectionManager implements ClientConnectionManager {
+
+        private final SchemeRegistry registry;
+
+        private final Map<ManagedClientConnection, ClientConnectionManager> leased = new ConcurrentHashMap<>();
+
+        private SharedConnectionManager(SchemeRegistry registry) {
+            this.registry = registry;
+        }
+
+        @Override
+        public SchemeRegistry getSchemeRegistry() {
+            return this.registry;
+        }
+
+        @Override
+        public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+            Scheme scheme = this.registry.getScheme(route.getTargetHost());
+            PoolingClientConnectionManager pool = getPool(scheme.getSchemeSocketFactory(), this.registry);
+            pool.closeExpiredConnections();
+            ClientConnectionRequest request = pool.requestConnection(route, state);
+            return new ClientConnectionRequest() {
+                @Override
+                public ManagedClientConnection getConnection(long timeout, TimeUnit unit) throws InterruptedException, ConnectionPoolTimeoutException {
+                    ManagedClientConnection connection = request.getConnection(timeout, unit);
+                    requests.incrementAndGet();
+                    if (connection.isOpen()) {
+                        reused.incrementAndGet();
+                    } else {
+                        opened.incrementAndGet();
+                    }
+                    leased.put(connection, pool);
+                    return connection;
+                }
+
+                @Override
+                public void abortRequest() {
+                    request.abortRequest();
+                }
+            };
+        }
+
+        @Override
+        public void releaseConnection(ManagedClientConnection connection, long validDuration, TimeUnit unit) {
+            ClientConnectionManager pool = this.leased.remove(connection);
+            if (pool != null) {
+                pool.releaseConnection(connection, validDuration, unit);
+            }
+        }
+
+        @Override
+        public void closeIdleConnections(long idleTime, TimeUnit unit) {
+            for (PoolingClientConnectionManager pool : getPools()) {
+                pool.closeIdleConnections(idleTime, unit);
+            }
+        }
+
+        @Override
+        public void closeExpiredConnections() {
+            for (PoolingClientConnectionManager pool : getPools()) {
+                pool.closeExpiredConnections();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            for (Map.Entry<ManagedClientConnection, ClientConnectionManager> entry : this.leased.entrySet()) {
+                entry.getValue().releaseConnection(entry.getKey(), 0, TimeUnit.MILLISECONDS);
+            }
+            this.leased.clear();
+        }
+    }
+}
@@ -33,7 +33,9 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * This class contains several functions to extract information from a remote Selenium grid/standalone node
+ * This class contains several functions to extract information from a remote Selenium grid/standalone node.
+ * To get the state (load and capabilities) of the nodes of a grid, use {@link GridStatusClient}, that reads
+ * the json endpoints of the grid instead of the html console
  * @author José Fernández
  */
 public final class SeleniumRemoteHelper {
@@ -91,6 +93,7 @@ public final class SeleniumRemoteHelper {
      * list if represented by a json string with the capabilities of the node
      *
      * @deprecated This method may not work with newer version of selenium grid since the UI has changed completely!
+     * Use {@link GridStatusClient#getNodes()} instead
      * @return List of free nodes
      * @throws JsonProcessingException the json processing exception
      */
@@ -17,6 +17,7 @@
 package com.privalia.qa.utils;
 
 import com.predic8.wsdl.*;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -39,7 +40,10 @@ import javax.xml.ws.Dispatch;
 import javax.xml.ws.Service;
 import javax.xml.ws.soap.SOAPBinding;
 import java.io.*;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -57,6 +61,8 @@ public class SoapServiceUtils {
 
     private Definitions defs;
 
+    private Cassette cassette;
+
     /**
      * Returns the Port name for the first service found in the WSDL file
      * @return port name
@@ -82,6 +88,16 @@ public class SoapServiceUtils {
         this.wsdlAddress = wsdlAddress;
     }
 
+    /**
+     * Sets the cassette where the WSDL and the requests are recorded or replayed from
+     *
+     * @param cassette cassette, or null to always use the network
+     * @see Cassette
+     */
+    public void setCassette(Cassette cassette) {
+        this.cassette = cassette;
+    }
+
     /**
      * Returns a {@link Definitions} object representing the WSDL
      * definition
@@ -126,7 +142,30 @@ public class SoapServiceUtils {
         LOGGER.debug(String.format("Parsing remote WSDL file in %s", url));
         this.setWsdlAddress(url);
         WSDLParser parser = new WSDLParser();
-        this.setDefs(parser.parse(url));
+        Cassette current = this.cassette;
+        String key = current == null ? null : current.key("GET", url, Collections.emptyMap(), null);
+        Cassette.Recording recording = current != null && current.isReplaying() ? current.replay(key) : null;
+        if (recording != null) {
+            this.setDefs(parser.parse(new ByteArrayInputStream(recording.getBody())));
+        } else if (current != null && current.isRecording()) {
+            /*
+             * The WSDL is downloaded once and parsed from the same bytes that are recorded. Relative imports are
+             * still resolved from the address of the WSDL
+             */
+            byte[] wsdl;
+            try {
+                wsdl = IOUtils.toByteArray(new URL(url));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not record the WSDL " + url, e);
+            }
+            WSDLParserContext context = new WSDLParserContext();
+            context.setInput(new ByteArrayInputStream(wsdl));
+            context.setBaseDir(url.substring(0, url.lastIndexOf('/') + 1));
+            this.setDefs(parser.parse(context));
+            current.record(key, 200, Collections.emptyList(), wsdl);
+        } else {
+            this.setDefs(parser.parse(url));
+        }
         LOGGER.debug(String.format("WSDL parsed with TargetNamespace %s", url));
     }
 
@@ -251,18 +290,32 @@ public class SoapServiceUtils {
         String SOAPAction = this.getAvailableSoapActions().get(ActionName);
 
         LOGGER.debug(String.format("Using service %s, port name %s, action %s", serviceName, portName, SOAPAction));
+
+        Cassette current = this.cassette;
+        String key = current == null ? null : current.key("POST", this.getWsdlAddress(), Collections.singletonMap("SOAPAction", SOAPAction), request);
+        Cassette.Recording recording = current != null && current.isReplaying() ? current.replay(key) : null;
+        if (recording != null) {
+            return recording.getBodyAsString();
+        }
+
         SOAPMessage response = invoke(serviceName, portName, this.getWsdlAddress(), SOAPAction, request);
 
         SOAPBody body = response.getSOAPBody();
+        String result;
 
         if (body.hasFault()) {
-            return body.getFault().toString();
+            result = body.getFault().toString();
         } else {
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
             response.writeTo(baos);
             baos.flush();
-            return new String(baos.toByteArray());
+            result = new String(baos.toByteArray());
+        }
+
+        if (current != null && current.isRecording()) {
+            current.record(key, 200, Collections.emptyList(), result.getBytes(StandardCharsets.UTF_8));
         }
+        return result;
     }
 
     /**
@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.PathNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Body of a http response, kept in memory if it is small or spooled to a temporary file if it is bigger than a
+ * threshold (10 MB by default, -DREST_STREAMING_THRESHOLD=bytes).
+ * <p>
+ * The size and the SHA-256 hash are computed while the body is received, and the rest of the checks (searching a
+ * text, evaluating simple jsonpath expressions) read the body as a stream, so big responses can be verified without
+ * loading them in memory.
+ * <pre>{@code
+ * SpooledBody body = SpooledBody.spool(inputStream, SpooledBody.getThreshold());
+ * logger.info("Received {} bytes, sha256 {}", body.getSize(), body.getSha256());
+ * String id = body.read("$.items[0].id");
+ * }</pre>
+ */
+public final class SpooledBody {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpooledBody.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Pattern PATH_SEGMENT = Pattern.compile("\\.?\\[(\\d+)\\]|\\.?\\['([^']*)'\\]|\\.([^.\\[\\]*]+)");
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper(JSON_FACTORY);
+
+    private static final ThreadLocal<SpooledBody> LAST_RECEIVED = new ThreadLocal<>();
+
+    private final byte[] content;
+
+    private final File file;
+
+    private final long size;
+
+    private final String sha256;
+
+    private SpooledBody(byte[] content, File file, long size, String sha256) {
+        this.content = content;
+        this.file = file;
+        this.size = size;
+        this.sha256 = sha256;
+    }
+
+    /**
+     * Max size of the bodies kept in memory
+     *
+     * @return threshold in bytes
+     */
+    public static long getThreshold() {
+        return Long.parseLong(System.getProperty("REST_STREAMING_THRESHOLD", String.valueOf(10 * 1024 * 1024)));
+    }
+
+    /**
+     * Reads the stream until the end, keeping the content in memory until it exceeds the threshold, and in a
+     * temporary file from there. The stream is closed
+     *
+     * @param stream    stream to read
+     * @param threshold max size of the bodies kept in memory
+     * @return the body
+     * @throws IOException if the stream or the temporary file can not be read or written
+     */
+    public static SpooledBody spool(InputStream stream, long threshold) throws IOException {
+        MessageDigest digest = digest("SHA-256");
+        ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        OutputStream out = memory;
+        File file = null;
+        long size = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (InputStream in = stream) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (file == null && size + read > threshold) {
+                    file = File.createTempFile("gingerspec-response-", ".tmp");
+                    file.deleteOnExit();
+                    out = new FileOutputStream(file);
+                    memory.writeTo(out);
+                    memory = null;
+                }
+                out.write(buffer, 0, read);
+                digest.update(buffer, 0, read);
+                size += read;
+            }
+        } catch (IOException e) {
+            if (file != null) {
+                out.close();
+                file.delete();
+            }
+            throw e;
+        }
+        out.close();
+
+        if (file != null) {
+            LOGGER.debug("Response body of {} bytes spooled to {}", size, file.getAbsolutePath());
+        }
+        return new SpooledBody(memory == null ? null : memory.toByteArray(), file, size, toHex(digest.digest()));
+    }
+
+    /**
+     * Sets the last body received by the current thread. The previous one is deleted if it was never taken
+     *
+     * @param body body received
+     */
+    static void setLastReceived(SpooledBody body) {
+        SpooledBody previous = LAST_RECEIVED.get();
+        if (previous != null) {
+            previous.delete();
+        }
+        LAST_RECEIVED.set(body);
+    }
+
+    /**
+     * Forgets the last body received by the current thread, deleting it if it was never taken (i.e. after the
+     * requests of a load test, or at the end of a scenario)
+     */
+    public static void clearLastReceived() {
+        setLastReceived(null);
+        LAST_RECEIVED.remove();
+    }
+
+    /**
+     * Returns (and forgets) the last body received by the current thread
+     *
+     * @return the body, or null if no body was received since the last call
+     */
+    public static SpooledBody takeLastReceived() {
+        SpooledBody body = LAST_RECEIVED.get();
+        LAST_RECEIVED.remove();
+        return body;
+    }
+
+    /**
+     * Size of the body
+     *
+     * @return size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * SHA-256 hash of the body
+     *
+     * @return hash in hexadecimal
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * Returns true if the body was spooled to a file because it exceeded the threshold
+     *
+     * @return true if the body is in a file
+     */
+    public boolean isSpooled() {
+        return file != null;
+    }
+
+    /**
+     * Returns a new stream over the body
+     *
+     * @return stream
+     * @throws IOException if the temporary file can not be read
+     */
+    public InputStream openStream() throws IOException {
+        return file != null ? new FileInputStream(file) : new ByteArrayInputStream(content);
+    }
+
+    /**
+     * Returns the hash of the body
+     *
+     * @param algorithm algorithm (i.e. SHA-256, SHA-1, MD5)
+     * @return hash in hexadecimal
+     * @throws IOException if the temporary file can not be read
+     */
+    public String hash(String algorithm) throws IOException {
+        if ("SHA-256".equalsIgnoreCase(algorithm)) {
+            return sha256;
+        }
+        MessageDigest digest = digest(algorithm.toUpperCase());
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = this.openStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Counts the characters of the body (the same value returned by the length of the body as a String)
+     *
+     * @param charset charset of the body
+     * @return number of characters
+     * @throws IOException if the temporary file can not be read
+     */
+    public long countChars(Charset charset) throws IOException {
+        long count = 0;
+        char[] buffer = new char[BUFFER_SIZE];
+        try (Reader reader = new InputStreamReader(this.openStream(), charset)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                count += read;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Searches a text in the body, reading it in blocks. The end of every block is kept, so texts split between two
+     * blocks are found too
+     *
+     * @param text    text to find
+     * @param charset charset of the body
+     * @return true if the body contains the text
+     * @throws IOException if the temporary file can not be read
+     */
+    public boolean contains(String text, Charset charset) throws IOException {
+        if (text.isEmpty()) {
+            return true;
+        }
+        StringBuilder window = new StringBuilder();
+        char[] buffer = new char[Math.max(BUFFER_SIZE, text.length())];
+        try (Reader reader = new InputStreamReader(this.openStream(), charset)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                window.append(buffer, 0, read);
+                if (window.indexOf(text) >= 0) {
+                    return true;
+                }
+                window.delete(0, Math.max(0, window.length() - text.length() + 1));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates a jsonpath expression reading the body as a stream, so only the selected element is loaded in memory.
+     * Only definite paths made of fields and indexes are supported (i.e. $.store.book[0].title, $.[0]['user id'])
+     *
+     * @param expression jsonpath expression
+     * @return the text of the selected value, or the json document of the selected object or array
+     * @throws IOException           if the body is not valid json
+     * @throws PathNotFoundException if a field does not exist or an index is out of the bounds of the array
+     */
+    public String read(String expression) throws IOException {
+        List<Object> segments = parsePath(expression);
+        try (JsonParser parser = JSON_FACTORY.createParser(this.openStream())) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                throw new PathNotFoundException("The response body is empty");
+            }
+            for (Object segment : segments) {
+                token = seek(parser, token, segment);
+                if (token == null) {
+                    throw new PathNotFoundException("Element " + segment + " of path " + expression + " not found in the response body");
+                }
+            }
+            if (token.isScalarValue()) {
+                return token == JsonToken.VALUE_NULL ? null : parser.getText();
+            }
+            return MAPPER.readTree(parser).toString();
+        }
+    }
+
+    /**
+     * Deletes the temporary file of the body, if any
+     */
+    public void delete() {
+        if (file != null && file.exists() && !file.delete()) {
+            LOGGER.warn("Could not delete {}", file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Moves the parser to the value of the given field or index of the current object or array
+     *
+     * @return the first token of the value, or null if the object does not have the field or the array ends
+     * before the index
+     */
+    private static JsonToken seek(JsonParser parser, JsonToken token, Object segment) throws IOException {
+        if (segment instanceof Integer && token == JsonToken.START_ARRAY) {
+            int index = (Integer) segment;
+            JsonToken element = parser.nextToken();
+            for (int i = 0; i < index && element != null && element != JsonToken.END_ARRAY; i++) {
+                parser.skipChildren();
+                element = parser.nextToken();
+            }
+            return element == JsonToken.END_ARRAY ? null : element;
+        }
+        if (segment instanceof String && token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                if (segment.equals(parser.getCurrentName())) {
+                    return parser.nextToken();
+                }
+                parser.nextToken();
+                parser.skipChildren();
+            }
+        }
+        return null;
+    }
+
+    private static List<Object> parsePath(String expression) {
+        if (!expression.startsWith("$")) {
+            throw new IllegalArgumentException("The jsonpath expression must start with $: " + expression);
+        }
+        List<Object> segments = new ArrayList<>();
+        Matcher matcher = PATH_SEGMENT.matcher(expression);
+        int position = 1;
+        while (position < expression.length()) {
+            if (!matcher.find(position) || matcher.start() != position) {
+                throw new IllegalArgumentException("Only paths made of fields and indexes (i.e. $.items[0].id) can be evaluated over a streamed response: " + expression);
+            }
+            if (matcher.group(1) != null) {
+                segments.add(Integer.valueOf(matcher.group(1)));
+            } else {
+                segments.add(matcher.group(2) != null ? matcher.group(2) : matcher.group(3));
+            }
+            position = matcher.end();
+        }
+        return segments;
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Hash algorithm not supported: " + algorithm, e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the body of every response as soon as it is received into a {@link SpooledBody}, so the connection is
+ * released even if the body is never used (RestAssured only reads it when accessed). Big bodies are spooled to a
+ * temporary file instead of being kept in memory. Compressed bodies are decompressed while spooled, so size, hash
+ * and content checks are done over the real content.
+ * <p>
+ * The body of the last response received by the thread is available with {@link SpooledBody#takeLastReceived()}
+ */
+public final class SpoolingResponseInterceptor implements HttpResponseInterceptor {
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity == null || !entity.isStreaming()) {
+            return;
+        }
+
+        Header encoding = entity.getContentEncoding();
+        InputStream content = entity.getContent();
+        boolean decoded = true;
+        if (encoding != null && ("gzip".equalsIgnoreCase(encoding.getValue()) || "x-gzip".equalsIgnoreCase(encoding.getValue()))) {
+            content = new GZIPInputStream(content);
+        } else if (encoding != null && "deflate".equalsIgnoreCase(encoding.getValue())) {
+            content = new DeflateInputStream(content);
+        } else {
+            decoded = false;
+        }
+        SpooledBody body = SpooledBody.spool(content, SpooledBody.getThreshold());
+        response.setEntity(new SpooledEntity(entity, body, decoded));
+        SpooledBody.setLastReceived(body);
+    }
+
+    /**
+     * Repeatable entity over a body already received, with the headers of the original entity (except the
+     * content encoding, if the body was decompressed)
+     */
+    private static final class SpooledEntity extends AbstractHttpEntity {
+
+        private final SpooledBody body;
+
+        SpooledEntity(HttpEntity original, SpooledBody body, boolean decoded) {
+            this.body = body;
+            this.setContentType(original.getContentType());
+            this.setContentEncoding(decoded ? null : original.getContentEncoding());
+            this.setChunked(original.isChunked());
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return this.body.getSize();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return this.body.openStream();
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            try (InputStream in = this.body.openStream()) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    outstream.write(buffer, 0, read);
+                }
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
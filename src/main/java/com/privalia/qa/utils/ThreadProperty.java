@@ -64,4 +64,35 @@ public final class ThreadProperty {
         return PROPS.get().getProperty(key, defaultValue);
     }
 
+    /**
+     * Remove a property shared.
+     *
+     * @param key the key
+     */
+    public static void remove(String key) {
+        PROPS.get().remove(key);
+    }
+
+    /**
+     * Returns a copy of all the properties of the current thread.
+     *
+     * @return Properties  copy of the properties
+     */
+    public static Properties snapshot() {
+        Properties copy = new Properties();
+        copy.putAll(PROPS.get());
+        return copy;
+    }
+
+    /**
+     * Replaces the properties of the current thread with the given ones (i.e. the ones
+     * obtained with {@link #snapshot()} in another thread).
+     *
+     * @param properties    the properties
+     */
+    public static void restore(Properties properties) {
+        PROPS.get().clear();
+        PROPS.get().putAll(properties);
+    }
+
 }
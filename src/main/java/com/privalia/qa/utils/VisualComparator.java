@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import ru.yandex.qatools.ashot.coordinates.Coords;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Compares two screenshots pixel by pixel.
+ * <p>
+ * The images are split in square tiles that are compared in parallel in a fork/join pool. Every pixel
+ * whose color channels differ more than the pixel tolerance from the expected one is counted as a
+ * difference, unless it is located inside one of the ignored regions. The diff image only contains the
+ * mismatching tiles (the differing pixels are painted red), the rest of the image is left transparent.
+ * <p>
+ * The default values can be configured with the following VM arguments:
+ * <pre>
+ * -DVISUAL_TILE_SIZE=128           Size (in pixels) of the tiles
+ * -DVISUAL_PIXEL_TOLERANCE=0       Max difference (0-255) allowed in any color channel of a pixel
+ * -DVISUAL_PARALLELISM=4           Number of threads used to compare the tiles (default, number of processors)
+ * </pre>
+ */
+public class VisualComparator {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Integer.parseInt(System.getProperty("VISUAL_PARALLELISM",
+            String.valueOf(Runtime.getRuntime().availableProcessors()))));
+
+    private static final int DIFF_COLOR = Color.RED.getRGB();
+
+    private final int tileSize;
+
+    private final int pixelTolerance;
+
+    private final List<Coords> ignoredRegions = new ArrayList<>();
+
+    /**
+     * Creates a comparator with the tile size and pixel tolerance given as VM arguments
+     */
+    public VisualComparator() {
+        this(Integer.parseInt(System.getProperty("VISUAL_TILE_SIZE", "128")),
+                Integer.parseInt(System.getProperty("VISUAL_PIXEL_TOLERANCE", "0")));
+    }
+
+    /**
+     * Default constructor.
+     *
+     * @param tileSize       size (in pixels) of the tiles
+     * @param pixelTolerance max difference (0-255) allowed in any color channel of a pixel
+     */
+    public VisualComparator(int tileSize, int pixelTolerance) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be greater than 0");
+        }
+        this.tileSize = tileSize;
+        this.pixelTolerance = pixelTolerance;
+    }
+
+    /**
+     * Excludes the given regions from the comparison
+     *
+     * @param regions regions to ignore
+     * @return this comparator
+     */
+    public VisualComparator ignoring(Collection<Coords> regions) {
+        this.ignoredRegions.addAll(regions);
+        return this;
+    }
+
+    /**
+     * Compares both images
+     *
+     * @param expected baseline image
+     * @param actual   current image
+     * @return result of the comparison
+     */
+    public VisualDiff compare(BufferedImage expected, BufferedImage actual) {
+        int width = actual.getWidth();
+        int height = actual.getHeight();
+        if (expected.getWidth() != width || expected.getHeight() != height) {
+            return VisualDiff.sizeMismatch(expected.getWidth(), expected.getHeight(), width, height);
+        }
+
+        List<Coords> tiles = new ArrayList<>();
+        for (int y = 0; y < height; y += this.tileSize) {
+            for (int x = 0; x < width; x += this.tileSize) {
+                Coords tile = new Coords(x, y, Math.min(this.tileSize, width - x), Math.min(this.tileSize, height - y));
+                if (!this.isIgnored(tile)) {
+                    tiles.add(tile);
+                }
+            }
+        }
+
+        List<TileResult> mismatches = POOL.invoke(new TileComparison(expected, actual, tiles, 0, tiles.size()));
+
+        long diffPixels = 0;
+        BufferedImage diffImage = null;
+        List<Coords> mismatchingTiles = new ArrayList<>();
+        if (!mismatches.isEmpty()) {
+            diffImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            for (TileResult mismatch : mismatches) {
+                diffPixels += mismatch.diffPixels;
+                mismatchingTiles.add(mismatch.tile);
+                diffImage.setRGB(mismatch.tile.x, mismatch.tile.y, mismatch.tile.width, mismatch.tile.height, mismatch.diff, 0, mismatch.tile.width);
+            }
+        }
+
+        return new VisualDiff((long) width * height, diffPixels, mismatchingTiles, diffImage);
+    }
+
+    private boolean isIgnored(Coords tile) {
+        for (Coords region : this.ignoredRegions) {
+            if (region.contains(tile)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private TileResult compareTile(BufferedImage expected, BufferedImage actual, Coords tile) {
+        int[] expectedPixels = expected.getRGB(tile.x, tile.y, tile.width, tile.height, null, 0, tile.width);
+        int[] actualPixels = actual.getRGB(tile.x, tile.y, tile.width, tile.height, null, 0, tile.width);
+
+        List<Coords> regions = new ArrayList<>();
+        for (Coords region : this.ignoredRegions) {
+            if (region.intersects(tile)) {
+                regions.add(region);
+            }
+        }
+
+        int diffPixels = 0;
+        for (int i = 0; i < actualPixels.length; i++) {
+            if (!this.matches(expectedPixels[i], actualPixels[i])
+                    && !this.isInRegion(regions, tile.x + i % tile.width, tile.y + i / tile.width)) {
+                diffPixels++;
+                actualPixels[i] = DIFF_COLOR;
+            }
+        }
+
+        return diffPixels == 0 ? null : new TileResult(tile, diffPixels, actualPixels);
+    }
+
+    private boolean matches(int expected, int actual) {
+        if (expected == actual) {
+            return true;
+        }
+        for (int shift = 0; shift <= 24; shift += 8) {
+            if (Math.abs(((expected >> shift) & 0xff) - ((actual >> shift) & 0xff)) > this.pixelTolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isInRegion(List<Coords> regions, int x, int y) {
+        for (Coords region : regions) {
+            if (region.contains(x, y)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class TileResult {
+
+        private final Coords tile;
+
+        private final int diffPixels;
+
+        private final int[] diff;
+
+        TileResult(Coords tile, int diffPixels, int[] diff) {
+            this.tile = tile;
+            this.diffPixels = diffPixels;
+            this.diff = diff;
+        }
+    }
+
+    private final class TileComparison extends RecursiveTask<List<TileResult>> {
+
+        private static final int THRESHOLD = 4;
+
+        private final BufferedImage expected;
+
+        private final BufferedImage actual;
+
+        private final List<Coords> tiles;
+
+        private final int from;
+
+        private final int to;
+
+        TileComparison(BufferedImage expected, BufferedImage actual, List<Coords> tiles, int from, int to) {
+            this.expected = expected;
+            this.actual = actual;
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<TileResult> compute() {
+            if (this.to - this.from <= THRESHOLD) {
+                List<TileResult> result = new ArrayList<>();
+                for (int i = this.from; i < this.to; i++) {
+                    TileResult tile = compareTile(this.expected, this.actual, this.tiles.get(i));
+                    if (tile != null) {
+                        result.add(tile);
+                    }
+                }
+                return result;
+            }
+
+            int middle = (this.from + this.to) >>> 1;
+            TileComparison left = new TileComparison(this.expected, this.actual, this.tiles, this.from, middle);
+            left.fork();
+            List<TileResult> result = new TileComparison(this.expected, this.actual, this.tiles, middle, this.to).compute();
+            result.addAll(0, left.join());
+            return result;
+        }
+    }
+}
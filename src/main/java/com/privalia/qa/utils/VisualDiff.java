@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import ru.yandex.qatools.ashot.coordinates.Coords;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of the comparison of two images
+ *
+ * @see VisualComparator
+ */
+public class VisualDiff {
+
+    private final long totalPixels;
+
+    private final long diffPixels;
+
+    private final List<Coords> mismatchingTiles;
+
+    private final BufferedImage diffImage;
+
+    private final String sizeMismatch;
+
+    /**
+     * Default constructor.
+     *
+     * @param totalPixels      number of pixels in the image
+     * @param diffPixels       number of different pixels
+     * @param mismatchingTiles tiles with at least one different pixel
+     * @param diffImage        image with the mismatching tiles, null if there are no differences
+     */
+    public VisualDiff(long totalPixels, long diffPixels, List<Coords> mismatchingTiles, BufferedImage diffImage) {
+        this(totalPixels, diffPixels, mismatchingTiles, diffImage, null);
+    }
+
+    private VisualDiff(long totalPixels, long diffPixels, List<Coords> mismatchingTiles, BufferedImage diffImage, String sizeMismatch) {
+        this.totalPixels = totalPixels;
+        this.diffPixels = diffPixels;
+        this.mismatchingTiles = mismatchingTiles;
+        this.diffImage = diffImage;
+        this.sizeMismatch = sizeMismatch;
+    }
+
+    static VisualDiff sizeMismatch(int expectedWidth, int expectedHeight, int actualWidth, int actualHeight) {
+        return new VisualDiff((long) actualWidth * actualHeight, (long) actualWidth * actualHeight, Collections.emptyList(), null,
+                String.format("Image size %dx%d does not match the baseline size %dx%d", actualWidth, actualHeight, expectedWidth, expectedHeight));
+    }
+
+    public long getTotalPixels() {
+        return totalPixels;
+    }
+
+    public long getDiffPixels() {
+        return diffPixels;
+    }
+
+    public List<Coords> getMismatchingTiles() {
+        return mismatchingTiles;
+    }
+
+    public BufferedImage getDiffImage() {
+        return diffImage;
+    }
+
+    /**
+     * Returns the reason why the images could not be compared pixel by pixel
+     *
+     * @return message, or null if both images have the same size
+     */
+    public String getSizeMismatch() {
+        return sizeMismatch;
+    }
+
+    /**
+     * Returns the percentage of different pixels
+     *
+     * @return percentage (0-100)
+     */
+    public double getDiffPercentage() {
+        return this.totalPixels == 0 ? 0 : this.diffPixels * 100.0 / this.totalPixels;
+    }
+
+    /**
+     * Checks if the images are equal within the given tolerance
+     *
+     * @param tolerance max percentage (0-100) of different pixels
+     * @return true if the images match
+     */
+    public boolean matches(double tolerance) {
+        return this.sizeMismatch == null && this.getDiffPercentage() <= tolerance;
+    }
+
+    @Override
+    public String toString() {
+        if (this.sizeMismatch != null) {
+            return this.sizeMismatch;
+        }
+        return String.format("%d of %d pixels (%.3f%%) are different in %d tiles", this.diffPixels, this.totalPixels,
+                this.getDiffPercentage(), this.mismatchingTiles.size());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import io.appium.java_client.HasSessionDetails;
+import io.appium.java_client.InteractsWithApps;
+import org.openqa.selenium.MutableCapabilities;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AppiumSessionPoolTest {
+
+    private final List<String> calls = new ArrayList<>();
+
+    private boolean healthy = true;
+
+    private WebDriver fakeDriver() {
+        return (WebDriver) Proxy.newProxyInstance(this.getClass().getClassLoader(),
+                new Class[]{WebDriver.class, InteractsWithApps.class, HasSessionDetails.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getSessionDetails") && !healthy) {
+                        throw new WebDriverException("session deleted");
+                    }
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.getName().equals("equals") ? proxy == args[0] : method.getName().equals("hashCode") ? System.identityHashCode(proxy) : "fake";
+                    }
+                    calls.add(method.getName());
+                    return method.getReturnType() == boolean.class ? true : null;
+                });
+    }
+
+    private static MutableCapabilities capabilities() {
+        MutableCapabilities capabilities = new MutableCapabilities();
+        capabilities.setCapability("platformName", "Android");
+        capabilities.setCapability("app", "/tmp/app.apk");
+        capabilities.setCapability("appPackage", "com.example");
+        return capabilities;
+    }
+
+    @AfterMethod
+    public void clear() {
+        AppiumSessionPool.INSTANCE.closeAll();
+    }
+
+    @Test
+    public void shouldReuseTheSessionAndRelaunchTheApp() {
+        WebDriver driver = this.fakeDriver();
+        assertThat(AppiumSessionPool.INSTANCE.acquire(capabilities(), AppiumSessionPool.ResetLevel.RELAUNCH)).isNull();
+
+        AppiumSessionPool.INSTANCE.register(driver, capabilities());
+        assertThat(AppiumSessionPool.INSTANCE.release(driver)).isTrue();
+        calls.clear();
+
+        assertThat(AppiumSessionPool.INSTANCE.acquire(capabilities(), AppiumSessionPool.ResetLevel.RELAUNCH)).isSameAs(driver);
+        assertThat(calls).containsExactly("getSessionDetails", "closeApp", "launchApp");
+    }
+
+    @Test
+    public void shouldReinstallTheApp() {
+        WebDriver driver = this.fakeDriver();
+        AppiumSessionPool.INSTANCE.register(driver, capabilities());
+        calls.clear();
+
+        assertThat(AppiumSessionPool.INSTANCE.acquire(capabilities(), AppiumSessionPool.ResetLevel.REINSTALL)).isSameAs(driver);
+        assertThat(calls).containsExactly("getSessionDetails", "terminateApp", "removeApp", "installApp", "activateApp");
+    }
+
+    @Test
+    public void shouldDiscardUnhealthySessionsAndSessionsWithOtherCapabilities() {
+        WebDriver driver = this.fakeDriver();
+        AppiumSessionPool.INSTANCE.register(driver, capabilities());
+        healthy = false;
+        assertThat(AppiumSessionPool.INSTANCE.acquire(capabilities(), AppiumSessionPool.ResetLevel.NONE)).isNull();
+        assertThat(calls).contains("quit");
+        assertThat(AppiumSessionPool.INSTANCE.release(driver)).isFalse();
+
+        healthy = true;
+        calls.clear();
+        WebDriver other = this.fakeDriver();
+        AppiumSessionPool.INSTANCE.register(other, capabilities());
+        MutableCapabilities ios = capabilities();
+        ios.setCapability("platformName", "iOS");
+        assertThat(AppiumSessionPool.INSTANCE.acquire(ios, AppiumSessionPool.ResetLevel.NONE)).isNull();
+        assertThat(calls).containsExactly("quit");
+    }
+
+    @Test
+    public void shouldParseResetLevels() {
+        assertThat(AppiumSessionPool.ResetLevel.parse(" Clear ")).isEqualTo(AppiumSessionPool.ResetLevel.CLEAR);
+        assertThatThrownBy(() -> AppiumSessionPool.ResetLevel.parse("restart")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AvroRecordBuilderTest {
+
+    private static final String SCHEMA = "{\"type\": \"record\", \"name\": \"order\", \"fields\": ["
+            + "{\"name\": \"id\", \"type\": \"int\"}, "
+            + "{\"name\": \"timestamp\", \"type\": \"long\"}, "
+            + "{\"name\": \"weight\", \"type\": \"float\"}, "
+            + "{\"name\": \"paid\", \"type\": \"boolean\"}, "
+            + "{\"name\": \"amount\", \"type\": \"bytes\"}, "
+            + "{\"name\": \"comment\", \"type\": [\"null\", \"string\"]}, "
+            + "{\"name\": \"quantities\", \"type\": {\"type\": \"array\", \"items\": \"int\"}}, "
+            + "{\"name\": \"customer\", \"type\": {\"type\": \"record\", \"name\": \"customer\", \"fields\": [{\"name\": \"name\", \"type\": \"string\"}]}}, "
+            + "{\"name\": \"lines\", \"type\": {\"type\": \"array\", \"items\": {\"type\": \"record\", \"name\": \"line\", \"fields\": [{\"name\": \"sku\", \"type\": \"string\"}]}}}, "
+            + "{\"name\": \"previous\", \"type\": [\"null\", \"order\"]}]}";
+
+    @AfterMethod
+    public void clear() {
+        AvroCache.INSTANCE.clear();
+    }
+
+    @Test
+    public void shouldParseEverySchemaOnlyOnce() {
+        Schema schema = AvroCache.INSTANCE.parse(SCHEMA);
+
+        assertThat(AvroCache.INSTANCE.parse(new String(SCHEMA))).isSameAs(schema);
+        assertThat(AvroCache.INSTANCE.getRecordBuilder(SCHEMA)).isSameAs(AvroCache.INSTANCE.getRecordBuilder(new String(SCHEMA)));
+        assertThat(AvroCache.INSTANCE.getRecordBuilder(SCHEMA).getSchema()).isSameAs(schema);
+        assertThat(AvroCache.INSTANCE.parse(SCHEMA.replace("order", "purchase"))).isNotSameAs(schema);
+    }
+
+    @Test
+    public void shouldConvertTheValuesToTheTypesOfTheFields() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("id", "1");
+        properties.put("timestamp", "1600000000000");
+        properties.put("weight", "1.5");
+        properties.put("paid", "true");
+        properties.put("amount", "12.34");
+        properties.put("comment", "urgent");
+        properties.put("quantities", "[1, 2]");
+        properties.put("customer", "{\"name\": \"John\"}");
+        properties.put("lines", "[{\"sku\": \"A1\"}, {\"sku\": \"B2\"}]");
+        properties.put("unknown", "ignored");
+
+        GenericRecord record = AvroCache.INSTANCE.getRecordBuilder(SCHEMA).build(properties);
+
+        assertThat(record.get("id")).isEqualTo(1);
+        assertThat(record.get("timestamp")).isEqualTo(1600000000000L);
+        assertThat(record.get("weight")).isEqualTo(1.5f);
+        assertThat(record.get("paid")).isEqualTo(true);
+        assertThat(record.get("amount")).isEqualTo(ByteBuffer.wrap(new byte[]{0x04, (byte) 0xD2}));
+        assertThat(record.get("comment")).isEqualTo("urgent");
+        assertThat(record.get("quantities")).isEqualTo(Arrays.asList(1, 2));
+        assertThat(((GenericRecord) record.get("customer")).get("name")).isEqualTo("John");
+        assertThat((List<GenericRecord>) record.get("lines")).extracting(line -> line.get("sku")).containsExactly("A1", "B2");
+        assertThat(record.get("previous")).isNull();
+        assertThat(GenericData.get().validate(record.getSchema(), record)).isTrue();
+    }
+
+    @Test
+    public void shouldBuildRecordsFromJsonValues() throws Exception {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("id", 2);
+        properties.put("customer", Collections.singletonMap("name", "Jane"));
+        properties.put("previous", "{\"id\": 1, \"customer\": {\"name\": \"Jane\"}}");
+
+        GenericRecord record = AvroCache.INSTANCE.getRecordBuilder(SCHEMA).build(properties);
+        GenericRecord previous = (GenericRecord) record.get("previous");
+
+        assertThat(record.get("id")).isEqualTo(2);
+        assertThat(((GenericRecord) record.get("customer")).get("name")).isEqualTo("Jane");
+        assertThat(previous.get("id")).isEqualTo(1);
+        assertThat(previous.getSchema()).isSameAs(record.getSchema());
+        assertThat(AvroCache.INSTANCE.getRecordBuilder(SCHEMA).build(null)).isNull();
+    }
+
+    @Test
+    public void shouldConvertUnionsToTheFirstTypeThatAcceptsTheValue() throws Exception {
+        AvroRecordBuilder builder = AvroCache.INSTANCE.getRecordBuilder("{\"type\": \"record\", \"name\": \"value\", \"fields\": ["
+                + "{\"name\": \"number\", \"type\": [\"null\", \"int\", \"string\"]}, "
+                + "{\"name\": \"flag\", \"type\": [\"boolean\", \"string\"]}]}");
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put("number", "abc");
+        properties.put("flag", "yes");
+        GenericRecord text = builder.build(properties);
+        properties.put("number", "12");
+        properties.put("flag", "false");
+        GenericRecord typed = builder.build(properties);
+
+        assertThat(text.get("number")).isEqualTo("abc");
+        assertThat(text.get("flag")).isEqualTo("yes");
+        assertThat(typed.get("number")).isEqualTo(12);
+        assertThat(typed.get("flag")).isEqualTo(false);
+        assertThat(builder.build(Collections.singletonMap("number", null)).get("number")).isNull();
+    }
+}
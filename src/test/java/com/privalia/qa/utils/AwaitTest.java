@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AwaitTest {
+
+    @Test
+    public void shouldReturnAsSoonAsTheConditionIsFulfilled() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Await await = Await.atMost(5, TimeUnit.SECONDS).pollEvery(20, TimeUnit.MILLISECONDS);
+
+        int value = await.until(calls::incrementAndGet, count -> count == 3);
+
+        assertThat(value).isEqualTo(3);
+        assertThat(await.getAttempts()).isEqualTo(3);
+        assertThat(await.getElapsed()).isLessThan(1000);
+    }
+
+    @Test
+    public void shouldNotExceedTheDeadline() {
+        Await await = Await.atMost(300, TimeUnit.MILLISECONDS).pollEvery(1, TimeUnit.SECONDS).named("status is done");
+        long start = System.currentTimeMillis();
+
+        assertThatThrownBy(() -> await.untilAsserted(() -> assertThat("pending").isEqualTo("done")))
+                .isInstanceOf(AssertionError.class).hasMessageContaining("done");
+
+        assertThat(System.currentTimeMillis() - start).isBetween(300L, 800L);
+        assertThat(await.getAttempts()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldBackOffExponentially() {
+        Await await = Await.atMost(700, TimeUnit.MILLISECONDS).pollEvery(50, TimeUnit.MILLISECONDS).withBackoff(2, 200, TimeUnit.MILLISECONDS).withJitter(0.1);
+
+        assertThatThrownBy(() -> await.until(() -> false, result -> result)).isInstanceOf(AssertionError.class).hasMessageContaining("not fulfilled after");
+
+        // attempts at ~0, 50, 150, 350, 550 and 700 ms
+        assertThat(await.getAttempts()).isBetween(5, 7);
+    }
+
+    @Test
+    public void shouldStopWhenTheFailFastConditionIsTrue() {
+        AtomicInteger calls = new AtomicInteger();
+        Await await = Await.atMost(10, TimeUnit.SECONDS).pollEvery(10, TimeUnit.MILLISECONDS).failFast(() -> calls.get() >= 2);
+
+        assertThatThrownBy(() -> await.until(calls::incrementAndGet, count -> count > 5)).hasMessageContaining("can not be fulfilled anymore");
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldThrowOtherExceptionsImmediately() {
+        AtomicInteger calls = new AtomicInteger();
+        Await await = Await.atMost(10, TimeUnit.SECONDS).pollEvery(10, TimeUnit.MILLISECONDS);
+
+        assertThatThrownBy(() -> await.untilAsserted(() -> {
+            calls.incrementAndGet();
+            throw new IOException("connection closed");
+        })).isInstanceOf(IOException.class);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDoubleTheBackoffUpToTheMax() throws InterruptedException {
+        Await.Backoff backoff = new Await.Backoff(1, 4);
+        backoff.sleep();
+        backoff.sleep();
+        backoff.sleep();
+        assertThat(backoff.getCurrent()).isEqualTo(4);
+        backoff.reset();
+        assertThat(backoff.getCurrent()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import io.restassured.response.Response;
+import io.restassured.specification.RequestSpecification;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CassetteTest {
+
+    @AfterMethod
+    public void clear() {
+        Cassette.closeAll();
+        Cassette.resetReplays();
+        System.clearProperty("CASSETTE_MATCH");
+        System.clearProperty("CASSETTE_STRICT");
+    }
+
+    @Test
+    public void shouldReplayTheRecordedResponsesWithoutNetwork() throws Exception {
+        File file = File.createTempFile("test", ".cassette");
+        file.deleteOnExit();
+        MockServer server = new MockServer(0);
+        server.stub("GET", "/users/1").body("{\"id\": 1}").header("Content-Type", "application/json");
+        server.stub("POST", "/users").status(201).body("{\"id\": 2}").header("Content-Type", "application/json");
+        String baseUrl = "http://localhost:" + server.getPort();
+
+        Cassette recorder = Cassette.open(file.getPath(), Cassette.Mode.RECORD);
+        RequestSpecification recording = given().filter(new CassetteFilter(() -> recorder)).baseUri(baseUrl);
+        recording.get("/users/1").then().statusCode(200);
+        given().filter(new CassetteFilter(() -> recorder)).baseUri(baseUrl).body("{\"name\": \"John\"}").post("/users").then().statusCode(201);
+        server.stop();
+        Cassette.closeAll();
+
+        System.setProperty("CASSETTE_STRICT", "true");
+        Cassette player = Cassette.open(file.getPath(), Cassette.Mode.REPLAY);
+        Response response = given().filter(new CassetteFilter(() -> player)).baseUri(baseUrl).get("/users/1");
+        assertThat(response.getStatusCode()).isEqualTo(200);
+        assertThat(response.getContentType()).isEqualTo("application/json");
+        assertThat(response.jsonPath().getInt("id")).isEqualTo(1);
+
+        response = given().filter(new CassetteFilter(() -> player)).baseUri(baseUrl).body("{\"name\": \"John\"}").post("/users");
+        assertThat(response.getStatusCode()).isEqualTo(201);
+        assertThatThrownBy(() -> given().filter(new CassetteFilter(() -> player)).baseUri(baseUrl).body("{\"name\": \"Jane\"}").post("/users"))
+                .isInstanceOf(AssertionError.class).hasMessageContaining("was not recorded");
+    }
+
+    @Test
+    public void shouldReplayRepeatedRequestsInOrder() throws Exception {
+        File file = File.createTempFile("test", ".cassette");
+        file.deleteOnExit();
+        System.setProperty("CASSETTE_MATCH", "method,path,header:Accept");
+
+        Cassette recorder = Cassette.open(file.getPath(), Cassette.Mode.RECORD);
+        String key = recorder.key("GET", "http://host:80/status?ts=1", Collections.singletonMap("accept", "text/plain"), null);
+        assertThat(key).isEqualTo("GET /status Accept=text/plain");
+        recorder.record(key, 202, Collections.emptyList(), "pending".getBytes());
+        recorder.record(key, 200, Collections.emptyList(), "done".getBytes());
+        Cassette.closeAll();
+
+        Cassette player = Cassette.open(file.getPath(), Cassette.Mode.REPLAY);
+        String otherHost = player.key("GET", "http://other:8080/status?ts=2", Collections.singletonMap("Accept", "text/plain"), null);
+        assertThat(player.replay(otherHost).getBodyAsString()).isEqualTo("pending");
+        assertThat(player.replay(otherHost).getStatus()).isEqualTo(200);
+        assertThat(player.replay(otherHost).getBodyAsString()).isEqualTo("done");
+        assertThat(player.replay("GET /other Accept=null")).isNull();
+    }
+
+    @Test
+    public void shouldIgnoreATruncatedRecord() throws Exception {
+        File file = File.createTempFile("test", ".cassette");
+        file.deleteOnExit();
+        Cassette recorder = Cassette.open(file.getPath(), Cassette.Mode.RECORD);
+        recorder.record("GET /a", 200, Collections.emptyList(), "a".getBytes());
+        recorder.record("GET /b", 200, Collections.emptyList(), "b".getBytes());
+        Cassette.closeAll();
+        try (RandomAccessFile data = new RandomAccessFile(file, "rw")) {
+            data.setLength(data.length() - 3);
+        }
+
+        Cassette player = Cassette.open(file.getPath(), Cassette.Mode.REPLAY);
+        assertThat(player.replay("GET /a").getBodyAsString()).isEqualTo("a");
+        assertThat(player.replay("GET /b")).isNull();
+    }
+
+    @Test
+    public void shouldReplayRepeatedRequestsInOrderInEveryScenario() throws Exception {
+        File file = File.createTempFile("test", ".cassette");
+        file.deleteOnExit();
+        Cassette recorder = Cassette.open(file.getPath(), Cassette.Mode.RECORD);
+        recorder.record("GET /status", 202, Collections.emptyList(), "pending".getBytes());
+        recorder.record("GET /status", 200, Collections.emptyList(), "done".getBytes());
+        Cassette.closeAll();
+
+        Cassette player = Cassette.open(file.getPath(), Cassette.Mode.REPLAY);
+        assertThat(player.replay("GET /status").getBodyAsString()).isEqualTo("pending");
+
+        ExecutorService parallelScenario = Executors.newSingleThreadExecutor();
+        try {
+            assertThat(parallelScenario.submit(() -> player.replay("GET /status").getBodyAsString()).get()).isEqualTo("pending");
+        } finally {
+            parallelScenario.shutdown();
+        }
+        assertThat(player.replay("GET /status").getBodyAsString()).isEqualTo("done");
+
+        Cassette.resetReplays();
+        assertThat(player.replay("GET /status").getBodyAsString()).isEqualTo("pending");
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CrossBrowserExecutionTest {
+
+    @AfterMethod
+    public void clear() {
+        CrossBrowserExecution.INSTANCE.clear();
+    }
+
+    @Test
+    public void shouldRunEveryBrowserConcurrentlyWithItsOwnProperties() {
+        ThreadProperty.set("feature", "my feature");
+        CountDownLatch allStarted = new CountDownLatch(3);
+        Map<String, String> seen = new ConcurrentHashMap<>();
+
+        CrossBrowserExecution.INSTANCE.run("scenario", Arrays.asList("chrome", "Firefox", "caps/safari.json"), () -> {
+            allStarted.countDown();
+            try {
+                assertThat(allStarted.await(10, TimeUnit.SECONDS)).as("browsers executed sequentially").isTrue();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            String browser = ThreadProperty.get("CAPABILITIES", ThreadProperty.get("browserName"));
+            seen.put(browser, ThreadProperty.get("feature"));
+        });
+
+        assertThat(seen).containsOnlyKeys("chrome", "Firefox", "caps/safari.json");
+        assertThat(seen.values()).containsOnly("my feature");
+        assertThat(CrossBrowserExecution.INSTANCE.getResults().get("scenario")).containsOnlyKeys("chrome", "firefox", "safari");
+    }
+
+    @Test
+    public void shouldFailIfAnyBrowserFails() {
+        assertThatThrownBy(() -> CrossBrowserExecution.INSTANCE.run("scenario", Arrays.asList("chrome", "firefox"), () -> {
+            if ("firefox".equals(ThreadProperty.get("browserName"))) {
+                throw new AssertionError("element not found");
+            }
+        })).isInstanceOf(AssertionError.class).hasMessageContaining("failed in 1 browser(s)").hasMessageContaining("firefox: java.lang.AssertionError: element not found");
+
+        Map<String, CrossBrowserExecution.Result> results = CrossBrowserExecution.INSTANCE.getResults().get("scenario");
+        assertThat(results.get("chrome").getStatus()).isEqualTo(CrossBrowserExecution.Result.PASSED);
+        assertThat(results.get("firefox").getStatus()).isEqualTo(CrossBrowserExecution.Result.FAILED);
+    }
+
+    @Test
+    public void shouldSkipOnlyIfSkippedInEveryBrowser() {
+        CrossBrowserExecution.INSTANCE.run("partially skipped", Arrays.asList("chrome", "firefox"), () -> {
+            if ("firefox".equals(ThreadProperty.get("browserName"))) {
+                throw new SkipException("skipped");
+            }
+        });
+
+        assertThatThrownBy(() -> CrossBrowserExecution.INSTANCE.run("skipped", Arrays.asList("chrome", "firefox"), () -> {
+            throw new SkipException("skipped");
+        })).isInstanceOf(SkipException.class);
+    }
+
+    @Test
+    public void shouldWriteReportWithAColumnPerBrowser() throws IOException {
+        CrossBrowserExecution.INSTANCE.run("scenario <1>", Arrays.asList("chrome", "firefox"), () -> { });
+
+        File directory = Files.createTempDirectory("cross-browser").toFile();
+        CrossBrowserExecution.INSTANCE.write(directory);
+
+        String html = new String(Files.readAllBytes(new File(directory, "cross-browser-report.html").toPath()), StandardCharsets.UTF_8);
+        assertThat(html).contains("<th>chrome</th><th>firefox</th>").contains("scenario &lt;1&gt;").contains("class=\"PASSED\"");
+        assertThat(new File(directory, "cross-browser-report.json")).exists();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WrapsElement;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ElementCacheTest {
+
+    private static WebElement fakeElement(String text, boolean stale) {
+        return (WebElement) Proxy.newProxyInstance(ElementCacheTest.class.getClassLoader(),
+                new Class[]{WebElement.class}, (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.getName().equals("equals") ? proxy == args[0] : method.getName().equals("hashCode") ? System.identityHashCode(proxy) : text;
+                    }
+                    if (stale) {
+                        throw new StaleElementReferenceException("element is not attached to the page document");
+                    }
+                    return method.getName().equals("getText") ? text : null;
+                });
+    }
+
+    @Test
+    public void shouldLocateTheElementsOnlyOnce() {
+        ElementCache cache = new ElementCache();
+        AtomicInteger located = new AtomicInteger();
+        WebElement element = fakeElement("name", false);
+
+        for (int i = 0; i < 3; i++) {
+            List<WebElement> elements = cache.locate("id", "name", () -> {
+                located.incrementAndGet();
+                return Collections.singletonList(element);
+            });
+            assertThat(elements.get(0).getText()).isEqualTo("name");
+            assertThat(((WrapsElement) elements.get(0)).getWrappedElement()).isSameAs(element);
+        }
+
+        assertThat(located.get()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldLocateStaleElementsAgain() {
+        ElementCache cache = new ElementCache();
+        AtomicInteger located = new AtomicInteger();
+        List<WebElement> elements = cache.put("css", "#name", Collections.singletonList(fakeElement("old", true)), () -> {
+            located.incrementAndGet();
+            return Collections.singletonList(fakeElement("new", false));
+        });
+
+        assertThat(elements.get(0).getText()).isEqualTo("new");
+        assertThat(elements.get(0).getText()).isEqualTo("new");
+        assertThat(located.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldFailIfTheStaleElementIsNoLongerInThePage() {
+        ElementCache cache = new ElementCache();
+        List<WebElement> elements = cache.put("css", "#name", Collections.singletonList(fakeElement("old", true)), Collections::emptyList);
+
+        assertThatThrownBy(() -> elements.get(0).click()).isInstanceOf(StaleElementReferenceException.class);
+    }
+
+    @Test
+    public void shouldNotCacheEmptyResultsAndDiscardElementsWhenInvalidated() {
+        ElementCache cache = new ElementCache();
+        AtomicInteger located = new AtomicInteger();
+
+        cache.locate("id", "name", () -> {
+            located.incrementAndGet();
+            return Collections.emptyList();
+        });
+        cache.locate("id", "name", () -> {
+            located.incrementAndGet();
+            return Collections.singletonList(fakeElement("name", false));
+        });
+        cache.invalidate();
+        cache.locate("id", "name", () -> {
+            located.incrementAndGet();
+            return Collections.singletonList(fakeElement("name", false));
+        });
+
+        assertThat(located.get()).isEqualTo(3);
+        assertThat(cache.getHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldOnlyDiscardTheLocatorsOfSeveralElementsAfterAnAction() {
+        ElementCache cache = new ElementCache();
+        AtomicInteger located = new AtomicInteger();
+        Supplier<List<WebElement>> single = () -> {
+            located.incrementAndGet();
+            return Collections.singletonList(fakeElement("name", false));
+        };
+        Supplier<List<WebElement>> several = () -> {
+            located.incrementAndGet();
+            return Arrays.asList(fakeElement("first", false), fakeElement("second", false));
+        };
+
+        cache.locate("id", "name", single);
+        cache.locate("css", ".row", several);
+        cache.invalidateLists();
+        cache.locate("id", "name", single);
+        cache.locate("css", ".row", several);
+
+        assertThat(located.get()).isEqualTo(3);
+        assertThat(cache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldSplitShadowLocators() {
+        assertThat(ByShadowCss.split("my-app >> settings-panel>>input#name ")).containsExactly("my-app", "settings-panel", "input#name");
+        assertThat(new ByShadowCss("my-app >> input").toString()).isEqualTo("By.shadowCss: my-app >> input");
+        assertThatThrownBy(() -> ByShadowCss.split(" >> ")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.assertj.core.data.Percentage;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EndpointLatencyReportTest {
+
+    @AfterMethod
+    public void clear() {
+        EndpointLatencyReport.INSTANCE.clear();
+    }
+
+    @Test
+    public void shouldNormalizeThePathParameters() {
+        assertThat(EndpointLatencyReport.template("/users/123/orders?page=2")).isEqualTo("/users/{id}/orders");
+        assertThat(EndpointLatencyReport.template("/orders/3f2b8c1e-9d4a-4b6e-8f0a-1c2d3e4f5a6b/items")).isEqualTo("/orders/{uuid}/items");
+        assertThat(EndpointLatencyReport.template("/reports/2021-03-01")).isEqualTo("/reports/{date}");
+        assertThat(EndpointLatencyReport.template("/files/9f86d081884c7d659a2feaa0c55ad015")).isEqualTo("/files/{hash}");
+        assertThat(EndpointLatencyReport.template("/sessions/Xk9aPq2LmN7zR4")).isEqualTo("/sessions/{token}");
+        assertThat(EndpointLatencyReport.template("/api/v2/health")).isEqualTo("/api/v2/health");
+    }
+
+    @Test
+    public void shouldAggregateTheRequestsByEndpoint() {
+        for (int i = 1; i <= 100; i++) {
+            EndpointLatencyReport.INSTANCE.record("get", "/users/" + i, i % 10 == 0 ? 404 : 200, i, 1000);
+        }
+        EndpointLatencyReport.INSTANCE.record("POST", "/users", 201, 50, -1);
+
+        Map<String, Map<String, Object>> summary = EndpointLatencyReport.INSTANCE.getSummary();
+
+        assertThat(summary).containsOnlyKeys("GET /users/{id}", "POST /users");
+        Map<String, Object> users = summary.get("GET /users/{id}");
+        assertThat(users.get("count")).isEqualTo(100L);
+        assertThat((Double) users.get("p95")).isEqualTo(95.0);
+        assertThat((Double) users.get("max")).isEqualTo(100.0);
+        assertThat((Map<String, Long>) users.get("status")).containsEntry("200", 90L).containsEntry("404", 10L);
+        assertThat((Map<String, Long>) users.get("bytes")).containsEntry("mean", 1000L);
+        assertThat(summary.get("POST /users")).doesNotContainKey("bytes");
+    }
+
+    @Test
+    public void shouldFlagTheEndpointsSlowerThanTheBaseline() throws Exception {
+        File directory = Files.createTempDirectory("latency").toFile();
+        File baseline = new File(directory, "baseline/endpoint-latency-baseline.json");
+        EndpointLatencyReport.INSTANCE.record("GET", "/users/1", 200, 100, 10);
+        EndpointLatencyReport.INSTANCE.record("GET", "/posts/1", 200, 100, 10);
+        assertThat(EndpointLatencyReport.INSTANCE.write(directory, baseline)).isEmpty();
+        assertThat(baseline).exists();
+
+        EndpointLatencyReport.INSTANCE.clear();
+        EndpointLatencyReport.INSTANCE.record("GET", "/users/2", 200, 150, 10);
+        EndpointLatencyReport.INSTANCE.record("GET", "/posts/2", 200, 110, 10);
+        EndpointLatencyReport.INSTANCE.record("GET", "/comments/2", 200, 500, 10);
+        List<String> regressions = EndpointLatencyReport.INSTANCE.write(directory, baseline);
+
+        assertThat(regressions).containsExactly("GET /users/{id}: p95 150.0 ms (baseline 100.0 ms, +50%)");
+        JsonNode report = new ObjectMapper().readTree(new File(directory, "endpoint-latency-report.json"));
+        assertThat(report.path("endpoints").path("GET /users/{id}").path("baselineP95").asDouble()).isEqualTo(100.0);
+        assertThat(report.path("regressions")).hasSize(1);
+        assertThat(new ObjectMapper().readTree(baseline).path("endpoints").has("GET /comments/{id}")).isFalse();
+    }
+
+    @Test
+    public void shouldOnlyUpdateTheBaselineOnDemandAndWithoutRegressions() throws Exception {
+        File directory = Files.createTempDirectory("latency").toFile();
+        File baseline = new File(directory, "endpoint-latency-baseline.json");
+        EndpointLatencyReport.INSTANCE.record("GET", "/users/1", 200, 100, 10);
+        EndpointLatencyReport.INSTANCE.write(directory, baseline);
+
+        System.setProperty("LATENCY_BASELINE_UPDATE", "true");
+        try {
+            EndpointLatencyReport.INSTANCE.clear();
+            EndpointLatencyReport.INSTANCE.record("GET", "/users/1", 200, 200, 10);
+            assertThat(EndpointLatencyReport.INSTANCE.write(directory, baseline)).hasSize(1);
+            assertThat(new ObjectMapper().readTree(baseline).path("endpoints").path("GET /users/{id}").path("p95").asDouble()).isEqualTo(100.0);
+
+            EndpointLatencyReport.INSTANCE.clear();
+            EndpointLatencyReport.INSTANCE.record("GET", "/users/1", 200, 90, 10);
+            assertThat(EndpointLatencyReport.INSTANCE.write(directory, baseline)).isEmpty();
+            assertThat(new ObjectMapper().readTree(baseline).path("endpoints").path("GET /users/{id}").path("p95").asDouble()).isEqualTo(90.0);
+        } finally {
+            System.clearProperty("LATENCY_BASELINE_UPDATE");
+        }
+    }
+
+    @Test
+    public void shouldOnlyUseABaselineWhenGiven() throws Exception {
+        File directory = Files.createTempDirectory("latency").toFile();
+        EndpointLatencyReport.INSTANCE.record("GET", "/users/1", 200, 100, 10);
+
+        assertThat(EndpointLatencyReport.INSTANCE.write(directory)).isEmpty();
+
+        assertThat(new File(directory, "endpoint-latency-report.json")).exists();
+        assertThat(directory.list()).containsExactly("endpoint-latency-report.json");
+    }
+
+    @Test
+    public void shouldKeepTheLatenciesOfSlowEndpointsWithinThePrecisionOfTheHistogram() {
+        for (int i = 1; i <= 1000; i++) {
+            EndpointLatencyReport.INSTANCE.record("GET", "/reports", 200, i * 10L, -1);
+        }
+
+        Map<String, Object> reports = EndpointLatencyReport.INSTANCE.getSummary().get("GET /reports");
+
+        assertThat(reports.get("count")).isEqualTo(1000L);
+        assertThat((Double) reports.get("p95")).isCloseTo(9500.0, Percentage.withPercentage(1.6));
+        assertThat((Double) reports.get("max")).isEqualTo(10000.0);
+        assertThat((Double) reports.get("mean")).isEqualTo(5005.0);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EvidenceWriterTest {
+
+    private static final String DIR = "./target/test-evidences/";
+
+    @BeforeClass
+    public void cleanUp() {
+        FileUtils.deleteQuietly(new File(DIR));
+    }
+
+    @Test
+    public void writeTextTest() throws Exception {
+        String path = EvidenceWriter.INSTANCE.write(DIR + "text/source.html", "<html><body>ñ</body></html>");
+        EvidenceWriter.INSTANCE.write(path, "<html></html>");
+        assertThat(EvidenceWriter.INSTANCE.flush()).isTrue();
+        assertThat(new String(Files.readAllBytes(new File(path).toPath()), StandardCharsets.UTF_8))
+                .isEqualTo("<html></html>");
+    }
+
+    @Test
+    public void writeImageTest() throws Exception {
+        BufferedImage image = new BufferedImage(10, 20, BufferedImage.TYPE_INT_RGB);
+        String path = EvidenceWriter.INSTANCE.write(DIR + "image/capture.png", image);
+        assertThat(EvidenceWriter.INSTANCE.flush()).isTrue();
+        BufferedImage written = ImageIO.read(new File(path));
+        assertThat(written.getWidth()).isEqualTo(10);
+        assertThat(written.getHeight()).isEqualTo(20);
+    }
+
+    @Test
+    public void metricsTest() {
+        long submitted = EvidenceWriter.INSTANCE.getSubmitted();
+        long written = EvidenceWriter.INSTANCE.getWritten();
+        CountDownLatch latch = new CountDownLatch(1);
+        EvidenceWriter.INSTANCE.write(DIR + "metrics/blocked.png", () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return new byte[1024];
+        });
+        for (int i = 0; i < 10; i++) {
+            EvidenceWriter.INSTANCE.write(DIR + "metrics/capture" + i + ".png", new byte[1024]);
+        }
+        assertThat(EvidenceWriter.INSTANCE.getMaxQueueDepth()).isGreaterThanOrEqualTo(10);
+        latch.countDown();
+        for (int i = 10; i < 100; i++) {
+            EvidenceWriter.INSTANCE.write(DIR + "metrics/capture" + i + ".png", new byte[1024]);
+        }
+        assertThat(EvidenceWriter.INSTANCE.flush()).isTrue();
+        assertThat(EvidenceWriter.INSTANCE.getSubmitted() - submitted).isEqualTo(101);
+        assertThat(EvidenceWriter.INSTANCE.getWritten() - written).isEqualTo(101);
+        assertThat(new File(DIR + "metrics/capture99.png")).hasSize(1024);
+    }
+}
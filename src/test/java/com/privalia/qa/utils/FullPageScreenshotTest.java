@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FullPageScreenshotTest {
+
+    private BufferedImage tile(int width, int height, Color color) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        return image;
+    }
+
+    @Test
+    public void stitchTest() {
+        BufferedImage image = FullPageScreenshot.stitch(
+                Arrays.asList(tile(10, 100, Color.RED), tile(10, 100, Color.GREEN), tile(10, 100, Color.BLUE)),
+                Arrays.asList(0, 100, 150), 100, 250);
+
+        assertThat(image.getWidth()).isEqualTo(10);
+        assertThat(image.getHeight()).isEqualTo(250);
+        assertThat(image.getRGB(5, 50)).isEqualTo(Color.RED.getRGB());
+        assertThat(image.getRGB(5, 120)).isEqualTo(Color.GREEN.getRGB());
+        assertThat(image.getRGB(5, 160)).isEqualTo(Color.BLUE.getRGB());
+        assertThat(image.getRGB(5, 249)).isEqualTo(Color.BLUE.getRGB());
+    }
+
+    @Test
+    public void stitchScaledTest() {
+        BufferedImage image = FullPageScreenshot.stitch(
+                Arrays.asList(tile(20, 200, Color.RED), tile(20, 200, Color.GREEN)),
+                Arrays.asList(0, 50), 100, 150);
+
+        assertThat(image.getHeight()).isEqualTo(300);
+        assertThat(image.getRGB(5, 90)).isEqualTo(Color.RED.getRGB());
+        assertThat(image.getRGB(5, 110)).isEqualTo(Color.GREEN.getRGB());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GridStatusClientTest {
+
+    private static final String GRID4_STATUS = "{\"value\": {\"ready\": true, \"nodes\": ["
+            + "{\"id\": \"n1\", \"uri\": \"http://10.0.0.1:5555\", \"maxSessions\": 2, \"availability\": \"UP\", \"slots\": ["
+            + "  {\"stereotype\": {\"browserName\": \"chrome\", \"platformName\": \"LINUX\"}, \"session\": {\"sessionId\": \"a\"}},"
+            + "  {\"stereotype\": {\"browserName\": \"chrome\", \"platformName\": \"LINUX\"}, \"session\": null}]},"
+            + "{\"id\": \"n2\", \"uri\": \"http://10.0.0.2:5555\", \"maxSessions\": 2, \"availability\": \"UP\", \"slots\": ["
+            + "  {\"stereotype\": {\"browserName\": \"chrome\", \"platformName\": \"LINUX\"}, \"session\": null},"
+            + "  {\"stereotype\": {\"browserName\": \"firefox\", \"platformName\": \"LINUX\"}, \"session\": null}]},"
+            + "{\"id\": \"n3\", \"uri\": \"http://10.0.0.3:5555\", \"maxSessions\": 1, \"availability\": \"DRAINING\", \"slots\": ["
+            + "  {\"stereotype\": {\"browserName\": \"chrome\", \"platformName\": \"LINUX\"}, \"session\": null}]}]}}";
+
+    private static Map<String, String> filter(String... keyValues) {
+        Map<String, String> filter = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            filter.put(keyValues[i], keyValues[i + 1]);
+        }
+        return filter;
+    }
+
+    @Test
+    public void shouldParseGrid4Status() throws IOException {
+        List<GridNode> nodes = GridStatusClient.parseGrid4Status(new ObjectMapper().readTree(GRID4_STATUS));
+
+        assertThat(nodes).hasSize(3);
+        assertThat(nodes.get(0).getId()).isEqualTo("http://10.0.0.1:5555");
+        assertThat(nodes.get(0).getActiveSessions()).isEqualTo(1);
+        assertThat(nodes.get(0).getCapabilities()).hasSize(1);
+        assertThat(nodes.get(0).getSessionUrl()).isNull();
+        assertThat(nodes.get(1).getCapabilities()).hasSize(2);
+        assertThat(nodes.get(2).isUp()).isFalse();
+    }
+
+    @Test
+    public void shouldSelectLeastLoadedMatchingNode() throws IOException {
+        List<GridNode> nodes = GridStatusClient.parseGrid4Status(new ObjectMapper().readTree(GRID4_STATUS));
+
+        assertThat(GridStatusClient.selectLeastLoaded(nodes, filter("browserName", "chrome")).getId()).isEqualTo("http://10.0.0.2:5555");
+        assertThat(GridStatusClient.selectLeastLoaded(nodes, filter("browserName", "FIREFOX")).getId()).isEqualTo("http://10.0.0.2:5555");
+        assertThat(GridStatusClient.selectLeastLoaded(nodes, filter("browserName", "(safari|firefox)", "platformName", "linux")).getId()).isEqualTo("http://10.0.0.2:5555");
+        assertThat(GridStatusClient.selectLeastLoaded(nodes, filter("browserName", "safari"))).isNull();
+    }
+
+    @Test
+    public void shouldSpreadConsecutiveSelections() {
+        List<Map<String, Object>> chrome = Collections.singletonList(Collections.singletonMap("browserName", "chrome"));
+        List<GridNode> nodes = Arrays.asList(
+                new GridNode("a", "a/wd/hub", true, 2, chrome, 0),
+                new GridNode("b", "b/wd/hub", true, 2, chrome, 0));
+
+        GridNode first = GridStatusClient.selectLeastLoaded(nodes, filter("browserName", "chrome"));
+        first.reserveSlot();
+        GridNode second = GridStatusClient.selectLeastLoaded(nodes, filter("browserName", "chrome"));
+        second.reserveSlot();
+
+        assertThat(first).isNotSameAs(second);
+        assertThat(nodes.get(0).getLoad()).isEqualTo(0.5);
+        assertThat(nodes.get(1).getLoad()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void shouldReadGrid3Hub() throws IOException {
+        String hub = "{\"success\": true, \"slotCounts\": {\"free\": 7, \"total\": 10}, \"nodes\": ["
+                + "{\"id\": \"http://172.17.0.4:40008\", \"browsers\": [{\"browser\": \"chrome\", \"slots\": {\"busy\": 2, \"total\": 5}},"
+                + "  {\"browser\": \"firefox\", \"slots\": {\"busy\": 1, \"total\": 5}}]},"
+                + "{\"id\": \"http://172.17.0.3:40009\"}]}";
+        Map<String, Integer> nodes = GridStatusClient.parseGrid3Hub(new ObjectMapper().readTree(hub));
+
+        assertThat(nodes).containsOnlyKeys("http://172.17.0.4:40008", "http://172.17.0.3:40009");
+        assertThat(nodes.get("http://172.17.0.4:40008")).isEqualTo(3);
+        assertThat(nodes.get("http://172.17.0.3:40009")).isNull();
+    }
+
+    @Test
+    public void shouldProbeGrid3NodesAndCacheTheStatus() throws IOException {
+        AtomicInteger hubRequests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        String node = base + "/node";
+
+        server.createContext("/status", exchange -> respond(exchange, 404, "not found"));
+        server.createContext("/grid/api/hub", exchange -> {
+            hubRequests.incrementAndGet();
+            respond(exchange, 200, "{\"success\": true, \"nodes\": [{\"id\": \"" + node + "\"}]}");
+        });
+        server.createContext("/grid/api/proxy", exchange -> respond(exchange, 200, "{\"success\": true, \"request\": {\"configuration\": "
+                + "{\"maxSession\": 5, \"capabilities\": [{\"browserName\": \"chrome\", \"platform\": \"LINUX\"}]}}}"));
+        server.createContext("/node/wd/hub/sessions", exchange -> respond(exchange, 200, "{\"value\": [{\"id\": \"1\"}, {\"id\": \"2\"}]}"));
+        server.start();
+
+        try {
+            GridStatusClient client = new GridStatusClient(base + "/wd/hub", 60000, 2000, 2);
+            List<GridNode> nodes = client.getNodes();
+
+            assertThat(nodes).hasSize(1);
+            assertThat(nodes.get(0).getSessionUrl()).isEqualTo(node + "/wd/hub");
+            assertThat(nodes.get(0).getActiveSessions()).isEqualTo(2);
+            assertThat(nodes.get(0).getMaxSessions()).isEqualTo(5);
+
+            assertThat(client.selectNode(filter("browserName", "chrome", "platform", "linux")).getActiveSessions()).isEqualTo(3);
+            assertThat(hubRequests.get()).isEqualTo(1);
+
+            client.invalidate();
+            assertThat(client.getNodes().get(0).getActiveSessions()).isEqualTo(2);
+            assertThat(hubRequests.get()).isEqualTo(2);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+public class HarRecorderTest {
+
+    private static final String DIR = "./target/test-har/";
+
+    private String requestWillBeSent(String id, String url, double timestamp) {
+        return "{\"message\":{\"method\":\"Network.requestWillBeSent\",\"params\":{\"requestId\":\"" + id + "\",\"timestamp\":" + timestamp
+                + ",\"wallTime\":1600000000.5,\"request\":{\"url\":\"" + url + "\",\"method\":\"GET\",\"headers\":{\"Accept\":\"*/*\"}}}}}";
+    }
+
+    private String responseReceived(String id, int status) {
+        return "{\"message\":{\"method\":\"Network.responseReceived\",\"params\":{\"requestId\":\"" + id + "\",\"response\":{\"status\":" + status
+                + ",\"statusText\":\"OK\",\"protocol\":\"http/1.1\",\"mimeType\":\"text/html\",\"headers\":{\"Content-Type\":\"text/html\"},"
+                + "\"timing\":{\"requestTime\":10.0,\"dnsStart\":-1,\"dnsEnd\":-1,\"connectStart\":1,\"connectEnd\":5,\"sslStart\":-1,\"sslEnd\":-1,"
+                + "\"sendStart\":6,\"sendEnd\":7,\"receiveHeadersEnd\":50}}}}}";
+    }
+
+    private String loadingFinished(String id, double timestamp, long size) {
+        return "{\"message\":{\"method\":\"Network.loadingFinished\",\"params\":{\"requestId\":\"" + id + "\",\"timestamp\":" + timestamp
+                + ",\"encodedDataLength\":" + size + "}}}";
+    }
+
+    @Test
+    public void harFileTest() throws Exception {
+        String path = DIR + "scenario.har";
+        HarRecorder recorder = new HarRecorder(path, 10);
+        recorder.process(requestWillBeSent("1", "http://localhost/index.html", 10.0));
+        recorder.process(requestWillBeSent("2", "http://localhost/missing.js", 10.01));
+        recorder.process(responseReceived("1", 200));
+        recorder.process(loadingFinished("1", 10.1, 2048));
+        recorder.process("{\"message\":{\"method\":\"Page.frameNavigated\",\"params\":{}}}");
+        recorder.close();
+
+        JsonNode har = new ObjectMapper().readTree(new File(path));
+        assertThat(har.path("log").path("version").asText()).isEqualTo("1.2");
+        JsonNode entries = har.path("log").path("entries");
+        assertThat(entries.size()).isEqualTo(1);
+        JsonNode entry = entries.get(0);
+        assertThat(entry.path("request").path("url").asText()).isEqualTo("http://localhost/index.html");
+        assertThat(entry.path("response").path("status").asInt()).isEqualTo(200);
+        assertThat(entry.path("response").path("bodySize").asLong()).isEqualTo(2048);
+        assertThat(entry.path("time").asDouble()).isCloseTo(100.0, offset(0.01));
+        assertThat(entry.path("timings").path("wait").asDouble()).isEqualTo(43.0);
+        assertThat(entry.path("timings").path("dns").asDouble()).isEqualTo(-1.0);
+    }
+
+    @Test
+    public void boundedBufferTest() throws Exception {
+        HarRecorder recorder = new HarRecorder(DIR + "bounded.har", 5);
+        for (int i = 0; i < 20; i++) {
+            recorder.process(requestWillBeSent(String.valueOf(i), "http://localhost/" + i, 10.0));
+            recorder.process(responseReceived(String.valueOf(i), 200));
+            recorder.process(loadingFinished(String.valueOf(i), 10.5, 100));
+        }
+        for (int i = 100; i < 110; i++) {
+            recorder.process(requestWillBeSent(String.valueOf(i), "http://localhost/pending/" + i, 10.0));
+        }
+
+        assertThat(recorder.getRecorded()).isEqualTo(20);
+        assertThat(recorder.getRecentEntries()).hasSize(5);
+        assertThat(recorder.getDropped()).isEqualTo(5);
+        recorder.close();
+
+        JsonNode har = new ObjectMapper().readTree(new File(DIR + "bounded.har"));
+        assertThat(har.path("log").path("entries").size()).isEqualTo(20);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonCacheTest {
+
+    private static final String JSON = "{\"name\": \"John\", \"phones\": [{\"type\": \"home\"}, {\"type\": \"work\"}]}";
+
+    private static final String SCHEMA = "{\"type\": \"object\", \"required\": [\"name\"], \"properties\": {\"name\": {\"type\": \"string\"}}}";
+
+    @AfterMethod
+    public void clear() {
+        JsonCache.INSTANCE.clear();
+    }
+
+    @Test
+    public void shouldParseEachDocumentOnlyOnce() {
+        assertThat(JsonCache.INSTANCE.parseHjson(JSON)).isSameAs(JsonCache.INSTANCE.parseHjson(new String(JSON)));
+        assertThat(JsonCache.INSTANCE.parse(JSON)).isSameAs(JsonCache.INSTANCE.parse(JSON));
+        assertThat(JsonCache.INSTANCE.compile("$.name")).isSameAs(JsonCache.INSTANCE.compile("$.name"));
+
+        assertThat((String) JsonCache.INSTANCE.read(JSON, "$.name")).isEqualTo("John");
+        assertThat((String) JsonCache.INSTANCE.read(JSON, "$.phones[1].type")).isEqualTo("work");
+        assertThat((String) JsonCache.INSTANCE.read("{\n  name: Jane\n}", "$.name")).isEqualTo("Jane");
+    }
+
+    @Test
+    public void shouldValidateAgainstCachedSchemas() throws Exception {
+        ProcessingReport valid = JsonCache.INSTANCE.validate(SCHEMA, JSON);
+        ProcessingReport invalid = JsonCache.INSTANCE.validate(SCHEMA, "{\"name\": 1}");
+
+        assertThat(valid.isSuccess()).isTrue();
+        assertThat(invalid.isSuccess()).isFalse();
+        assertThat(invalid.toString()).contains("integer");
+    }
+}
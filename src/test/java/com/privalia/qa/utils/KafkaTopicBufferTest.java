@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KafkaTopicBufferTest {
+
+    private static final Schema SCHEMA = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"order\", \"fields\": ["
+            + "{\"name\": \"id\", \"type\": \"int\"}, {\"name\": \"customer\", \"type\": {\"type\": \"record\", \"name\": \"customer\", "
+            + "\"fields\": [{\"name\": \"name\", \"type\": \"string\"}]}}]}");
+
+    @Test
+    public void shouldOnlyReadTheNewRecordsOfTheTopic() {
+        MockConsumer<String, String> consumer = mockTopic("orders", 2);
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 0, "1", "created"));
+            consumer.addRecord(new ConsumerRecord<>("orders", 1, 0, "2", "created"));
+        });
+        KafkaTopicBuffer<String, String> buffer = new KafkaTopicBuffer<>(consumer, "orders", 10000);
+
+        assertThat(buffer.refresh()).isEqualTo(2);
+
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 0, "1", "created"));
+            consumer.addRecord(new ConsumerRecord<>("orders", 1, 0, "2", "created"));
+        });
+
+        assertThat(buffer.refresh()).isZero();
+        assertThat(buffer.findByValue("created")).extracting(ConsumerRecord::key).containsExactlyInAnyOrder("1", "2");
+        assertThat(buffer.findByValue("paid")).isEmpty();
+
+        consumer.updateEndOffsets(Collections.singletonMap(new TopicPartition("orders", 0), 2L));
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 0, "1", "created"));
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 1, "1", "paid"));
+            consumer.addRecord(new ConsumerRecord<>("orders", 1, 0, "2", "created"));
+        });
+
+        assertThat(buffer.refresh()).isEqualTo(1);
+        assertThat(buffer.getRecords()).hasSize(3);
+        assertThat(buffer.findByKey("1")).extracting(ConsumerRecord::value).containsExactly("created", "paid");
+        assertThat(buffer.findByValue("paid")).extracting(ConsumerRecord::key).containsExactly("1");
+        assertThat(buffer.findByValue("cancelled")).isEmpty();
+    }
+
+    @Test
+    public void shouldIndexTheFieldsOfJsonValues() {
+        MockConsumer<String, String> consumer = mockTopic("orders", 1);
+        consumer.updateEndOffsets(Collections.singletonMap(new TopicPartition("orders", 0), 2L));
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 0, null, "{\"id\": 1, \"customer\": {\"name\": \"John\"}}"));
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 1, null, "not json"));
+        });
+        KafkaTopicBuffer<String, String> buffer = new KafkaTopicBuffer<>(consumer, "orders", 10000);
+        buffer.refresh();
+
+        assertThat(buffer.findByField("customer.name", "John")).extracting(ConsumerRecord::offset).containsExactly(0L);
+        assertThat(buffer.findByKey(null)).hasSize(2);
+
+        consumer.updateEndOffsets(Collections.singletonMap(new TopicPartition("orders", 0), 3L));
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 1, null, "not json"));
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 2, null, "{\"id\": 2, \"customer\": {\"name\": \"John\"}}"));
+        });
+        buffer.refresh();
+
+        assertThat(buffer.findByField("customer.name", "John")).extracting(ConsumerRecord::offset).containsExactly(0L, 2L);
+        assertThat(buffer.findByField("id", "2")).extracting(ConsumerRecord::offset).containsExactly(2L);
+        assertThat(buffer.findByField("customer.id", "2")).isEmpty();
+    }
+
+    @Test
+    public void shouldIndexTheFieldsOfAvroValues() {
+        GenericRecord customer = new GenericData.Record(SCHEMA.getField("customer").schema());
+        customer.put("name", "John");
+        GenericRecord order = new GenericData.Record(SCHEMA);
+        order.put("id", 1);
+        order.put("customer", customer);
+
+        MockConsumer<String, Object> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.updatePartitions("orders", Collections.singletonList(new PartitionInfo("orders", 0, null, new Node[0], new Node[0])));
+        consumer.updateBeginningOffsets(Collections.singletonMap(new TopicPartition("orders", 0), 0L));
+        consumer.updateEndOffsets(Collections.singletonMap(new TopicPartition("orders", 0), 1L));
+        consumer.schedulePollTask(() -> consumer.addRecord(new ConsumerRecord<>("orders", 0, 0, "1", order)));
+        KafkaTopicBuffer<String, Object> buffer = new KafkaTopicBuffer<>(consumer, "orders", 10000);
+        buffer.refresh();
+
+        assertThat(buffer.findByField("customer.name", "John")).hasSize(1);
+        assertThat(buffer.findByField("id", "1")).hasSize(1);
+        assertThat(buffer.findByField("unknown", "1")).isEmpty();
+        assertThat(buffer.findByValue(GenericData.get().deepCopy(SCHEMA, order))).hasSize(1);
+    }
+
+    @Test
+    public void shouldReadAgainTopicsCreatedAgain() {
+        MockConsumer<String, String> consumer = mockTopic("orders", 1);
+        consumer.updateEndOffsets(Collections.singletonMap(new TopicPartition("orders", 0), 2L));
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 0, "1", "created"));
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 1, "1", "paid"));
+        });
+        KafkaTopicBuffer<String, String> buffer = new KafkaTopicBuffer<>(consumer, "orders", 10000);
+        buffer.refresh();
+
+        consumer.updateEndOffsets(Collections.singletonMap(new TopicPartition("orders", 0), 1L));
+        consumer.schedulePollTask(() -> consumer.addRecord(new ConsumerRecord<>("orders", 0, 0, "2", "created")));
+
+        assertThat(buffer.refresh()).isEqualTo(1);
+        assertThat(buffer.getRecords()).extracting(ConsumerRecord::key).containsExactly("2");
+        assertThat(buffer.findByKey("1")).isEmpty();
+    }
+
+    @Test
+    public void shouldReadAgainTopicsCreatedAgainWithTheSameNumberOfRecords() {
+        MockConsumer<String, String> consumer = mockTopic("orders", 1);
+        consumer.updateEndOffsets(Collections.singletonMap(new TopicPartition("orders", 0), 2L));
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 0, "1", "created"));
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 1, "1", "paid"));
+        });
+        KafkaTopicBuffer<String, String> buffer = new KafkaTopicBuffer<>(consumer, "orders", 10000);
+        buffer.refresh();
+
+        for (int poll = 0; poll < 2; poll++) {
+            consumer.schedulePollTask(() -> {
+                consumer.addRecord(new ConsumerRecord<>("orders", 0, 0, "2", "created"));
+                consumer.addRecord(new ConsumerRecord<>("orders", 0, 1, "2", "cancelled"));
+            });
+        }
+
+        assertThat(buffer.refresh()).isEqualTo(2);
+        assertThat(buffer.getRecords()).extracting(ConsumerRecord::value).containsExactly("created", "cancelled");
+        assertThat(buffer.findByKey("1")).isEmpty();
+    }
+
+    @Test
+    public void shouldNotReadAgainTopicsWithBinaryValues() {
+        MockConsumer<byte[], byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        TopicPartition partition = new TopicPartition("images", 0);
+        consumer.updatePartitions("images", Collections.singletonList(new PartitionInfo("images", 0, null, new Node[0], new Node[0])));
+        consumer.updateBeginningOffsets(Collections.singletonMap(partition, 0L));
+        consumer.updateEndOffsets(Collections.singletonMap(partition, 1L));
+        consumer.schedulePollTask(() -> consumer.addRecord(new ConsumerRecord<>("images", 0, 0, new byte[] {1}, new byte[] {1, 2, 3})));
+        KafkaTopicBuffer<byte[], byte[]> buffer = new KafkaTopicBuffer<>(consumer, "images", 10000);
+        buffer.refresh();
+
+        consumer.updateEndOffsets(Collections.singletonMap(partition, 2L));
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(new ConsumerRecord<>("images", 0, 0, new byte[] {1}, new byte[] {1, 2, 3}));
+            consumer.addRecord(new ConsumerRecord<>("images", 0, 1, new byte[] {2}, new byte[] {4, 5, 6}));
+        });
+
+        assertThat(buffer.refresh()).isEqualTo(1);
+        assertThat(buffer.getRecords()).extracting(ConsumerRecord::offset).containsExactly(0L, 1L);
+    }
+
+    /**
+     * Topic with one record in every partition
+     */
+    private static MockConsumer<String, String> mockTopic(String topic, int partitions) {
+        MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        List<PartitionInfo> partitionInfos = new ArrayList<>();
+        Map<TopicPartition, Long> beginningOffsets = new HashMap<>();
+        Map<TopicPartition, Long> endOffsets = new HashMap<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            partitionInfos.add(new PartitionInfo(topic, partition, null, new Node[0], new Node[0]));
+            beginningOffsets.put(new TopicPartition(topic, partition), 0L);
+            endOffsets.put(new TopicPartition(topic, partition), 1L);
+        }
+        consumer.updatePartitions(topic, partitionInfos);
+        consumer.updateBeginningOffsets(beginningOffsets);
+        consumer.updateEndOffsets(endOffsets);
+        return consumer;
+    }
+}
@@ -29,9 +29,12 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -88,6 +91,23 @@ public class KafkaUtilsIT {
         kafka_utils.deleteTopic(topic);
     }
 
+    @Test(enabled = false)
+    public void sendMessagesTest() {
+        String topic = "testBulk";
+
+        if (!AdminUtils.topicExists(kafka_utils.getZkUtils(), topic)) {
+            kafka_utils.createTopic(topic);
+        }
+        Iterator<Map.Entry<String, String>> messages = IntStream.rangeClosed(1, 10000)
+                .mapToObj(i -> (Map.Entry<String, String>) new AbstractMap.SimpleImmutableEntry<>(String.valueOf(i), "message " + i))
+                .iterator();
+        KafkaUtils.BulkResult result = kafka_utils.sendMessages(topic, messages);
+        assertThat(result.getMessages()).isEqualTo(10000);
+        assertThat(result.getErrors()).isZero();
+        assertThat(kafka_utils.readTopic(topic)).hasSize(10000);
+        kafka_utils.deleteTopic(topic);
+    }
+
     @Test(enabled = false)
     public void modifyPartitionsTest() {
         if (AdminUtils.topicExists(kafka_utils.getZkUtils(), "testPartitions")) {
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class KafkaUtilsTest {
+
+    private KafkaUtils kafkaUtils;
+
+    @BeforeMethod
+    public void setUp() {
+        kafkaUtils = new KafkaUtils();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        kafkaUtils.closeProducers();
+    }
+
+    @Test
+    public void shouldReuseTheProducerUntilThePropertiesChange() {
+        Producer<String, String> producer = kafkaUtils.getProducer();
+        assertThat(kafkaUtils.<String, String>getProducer()).isSameAs(producer);
+
+        kafkaUtils.modifyProducerProperties("linger.ms", "1");
+        assertThat(kafkaUtils.<String, String>getProducer()).isSameAs(producer);
+
+        kafkaUtils.modifyProducerProperties("value.serializer", "org.apache.kafka.common.serialization.LongSerializer");
+        Producer<String, Long> longProducer = kafkaUtils.getProducer();
+        assertThat(longProducer).isNotSameAs(producer);
+
+        kafkaUtils.modifyProducerProperties("value.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+        assertThat(kafkaUtils.<String, String>getProducer()).isNotSameAs(producer).isNotSameAs(longProducer);
+    }
+
+    @Test
+    public void shouldOnlyCloseTheProducersOfTheCurrentScenario() throws Exception {
+        ExecutorService parallelScenario = Executors.newSingleThreadExecutor();
+        try {
+            Producer<String, String> parallelProducer = parallelScenario.submit(() -> kafkaUtils.<String, String>getProducer()).get();
+            Producer<String, String> producer = kafkaUtils.getProducer();
+            assertThat(producer).isNotSameAs(parallelProducer);
+
+            kafkaUtils.closeProducers();
+
+            assertThat(kafkaUtils.<String, String>getProducer()).isNotSameAs(producer);
+            assertThat(parallelScenario.submit(() -> kafkaUtils.<String, String>getProducer()).get()).isSameAs(parallelProducer);
+        } finally {
+            parallelScenario.submit(() -> kafkaUtils.closeProducers()).get();
+            parallelScenario.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldCreateNewProducersAfterClosingThem() {
+        Producer<String, String> producer = kafkaUtils.getProducer();
+
+        kafkaUtils.closeProducers();
+
+        assertThat(kafkaUtils.<String, String>getProducer()).isNotSameAs(producer);
+    }
+
+    @Test
+    public void shouldReadAllTheRecordsUntilTheEndOffsets() {
+        MockConsumer<String, String> consumer = mockTopic("orders", 2, 2);
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 0, "1", "created"));
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 1, "1", "paid"));
+            consumer.addRecord(new ConsumerRecord<>("orders", 1, 0, "2", "created"));
+        });
+        consumer.schedulePollTask(() -> consumer.addRecord(new ConsumerRecord<>("orders", 1, 1, "2", "paid")));
+
+        List<ConsumerRecord<String, String>> records = kafkaUtils.readTopic(consumer, "orders", 10000);
+
+        assertThat(records).extracting(ConsumerRecord::value).containsExactlyInAnyOrder("created", "paid", "created", "paid");
+        assertThat(records).filteredOn(record -> record.key().equals("1")).extracting(ConsumerRecord::value).containsExactly("created", "paid");
+    }
+
+    @Test
+    public void shouldIgnoreTheRecordsProducedAfterTheReadStarted() {
+        MockConsumer<String, String> consumer = mockTopic("orders", 2, 1);
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 0, "1", "created"));
+            consumer.addRecord(new ConsumerRecord<>("orders", 0, 1, "1", "paid"));
+        });
+        consumer.schedulePollTask(() -> consumer.addRecord(new ConsumerRecord<>("orders", 1, 0, "2", "created")));
+
+        List<ConsumerRecord<String, String>> records = kafkaUtils.readTopic(consumer, "orders", 10000);
+
+        assertThat(records).extracting(ConsumerRecord::key).containsExactlyInAnyOrder("1", "2");
+        assertThat(records).extracting(ConsumerRecord::value).containsOnly("created");
+    }
+
+    @Test
+    public void shouldReturnImmediatelyForEmptyOrUnknownTopics() {
+        long start = System.currentTimeMillis();
+
+        assertThat(kafkaUtils.readTopic(mockTopic("empty", 3, 0), "empty", 10000)).isEmpty();
+        assertThat(kafkaUtils.readTopic(new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST), "unknown", 10000)).isEmpty();
+        assertThat(System.currentTimeMillis() - start).isLessThan(1000);
+    }
+
+    @Test
+    public void shouldFetchNumberedVersionsOfSchemasOnlyOnce() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer registry = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        registry.createContext("/subjects/record/versions/", exchange -> {
+            requests.incrementAndGet();
+            byte[] response = "{\"schema\": \"\\\"string\\\"\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        registry.start();
+
+        try {
+            kafkaUtils.setSchemaRegistryUrl("http://localhost:" + registry.getAddress().getPort());
+            assertThat(kafkaUtils.getSchemaFromRegistry("record", "1")).isEqualTo("\"string\"");
+            assertThat(kafkaUtils.getSchemaFromRegistry("record", "1")).isEqualTo("\"string\"");
+            assertThat(requests.get()).isEqualTo(1);
+
+            kafkaUtils.getSchemaFromRegistry("record", "latest");
+            kafkaUtils.getSchemaFromRegistry("record", "latest");
+            assertThat(requests.get()).isEqualTo(3);
+        } finally {
+            registry.stop(0);
+        }
+    }
+
+    @Test
+    public void shouldCountTheMessagesSentInBulkAndTheirErrors() {
+        Producer<Object, Object> producer = new FailingProducer("bad");
+        List<Map.Entry<String, String>> messages = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            messages.add(new AbstractMap.SimpleImmutableEntry<>(String.valueOf(i), i % 4 == 1 ? "bad " + i : "message " + i));
+        }
+
+        KafkaUtils.BulkResult result = kafkaUtils.sendMessages(producer, "orders", messages.iterator());
+
+        assertThat(result.getMessages()).isEqualTo(10);
+        assertThat(result.getErrors()).isEqualTo(3);
+        assertThat(result.getFirstError()).isEqualTo("RecordTooLargeException: bad 1");
+        assertThat(((MockProducer<Object, Object>) producer).history()).hasSize(7);
+    }
+
+    @Test
+    public void shouldOnlySendInBulkWithStringOrLongSerializers() {
+        kafkaUtils.modifyProducerProperties("value.serializer", "io.confluent.kafka.serializers.KafkaAvroSerializer");
+
+        assertThatThrownBy(() -> kafkaUtils.sendMessages("orders", Collections.<Map.Entry<String, String>>emptyIterator()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("KafkaAvroSerializer");
+    }
+
+    /**
+     * Producer that fails the messages whose value starts with the given prefix
+     */
+    private static final class FailingProducer extends MockProducer<Object, Object> {
+
+        private final String prefix;
+
+        @SuppressWarnings("unchecked")
+        FailingProducer(String prefix) {
+            super(true, (Serializer) new StringSerializer(), (Serializer) new StringSerializer());
+            this.prefix = prefix;
+        }
+
+        @Override
+        public synchronized Future<RecordMetadata> send(ProducerRecord<Object, Object> record, Callback callback) {
+            if (!record.value().toString().startsWith(this.prefix)) {
+                return super.send(record, callback);
+            }
+            RecordTooLargeException exception = new RecordTooLargeException(record.value().toString());
+            callback.onCompletion(null, exception);
+            CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
+            future.completeExceptionally(exception);
+            return future;
+        }
+    }
+
+    private static MockConsumer<String, String> mockTopic(String topic, int partitions, long recordsPerPartition) {
+        MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        List<PartitionInfo> partitionInfos = new ArrayList<>();
+        Map<TopicPartition, Long> beginningOffsets = new HashMap<>();
+        Map<TopicPartition, Long> endOffsets = new HashMap<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            partitionInfos.add(new PartitionInfo(topic, partition, null, new Node[0], new Node[0]));
+            beginningOffsets.put(new TopicPartition(topic, partition), 0L);
+            endOffsets.put(new TopicPartition(topic, partition), recordsPerPartition);
+        }
+        consumer.updatePartitions(topic, partitionInfos);
+        consumer.updateBeginningOffsets(beginningOffsets);
+        consumer.updateEndOffsets(endOffsets);
+        return consumer;
+    }
+}
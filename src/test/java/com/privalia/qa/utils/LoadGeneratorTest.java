@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void shouldComputePercentilesWithBoundedError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(100000);
+        assertThat((double) histogram.getPercentile(50)).isCloseTo(50000, within(50000 * 0.016));
+        assertThat((double) histogram.getPercentile(99)).isCloseTo(99000, within(99000 * 0.016));
+        assertThat(histogram.getPercentile(100)).isEqualTo(100000);
+        assertThat(histogram.getMean()).isCloseTo(50000.5, within(0.01));
+    }
+
+    @Test
+    public void shouldMapEveryValueToABucketThatContainsIt() {
+        for (long value : new long[]{0, 1, 127, 128, 129, 255, 256, 1000, 123456789L, 1L << 39}) {
+            int index = LatencyHistogram.index(value);
+            assertThat(LatencyHistogram.highestValue(index)).isGreaterThanOrEqualTo(value);
+            assertThat(index == 0 || LatencyHistogram.highestValue(index - 1) < value).isTrue();
+        }
+    }
+
+    @Test
+    public void shouldSendRequestsFromConcurrentUsers() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger sent = new AtomicInteger();
+
+        LoadGenerator.Result result = new LoadGenerator(() -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            inFlight.decrementAndGet();
+            return sent.incrementAndGet() % 10 == 0 ? 500 : 200;
+        }).runConcurrently(4, 500, TimeUnit.MILLISECONDS);
+
+        assertThat(maxInFlight.get()).isEqualTo(4);
+        assertThat(result.getRequests()).isEqualTo(sent.get());
+        assertThat(result.getErrorRate()).isCloseTo(10, within(2.0));
+        assertThat(result.getLastError()).isEqualTo("status code 500");
+        assertThat(result.getLatency("p50")).isGreaterThanOrEqualTo(5);
+        assertThat(result.getThroughput()).isGreaterThan(100);
+    }
+
+    @Test
+    public void shouldSendRequestsAtAFixedRate() {
+        AtomicInteger sent = new AtomicInteger();
+
+        LoadGenerator.Result result = new LoadGenerator(() -> {
+            sent.incrementAndGet();
+            throw new IllegalStateException("connection refused");
+        }).runAtRate(100, 1, TimeUnit.SECONDS);
+
+        assertThat(sent.get()).isBetween(95, 101);
+        assertThat(result.getErrorRate()).isEqualTo(100);
+        assertThat(result.getLastError()).isEqualTo("IllegalStateException: connection refused");
+        assertThatThrownBy(() -> result.getLatency("p100")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldRejectAZeroRateOrConcurrency() {
+        LoadGenerator generator = new LoadGenerator(() -> 200);
+
+        assertThatThrownBy(() -> generator.runAtRate(0, 1, TimeUnit.SECONDS)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> generator.runAtRate(-5, 1, TimeUnit.SECONDS)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> generator.runConcurrently(0, 1, TimeUnit.SECONDS)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> LoadGenerator.newExecutor(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
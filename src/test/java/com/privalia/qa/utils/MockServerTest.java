@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MockServerTest {
+
+    private MockServer server;
+
+    private String baseUrl;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        server = new MockServer(0);
+        baseUrl = "http://localhost:" + server.getPort();
+    }
+
+    @AfterMethod
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void shouldReturnTheLastMatchingStub() {
+        server.stub("GET", "/users/*").status(404).body("not found");
+        server.stub("GET", "/users/1").body("{\"id\": 1}").header("Content-Type", "application/json");
+        server.stub("POST", "/users").status(201).withHeader("X-Token", "abc").withBody("\"name\"");
+
+        given().baseUri(baseUrl).get("/users/1").then().statusCode(200).header("Content-Type", "application/json");
+        given().baseUri(baseUrl).get("/users/2?expand=true").then().statusCode(404);
+        given().baseUri(baseUrl).header("X-Token", "abc").body("{\"name\": \"John\"}").post("/users").then().statusCode(201);
+        given().baseUri(baseUrl).header("X-Token", "xyz").body("{\"name\": \"John\"}").post("/users").then().statusCode(404);
+        given().baseUri(baseUrl).delete("/users/1").then().statusCode(404);
+
+        assertThat(server.getRequestCount("GET", "/users/*")).isEqualTo(2);
+        assertThat(server.getRequestCount("GET", "/users/2?expand=true")).isEqualTo(1);
+        assertThat(server.getRequestCount("POST", "/users")).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldDelayAndFailTheResponses() {
+        server.stub("GET", "/slow").delay(MockServer.Delay.parse("200"));
+        MockServer.Stub failing = server.stub("GET", "/failing").errorRate(100, "503");
+        MockServer.Stub reset = server.stub("GET", "/reset").errorRate(100, "reset");
+
+        long start = System.currentTimeMillis();
+        given().baseUri(baseUrl).get("/slow").then().statusCode(200);
+        assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(200);
+
+        given().baseUri(baseUrl).get("/failing").then().statusCode(503);
+        assertThat(failing.getHits()).isEqualTo(1);
+
+        // the http client retries the idempotent requests that get no response
+        assertThatThrownBy(() -> given().baseUri(baseUrl).get("/reset")).isNotNull();
+        assertThat(reset.getHits()).isGreaterThanOrEqualTo(1);
+        assertThatThrownBy(() -> failing.errorRate(10, "timeout")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldFollowTheDelayDistribution() {
+        MockServer.Delay uniform = MockServer.Delay.parse("100-300");
+        MockServer.Delay logNormal = MockServer.Delay.parse("median 100 p99 800");
+
+        long[] samples = new long[10000];
+        for (int i = 0; i < samples.length; i++) {
+            assertThat(uniform.next()).isBetween(100L, 300L);
+            samples[i] = logNormal.next();
+        }
+        Arrays.sort(samples);
+
+        assertThat(samples[5000]).isBetween(90L, 110L);
+        assertThat(samples[9900]).isBetween(650L, 980L);
+        assertThatThrownBy(() -> MockServer.Delay.parse("fast")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class NetworkProfileTest {
+
+    @Test
+    public void predefinedProfileTest() {
+        assertThat(NetworkProfile.parse("Slow3G")).isSameAs(NetworkProfile.SLOW_3G);
+        assertThat(NetworkProfile.parse("offline").isOffline()).isTrue();
+        assertThat(NetworkProfile.parse("none").getDownloadThroughput()).isEqualTo(-1);
+    }
+
+    @Test
+    public void customProfileTest() {
+        NetworkProfile profile = NetworkProfile.parse("300, 1000, 500");
+        assertThat(profile.isOffline()).isFalse();
+        assertThat(profile.getLatency()).isEqualTo(300);
+        assertThat(profile.getDownloadThroughput()).isEqualTo(125000);
+        assertThat(profile.getUploadThroughput()).isEqualTo(62500);
+    }
+
+    @Test
+    public void unknownProfileTest() {
+        assertThatThrownBy(() -> NetworkProfile.parse("5g")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> NetworkProfile.parse("a,b,c")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PagePerformanceReportTest {
+
+    private PagePerformance performance(String url, double pageLoad) {
+        PagePerformance performance = new PagePerformance();
+        performance.setUrl(url);
+        performance.setPageLoad(pageLoad);
+        performance.setFirstContentfulPaint(pageLoad / 2);
+        return performance;
+    }
+
+    @AfterMethod
+    public void cleanUp() {
+        PagePerformanceReport.INSTANCE.clear();
+    }
+
+    @Test
+    public void percentileTest() {
+        assertThat(PagePerformanceReport.percentile(Arrays.asList(1.0, 2.0, 3.0, 4.0, 5.0, 6.0, 7.0, 8.0, 9.0, 10.0), 50)).isEqualTo(5.0);
+        assertThat(PagePerformanceReport.percentile(Arrays.asList(1.0, 2.0, 3.0, 4.0, 5.0, 6.0, 7.0, 8.0, 9.0, 10.0), 95)).isEqualTo(10.0);
+        assertThat(PagePerformanceReport.percentile(Collections.singletonList(7.0), 90)).isEqualTo(7.0);
+    }
+
+    @Test
+    public void summaryTest() {
+        for (int i = 1; i <= 20; i++) {
+            PagePerformanceReport.INSTANCE.record(performance("http://localhost/index.html?page=" + i, i * 100));
+        }
+        PagePerformanceReport.INSTANCE.record(performance("http://localhost/other.html", 300));
+
+        Map<String, Map<String, Map<String, Double>>> summary = PagePerformanceReport.INSTANCE.getSummary();
+        assertThat(summary).containsOnlyKeys("http://localhost/index.html", "http://localhost/other.html");
+
+        Map<String, Double> pageLoad = summary.get("http://localhost/index.html").get(PagePerformance.PAGE_LOAD);
+        assertThat(pageLoad.get("count")).isEqualTo(20.0);
+        assertThat(pageLoad.get("p50")).isEqualTo(1000.0);
+        assertThat(pageLoad.get("p90")).isEqualTo(1800.0);
+        assertThat(pageLoad.get("p95")).isEqualTo(1900.0);
+        assertThat(pageLoad.get("max")).isEqualTo(2000.0);
+        assertThat(summary.get("http://localhost/index.html")).doesNotContainKey(PagePerformance.LARGEST_CONTENTFUL_PAINT);
+    }
+
+    @Test
+    public void slowResourcesTest() {
+        PagePerformance.ResourceTiming fast = new PagePerformance.ResourceTiming();
+        fast.setName("http://localhost/fast.js");
+        fast.setDuration(100);
+        PagePerformance.ResourceTiming slow = new PagePerformance.ResourceTiming();
+        slow.setName("http://localhost/slow.js");
+        slow.setDuration(800);
+
+        PagePerformance performance = performance("http://localhost/index.html", 1000);
+        performance.setResources(Arrays.asList(fast, slow));
+        assertThat(performance.getResourcesSlowerThan(500)).containsExactly(slow);
+    }
+}
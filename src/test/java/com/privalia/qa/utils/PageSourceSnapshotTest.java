@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PageSourceSnapshotTest {
+
+    private static final String SOURCE = "<html><head><title>Test page</title></head><body>"
+            + "<h1 class=\"entry-title\">Home</h1>"
+            + "<p id=\"p1\" class=\"normal\">This is a paragraph text</p>"
+            + "<p name=\"pName2\" class=\"normal explanation\">This is b paragraph text</p>"
+            + "<p name=\"pName2\" class=\"normal\">This is c paragraph text</p>"
+            + "<a href=\"/first\">First link</a><a href=\"/second\">Second link</a>"
+            + "</body></html>";
+
+    @Test
+    public void containsTest() {
+        PageSourceSnapshot snapshot = new PageSourceSnapshot(SOURCE);
+        assertThat(snapshot.contains("<h1 class=\"entry-title\">Home</h1>", false)).isTrue();
+        assertThat(snapshot.contains("<H1 CLASS=\"entry-title\">HOME</H1>", false)).isFalse();
+        assertThat(snapshot.contains("<H1 CLASS=\"entry-title\">HOME</H1>", true)).isTrue();
+        assertThat(snapshot.contains("Not present text", true)).isFalse();
+    }
+
+    @Test
+    public void countTest() {
+        PageSourceSnapshot snapshot = new PageSourceSnapshot(SOURCE);
+        assertThat(snapshot.count("id", "p1")).isEqualTo(1);
+        assertThat(snapshot.count("id", "p2")).isEqualTo(0);
+        assertThat(snapshot.count("name", "pName2")).isEqualTo(2);
+        assertThat(snapshot.count("class", "normal")).isEqualTo(3);
+        assertThat(snapshot.count("class", "explanation")).isEqualTo(1);
+        assertThat(snapshot.count("css", "p.normal")).isEqualTo(3);
+        assertThat(snapshot.count("tagName", "a")).isEqualTo(2);
+        assertThat(snapshot.count("linkText", "First link")).isEqualTo(1);
+        assertThat(snapshot.count("partialLinkText", "link")).isEqualTo(2);
+    }
+
+    @Test
+    public void unsupportedMethodTest() {
+        PageSourceSnapshot snapshot = new PageSourceSnapshot(SOURCE);
+        assertThatThrownBy(() -> snapshot.count("xpath", "//p")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void nullSourceTest() {
+        PageSourceSnapshot snapshot = new PageSourceSnapshot(null);
+        assertThat(snapshot.contains("text", false)).isFalse();
+        assertThat(snapshot.count("tagName", "p")).isEqualTo(0);
+    }
+}
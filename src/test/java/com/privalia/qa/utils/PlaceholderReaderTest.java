@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PlaceholderReaderTest {
+
+    private static final UnaryOperator<String> REPLACER = placeholder -> placeholder.replace("${NAME}", "John").replace("${toUpperCase:John}", "JOHN");
+
+    private static String read(String text, UnaryOperator<String> replacer) throws IOException {
+        return IOUtils.toString(new PlaceholderReader(new StringReader(text), replacer));
+    }
+
+    @Test
+    public void shouldReplaceOnlyThePlaceholders() throws IOException {
+        List<String> placeholders = new ArrayList<>();
+        String result = read("{\n  \"name\": \"${NAME}\",\n  \"price\": \"$10\"\n}", placeholder -> {
+            placeholders.add(placeholder);
+            return REPLACER.apply(placeholder);
+        });
+
+        assertThat(result).isEqualTo("{\n  \"name\": \"John\",\n  \"price\": \"$10\"\n}");
+        assertThat(placeholders).containsExactly("${NAME}");
+    }
+
+    @Test
+    public void shouldGiveNestedPlaceholdersToTheReplacer() throws IOException {
+        List<String> placeholders = new ArrayList<>();
+        read("Hello ${toUpperCase:${NAME}}!", placeholder -> {
+            placeholders.add(placeholder);
+            return placeholder;
+        });
+
+        assertThat(placeholders).containsExactly("${toUpperCase:${NAME}}");
+    }
+
+    @Test
+    public void shouldIgnoreTheBracesOfQuotedArguments() throws IOException {
+        List<String> placeholders = new ArrayList<>();
+        String result = read("{\"code\": \"${faker:regexify '[a-z]{4}'}\", \"id\": \"${faker:numerify \"#{2}\"}\", \"name\": \"${NAME}\"}", placeholder -> {
+            placeholders.add(placeholder);
+            return REPLACER.apply(placeholder);
+        });
+
+        assertThat(placeholders).containsExactly("${faker:regexify '[a-z]{4}'}", "${faker:numerify \"#{2}\"}", "${NAME}");
+        assertThat(result).endsWith("\"name\": \"John\"}");
+    }
+
+    @Test
+    public void shouldKeepEscapedAndUnclosedPlaceholders() throws IOException {
+        assertThat(read("cost: $$ ${NAME}$", REPLACER)).isEqualTo("cost: $$ John$");
+        assertThat(read("end ${NAME", REPLACER)).isEqualTo("end ${NAME");
+    }
+
+    @Test
+    public void shouldReplacePlaceholdersSplitBetweenReads() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            text.append("line ").append(i).append(": ${NAME}\n");
+        }
+
+        String result = read(text.toString(), REPLACER);
+
+        assertThat(result).hasSize(text.length() - 3 * 10000).doesNotContain("${").endsWith("line 9999: John\n");
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SuppressWarnings("deprecation")
+public class RestConnectionPoolTest {
+
+    private HttpServer server;
+
+    private String baseUrl;
+
+    @BeforeClass
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/users", exchange -> {
+            byte[] bytes = "{\"id\": 1}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.createContext("/export", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+                for (int i = 0; i < 100000; i++) {
+                    out.write(("row " + i + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterClass
+    public void stopServer() {
+        RestConnectionPool.INSTANCE.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldReuseTheConnectionBetweenRequests() {
+        long opened = RestConnectionPool.INSTANCE.getConnectionsOpened();
+        long reused = RestConnectionPool.INSTANCE.getConnectionsReused();
+
+        for (int i = 0; i < 3; i++) {
+            given().config(RestConnectionPool.INSTANCE.getConfig()).baseUri(baseUrl).get("/users").then().statusCode(200);
+        }
+
+        assertThat(RestConnectionPool.INSTANCE.getConnectionsOpened() - opened).isLessThanOrEqualTo(1);
+        assertThat(RestConnectionPool.INSTANCE.getConnectionsReused() - reused).isGreaterThanOrEqualTo(2);
+        assertThat(RestConnectionPool.INSTANCE.getStats().getLeased()).isEqualTo(0);
+        assertThat(RestConnectionPool.INSTANCE.getStats().getAvailable()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void shouldBeSafeToUseFromSeveralThreads() throws Exception {
+        long opened = RestConnectionPool.INSTANCE.getConnectionsOpened();
+        long requests = RestConnectionPool.INSTANCE.getRequests();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                results.add(executor.submit(() -> given().config(RestConnectionPool.INSTANCE.getConfig()).baseUri(baseUrl).get("/users").statusCode()));
+            }
+            for (Future<Integer> result : results) {
+                assertThat(result.get()).isEqualTo(200);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(RestConnectionPool.INSTANCE.getRequests() - requests).isEqualTo(40);
+        assertThat(RestConnectionPool.INSTANCE.getConnectionsOpened() - opened).isLessThanOrEqualTo(4);
+        assertThat(RestConnectionPool.INSTANCE.getStats().getLeased()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRaiseTheMaxNumberOfConnections() {
+        given().config(RestConnectionPool.INSTANCE.getConfig()).baseUri(baseUrl).get("/users").then().statusCode(200);
+        int max = RestConnectionPool.INSTANCE.getStats().getMax();
+
+        RestConnectionPool.INSTANCE.ensureCapacity(10);
+        assertThat(RestConnectionPool.INSTANCE.getStats().getMax()).isEqualTo(max);
+
+        RestConnectionPool.INSTANCE.ensureCapacity(500);
+        assertThat(RestConnectionPool.INSTANCE.getStats().getMax()).isGreaterThanOrEqualTo(500);
+    }
+
+    @Test
+    public void shouldSpoolBigBodiesToATemporaryFile() {
+        System.setProperty("REST_STREAMING_THRESHOLD", "1024");
+        try {
+            String body = given().config(RestConnectionPool.INSTANCE.getConfig()).baseUri(baseUrl).get("/export").asString();
+            SpooledBody spooled = SpooledBody.takeLastReceived();
+
+            assertThat(spooled.isSpooled()).isTrue();
+            assertThat(spooled.getSize()).isEqualTo(body.length());
+            assertThat(body).startsWith("row 0\n").endsWith("row 99999\n");
+            spooled.delete();
+        } finally {
+            System.clearProperty("REST_STREAMING_THRESHOLD");
+        }
+    }
+
+    @Test
+    public void shouldOnlySkipTheCertificateValidationWithTheRelaxedConfig() {
+        assertThat(RestConnectionPool.INSTANCE.getConfig().getSSLConfig().getSSLSocketFactory())
+                .isSameAs(RestConnectionPool.INSTANCE.getConfig().getSSLConfig().getSSLSocketFactory())
+                .isNotSameAs(RestConnectionPool.INSTANCE.getRelaxedConfig().getSSLConfig().getSSLSocketFactory());
+        assertThat(RestConnectionPool.INSTANCE.getConfig().getSSLConfig().getX509HostnameVerifier())
+                .isNotSameAs(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+        assertThat(RestConnectionPool.INSTANCE.getRelaxedConfig().getSSLConfig().getX509HostnameVerifier())
+                .isSameAs(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import com.jayway.jsonpath.PathNotFoundException;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SpooledBodyTest {
+
+    private static final String JSON = "{\"total\": 2, \"meta\": {\"tags\": [\"a\", \"b\"]}, \"items\": [{\"id\": 1, \"name\": \"first\"}, {\"id\": 2, \"name\": \"second item\", \"extra\": null}]}";
+
+    @Test
+    public void shouldKeepSmallBodiesInMemory() throws Exception {
+        SpooledBody body = SpooledBody.spool(stream(JSON), 1024);
+
+        assertThat(body.isSpooled()).isFalse();
+        assertThat(body.getSize()).isEqualTo(JSON.length());
+        assertThat(body.getSha256()).isEqualTo(hex(MessageDigest.getInstance("SHA-256").digest(JSON.getBytes(StandardCharsets.UTF_8))));
+        assertThat(body.hash("MD5")).isEqualTo(hex(MessageDigest.getInstance("MD5").digest(JSON.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void shouldSpoolBigBodiesToAFile() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        SpooledBody body = SpooledBody.spool(stream(text.toString()), 1024);
+
+        assertThat(body.isSpooled()).isTrue();
+        assertThat(body.getSize()).isEqualTo(text.length());
+        assertThat(body.countChars(StandardCharsets.UTF_8)).isEqualTo(text.length());
+        assertThat(body.getSha256()).isEqualTo(hex(MessageDigest.getInstance("SHA-256").digest(text.toString().getBytes(StandardCharsets.UTF_8))));
+        // the buffer is 64 KB, so these lines are split between two blocks
+        assertThat(body.contains("line 6553\nline 6554\nline 6555", StandardCharsets.UTF_8)).isTrue();
+        assertThat(body.contains("line 20000", StandardCharsets.UTF_8)).isFalse();
+        body.delete();
+    }
+
+    @Test
+    public void shouldEvaluateSimplePathsWhileReading() throws IOException {
+        SpooledBody body = SpooledBody.spool(stream(JSON), 16);
+
+        assertThat(body.read("$.total")).isEqualTo("2");
+        assertThat(body.read("$.items[1].name")).isEqualTo("second item");
+        assertThat(body.read("$.items.[0]['id']")).isEqualTo("1");
+        assertThat(body.read("$.meta")).isEqualTo("{\"tags\":[\"a\",\"b\"]}");
+        assertThat(body.read("$.items[1].extra")).isNull();
+        assertThatThrownBy(() -> body.read("$.items[2].id")).isInstanceOf(PathNotFoundException.class);
+        assertThatThrownBy(() -> body.read("$.items[2]")).isInstanceOf(PathNotFoundException.class);
+        assertThatThrownBy(() -> body.read("$.meta.tags[2]")).isInstanceOf(PathNotFoundException.class);
+        assertThatThrownBy(() -> body.read("$.nope")).isInstanceOf(PathNotFoundException.class);
+        assertThatThrownBy(() -> body.read("$.items[*].id")).isInstanceOf(IllegalArgumentException.class);
+        body.delete();
+    }
+
+    private static ByteArrayInputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
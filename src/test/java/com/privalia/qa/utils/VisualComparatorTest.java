@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2021, Veepee
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any purpose
+ * with or without fee is hereby  granted, provided that the above copyright notice
+ * and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS IS"  AND THE AUTHOR DISCLAIMS  ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING  ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS.  IN NO  EVENT  SHALL THE  AUTHOR  BE LIABLE  FOR  ANY SPECIAL,  DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS
+ * OF USE, DATA  OR PROFITS, WHETHER IN AN ACTION OF  CONTRACT, NEGLIGENCE OR OTHER
+ * TORTIOUS ACTION, ARISING OUT OF OR  IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+*/
+
+package com.privalia.qa.utils;
+
+import org.testng.annotations.Test;
+import ru.yandex.qatools.ashot.coordinates.Coords;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VisualComparatorTest {
+
+    private BufferedImage image(int width, int height, Color color) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        return image;
+    }
+
+    @Test
+    public void equalImagesTest() {
+        VisualDiff diff = new VisualComparator(16, 0).compare(image(100, 60, Color.WHITE), image(100, 60, Color.WHITE));
+        assertThat(diff.getDiffPixels()).isEqualTo(0);
+        assertThat(diff.getMismatchingTiles()).isEmpty();
+        assertThat(diff.getDiffImage()).isNull();
+        assertThat(diff.matches(0)).isTrue();
+    }
+
+    @Test
+    public void differentTilesTest() {
+        BufferedImage actual = image(100, 60, Color.WHITE);
+        actual.setRGB(5, 5, Color.BLACK.getRGB());
+        actual.setRGB(90, 50, Color.BLACK.getRGB());
+
+        VisualDiff diff = new VisualComparator(16, 0).compare(image(100, 60, Color.WHITE), actual);
+        assertThat(diff.getDiffPixels()).isEqualTo(2);
+        assertThat(diff.getMismatchingTiles()).containsExactly(new Coords(0, 0, 16, 16), new Coords(80, 48, 16, 12));
+        assertThat(diff.getDiffImage().getRGB(5, 5)).isEqualTo(Color.RED.getRGB());
+        assertThat(diff.getDiffImage().getRGB(50, 30)).isEqualTo(0);
+        assertThat(diff.matches(0)).isFalse();
+        assertThat(diff.matches(0.1)).isTrue();
+    }
+
+    @Test
+    public void pixelToleranceTest() {
+        VisualDiff diff = new VisualComparator(16, 10).compare(image(40, 40, new Color(100, 100, 100)), image(40, 40, new Color(105, 95, 110)));
+        assertThat(diff.getDiffPixels()).isEqualTo(0);
+
+        diff = new VisualComparator(16, 5).compare(image(40, 40, new Color(100, 100, 100)), image(40, 40, new Color(105, 95, 110)));
+        assertThat(diff.getDiffPixels()).isEqualTo(1600);
+    }
+
+    @Test
+    public void ignoredRegionsTest() {
+        BufferedImage actual = image(100, 60, Color.WHITE);
+        Graphics2D graphics = actual.createGraphics();
+        graphics.setColor(Color.BLACK);
+        graphics.fillRect(10, 10, 30, 20);
+        graphics.dispose();
+
+        VisualDiff diff = new VisualComparator(16, 0)
+                .ignoring(Collections.singletonList(new Coords(10, 10, 30, 20)))
+                .compare(image(100, 60, Color.WHITE), actual);
+        assertThat(diff.getDiffPixels()).isEqualTo(0);
+
+        diff = new VisualComparator(16, 0)
+                .ignoring(Collections.singletonList(new Coords(10, 10, 30, 10)))
+                .compare(image(100, 60, Color.WHITE), actual);
+        assertThat(diff.getDiffPixels()).isEqualTo(300);
+    }
+
+    @Test
+    public void sizeMismatchTest() {
+        VisualDiff diff = new VisualComparator(16, 0).compare(image(100, 60, Color.WHITE), image(100, 80, Color.WHITE));
+        assertThat(diff.getSizeMismatch()).isNotNull();
+        assertThat(diff.matches(100)).isFalse();
+    }
+}
@@ -204,6 +204,18 @@ Feature: Steps for testing APIs
       When I send a 'GET' request to '/posts'
       And the service response time is lower than '1000' milliseconds
 
+    Scenario: Light load test with concurrent users
+      Given I send requests to '${REST_SERVER_HOST}:3000'
+      When I send '5' concurrent 'GET' requests to '/posts' during '3' seconds
+      Then the 'p95' latency of the load test is lower than '1000' milliseconds
+      And the error rate of the load test is lower than '1'%
+
+    Scenario: Load test at a fixed rate
+      Given I send requests to '${REST_SERVER_HOST}:3000'
+      When I send 'GET' requests to '/posts' at '20' requests per second during '3' seconds
+      Then the 'p99' latency of the load test is lower than '1000' milliseconds
+      And the throughput of the load test is greater than '15' requests per second
+
 
   Rule: Authentication
 
@@ -229,6 +241,74 @@ Feature: Steps for testing APIs
       And I set the proxy to 'http://localhost:80' with username 'myusername' and password 'mypassword'
 
 
+  Rule: Stubbing services with a mock server
+
+    Scenario: Returning predefined responses from a local mock server
+      Given I start a mock server on port '0'
+      And the mock returns 'not found' for 'GET /users/*' with status '404'
+      And the mock returns '{"id": 1, "name": "John"}' for 'GET /users/1'
+      And I send requests to 'localhost:${MOCK_SERVER_PORT}'
+      When I send a 'GET' request to '/users/1'
+      Then the service response status must be '200'
+      And I save element '$.name' in environment variable 'NAME'
+      And '${NAME}' matches 'John'
+      When I send a 'GET' request to '/users/2'
+      Then the service response status must be '404'
+      And the mock server received '2' 'GET /users/*' requests
+
+    Scenario: Injecting latency and errors in the mock server responses
+      Given I start a mock server on port '0'
+      And the mock server responds to 'POST /orders' with:
+        | status               | 201               |
+        | body                 | {"id": 1}         |
+        | header Content-Type  | application/json  |
+        | delay                | median 50 p99 400 |
+        | error rate           | 100               |
+        | error                | 503               |
+        | request body         | This is a test    |
+      And I send requests to 'localhost:${MOCK_SERVER_PORT}'
+      When I send a 'POST' request to '/orders' based on 'schemas/mytestdata.json' as 'json'
+      Then the service response status must be '503'
+      And the mock server received '1' 'POST /orders' request
+
+    Scenario: Recording the http traffic in a cassette and replaying it without the service
+      Given I start a mock server on port '0'
+      And the mock returns '{"id": 1}' for 'GET /users/1'
+      And I record the http traffic in the cassette 'target/cassettes/users.cassette'
+      And I send requests to 'localhost:${MOCK_SERVER_PORT}'
+      When I send a 'GET' request to '/users/1'
+      Then I stop the mock server
+      Given I replay the http traffic from the cassette 'target/cassettes/users.cassette'
+      When I send a 'GET' request to '/users/1'
+      Then the service response status must be '200'
+      And the service response must contain the text '"id": 1'
+
+    Scenario: Uploading files without loading them in memory
+      Given I start a mock server on port '0'
+      And the mock server responds to 'PUT /documents/1' with:
+        | status                        | 204            |
+        | request header Content-Length | 74             |
+        | request body                  | This is a test |
+      And the mock server responds to 'POST /documents' with:
+        | status                           | 201                |
+        | request header Transfer-Encoding | chunked            |
+        | request body                     | "user": "Jane"     |
+      And the mock server responds to 'POST /upload' with:
+        | status                           | 201                |
+        | request header Transfer-Encoding | chunked            |
+        | request body                     | "userId": 1        |
+      And I send requests to 'localhost:${MOCK_SERVER_PORT}'
+      When I upload the file 'schemas/mytestdata.json' in a 'PUT' request to '/documents/1'
+      Then the service response status must be '204'
+      Given I save 'Jane' in variable 'USER_NAME'
+      When I upload the file 'schemas/mytestdatawithvars.json' in a 'POST' request to '/documents' replacing placeholders
+      Then the service response status must be '201'
+      When I send a multipart 'POST' request to '/upload' using chunked transfer encoding with:
+        | metadata | {"owner": "${USER_NAME}"}    | application/json |
+        | document | file:schemas/mytestdata.json |                  |
+      Then the service response status must be '201'
+
+
   Rule: Miscellaneous and examples
 
     Scenario: Operations that can be done on a json response (using a sample json file as seed json)
@@ -17,6 +17,16 @@ Feature: Kafka steps test.
     Then I close the connection to kafka
 
 
+  Scenario: Looking for messages by the value of one of their fields
+    Given I connect to kafka at '${ZOOKEEPER_HOST}:2181'
+    Given I create a Kafka topic named 'orders' if it doesn't exists
+    Given I send a message '{"id": 1, "customer": {"name": "John"}}' to the kafka topic named 'orders'
+    Given I send a message '{"id": 2, "customer": {"name": "Jane"}}' to the kafka topic named 'orders'
+    Then The kafka topic 'orders' has a message with 'customer.name' equal to 'John'
+    And The kafka topic 'orders' has a message with 'id' equal to '2'
+    Then I close the connection to kafka
+
+
   Scenario: Increase partitions in kafka topic
     Given I connect to kafka at '${ZOOKEEPER_HOST}:2181'
     Given I create a Kafka topic named 'testqa' if it doesn't exists
@@ -21,6 +21,23 @@ Feature: Steps for testing web pages
       Given I go to 'http://${DEMO_SITE_HOST}'
       Then I maximize the browser
 
+    Scenario: Verify the performance budget of a page
+      Given I go to 'http://${DEMO_SITE_HOST}/styled/find-by-playground-test.html'
+      Then I collect the page performance metrics and save them in the environment variable 'metrics'
+      And the page load is less than '10000' ms
+      And the DOM content loaded is less than '10000' ms
+      And no resource takes more than '5000' ms
+
+    @chromium
+    Scenario: Block third party resources and simulate a slow network
+      Given I block the urls matching '*google-analytics.com*;*.woff2'
+      And I set the network profile to 'fast3g'
+      And I go to 'http://${DEMO_SITE_HOST}/styled/find-by-playground-test.html'
+      Then this text exists:
+            """
+           This is a paragraph text
+           """
+
     Scenario: Check that a new window opened
       Given I go to 'http://${DEMO_SITE_HOST}/styled/windows-test.html'
       Then I click on the element with 'id:gobasicajax'
@@ -85,6 +102,22 @@ Feature: Steps for testing web pages
            This text is not present in the source
            """
 
+    # Consecutive read-only steps are evaluated against a single copy of the page source
+    Scenario: Verify texts and elements using a snapshot of the page source
+      Given I go to 'http://${DEMO_SITE_HOST}/styled/find-by-playground-test.html'
+      And I enable page source snapshots
+      Then this text exists:
+            """
+           This is a paragraph text
+           """
+      Then this text does not exist:
+            """
+           This text is not present in the source
+           """
+      Then the page source has '1' elements with 'id:p1'
+      Then the page source has '2' elements with 'name:pName2'
+      Then the page source has at least '1' elements with 'css:.explanation'
+
     Scenario: Verify if element is displayed
       Given I go to 'http://${DEMO_SITE_HOST}/styled/tag/dynamic-table.html'
       And the element with 'id:dynamictable' IS displayed